@@ -0,0 +1,54 @@
+package com.insticore;
+
+/**
+ * Counts the odds so nothing is formatted in the measured sweep
+ * Also remembers when the first event came, how long a consumer waits for the first complete event
+ */
+class CountingOddsSink implements OddsSink {
+    private final long createdAt = System.nanoTime();
+    private long odds;
+    private long firstEventNanos = -1;
+
+    @Override
+    public void begin(String bookmaker) {
+    }
+
+    @Override
+    public void sport(String name) {
+    }
+
+    @Override
+    public void tournament(String name) {
+    }
+
+    @Override
+    public void event(Event event) {
+        if (firstEventNanos < 0) {
+            firstEventNanos = System.nanoTime() - createdAt;
+        }
+    }
+
+    @Override
+    public void market(Market market) {
+    }
+
+    @Override
+    public void odd(Odd odd) {
+        odds++;
+    }
+
+    @Override
+    public void end() {
+    }
+
+    long getOdds() {
+        return odds;
+    }
+
+    /**
+     * @return time from the creation of the sink to the first event, -1 if no event came
+     */
+    long getFirstEventNanos() {
+        return firstEventNanos;
+    }
+}
@@ -0,0 +1,69 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full sweeps of both parsers against the local stub server, one operation is one sweep
+ * The rate ceiling of the limiter is off, the stub answers as fast as it can
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-D" + LimitingHttpFetcher.RATE_PROPERTY + "=0")
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+    @Param({"22Bet", "Olimp"})
+    public String bookmaker;
+
+    private StubServer server;
+    private AutoCloseable parser;
+    private Consumer<OddsSink> sweep;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new StubServer();
+        if (TwentyTwoBetParser.BOOKMAKER.equals(bookmaker)) {
+            TwentyTwoBetParser twentyTwoBetParser = new TwentyTwoBetParser(TwentyTwoBetParser.DEFAULT_MAX_IN_FLIGHT,
+                    server.getBaseUrl(), server.getBaseUrl());
+            parser = twentyTwoBetParser;
+            sweep = twentyTwoBetParser::parse;
+        } else {
+            OlimpParser olimpParser = new OlimpParser(server.getBaseUrl());
+            parser = olimpParser;
+            sweep = olimpParser::parse;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        parser.close();
+        server.close();
+    }
+
+    @Benchmark
+    public long sweep() {
+        CountingOddsSink sink = new CountingOddsSink();
+        sweep.accept(sink);
+        if (sink.getOdds() == 0) {
+            throw new IllegalStateException("No odds parsed from the stub server");
+        }
+        return sink.getOdds();
+    }
+}
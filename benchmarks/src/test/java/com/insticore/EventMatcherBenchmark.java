@@ -0,0 +1,123 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching the first sweep of two bookmakers, the index against scoring every pair
+ * The second bookmaker names the same fixtures with another separator, a typo in every other name
+ * and a start time up to 5 minutes off, one operation matches all its events
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EventMatcherBenchmark {
+    private static final String[] SPORTS = {"Football", "Tennis", "Basketball", "Ice Hockey", "Volleyball"};
+    private static final String[] SYLLABLES = {"ka", "ro", "mi", "len", "tor", "vas", "bel", "ga", "dun", "shi",
+            "po", "rat", "nik", "ver", "sol", "al", "bur", "te", "zon", "dor"};
+    private static final long START = 1_800_000_000_000L;
+
+    @Param({"1000", "5000"})
+    public int fixtures;
+
+    private String[] sports;
+    private Event[] events;
+    private Event[] otherEvents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        sports = new String[fixtures];
+        events = new Event[fixtures];
+        otherEvents = new Event[fixtures];
+        for (int fixture = 0; fixture < fixtures; fixture++) {
+            String home = team(random);
+            String away = team(random);
+            //A day of fixtures, a few of them at the same time
+            long startTime = START + TimeUnit.MINUTES.toMillis(15) * random.nextInt(96);
+            sports[fixture] = SPORTS[random.nextInt(SPORTS.length)];
+            events[fixture] = new Event(String.valueOf(fixture), home + " vs. " + away, "", startTime);
+            String otherHome = fixture % 2 == 0 ? typo(home, random) : home;
+            otherEvents[fixture] = new Event("o" + fixture, otherHome + " - " + away, "",
+                    startTime + TimeUnit.MINUTES.toMillis(random.nextInt(11) - 5));
+        }
+    }
+
+    @Benchmark
+    public int index() {
+        EventMatcher matcher = new EventMatcher();
+        for (int fixture = 0; fixture < fixtures; fixture++) {
+            matcher.match(TwentyTwoBetParser.BOOKMAKER, sports[fixture], events[fixture]);
+        }
+        int matched = 0;
+        for (int fixture = 0; fixture < fixtures; fixture++) {
+            String key = matcher.match(OlimpParser.BOOKMAKER, sports[fixture], otherEvents[fixture]);
+            if (key.equals(matcher.getKey(TwentyTwoBetParser.BOOKMAKER, events[fixture].getId()))) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int bruteForce() {
+        AliasTable aliases = new AliasTable();
+        EventMatcher.Entry[] entries = new EventMatcher.Entry[fixtures];
+        for (int fixture = 0; fixture < fixtures; fixture++) {
+            entries[fixture] = new EventMatcher.Entry(TwentyTwoBetParser.BOOKMAKER, sports[fixture], events[fixture],
+                    aliases);
+        }
+        int matched = 0;
+        for (int fixture = 0; fixture < fixtures; fixture++) {
+            EventMatcher.Entry entry = new EventMatcher.Entry(OlimpParser.BOOKMAKER, sports[fixture],
+                    otherEvents[fixture], aliases);
+            int best = -1;
+            double bestScore = EventMatcher.DEFAULT_MIN_SCORE;
+            for (int candidate = 0; candidate < fixtures; candidate++) {
+                double score = EventMatcher.score(entry, entries[candidate]);
+                if (score >= bestScore) {
+                    best = candidate;
+                    bestScore = score;
+                }
+            }
+            if (best == fixture) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private static String team(Random random) {
+        StringBuilder team = new StringBuilder();
+        for (int word = 0; word < 2; word++) {
+            int syllables = 2 + random.nextInt(2);
+            for (int syllable = 0; syllable < syllables; syllable++) {
+                String text = SYLLABLES[random.nextInt(SYLLABLES.length)];
+                team.append(syllable == 0 ? Character.toUpperCase(text.charAt(0)) + text.substring(1) : text);
+            }
+            team.append(word == 0 ? " " : "");
+        }
+        return team.toString();
+    }
+
+    private static String typo(String name, Random random) {
+        int position = 1 + random.nextInt(name.length() - 2);
+        return name.substring(0, position) + name.substring(position + 1);
+    }
+}
@@ -0,0 +1,120 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sweeps of both bookmakers at once on one shared context, the platform thread pool against a virtual thread per task
+ * Next to the sweep time the peak count of the platform threads and the resident memory are reported
+ * The virtual mode needs Java 21 or newer, on an older JVM its setup fails and only the platform mode is measured
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-D" + LimitingHttpFetcher.RATE_PROPERTY + "=0")
+@State(Scope.Benchmark)
+public class ExecutionModeBenchmark {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final Path PROCESS_STATUS = Paths.get("/proc/self/status");
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ExecutionMode mode;
+
+    private StubServer server;
+    private BookmakerContext context;
+    private BookmakerRunner runner;
+
+    /**
+     * Gauges read after every sweep, the threads are the platform ones, the virtual threads are not counted
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Resources {
+        public long peakThreads;
+        public long rssMegabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            THREADS.resetPeakThreadCount();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (!mode.isAvailable()) {
+            throw new IllegalStateException(mode + " execution is not available on Java "
+                    + System.getProperty("java.version"));
+        }
+        server = new StubServer();
+        context = new BookmakerContext(TwentyTwoBetParser.DEFAULT_MAX_IN_FLIGHT, null, false, mode);
+        runner = new BookmakerRunner(context, Arrays.<Bookmaker>asList(
+                new TwentyTwoBetParser(server.getBaseUrl(), server.getBaseUrl(), context),
+                new OlimpParser(server.getBaseUrl(), context)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (runner != null) {
+            runner.close();
+            context.close();
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public long sweep(Resources resources) throws IOException {
+        Map<String, CountingOddsSink> sinks = new ConcurrentHashMap<>();
+        runner.parse(bookmaker -> sinks.computeIfAbsent(bookmaker.getName(), name -> new CountingOddsSink()));
+        long odds = 0;
+        for (CountingOddsSink sink : sinks.values()) {
+            if (sink.getOdds() == 0) {
+                throw new IllegalStateException("No odds parsed from the stub server");
+            }
+            odds += sink.getOdds();
+        }
+        resources.peakThreads = THREADS.getPeakThreadCount();
+        resources.rssMegabytes = readRssMegabytes();
+        return odds;
+    }
+
+    /**
+     * @return resident memory of the process, -1 where /proc is not there
+     */
+    private static long readRssMegabytes() throws IOException {
+        if (!Files.isReadable(PROCESS_STATUS)) {
+            return -1;
+        }
+        for (String line : Files.readAllLines(PROCESS_STATUS, StandardCharsets.UTF_8)) {
+            if (line.startsWith("VmRSS:")) {
+                //VmRSS:    123456 kB
+                return Long.parseLong(line.substring("VmRSS:".length(), line.length() - "kB".length()).trim()) / 1024;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,79 @@
+package com.insticore;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Recorded payloads of both bookmakers from the test resources
+ */
+final class Fixtures {
+    static final String MENU = "/fixtures/22bet/prematch-menu.json";
+    static final String TOURNAMENT = "/fixtures/22bet/prematch-by-tournaments.json";
+    static final String EVENT = "/fixtures/22bet/single-pre-event.json";
+    static final String ODD_FILTERS = "/fixtures/22bet/odd-filters.json";
+    static final String SPORT_PAGE = "/fixtures/olimp/sport.html";
+    static final String TOURNAMENT_PAGE = "/fixtures/olimp/tournament.html";
+    static final String EVENT_PAGE = "/fixtures/olimp/event.html";
+
+    private Fixtures() {
+    }
+
+    static byte[] load(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No fixture " + name);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Feeds the page to the handler in parts of the given size as if it was downloaded
+     * @param page
+     * @param handler
+     * @param partSize
+     * @param <T>
+     * @return
+     */
+    static <T> T feed(byte[] page, ResponseHandler<T> handler, int partSize) {
+        HttpHeaders headers = new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE, "text/html; charset=utf-8");
+        if (handler.onHeaders(200, headers)) {
+            for (int offset = 0; offset < page.length; offset += partSize) {
+                handler.onBodyPart(ByteBuffer.wrap(page, offset, Math.min(partSize, page.length - offset)));
+            }
+        }
+        return handler.onCompleted();
+    }
+
+    /**
+     * @return stream which drops everything written to it
+     */
+    static PrintStream nullPrintStream() {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+}
@@ -0,0 +1,120 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries of the live odds store, e.g. all football 1X2 prices starting in the next 2 hours, alone and while
+ * a writer keeps replacing the events
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LiveOddsStoreBenchmark {
+    private static final String[] SPORTS = {"Football", "Tennis", "Basketball", "Ice Hockey", "Volleyball"};
+    private static final int TOURNAMENTS = 100;
+    private static final int EVENTS = 20;
+    private static final int MARKETS = 20;
+    private static final int ODDS = 3;
+    //The events start within two days
+    private static final long WINDOW_MILLIS = TimeUnit.DAYS.toMillis(2);
+
+    private final LiveOddsStore store = new LiveOddsStore();
+    private final Random random = new Random(1);
+    private long now;
+    private LiveOddsStore.Query football1x2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        now = System.currentTimeMillis();
+        OddsSink sink = store.newSink();
+        sink.begin(TwentyTwoBetParser.BOOKMAKER);
+        for (String sport : SPORTS) {
+            sink.sport(sport);
+            for (int tournament = 0; tournament < TOURNAMENTS; tournament++) {
+                sink.tournament(sport + " tournament " + tournament);
+                for (int event = 0; event < EVENTS; event++) {
+                    writeEvent(sink, sport + "." + tournament + "." + event);
+                }
+            }
+        }
+        sink.end();
+        football1x2 = new LiveOddsStore.Query(null, "football", null, "1X2", Market.NO_ID, now,
+                now + TimeUnit.HOURS.toMillis(2), LiveOddsStore.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public List<LiveOddsStore.EventOdds> query() {
+        return store.find(football1x2);
+    }
+
+    @Benchmark
+    public String queryJson() {
+        long start = System.nanoTime();
+        return OddsQueryServer.toJson(store.find(football1x2), System.nanoTime() - start);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    public List<LiveOddsStore.EventOdds> reader() {
+        return store.find(football1x2);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    public void writer(WriterState state) {
+        //A tournament of the next sweep
+        OddsSink sink = state.sink;
+        String sport = SPORTS[state.random.nextInt(SPORTS.length)];
+        int tournament = state.random.nextInt(TOURNAMENTS);
+        sink.sport(sport);
+        sink.tournament(sport + " tournament " + tournament);
+        for (int event = 0; event < EVENTS; event++) {
+            writeEvent(sink, sport + "." + tournament + "." + event);
+        }
+        sink.sport(null);
+    }
+
+    private void writeEvent(OddsSink sink, String id) {
+        long startTime = now + (long) (random.nextDouble() * WINDOW_MILLIS);
+        sink.event(new Event(id, "Team A" + id + " vs. Team B" + id, "", startTime));
+        for (int market = 1; market <= MARKETS; market++) {
+            sink.market(new Market(market, market == 1 ? "1X2" : "Market " + market));
+            for (int odd = 0; odd < ODDS; odd++) {
+                sink.odd(new Odd(market * 10 + odd, "Outcome " + odd, 1 + random.nextInt(10000) / 1000.0));
+            }
+        }
+    }
+
+    /**
+     * Sweep of the writer thread, it is never ended so no event is removed
+     */
+    @State(Scope.Thread)
+    public static class WriterState {
+        private final Random random = new Random(2);
+        private OddsSink sink;
+
+        @Setup(Level.Trial)
+        public void setUp(LiveOddsStoreBenchmark benchmark) {
+            sink = benchmark.store.newSink();
+            sink.begin(TwentyTwoBetParser.BOOKMAKER);
+        }
+    }
+}
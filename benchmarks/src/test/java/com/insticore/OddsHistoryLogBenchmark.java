@@ -0,0 +1,93 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Appending the changes of a poller to the history log, and the history of one event over a tenth of a log
+ * of a million changes in 10 segments. Like in a sweep, the changes come event by event
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OddsHistoryLogBenchmark {
+    private static final int CHANGES = 1_000_000;
+    private static final int EVENTS = 1000;
+    private static final int ODDS = 30;
+    //Changed odds of an event in a sweep
+    private static final int EVENT_CHANGES = 3;
+    private static final long START = 1_790_000_000_000L;
+    //A change every 3.6 ms, 10 segments of an hour
+    private static final long STEP_MILLIS = TimeUnit.HOURS.toMillis(10) / CHANGES;
+
+    private Path directory;
+    private OddsHistoryLog log;
+    private Event[] events;
+    private Market market;
+    private final Random random = new Random(1);
+    private long timestamp = START;
+    private long changeCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("history");
+        log = OddsHistoryLog.open(directory);
+        events = new Event[EVENTS];
+        for (int e = 0; e < EVENTS; e++) {
+            events[e] = new Event(String.valueOf(e), "Team A" + e + " vs. Team B" + e, "17.10.2026 20:45", START);
+        }
+        market = new Market(1, "1X2");
+        for (int i = 0; i < CHANGES; i++) {
+            append();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.out.printf("%n%s, %.1f bytes per change%n", log, (double) log.getSize() / log.getChangeCount());
+        log.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void append() {
+        Event event = events[(int) (changeCount++ / EVENT_CHANGES % EVENTS)];
+        int odd = random.nextInt(ODDS);
+        double previous = 1.5 + random.nextInt(1000) / 1000.0;
+        double value = previous + (random.nextInt(21) - 10) / 100.0;
+        log.accept(new OddsChange(OddsChange.Type.CHANGED, timestamp, TwentyTwoBetParser.BOOKMAKER, event, market,
+                new Odd(odd, "Outcome " + odd, value), previous));
+        timestamp += STEP_MILLIS;
+    }
+
+    @Benchmark
+    public List<OddsChange> history() throws IOException {
+        return log.history(TwentyTwoBetParser.BOOKMAKER, "7", START + TimeUnit.HOURS.toMillis(4),
+                START + TimeUnit.HOURS.toMillis(5));
+    }
+}
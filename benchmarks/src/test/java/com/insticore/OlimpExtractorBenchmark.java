@@ -0,0 +1,91 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage cost of the Olimp parser: extracting every kind of page while it comes in parts
+ * and writing one event
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OlimpExtractorBenchmark {
+    /**
+     * Size of the body parts, like the network chunks of a real download
+     */
+    @Param({"1024", "16384"})
+    public int partSize;
+
+    private byte[] sportPage;
+    private byte[] tournamentPage;
+    private byte[] eventPage;
+    private OlimpEvent event;
+    private OlimpParser parser;
+    private OddsSink sink;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sportPage = Fixtures.load(Fixtures.SPORT_PAGE);
+        tournamentPage = Fixtures.load(Fixtures.TOURNAMENT_PAGE);
+        eventPage = Fixtures.load(Fixtures.EVENT_PAGE);
+        event = Fixtures.feed(eventPage, new HtmlPageHandler<>(new OlimpEventPageExtractor(), false), eventPage.length);
+        parser = new OlimpParser();
+        sink = new TextOddsSink(Fixtures.nullPrintStream());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parser.close();
+    }
+
+    /**
+     * The extraction part of loadSportAsync
+     */
+    @Benchmark
+    public List<OlimpLink> extractSportPage() {
+        return Fixtures.feed(sportPage, new HtmlPageHandler<>(new OlimpSportPageExtractor(), true), partSize);
+    }
+
+    /**
+     * The extraction part of loadTournamentAsync, the event links for loadEvents
+     */
+    @Benchmark
+    public List<String> extractTournamentPage() {
+        return Fixtures.feed(tournamentPage, new HtmlPageHandler<>(new OlimpTournamentPageExtractor(), false), partSize);
+    }
+
+    /**
+     * The extraction part of loadEventAsync
+     */
+    @Benchmark
+    public OlimpEvent extractEventPage() {
+        return Fixtures.feed(eventPage, new HtmlPageHandler<>(new OlimpEventPageExtractor(), false), partSize);
+    }
+
+    /**
+     * The text output of the event with all its odds
+     */
+    @Benchmark
+    public OlimpEvent writeEvent() {
+        parser.writeEvent(event, sink);
+        return event;
+    }
+}
@@ -0,0 +1,170 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same request budget spent on a sweep of all events at one pace and on the refresh schedule of every event.
+ * A tenth of the events is hot, their odds change every second, the others every minute. The score is only
+ * the length of the run, the result is printed at the end: how often the hot and the cold events are refreshed,
+ * how many of the hot odds changes are seen at all and how late
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RefreshSchedulerBenchmark {
+    private static final int EVENTS = 1000;
+    private static final int HOT_EVENTS = EVENTS / 10;
+    private static final double REQUESTS_PER_SECOND = 500;
+    private static final long HOT_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long COLD_PERIOD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long RUN_MILLIS = TimeUnit.SECONDS.toMillis(20);
+    //A sweep of all events takes this long within the budget
+    private static final long SWEEP_MILLIS = (long) (EVENTS * 1000 / REQUESTS_PER_SECOND);
+
+    /**
+     * sweep refreshes every event once per sweep, adaptive lets the schedule decide within twice the sweep
+     */
+    @Param({"sweep", "adaptive"})
+    public String schedule;
+
+    private SimulatedBookmaker bookmaker;
+    private RefreshScheduler scheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bookmaker = new SimulatedBookmaker();
+        boolean sweep = schedule.equals("sweep");
+        scheduler = new RefreshScheduler(bookmaker, change -> {
+        }, null, null, REQUESTS_PER_SECOND, sweep ? SWEEP_MILLIS : 100, sweep ? SWEEP_MILLIS : 2 * SWEEP_MILLIS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.close();
+        System.out.printf("%n%s: %s%n%s%n", schedule, scheduler, bookmaker);
+    }
+
+    @Benchmark
+    public void run() throws InterruptedException {
+        scheduler.start(1, TimeUnit.HOURS);
+        Thread.sleep(RUN_MILLIS);
+    }
+
+    /**
+     * Events whose odds change with the clock, refreshed right away on the calling thread
+     */
+    private static class SimulatedBookmaker implements RefreshableBookmaker {
+        private final long start = System.currentTimeMillis();
+        private final long[] startTimes = new long[EVENTS];
+        private final long[] phases = new long[EVENTS];
+        private final long[] lastVersions = new long[EVENTS];
+        private final long[] refreshes = new long[EVENTS];
+        private final Market market = new Market(1, "1X2");
+        private long hotVersions;
+        private long hotVersionsSeen;
+        private long hotDelayMillis;
+
+        SimulatedBookmaker() {
+            Random random = new Random(1);
+            for (int e = 0; e < EVENTS; e++) {
+                //From half an hour to two days before the start
+                startTimes[e] = start + TimeUnit.MINUTES.toMillis(30 + random.nextInt(47 * 60));
+                phases[e] = random.nextInt((int) period(e));
+                lastVersions[e] = -1;
+            }
+        }
+
+        @Override
+        public List<EventRef> listEvents() {
+            List<EventRef> events = new ArrayList<>();
+            for (int e = 0; e < EVENTS; e++) {
+                events.add(new EventRef("Football", "Tournament " + e / 20, String.valueOf(e)));
+            }
+            return events;
+        }
+
+        @Override
+        public CompletableFuture<Void> refresh(EventRef ref, OddsSink sink) {
+            int e = Integer.parseInt(ref.getKey());
+            long now = System.currentTimeMillis();
+            long period = period(e);
+            long version = (now - start + phases[e]) / period;
+            if (e < HOT_EVENTS && lastVersions[e] >= 0 && version > lastVersions[e]) {
+                hotVersions += version - lastVersions[e];
+                hotVersionsSeen++;
+                hotDelayMillis += (now - start + phases[e]) % period;
+            }
+            lastVersions[e] = version;
+            refreshes[e]++;
+            sink.event(new Event(ref.getKey(), "Home " + e + " vs. Away " + e, "", startTimes[e]));
+            sink.market(market);
+            for (int odd = 0; odd < 3; odd++) {
+                sink.odd(new Odd(odd, "Outcome " + odd, 1.5 + (version + odd) % 100 / 100.0));
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public String getName() {
+            return "Simulated";
+        }
+
+        @Override
+        public void parse(OddsSink sink) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CrawlMetrics getMetrics() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            double seconds = (System.currentTimeMillis() - start) / 1000.0;
+            long hot = 0;
+            long cold = 0;
+            for (int e = 0; e < EVENTS; e++) {
+                if (e < HOT_EVENTS) {
+                    hot += refreshes[e];
+                } else {
+                    cold += refreshes[e];
+                }
+            }
+            return String.format("refreshes per second of a hot event %.2f, of a cold one %.2f, "
+                            + "hot changes seen %.0f%%, %d ms after the change on average",
+                    hot / seconds / HOT_EVENTS, cold / seconds / (EVENTS - HOT_EVENTS),
+                    hotVersions > 0 ? 100.0 * hotVersionsSeen / hotVersions : 0,
+                    hotVersionsSeen > 0 ? hotDelayMillis / hotVersionsSeen : 0);
+        }
+
+        private static long period(int e) {
+            return e < HOT_EVENTS ? HOT_PERIOD_MILLIS : COLD_PERIOD_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sweeps of both bookmakers from a recorded archive, at full speed and with the latency, jitter and errors
+ * of a real network injected by the replay server
+ * The archive is recorded once from the stub server, next to the sweep time the p99 time to the first byte,
+ * the failed responses, how long the slower bookmaker took to write its first event and the odds are reported,
+ * the odds drop when the failed responses are not retried
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-D" + LimitingHttpFetcher.RATE_PROPERTY + "=0")
+@State(Scope.Benchmark)
+public class ReplayBenchmark {
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    @Param({"0", "0.01"})
+    public double errorRate;
+
+    @Param({"true", "false"})
+    public boolean hedging;
+
+    private Path file;
+    private HttpArchive archive;
+    private ReplayServer server;
+    private BookmakerContext context;
+    private BookmakerRunner runner;
+
+    /**
+     * Tail of the sweep, read after every sweep from the metrics of both bookmakers
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Tail {
+        public long firstByteP99Millis;
+        public long httpErrors;
+        public long firstEventMillis;
+        public long odds;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("replay", ".har");
+        Files.delete(file);
+        archive = HttpArchive.open(file);
+        String recordedUrl = record(archive);
+        //Jitter of half the latency on average, exponential so a few responses come much later
+        System.setProperty(HedgingHttpFetcher.PROPERTY, String.valueOf(hedging));
+        server = new ReplayServer(archive, 0, latencyMillis, latencyMillis / 2, errorRate);
+        context = new BookmakerContext(TwentyTwoBetParser.DEFAULT_MAX_IN_FLIGHT, null, false);
+        String baseUrl = ReplayServer.baseUrl(server.getUrl(), recordedUrl);
+        runner = new BookmakerRunner(context, Arrays.<Bookmaker>asList(
+                new TwentyTwoBetParser(baseUrl, baseUrl, context),
+                new OlimpParser(baseUrl, context)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (runner != null) {
+            runner.close();
+            context.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+        if (archive != null) {
+            archive.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public long sweep(Tail tail) {
+        Map<String, CountingOddsSink> sinks = new ConcurrentHashMap<>();
+        runner.parse(bookmaker -> sinks.computeIfAbsent(bookmaker.getName(), name -> new CountingOddsSink()));
+        long odds = 0;
+        long firstEventNanos = 0;
+        for (CountingOddsSink sink : sinks.values()) {
+            odds += sink.getOdds();
+            firstEventNanos = Math.max(firstEventNanos, sink.getFirstEventNanos());
+        }
+        if (odds == 0) {
+            throw new IllegalStateException("No odds parsed from the replay server");
+        }
+        long p99 = 0;
+        long errors = 0;
+        for (Bookmaker bookmaker : runner.getBookmakers()) {
+            LatencySummary firstByte = bookmaker.getMetrics().getStages().get(CrawlMetrics.Stage.FIRST_BYTE.name());
+            if (firstByte != null) {
+                p99 = Math.max(p99, firstByte.getP99());
+            }
+            Long httpErrors = bookmaker.getMetrics().getCounters().get(CrawlMetrics.HTTP_ERRORS);
+            errors += httpErrors != null ? httpErrors : 0;
+        }
+        tail.firstByteP99Millis = TimeUnit.MICROSECONDS.toMillis(p99);
+        tail.httpErrors = errors;
+        tail.firstEventMillis = TimeUnit.NANOSECONDS.toMillis(firstEventNanos);
+        tail.odds = odds;
+        return odds;
+    }
+
+    /**
+     * One sweep of both bookmakers from the stub server as if it was crawled live
+     * @return base url of the stub server the responses are recorded from
+     */
+    private static String record(HttpArchive archive) throws IOException {
+        try (StubServer stub = new StubServer()) {
+            BookmakerContext recording = new BookmakerContext(TwentyTwoBetParser.DEFAULT_MAX_IN_FLIGHT, null, false,
+                    ExecutionMode.PLATFORM, archive);
+            try (BookmakerRunner runner = new BookmakerRunner(recording, Arrays.<Bookmaker>asList(
+                    new TwentyTwoBetParser(stub.getBaseUrl(), stub.getBaseUrl(), recording),
+                    new OlimpParser(stub.getBaseUrl(), recording)))) {
+                runner.parse(bookmaker -> new CountingOddsSink());
+            } finally {
+                recording.close();
+            }
+            return stub.getBaseUrl();
+        }
+    }
+}
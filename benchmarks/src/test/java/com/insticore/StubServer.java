@@ -0,0 +1,83 @@
+package com.insticore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local http server which answers both bookmakers' requests with the fixtures
+ * The paths are matched by suffix for the 22Bet json and by prefix for the Olimp pages
+ */
+class StubServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final Map<String, byte[]> jsonBySuffix = new LinkedHashMap<>();
+    private final Map<String, byte[]> pagesByPrefix = new LinkedHashMap<>();
+
+    StubServer() throws IOException {
+        jsonBySuffix.put("/prematch-menu.json", Fixtures.load(Fixtures.MENU));
+        jsonBySuffix.put("/prematch-by-tournaments.json", Fixtures.load(Fixtures.TOURNAMENT));
+        jsonBySuffix.put("/single-pre-event.json", Fixtures.load(Fixtures.EVENT));
+        jsonBySuffix.put("/odd-filters.json", Fixtures.load(Fixtures.ODD_FILTERS));
+        //The most specific prefix first
+        pagesByPrefix.put("/betting/tournament", Fixtures.load(Fixtures.TOURNAMENT_PAGE));
+        pagesByPrefix.put("/betting/", Fixtures.load(Fixtures.SPORT_PAGE));
+        pagesByPrefix.put("/event", Fixtures.load(Fixtures.EVENT_PAGE));
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getRawPath();
+        byte[] body = null;
+        String contentType = "application/json";
+        for (Map.Entry<String, byte[]> json : jsonBySuffix.entrySet()) {
+            if (path.endsWith(json.getKey())) {
+                body = json.getValue();
+            }
+        }
+        if (body == null) {
+            contentType = "text/html; charset=utf-8";
+            for (Map.Entry<String, byte[]> page : pagesByPrefix.entrySet()) {
+                if (path.startsWith(page.getKey())) {
+                    body = page.getValue();
+                    break;
+                }
+            }
+        }
+        try {
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
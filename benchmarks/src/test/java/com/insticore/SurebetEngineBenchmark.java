@@ -0,0 +1,89 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one price update of the surebet engine with a full book of 1X2 markets of two bookmakers
+ * The prices are drawn so that about every tenth market is a surebet, the updates open and close them
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SurebetEngineBenchmark {
+    private static final String[] BOOKMAKERS = {TwentyTwoBetParser.BOOKMAKER, OlimpParser.BOOKMAKER};
+    private static final String MARKET = "1X2";
+    private static final int OUTCOMES = 3;
+    private static final int UPDATES = 1 << 16;
+
+    @Param({"1000", "10000"})
+    public int events;
+
+    private SurebetEngine engine;
+    private String[] eventKeys;
+    //Precomputed updates, so the benchmark measures only the engine
+    private int[] updateEvents;
+    private int[] updateOutcomes;
+    private int[] updateBookmakers;
+    private double[] updatePrices;
+    private int next;
+    private long surebets;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new SurebetEngine(new OutcomeMapping(), (bookmaker, event) -> event.getId(),
+                surebet -> surebets++, SurebetEngine.DEFAULT_MIN_PROFIT);
+        Random random = new Random(1);
+        eventKeys = new String[events];
+        for (int event = 0; event < events; event++) {
+            eventKeys[event] = "event " + event;
+            for (int outcome = 0; outcome < OUTCOMES; outcome++) {
+                for (int bookmaker = 0; bookmaker < BOOKMAKERS.length; bookmaker++) {
+                    engine.update(BOOKMAKERS[bookmaker], eventKeys[event], MARKET, outcome, OUTCOMES,
+                            price(random), 0);
+                }
+            }
+        }
+        updateEvents = new int[UPDATES];
+        updateOutcomes = new int[UPDATES];
+        updateBookmakers = new int[UPDATES];
+        updatePrices = new double[UPDATES];
+        for (int update = 0; update < UPDATES; update++) {
+            updateEvents[update] = random.nextInt(events);
+            updateOutcomes[update] = random.nextInt(OUTCOMES);
+            updateBookmakers[update] = random.nextInt(BOOKMAKERS.length);
+            updatePrices[update] = price(random);
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        int update = next++ & (UPDATES - 1);
+        engine.update(BOOKMAKERS[updateBookmakers[update]], eventKeys[updateEvents[update]], MARKET,
+                updateOutcomes[update], OUTCOMES, updatePrices[update], update);
+        return engine.getOpenCount();
+    }
+
+    /**
+     * Around the fair price of three equal outcomes, so a few markets add up to less than 1
+     */
+    private static double price(Random random) {
+        return 2.5 + random.nextDouble() * 0.6;
+    }
+}
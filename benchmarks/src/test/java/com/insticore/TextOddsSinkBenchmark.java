@@ -0,0 +1,149 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text output of a whole bookmaker: the buffered sink against a println per line with String.format,
+ * both to a stream which drops the bytes and to a file
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TextOddsSinkBenchmark {
+    private static final int SPORTS = 10;
+    private static final int TOURNAMENTS = 20;
+    private static final int EVENTS = 10;
+    private static final int MARKETS = 5;
+    private static final int ODDS = 6;
+
+    @Param({"null", "file"})
+    public String target;
+
+    private BookmakerOdds odds;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        OddsBook book = new OddsBook();
+        OddsBookWriter writer = book.newWriter();
+        Random random = new Random(1);
+        writer.begin(TwentyTwoBetParser.BOOKMAKER);
+        for (int sport = 0; sport < SPORTS; sport++) {
+            writer.sport("Sport " + sport);
+            for (int tournament = 0; tournament < TOURNAMENTS; tournament++) {
+                writer.tournament("Tournament " + sport + "." + tournament);
+                for (int event = 0; event < EVENTS; event++) {
+                    String id = sport + "." + tournament + "." + event;
+                    writer.event(new Event(id, "Team A" + id + " vs. Team B" + id, "17.10.2026 20:45", 0));
+                    for (int market = 0; market < MARKETS; market++) {
+                        writer.market(new Market(market, "Market " + market));
+                        for (int odd = 0; odd < ODDS; odd++) {
+                            writer.odd(new Odd(random.nextInt(1 << 20), "Outcome " + odd,
+                                    (1000 + random.nextInt(20000)) / 1000.0));
+                        }
+                    }
+                }
+            }
+        }
+        writer.end();
+        odds = book.getOdds(TwentyTwoBetParser.BOOKMAKER);
+        file = Files.createTempFile("odds", ".txt");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void buffered() throws IOException {
+        if (target.equals("file")) {
+            try (TextOddsSink sink = new TextOddsSink(file)) {
+                odds.replay(sink);
+            }
+        } else {
+            odds.replay(new TextOddsSink(Fixtures.nullPrintStream()));
+        }
+    }
+
+    @Benchmark
+    public void println() throws IOException {
+        if (target.equals("file")) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(file.toFile()), true)) {
+                odds.replay(new PrintlnOddsSink(out));
+            }
+        } else {
+            odds.replay(new PrintlnOddsSink(Fixtures.nullPrintStream()));
+        }
+    }
+
+    /**
+     * The text sink as it was: a println per line, which System.out flushes every time
+     */
+    private static class PrintlnOddsSink implements OddsSink {
+        private final PrintStream out;
+
+        PrintlnOddsSink(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void begin(String bookmaker) {
+        }
+
+        @Override
+        public void sport(String name) {
+            out.println(name);
+        }
+
+        @Override
+        public void tournament(String name) {
+            out.println(name);
+        }
+
+        @Override
+        public void event(Event event) {
+            out.println(String.join(", ", event.getName(), event.getDate(), event.getId()));
+        }
+
+        @Override
+        public void market(Market market) {
+            if (market.getName() != null) {
+                out.println(market.getName());
+            }
+        }
+
+        @Override
+        public void odd(Odd odd) {
+            out.println(String.format("\t\t%s, %.2f, %d", odd.getName(), odd.getValue(), odd.getId()));
+        }
+
+        @Override
+        public void end() {
+            out.flush();
+        }
+    }
+}
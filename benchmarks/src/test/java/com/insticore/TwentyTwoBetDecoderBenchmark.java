@@ -0,0 +1,104 @@
+package com.insticore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage cost of the 22Bet parser: decoding every kind of payload and writing one event
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TwentyTwoBetDecoderBenchmark {
+    private byte[] menu;
+    private byte[] tournament;
+    private byte[] event;
+    private byte[] oddFilters;
+    private EventInfo eventInfo;
+    private Map<Integer, String> marketNames;
+    private TwentyTwoBetParser parser;
+    private OddsSink sink;
+    //Two markets of the event only, like a crawl for the surebet markets
+    private final CrawlSelection markets = new CrawlSelection(Collections.singletonMap(CrawlSelection.MARKET,
+            Arrays.asList("1", "2")));
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        menu = Fixtures.load(Fixtures.MENU);
+        tournament = Fixtures.load(Fixtures.TOURNAMENT);
+        event = Fixtures.load(Fixtures.EVENT);
+        oddFilters = Fixtures.load(Fixtures.ODD_FILTERS);
+        eventInfo = TwentyTwoBetDecoder.decodeEvent(event);
+        marketNames = TwentyTwoBetDecoder.decodeOddFilters(oddFilters);
+        parser = new TwentyTwoBetParser();
+        sink = new TextOddsSink(Fixtures.nullPrintStream());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parser.close();
+    }
+
+    @Benchmark
+    public PrematchMenu decodeMenu() throws IOException {
+        return TwentyTwoBetDecoder.decodeMenu(menu);
+    }
+
+    /**
+     * The decoding part of loadTournament
+     */
+    @Benchmark
+    public TournamentInfo decodeTournament() throws IOException {
+        return TwentyTwoBetDecoder.decodeTournament(tournament);
+    }
+
+    /**
+     * The decoding part of loadEventAsync
+     */
+    @Benchmark
+    public EventInfo decodeEvent() throws IOException {
+        return TwentyTwoBetDecoder.decodeEvent(event);
+    }
+
+    /**
+     * decodeEvent with two selected markets, the odds of the others are skipped while decoding
+     */
+    @Benchmark
+    public EventInfo decodeEventSelected() throws IOException {
+        return TwentyTwoBetDecoder.decodeEvent(event, markets);
+    }
+
+    @Benchmark
+    public Map<Integer, String> decodeOddFilters() throws IOException {
+        return TwentyTwoBetDecoder.decodeOddFilters(oddFilters);
+    }
+
+    /**
+     * loadEvent and the text output of the event with all its odds
+     */
+    @Benchmark
+    public Event loadAndWriteEvent() {
+        Event loaded = parser.loadEvent("5000", eventInfo);
+        TwentyTwoBetParser.writeEvent(loaded, eventInfo, marketNames, sink);
+        return loaded;
+    }
+}
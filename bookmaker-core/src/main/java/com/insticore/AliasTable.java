@@ -0,0 +1,131 @@
+package com.insticore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Normalized team and sport names which stand for another normalized name, e.g. "spartak moskva" for "spartak moscow"
+ * Starts with the sport names of the bookmakers and can be kept in a file, one alias and its name per line
+ * separated by a tab, so the aliases learned from the confirmed matches survive the restarts
+ */
+public class AliasTable {
+    private static final String DEFAULT_ALIASES = "default-aliases.tsv";
+
+    private final Path file;
+    private final Map<String, String> aliases = new TreeMap<>();
+    private boolean changed;
+
+    /**
+     * Only the default aliases, nothing is saved
+     */
+    public AliasTable() {
+        this(null);
+    }
+
+    private AliasTable(Path file) {
+        this.file = file;
+        try (InputStream defaults = AliasTable.class.getResourceAsStream(DEFAULT_ALIASES)) {
+            read(new BufferedReader(new InputStreamReader(defaults, StandardCharsets.UTF_8)), DEFAULT_ALIASES);
+        } catch (IOException e) {
+            throw new IllegalStateException("Default aliases are not read", e);
+        }
+        changed = false;
+    }
+
+    /**
+     * @param file the aliases are saved to, read if it exists
+     * @return the default aliases with the ones from the file
+     * @throws IOException if the file can not be read
+     */
+    public static AliasTable load(Path file) throws IOException {
+        AliasTable table = new AliasTable(file);
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                table.read(reader, file.toString());
+            }
+        }
+        table.changed = false;
+        return table;
+    }
+
+    /**
+     * @param name normalized name
+     * @return the name the alias stands for or the name itself
+     */
+    public synchronized String resolve(String name) {
+        String resolved = aliases.get(name);
+        return resolved != null ? resolved : name;
+    }
+
+    /**
+     * Both names are normalized first, the name of a name which is an alias itself is taken
+     * @param alias
+     * @param name
+     * @return whether the alias is new
+     */
+    public synchronized boolean put(String alias, String name) {
+        String normalizedAlias = NameNormalizer.normalize(alias);
+        String resolved = resolve(NameNormalizer.normalize(name));
+        if (normalizedAlias.isEmpty() || resolved.isEmpty() || normalizedAlias.equals(resolved)
+                || resolved.equals(aliases.get(normalizedAlias))) {
+            return false;
+        }
+        aliases.put(normalizedAlias, resolved);
+        //The names which pointed to the alias point to its name now, so resolve takes one step
+        for (Map.Entry<String, String> entry : aliases.entrySet()) {
+            if (entry.getValue().equals(normalizedAlias)) {
+                entry.setValue(resolved);
+            }
+        }
+        changed = true;
+        return true;
+    }
+
+    public synchronized int size() {
+        return aliases.size();
+    }
+
+    /**
+     * Writes the aliases to the file if anything is added since it is loaded or saved
+     * The file is replaced as a whole, a reader never sees it half written
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void save() throws IOException {
+        if (file == null || !changed) {
+            return;
+        }
+        Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> alias : aliases.entrySet()) {
+                writer.write(alias.getKey() + '\t' + alias.getValue() + '\n');
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    private void read(BufferedReader reader, String source) throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length != 2) {
+                throw new IllegalArgumentException(source + ":" + lineNumber + " is not an alias and a name");
+            }
+            put(fields[0], fields[1]);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.insticore;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.asynchttpclient.AsyncHandler;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.ListenableFuture;
+import org.asynchttpclient.Request;
+
+import javax.net.ssl.SSLSession;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the requests with the shared AsyncHttpClient
+ * Cancelling the returned future aborts the request, e.g. the loser of a hedged pair
+ */
+public class AsyncHttpFetcher implements HttpFetcher {
+    private final AsyncHttpClient asyncHttpClient;
+
+    public AsyncHttpFetcher(AsyncHttpClient asyncHttpClient) {
+        this.asyncHttpClient = asyncHttpClient;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler) {
+        boolean secured = request.getUri().isSecured();
+        ListenableFuture<T> response = asyncHttpClient.executeRequest(request, new HandlerAdapter<>(handler, secured));
+        CompletableFuture<T> result = response.toCompletableFuture();
+        result.whenComplete((value, e) -> {
+            if (e instanceof CancellationException) {
+                response.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static class HandlerAdapter<T> implements AsyncHandler<T> {
+        private final ResponseHandler<T> handler;
+        private final boolean secured;
+        private int statusCode;
+
+        private HandlerAdapter(ResponseHandler<T> handler, boolean secured) {
+            this.handler = handler;
+            this.secured = secured;
+        }
+
+        @Override
+        public void onHostnameResolutionAttempt(String name) {
+            handler.onConnecting();
+        }
+
+        @Override
+        public void onTcpConnectSuccess(InetSocketAddress remoteAddress, Channel connection) {
+            if (!secured) {
+                handler.onConnected();
+            }
+        }
+
+        @Override
+        public void onTlsHandshakeSuccess(SSLSession sslSession) {
+            handler.onConnected();
+        }
+
+        @Override
+        public State onStatusReceived(HttpResponseStatus responseStatus) {
+            statusCode = responseStatus.getStatusCode();
+            return State.CONTINUE;
+        }
+
+        @Override
+        public State onHeadersReceived(HttpHeaders headers) {
+            return handler.onHeaders(statusCode, headers) ? State.CONTINUE : State.ABORT;
+        }
+
+        @Override
+        public State onBodyPartReceived(HttpResponseBodyPart bodyPart) {
+            handler.onBodyPart(bodyPart.getBodyByteBuffer());
+            return State.CONTINUE;
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            handler.onThrowable(t);
+        }
+
+        @Override
+        public T onCompleted() {
+            return handler.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.insticore;
+
+import java.io.Closeable;
+
+/**
+ * A bookmaker which can be crawled together with the others in one JVM, see BookmakerFactory
+ */
+public interface Bookmaker extends Closeable {
+
+    /**
+     * @return name which the bookmaker gives to the sink in begin
+     */
+    String getName();
+
+    /**
+     * Loads all odds once and writes them to the sink, can be called again and again until the bookmaker is closed
+     * @param sink
+     */
+    void parse(OddsSink sink);
+
+    /**
+     * @return latencies, gauges and counters of the bookmaker
+     */
+    CrawlMetrics getMetrics();
+
+    /**
+     * Releases what the bookmaker owns, the shared context is left open
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,190 @@
+package com.insticore;
+
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.Dsl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What all bookmakers crawled in one JVM share: one http client, one executor for the decoding,
+ * one output thread and one scheduler for the limiters and the reports
+ * The bookmakers created with a context do not close it, whoever creates the context closes it
+ */
+public class BookmakerContext implements Closeable {
+    public static final int DEFAULT_REQUEST_TIMEOUT = 100000;
+    public static final int DEFAULT_POOLED_CONNECTION_IDLE_TIMEOUT = 60000;
+
+    private final Logger logger = LoggerFactory.getLogger(BookmakerContext.class);
+    private final int maxInFlight;
+    private final Path cacheDirectory;
+    private final boolean offline;
+    private final ExecutionMode executionMode;
+    private final HttpArchive recording;
+    private final AsyncHttpClient httpClient;
+    private final ExecutorService executor;
+    private final ExecutorService outputExecutor;
+    private final ScheduledExecutorService scheduler;
+
+    public BookmakerContext() {
+        this(LimitingHttpFetcher.DEFAULT_MAX_LIMIT, null, false);
+    }
+
+    /**
+     * The execution mode is taken from the system property, see ExecutionMode
+     * @param maxInFlight how many requests can be sent to one host at once at most
+     * @param cacheDirectory where the responses are kept between the sweeps and the runs, null for no cache
+     * @param offline when true nothing is downloaded, only the cached responses are used
+     */
+    public BookmakerContext(int maxInFlight, Path cacheDirectory, boolean offline) {
+        this(maxInFlight, cacheDirectory, offline, ExecutionMode.fromSystemProperty());
+    }
+
+    /**
+     * @param maxInFlight how many requests can be sent to one host at once at most
+     * @param cacheDirectory where the responses are kept between the sweeps and the runs, null for no cache
+     * @param offline when true nothing is downloaded, only the cached responses are used
+     * @param executionMode where the decoding tasks run
+     */
+    public BookmakerContext(int maxInFlight, Path cacheDirectory, boolean offline, ExecutionMode executionMode) {
+        this(maxInFlight, cacheDirectory, offline, executionMode, null);
+    }
+
+    /**
+     * @param maxInFlight how many requests can be sent to one host at once at most
+     * @param cacheDirectory where the responses are kept between the sweeps and the runs, null for no cache
+     * @param offline when true nothing is downloaded, only the cached responses are used
+     * @param executionMode where the decoding tasks run
+     * @param recording archive every response from the http client is appended to, null for none,
+     *                  it is not closed with the context
+     */
+    public BookmakerContext(int maxInFlight, Path cacheDirectory, boolean offline, ExecutionMode executionMode,
+                            HttpArchive recording) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Max in flight must be positive: " + maxInFlight);
+        }
+        if (offline && cacheDirectory == null) {
+            throw new IllegalArgumentException("Offline mode needs the cache directory");
+        }
+        this.maxInFlight = maxInFlight;
+        this.cacheDirectory = cacheDirectory;
+        this.offline = offline;
+        this.executionMode = executionMode;
+        this.recording = recording;
+        executor = executionMode.newExecutor(newThreadFactory("bookmaker-decode", false));
+        //No connection cap per host, the limiter of every bookmaker keeps its requests to a host under maxInFlight
+        httpClient = Dsl.asyncHttpClient(Dsl.config()
+                .setUserAgent("Mozilla/5.0")
+                .setRequestTimeout(DEFAULT_REQUEST_TIMEOUT)
+                .setPooledConnectionIdleTimeout(DEFAULT_POOLED_CONNECTION_IDLE_TIMEOUT)
+                .setThreadPoolName("bookmaker-http"));
+        outputExecutor = Executors.newSingleThreadExecutor(newThreadFactory("bookmaker-output", false));
+        scheduler = Executors.newSingleThreadScheduledExecutor(newThreadFactory("bookmaker-scheduler", true));
+    }
+
+    /**
+     * Builds the lower part of the fetcher stack of one bookmaker on the shared client: the host limits
+     * over the metrics, over the recording if the context has one
+     * @param metrics of the bookmaker
+     * @param maxLimit how many requests of the bookmaker can be in flight to one host at most
+     * @return
+     */
+    public LimitingHttpFetcher newHostLimits(CrawlMetrics metrics, int maxLimit) {
+        HttpFetcher client = new AsyncHttpFetcher(httpClient);
+        if (recording != null) {
+            client = new RecordingHttpFetcher(client, recording);
+        }
+        return new LimitingHttpFetcher(new InstrumentedHttpFetcher(client, metrics), maxLimit, scheduler);
+    }
+
+    /**
+     * Puts the hedging and retries over the host limits unless they are turned off, so every hedge and retry
+     * goes through the limiter like the first request
+     * @param hostLimits from newHostLimits
+     * @param metrics of the bookmaker
+     * @return
+     */
+    public HttpFetcher newFetcher(LimitingHttpFetcher hostLimits, CrawlMetrics metrics) {
+        return HedgingHttpFetcher.isEnabled() ? new HedgingHttpFetcher(hostLimits, metrics, scheduler) : hostLimits;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return where the responses are cached or null
+     */
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * @return where the responses are recorded or null
+     */
+    public HttpArchive getRecording() {
+        return recording;
+    }
+
+    public AsyncHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return executor of the decoding, a pool with as many threads as processors or a virtual thread per task
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the single thread which writes the odds of all bookmakers to their sinks
+     */
+    public ExecutorService getOutputExecutor() {
+        return outputExecutor;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Stops the executors and closes the http client
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        outputExecutor.shutdown();
+        scheduler.shutdown();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    static ThreadFactory newThreadFactory(String name, boolean daemon) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+}
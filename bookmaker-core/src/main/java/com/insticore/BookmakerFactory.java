@@ -0,0 +1,22 @@
+package com.insticore;
+
+import java.io.IOException;
+
+/**
+ * Creates a bookmaker on a shared context, the implementations are found with ServiceLoader,
+ * so every bookmaker module lists its factory in META-INF/services/com.insticore.BookmakerFactory
+ */
+public interface BookmakerFactory {
+
+    /**
+     * @return name of the bookmaker which the factory creates
+     */
+    String getName();
+
+    /**
+     * @param context client, executors and settings shared with the other bookmakers
+     * @return
+     * @throws IOException if the cache directory of the context can not be used
+     */
+    Bookmaker create(BookmakerContext context) throws IOException;
+}
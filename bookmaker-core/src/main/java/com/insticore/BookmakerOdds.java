@@ -0,0 +1,500 @@
+package com.insticore;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * All odds of one bookmaker sweep in primitive arrays, a few arrays for the whole sweep instead of objects per odd
+ * The events, the markets and the odds are numbered in the sweep order,
+ * every event owns a range of the markets and every market owns a range of the odds
+ * The names which repeat across the events are ids in the shared NameDictionary, the event ids, names and dates
+ * are plain strings, so they are dropped with the sweep which has them
+ * An odd is identified by the event id, the market id and name and the odd id, every odd is kept once
+ * A published instance is never changed, the getters do not allocate so it can be walked like this:
+ * <pre>
+ * for (int e = 0; e &lt; odds.getEventCount(); e++)
+ *     for (int m = odds.getMarketStart(e); m &lt; odds.getMarketEnd(e); m++)
+ *         for (int o = odds.getOddStart(m); o &lt; odds.getOddEnd(m); o++)
+ *             odds.getOddValue(o);
+ * </pre>
+ */
+public class BookmakerOdds {
+    private static final int INITIAL_EVENTS = 256;
+    private static final int INITIAL_MARKETS = 4096;
+    private static final int INITIAL_ODDS = 16384;
+
+    private final NameDictionary names;
+    private final String bookmaker;
+
+    private int eventCount;
+    private String[] eventIds;
+    private String[] eventNames;
+    private String[] eventDates;
+    private long[] eventStartTimes;
+    private int[] eventSports;
+    private int[] eventTournaments;
+    private int[] eventMarkets;
+
+    private int marketCount;
+    private int[] marketIds;
+    private int[] marketNames;
+    private int[] marketOdds;
+
+    private int oddCount;
+    private int[] oddIds;
+    private int[] oddNames;
+    private double[] oddValues;
+
+    //Open addressing by the event id, the slot keeps the event number + 1, 0 is empty
+    private int[] eventIndex;
+    //Open addressing by the event id, the market id and name and the odd id, the same slots
+    private int[] oddIndex;
+
+    /**
+     * Empty odds to be filled by the writer
+     * @param names
+     * @param bookmaker
+     */
+    BookmakerOdds(NameDictionary names, String bookmaker) {
+        this.names = names;
+        this.bookmaker = bookmaker;
+        eventIds = new String[INITIAL_EVENTS];
+        eventNames = new String[INITIAL_EVENTS];
+        eventDates = new String[INITIAL_EVENTS];
+        eventStartTimes = new long[INITIAL_EVENTS];
+        eventSports = new int[INITIAL_EVENTS];
+        eventTournaments = new int[INITIAL_EVENTS];
+        eventMarkets = new int[INITIAL_EVENTS];
+        marketIds = new int[INITIAL_MARKETS];
+        marketNames = new int[INITIAL_MARKETS];
+        marketOdds = new int[INITIAL_MARKETS];
+        oddIds = new int[INITIAL_ODDS];
+        oddNames = new int[INITIAL_ODDS];
+        oddValues = new double[INITIAL_ODDS];
+        eventIndex = new int[INITIAL_EVENTS * 2];
+        oddIndex = new int[INITIAL_ODDS * 2];
+    }
+
+    /**
+     * Copy of the filled part of the other odds with the arrays cut to the size
+     * @param other
+     */
+    private BookmakerOdds(BookmakerOdds other) {
+        names = other.names;
+        bookmaker = other.bookmaker;
+        eventCount = other.eventCount;
+        eventIds = Arrays.copyOf(other.eventIds, eventCount);
+        eventNames = Arrays.copyOf(other.eventNames, eventCount);
+        eventDates = Arrays.copyOf(other.eventDates, eventCount);
+        eventStartTimes = Arrays.copyOf(other.eventStartTimes, eventCount);
+        eventSports = Arrays.copyOf(other.eventSports, eventCount);
+        eventTournaments = Arrays.copyOf(other.eventTournaments, eventCount);
+        eventMarkets = Arrays.copyOf(other.eventMarkets, eventCount);
+        marketCount = other.marketCount;
+        marketIds = Arrays.copyOf(other.marketIds, marketCount);
+        marketNames = Arrays.copyOf(other.marketNames, marketCount);
+        marketOdds = Arrays.copyOf(other.marketOdds, marketCount);
+        oddCount = other.oddCount;
+        oddIds = Arrays.copyOf(other.oddIds, oddCount);
+        oddNames = Arrays.copyOf(other.oddNames, oddCount);
+        oddValues = Arrays.copyOf(other.oddValues, oddCount);
+        eventIndex = new int[indexSize(eventCount)];
+        for (int event = 0; event < eventCount; event++) {
+            index(event);
+        }
+        oddIndex = new int[indexSize(oddCount)];
+        for (int odd = 0; odd < oddCount; odd++) {
+            indexOdd(odd);
+        }
+    }
+
+    /**
+     * @return copy to be published, this one can be cleared and filled again
+     */
+    BookmakerOdds trimmedCopy() {
+        return new BookmakerOdds(this);
+    }
+
+    void clear() {
+        //The strings of the last sweep are not kept alive by the buffers
+        Arrays.fill(eventIds, 0, eventCount, null);
+        Arrays.fill(eventNames, 0, eventCount, null);
+        Arrays.fill(eventDates, 0, eventCount, null);
+        eventCount = 0;
+        marketCount = 0;
+        oddCount = 0;
+        Arrays.fill(eventIndex, 0);
+        Arrays.fill(oddIndex, 0);
+    }
+
+    int addEvent(String id, String name, String date, long startTime, int sport, int tournament) {
+        if (eventCount == eventIds.length) {
+            int capacity = eventCount * 2;
+            eventIds = Arrays.copyOf(eventIds, capacity);
+            eventNames = Arrays.copyOf(eventNames, capacity);
+            eventDates = Arrays.copyOf(eventDates, capacity);
+            eventStartTimes = Arrays.copyOf(eventStartTimes, capacity);
+            eventSports = Arrays.copyOf(eventSports, capacity);
+            eventTournaments = Arrays.copyOf(eventTournaments, capacity);
+            eventMarkets = Arrays.copyOf(eventMarkets, capacity);
+        }
+        int event = eventCount++;
+        eventIds[event] = id;
+        eventNames[event] = name;
+        eventDates[event] = date;
+        eventStartTimes[event] = startTime;
+        eventSports[event] = sport;
+        eventTournaments[event] = tournament;
+        eventMarkets[event] = marketCount;
+        if (eventCount * 2 > eventIndex.length) {
+            eventIndex = new int[indexSize(eventCount)];
+            for (int indexed = 0; indexed < eventCount; indexed++) {
+                index(indexed);
+            }
+        } else {
+            index(event);
+        }
+        return event;
+    }
+
+    int addMarket(int id, int name) {
+        if (marketCount == marketIds.length) {
+            int capacity = marketCount * 2;
+            marketIds = Arrays.copyOf(marketIds, capacity);
+            marketNames = Arrays.copyOf(marketNames, capacity);
+            marketOdds = Arrays.copyOf(marketOdds, capacity);
+        }
+        int market = marketCount++;
+        marketIds[market] = id;
+        marketNames[market] = name;
+        marketOdds[market] = oddCount;
+        return market;
+    }
+
+    /**
+     * Adds the odd to the last market, an odd which is already known only gets the new value
+     * @param id
+     * @param name
+     * @param value
+     * @return number of the odd
+     */
+    int putOdd(int id, int name, double value) {
+        int market = marketCount - 1;
+        int known = findOdd(eventIds[eventCount - 1], marketIds[market], marketNames[market], id);
+        if (known >= 0) {
+            oddValues[known] = value;
+            return known;
+        }
+        if (oddCount == oddIds.length) {
+            int capacity = oddCount * 2;
+            oddIds = Arrays.copyOf(oddIds, capacity);
+            oddNames = Arrays.copyOf(oddNames, capacity);
+            oddValues = Arrays.copyOf(oddValues, capacity);
+        }
+        int odd = oddCount++;
+        oddIds[odd] = id;
+        oddNames[odd] = name;
+        oddValues[odd] = value;
+        if (oddCount * 2 > oddIndex.length) {
+            oddIndex = new int[indexSize(oddCount)];
+            for (int indexed = 0; indexed < oddCount; indexed++) {
+                indexOdd(indexed);
+            }
+        } else {
+            indexOdd(odd);
+        }
+        return odd;
+    }
+
+    private static int indexSize(int events) {
+        int size = 16;
+        while (size < events * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Only the first event with the id is found
+     * @param event
+     */
+    private void index(int event) {
+        String id = eventIds[event];
+        int mask = eventIndex.length - 1;
+        for (int slot = hash(Objects.hashCode(id)) & mask; ; slot = (slot + 1) & mask) {
+            if (eventIndex[slot] == 0) {
+                eventIndex[slot] = event + 1;
+                return;
+            }
+            if (Objects.equals(eventIds[eventIndex[slot] - 1], id)) {
+                return;
+            }
+        }
+    }
+
+    private void indexOdd(int odd) {
+        int market = marketOf(odd);
+        int mask = oddIndex.length - 1;
+        int slot = hash(eventIds[eventOf(market)], marketIds[market], marketNames[market], oddIds[odd]) & mask;
+        while (oddIndex[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        oddIndex[slot] = odd + 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(String eventId, int marketId, int marketName, int oddId) {
+        //The hash of a string is cached in it
+        int h = Objects.hashCode(eventId);
+        h = 31 * h + marketId;
+        h = 31 * h + marketName;
+        return hash(31 * h + oddId);
+    }
+
+    /**
+     * @param odd
+     * @return number of the market which owns the odd
+     */
+    private int marketOf(int odd) {
+        return lastStartAtOrBefore(marketOdds, marketCount, odd);
+    }
+
+    /**
+     * @param market
+     * @return number of the event which owns the market
+     */
+    private int eventOf(int market) {
+        return lastStartAtOrBefore(eventMarkets, eventCount, market);
+    }
+
+    /**
+     * The empty ranges share the start with the next one, the last of them owns the item
+     */
+    private static int lastStartAtOrBefore(int[] starts, int count, int item) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= item) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    public String getBookmaker() {
+        return bookmaker;
+    }
+
+    public NameDictionary getNames() {
+        return names;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public int getMarketCount() {
+        return marketCount;
+    }
+
+    public int getOddCount() {
+        return oddCount;
+    }
+
+    /**
+     * @param eventId bookmaker id of the event
+     * @return number of the first event with the id or -1
+     */
+    public int findEvent(String eventId) {
+        int mask = eventIndex.length - 1;
+        for (int slot = hash(Objects.hashCode(eventId)) & mask; eventIndex[slot] != 0; slot = (slot + 1) & mask) {
+            int event = eventIndex[slot] - 1;
+            if (Objects.equals(eventIds[event], eventId)) {
+                return event;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param event
+     * @param marketId
+     * @param marketName id of the market name
+     * @return number of the first market of the event with the id and the name or -1
+     */
+    public int findMarket(int event, int marketId, int marketName) {
+        for (int market = getMarketStart(event); market < getMarketEnd(event); market++) {
+            if (marketIds[market] == marketId && marketNames[market] == marketName) {
+                return market;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param eventId
+     * @param marketId
+     * @param marketName
+     * @param oddId
+     * @return number of the odd or -1
+     */
+    public int findOdd(String eventId, int marketId, String marketName, int oddId) {
+        int name = names.find(marketName);
+        if (name == NameDictionary.NO_NAME && marketName != null) {
+            return -1;
+        }
+        return findOdd(eventId, marketId, name, oddId);
+    }
+
+    /**
+     * @param eventId
+     * @param marketId
+     * @param marketName id of the market name
+     * @param oddId
+     * @return number of the odd or -1
+     */
+    int findOdd(String eventId, int marketId, int marketName, int oddId) {
+        int mask = oddIndex.length - 1;
+        for (int slot = hash(eventId, marketId, marketName, oddId) & mask; oddIndex[slot] != 0; slot = (slot + 1) & mask) {
+            int odd = oddIndex[slot] - 1;
+            if (oddIds[odd] != oddId) {
+                continue;
+            }
+            int market = marketOf(odd);
+            if (marketIds[market] == marketId && marketNames[market] == marketName
+                    && Objects.equals(eventIds[eventOf(market)], eventId)) {
+                return odd;
+            }
+        }
+        return -1;
+    }
+
+    public String getEventId(int event) {
+        return eventIds[event];
+    }
+
+    public String getEventName(int event) {
+        return eventNames[event];
+    }
+
+    public String getEventDate(int event) {
+        return eventDates[event];
+    }
+
+    public long getEventStartTime(int event) {
+        return eventStartTimes[event];
+    }
+
+    public String getSport(int event) {
+        return names.get(eventSports[event]);
+    }
+
+    public String getTournament(int event) {
+        return names.get(eventTournaments[event]);
+    }
+
+    /**
+     * @param event
+     * @return number of the first market of the event
+     */
+    public int getMarketStart(int event) {
+        return eventMarkets[event];
+    }
+
+    /**
+     * @param event
+     * @return number after the last market of the event
+     */
+    public int getMarketEnd(int event) {
+        return event + 1 < eventCount ? eventMarkets[event + 1] : marketCount;
+    }
+
+    public int getMarketId(int market) {
+        return marketIds[market];
+    }
+
+    public String getMarketName(int market) {
+        return names.get(marketNames[market]);
+    }
+
+    /**
+     * @param market
+     * @return number of the first odd of the market
+     */
+    public int getOddStart(int market) {
+        return marketOdds[market];
+    }
+
+    /**
+     * @param market
+     * @return number after the last odd of the market
+     */
+    public int getOddEnd(int market) {
+        return market + 1 < marketCount ? marketOdds[market + 1] : oddCount;
+    }
+
+    public int getOddId(int odd) {
+        return oddIds[odd];
+    }
+
+    public String getOddName(int odd) {
+        return names.get(oddNames[odd]);
+    }
+
+    public double getOddValue(int odd) {
+        return oddValues[odd];
+    }
+
+    public Event toEvent(int event) {
+        return new Event(getEventId(event), getEventName(event), getEventDate(event), getEventStartTime(event));
+    }
+
+    public Market toMarket(int market) {
+        return new Market(getMarketId(market), getMarketName(market));
+    }
+
+    public Odd toOdd(int odd) {
+        return new Odd(getOddId(odd), getOddName(odd), getOddValue(odd));
+    }
+
+    /**
+     * Writes the odds to the sink as they came, a sport or a tournament is written when it changes
+     * @param sink
+     */
+    public void replay(OddsSink sink) {
+        sink.begin(bookmaker);
+        int sport = NameDictionary.NO_NAME;
+        int tournament = NameDictionary.NO_NAME;
+        for (int event = 0; event < eventCount; event++) {
+            if (eventSports[event] != sport) {
+                sport = eventSports[event];
+                tournament = NameDictionary.NO_NAME;
+                sink.sport(names.get(sport));
+            }
+            if (eventTournaments[event] != tournament) {
+                tournament = eventTournaments[event];
+                sink.tournament(names.get(tournament));
+            }
+            sink.event(toEvent(event));
+            for (int market = getMarketStart(event); market < getMarketEnd(event); market++) {
+                sink.market(toMarket(market));
+                for (int odd = getOddStart(market); odd < getOddEnd(market); odd++) {
+                    sink.odd(toOdd(odd));
+                }
+            }
+        }
+        sink.end();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d events, %d markets, %d odds", bookmaker, eventCount, marketCount, oddCount);
+    }
+}
@@ -0,0 +1,147 @@
+package com.insticore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Crawls all bookmakers registered with ServiceLoader concurrently on one shared context
+ * Every bookmaker sweeps on its own thread into its own sink, all of them share the client,
+ * the decoding executor, the output thread and the metrics report
+ */
+public class BookmakerRunner implements Closeable {
+    private final Logger logger = LoggerFactory.getLogger(BookmakerRunner.class);
+    private final BookmakerContext context;
+    private final List<Bookmaker> bookmakers = new ArrayList<>();
+    private final List<CrawlMetrics> metrics = new ArrayList<>();
+    //A sweep blocks its thread until all its odds are written, so every bookmaker gets one
+    private final ExecutorService sweeps;
+    private ScheduledFuture<?> report;
+    private Path reportFile;
+
+    /**
+     * @param context
+     * @throws IOException if a bookmaker can not be created
+     */
+    public BookmakerRunner(BookmakerContext context) throws IOException {
+        this(context, (Collection<String>) null);
+    }
+
+    /**
+     * @param context
+     * @param names bookmakers to crawl, null for all registered ones
+     * @throws IOException if a bookmaker can not be created
+     */
+    public BookmakerRunner(BookmakerContext context, Collection<String> names) throws IOException {
+        this(context, load(context, names));
+    }
+
+    /**
+     * Crawls the given bookmakers instead of the registered ones, e.g. against a local server
+     * @param context the bookmakers are created on
+     * @param bookmakers
+     */
+    public BookmakerRunner(BookmakerContext context, List<Bookmaker> bookmakers) {
+        if (bookmakers.isEmpty()) {
+            throw new IllegalArgumentException("No bookmakers to crawl");
+        }
+        this.context = context;
+        for (Bookmaker bookmaker : bookmakers) {
+            this.bookmakers.add(bookmaker);
+            metrics.add(bookmaker.getMetrics());
+        }
+        sweeps = Executors.newFixedThreadPool(bookmakers.size(), runnable -> new Thread(runnable, "bookmaker-sweep"));
+    }
+
+    /**
+     * @param context
+     * @param names bookmakers to create, null for all registered ones
+     * @return the registered bookmakers created on the context
+     * @throws IOException if a bookmaker can not be created
+     */
+    static List<Bookmaker> load(BookmakerContext context, Collection<String> names) throws IOException {
+        List<Bookmaker> bookmakers = new ArrayList<>();
+        for (BookmakerFactory factory : ServiceLoader.load(BookmakerFactory.class)) {
+            if (names == null || names.contains(factory.getName())) {
+                bookmakers.add(factory.create(context));
+            }
+        }
+        if (bookmakers.isEmpty()) {
+            throw new IllegalArgumentException("No bookmakers are registered" + (names != null ? " of " + names : ""));
+        }
+        return bookmakers;
+    }
+
+    public List<Bookmaker> getBookmakers() {
+        return Collections.unmodifiableList(bookmakers);
+    }
+
+    /**
+     * Sweeps all bookmakers at once and waits for all of them, a failed bookmaker does not stop the others
+     * @param sinks gives the sink of every bookmaker, called once per bookmaker and sweep
+     */
+    public void parse(Function<Bookmaker, OddsSink> sinks) {
+        List<CompletableFuture<Void>> running = new ArrayList<>(bookmakers.size());
+        for (Bookmaker bookmaker : bookmakers) {
+            running.add(CompletableFuture.runAsync(() -> bookmaker.parse(sinks.apply(bookmaker)), sweeps)
+                    .exceptionally(e -> {
+                        logger.error("Sweep of " + bookmaker.getName() + " failed", e);
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Sweeps all bookmakers at once into the book, every one through its own writer
+     * @param book
+     */
+    public void parse(OddsBook book) {
+        parse(bookmaker -> book.newWriter());
+    }
+
+    /**
+     * Writes the metrics of all bookmakers to one file every period until the runner is closed
+     * @param file
+     * @param period
+     * @param unit
+     */
+    public synchronized void startReport(Path file, long period, TimeUnit unit) {
+        if (report != null) {
+            throw new IllegalStateException("Report is already started");
+        }
+        reportFile = file;
+        report = context.getScheduler().scheduleAtFixedRate(() -> CrawlMetrics.writeReport(file, metrics),
+                period, period, unit);
+    }
+
+    /**
+     * Closes all bookmakers after writing the report the last time, the context is left open
+     */
+    @Override
+    public synchronized void close() {
+        sweeps.shutdown();
+        if (report != null) {
+            report.cancel(false);
+            report = null;
+            CrawlMetrics.writeReport(reportFile, metrics);
+        }
+        for (Bookmaker bookmaker : bookmakers) {
+            bookmaker.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.insticore;
+
+import io.netty.handler.codec.http.HttpHeaders;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Collects the whole body into one array
+ */
+public class BytesResponseHandler implements ResponseHandler<byte[]> {
+    private byte[] body = new byte[8192];
+    private int size;
+    private int statusCode;
+
+    @Override
+    public boolean onHeaders(int statusCode, HttpHeaders headers) {
+        this.statusCode = statusCode;
+        return true;
+    }
+
+    @Override
+    public void onBodyPart(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        if (size + length > body.length) {
+            body = Arrays.copyOf(body, Math.max(body.length * 2, size + length));
+        }
+        bytes.get(body, size, length);
+        size += length;
+    }
+
+    @Override
+    public byte[] onCompleted() {
+        return Arrays.copyOf(body, size);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
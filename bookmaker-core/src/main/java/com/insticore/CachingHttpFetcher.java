@@ -0,0 +1,526 @@
+package com.insticore;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.asynchttpclient.Request;
+import org.asynchttpclient.RequestBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the GET responses on the disk and asks the server only if they are changed
+ * The stored ETag and Last-Modified are sent as If-None-Match and If-Modified-Since,
+ * a 304 response is answered from the stored copy. In the offline mode nothing is sent at all
+ * and a request which is not stored fails.
+ * <p>
+ * Online only the responses with an ETag or a Last-Modified are stored, the others could never be asked
+ * for as not changed. Recording for the offline mode stores every response.
+ * The files this fetcher stored or found on the disk and did not use for the given number of sweeps
+ * are deleted when a sweep ends, the files of the other fetchers in the directory are left alone.
+ * <p>
+ * Every response is one file named by the hash of the url: the headers, then the body as it came.
+ * The file is written next to the target and moved over it when the body is complete.
+ */
+public class CachingHttpFetcher implements HttpFetcher {
+    private static final int MAGIC = 0x48545450; // "HTTP"
+    private static final int REPLAY_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_IDLE_SWEEPS = 10;
+    /**
+     * System property which stores every response online, also the ones without a validator, for the offline mode
+     */
+    public static final String RECORD_PROPERTY = "cache.record";
+    /**
+     * System property which overrides after how many sweeps without use a stored response is deleted, 0 for never
+     */
+    public static final String MAX_IDLE_SWEEPS_PROPERTY = "cache.maxIdleSweeps";
+
+    private final Logger logger = LoggerFactory.getLogger(CachingHttpFetcher.class);
+    private final HttpFetcher delegate;
+    private final Path directory;
+    private final boolean offline;
+    private final boolean recordAll;
+    private final int maxIdleSweeps;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    //Sweep in which the stored response was last written or used, by key
+    private final ConcurrentHashMap<String, Long> lastUsed = new ConcurrentHashMap<>();
+    private final AtomicLong sweepCount = new AtomicLong();
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /**
+     * @param delegate sends the requests which are not answered from the disk
+     * @param directory where the responses are stored, created if missing
+     * @param offline when true only the stored responses are used
+     * @throws IOException
+     */
+    public CachingHttpFetcher(HttpFetcher delegate, Path directory, boolean offline) throws IOException {
+        this(delegate, directory, offline, Boolean.getBoolean(RECORD_PROPERTY),
+                Integer.getInteger(MAX_IDLE_SWEEPS_PROPERTY, DEFAULT_MAX_IDLE_SWEEPS));
+    }
+
+    /**
+     * @param delegate sends the requests which are not answered from the disk
+     * @param directory where the responses are stored, created if missing
+     * @param offline when true only the stored responses are used
+     * @param recordAll when true every response is stored online, also the ones without ETag and Last-Modified
+     * @param maxIdleSweeps after how many sweeps without use a stored response is deleted, 0 for never
+     * @throws IOException
+     */
+    public CachingHttpFetcher(HttpFetcher delegate, Path directory, boolean offline, boolean recordAll,
+                              int maxIdleSweeps) throws IOException {
+        if (maxIdleSweeps < 0) {
+            throw new IllegalArgumentException("Max idle sweeps must not be negative: " + maxIdleSweeps);
+        }
+        this.delegate = delegate;
+        this.directory = Files.createDirectories(directory);
+        this.offline = offline;
+        this.recordAll = recordAll;
+        this.maxIdleSweeps = maxIdleSweeps;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler) {
+        return fetch(request, handler, DEFAULT_PRIORITY);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler, int priority) {
+        requestCount.incrementAndGet();
+        if (!"GET".equals(request.getMethod())) {
+            return delegate.fetch(request, handler, priority);
+        }
+        String url = request.getUrl();
+        String key = key(url);
+        Entry entry = lookup(key, url);
+        if (offline) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            if (entry == null) {
+                missCount.incrementAndGet();
+                result.completeExceptionally(new IOException("Response is not cached: " + url));
+                return result;
+            }
+            try {
+                result.complete(replay(entry, handler));
+                touch(key);
+                hitCount.incrementAndGet();
+                bytesSaved.addAndGet(entry.bodyLength);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+        if (entry == null || (entry.etag == null && entry.lastModified == null)) {
+            return delegate.fetch(request, new StoringHandler<>(key, url, null, handler), priority);
+        }
+        RequestBuilder conditional = new RequestBuilder(request);
+        if (entry.etag != null) {
+            conditional.setHeader(HttpHeaderNames.IF_NONE_MATCH, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            conditional.setHeader(HttpHeaderNames.IF_MODIFIED_SINCE, entry.lastModified);
+        }
+        return delegate.fetch(conditional.build(), new StoringHandler<>(key, url, entry, handler), priority);
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * Ends a sweep: deletes the stored responses which were not written or used for more than max idle sweeps
+     * Nothing is deleted offline, the stored responses are all there is
+     */
+    public void endSweep() {
+        long sweep = sweepCount.incrementAndGet();
+        if (offline || maxIdleSweeps == 0) {
+            return;
+        }
+        for (Map.Entry<String, Long> used : lastUsed.entrySet()) {
+            String key = used.getKey();
+            if (sweep - used.getValue() > maxIdleSweeps && lastUsed.remove(key, used.getValue())) {
+                entries.remove(key);
+                Path file = directory.resolve(key + ".cache");
+                try {
+                    if (Files.deleteIfExists(file)) {
+                        evictedCount.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    logger.warn("Cached response is not deleted: " + file, e);
+                }
+            }
+        }
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return how many responses are taken from the disk
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return how many responses are downloaded in full
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    /**
+     * @return size of the bodies which are taken from the disk instead of downloading them
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return how many stored responses are deleted as not used for too long
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Http cache: requests %d, hits %d, misses %d, hit ratio %.2f, downloaded %d bytes, saved %d bytes, evicted %d",
+                getRequestCount(), getHitCount(), getMissCount(), getHitRatio(), getBytesDownloaded(), getBytesSaved(),
+                getEvictedCount());
+    }
+
+    /**
+     * Finds the stored response in memory or on the disk
+     * @param key
+     * @param url
+     * @return null if the url is not stored
+     */
+    private Entry lookup(String key, String url) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = readEntry(key);
+            if (entry != null) {
+                entries.putIfAbsent(key, entry);
+                //A file from an earlier run starts aging now
+                lastUsed.putIfAbsent(key, sweepCount.get());
+            }
+        }
+        //Two urls with the same hash are not expected, but the stored one is not used for the other
+        return entry != null && entry.url.equals(url) ? entry : null;
+    }
+
+    private Entry readEntry(String key) {
+        Path file = directory.resolve(key + ".cache");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readHeader(file, channel);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Cached response is not readable: " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param file
+     * @param channel positioned at the start of the file
+     * @return the stored response or null if it is not a cache file
+     * @throws IOException
+     */
+    private static Entry readHeader(Path file, FileChannel channel) throws IOException {
+        //The stream is not closed, it would close the channel
+        DataInputStream data = new DataInputStream(Channels.newInputStream(channel));
+        if (data.readInt() != MAGIC) {
+            return null;
+        }
+        String url = data.readUTF();
+        String etag = emptyToNull(data.readUTF());
+        String lastModified = emptyToNull(data.readUTF());
+        String contentType = emptyToNull(data.readUTF());
+        int headerLength = data.readInt();
+        return new Entry(file, url, etag, lastModified, contentType, headerLength, channel.size() - headerLength);
+    }
+
+    /**
+     * Passes the stored response to the handler as if it was downloaded with status 200
+     * The header is read again, the file could be replaced since the entry was read
+     * @param entry
+     * @param handler
+     * @param <T>
+     * @return
+     * @throws IOException
+     */
+    private <T> T replay(Entry entry, ResponseHandler<T> handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+            Entry stored = readHeader(entry.file, channel);
+            if (stored == null) {
+                throw new IOException("Not a cache file: " + entry.file);
+            }
+            HttpHeaders headers = new DefaultHttpHeaders();
+            if (stored.contentType != null) {
+                headers.set(HttpHeaderNames.CONTENT_TYPE, stored.contentType);
+            }
+            if (stored.etag != null) {
+                headers.set(HttpHeaderNames.ETAG, stored.etag);
+            }
+            if (stored.lastModified != null) {
+                headers.set(HttpHeaderNames.LAST_MODIFIED, stored.lastModified);
+            }
+            headers.set(HttpHeaderNames.CONTENT_LENGTH, stored.bodyLength);
+            if (handler.onHeaders(200, headers)) {
+                ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(REPLAY_CHUNK_SIZE, Math.max(1, stored.bodyLength)));
+                long position = stored.headerLength;
+                while (channel.read(chunk, position) > 0) {
+                    chunk.flip();
+                    position += chunk.remaining();
+                    handler.onBodyPart(chunk);
+                    chunk.clear();
+                }
+            }
+        }
+        return handler.onCompleted();
+    }
+
+    private static byte[] header(String url, String etag, String lastModified, String contentType) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            data.writeInt(MAGIC);
+            data.writeUTF(url);
+            data.writeUTF(etag != null ? etag : "");
+            data.writeUTF(lastModified != null ? lastModified : "");
+            data.writeUTF(contentType != null ? contentType : "");
+            //Length of the whole header including this int
+            data.writeInt(data.size() + 4);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String key(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void touch(String key) {
+        lastUsed.put(key, sweepCount.get());
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Stores a 200 response while it is passed on, replays the stored one on 304
+     * @param <T>
+     */
+    private class StoringHandler<T> implements ResponseHandler<T> {
+        private final String key;
+        private final String url;
+        private final Entry stored;
+        private final ResponseHandler<T> handler;
+        private boolean notModified;
+        private Path temporaryFile;
+        private FileChannel channel;
+        private String etag;
+        private String lastModified;
+        private String contentType;
+        private int headerLength;
+
+        private StoringHandler(String key, String url, Entry stored, ResponseHandler<T> handler) {
+            this.key = key;
+            this.url = url;
+            this.stored = stored;
+            this.handler = handler;
+        }
+
+        @Override
+        public void onConnecting() {
+            handler.onConnecting();
+        }
+
+        @Override
+        public void onConnected() {
+            handler.onConnected();
+        }
+
+        @Override
+        public boolean onHeaders(int statusCode, HttpHeaders headers) {
+            if (statusCode == 304 && stored != null) {
+                notModified = true;
+                return true;
+            }
+            missCount.incrementAndGet();
+            boolean readBody = handler.onHeaders(statusCode, headers);
+            if (statusCode == 200 && readBody) {
+                etag = headers.get(HttpHeaderNames.ETAG);
+                lastModified = headers.get(HttpHeaderNames.LAST_MODIFIED);
+                contentType = headers.get(HttpHeaderNames.CONTENT_TYPE);
+                //Without a validator it would be downloaded again anyway, only the offline mode needs it
+                if (etag != null || lastModified != null || recordAll) {
+                    open();
+                }
+            }
+            return readBody;
+        }
+
+        @Override
+        public void onBodyPart(ByteBuffer bytes) {
+            if (notModified) {
+                return;
+            }
+            bytesDownloaded.addAndGet(bytes.remaining());
+            if (channel != null) {
+                try {
+                    ByteBuffer copy = bytes.duplicate();
+                    while (copy.hasRemaining()) {
+                        channel.write(copy);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Response is not cached: " + url, e);
+                    discard();
+                }
+            }
+            handler.onBodyPart(bytes);
+        }
+
+        @Override
+        public T onCompleted() {
+            if (notModified) {
+                try {
+                    T result = replay(stored, handler);
+                    touch(key);
+                    hitCount.incrementAndGet();
+                    bytesSaved.addAndGet(stored.bodyLength);
+                    return result;
+                } catch (IOException e) {
+                    entries.remove(key, stored);
+                    throw new UncheckedIOException("Cached response is not readable: " + stored.file, e);
+                }
+            }
+            if (channel != null) {
+                commit();
+            }
+            return handler.onCompleted();
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            discard();
+            handler.onThrowable(t);
+        }
+
+        private void open() {
+            try {
+                temporaryFile = Files.createTempFile(directory, key, ".tmp");
+                channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE);
+                byte[] header = header(url, etag, lastModified, contentType);
+                headerLength = header.length;
+                ByteBuffer headerBytes = ByteBuffer.wrap(header);
+                while (headerBytes.hasRemaining()) {
+                    channel.write(headerBytes);
+                }
+            } catch (IOException e) {
+                logger.warn("Response is not cached: " + url, e);
+                discard();
+            }
+        }
+
+        private void commit() {
+            Path file = directory.resolve(key + ".cache");
+            try {
+                long bodyLength = channel.position() - headerLength;
+                channel.close();
+                channel = null;
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                entries.put(key, new Entry(file, url, etag, lastModified, contentType, headerLength, bodyLength));
+                touch(key);
+            } catch (IOException e) {
+                logger.warn("Response is not cached: " + url, e);
+                discard();
+            }
+        }
+
+        private void discard() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                if (temporaryFile != null) {
+                    Files.deleteIfExists(temporaryFile);
+                }
+            } catch (IOException e) {
+                logger.warn(e.getMessage(), e);
+            }
+            channel = null;
+            temporaryFile = null;
+        }
+    }
+
+    private static class Entry {
+        private final Path file;
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final String contentType;
+        private final int headerLength;
+        private final long bodyLength;
+
+        private Entry(Path file, String url, String etag, String lastModified, String contentType,
+                      int headerLength, long bodyLength) {
+            this.file = file;
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.headerLength = headerLength;
+            this.bodyLength = bodyLength;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.insticore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps keys to members so that a key stays with its member while the members come and go:
+ * when a member leaves only its keys move, spread over the others, when one joins it takes a share from all
+ * Every member is put on the ring many times to even out the shares. Not thread safe
+ */
+public class ConsistentHashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    private final TreeMap<Integer, String> ring = new TreeMap<>();
+    private int memberCount;
+
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param virtualNodes places of every member on the ring
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Virtual nodes must be positive: " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * @param member
+     * @return false if the member is already on the ring
+     */
+    public boolean add(String member) {
+        if (ring.containsValue(member)) {
+            return false;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            //A place taken by another member stays with it, the member gets one place less
+            ring.putIfAbsent(hash(member + '#' + i), member);
+        }
+        memberCount++;
+        return true;
+    }
+
+    /**
+     * @param member
+     * @return false if the member is not on the ring
+     */
+    public boolean remove(String member) {
+        if (!ring.values().removeIf(member::equals)) {
+            return false;
+        }
+        memberCount--;
+        return true;
+    }
+
+    /**
+     * @param key
+     * @return member of the first place at or after the hash of the key, null if the ring is empty
+     */
+    public String get(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Integer, String> place = ring.ceilingEntry(hash(key));
+        return place != null ? place.getValue() : ring.firstEntry().getValue();
+    }
+
+    public int size() {
+        return memberCount;
+    }
+
+    public boolean isEmpty() {
+        return memberCount == 0;
+    }
+
+    /**
+     * FNV-1a of the UTF-8 bytes with the murmur3 finalizer, String.hashCode puts similar keys too close
+     */
+    static int hash(String key) {
+        int hash = 0x811C9DC5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
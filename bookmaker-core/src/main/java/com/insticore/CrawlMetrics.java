@@ -0,0 +1,312 @@
+package com.insticore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms by stage and host, in flight gauges and counters of one bookmaker
+ * The recording does not allocate once a host or a counter is seen, so it stays on in production
+ * The values are shown over JMX and can be written to a local file periodically
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean, Closeable {
+    public static final String FAILED_REQUESTS = "failedRequests";
+    public static final String HTTP_ERRORS = "httpErrors";
+    public static final String HEDGED_REQUESTS = "hedgedRequests";
+    public static final String HEDGE_WINS = "hedgeWins";
+    public static final String RETRIED_REQUESTS = "retriedRequests";
+    public static final String RETRY_BUDGET_EXHAUSTED = "retryBudgetExhausted";
+    public static final long DEFAULT_REPORT_PERIOD_SECONDS = 10;
+
+    /**
+     * Where the time of a sweep goes
+     */
+    public enum Stage {
+        //Host name resolution, TCP connect and TLS handshake of a new connection
+        CONNECT,
+        //From sending the request to the response headers
+        FIRST_BYTE,
+        //From the headers to the last body part, includes the decoding done while the body streams in
+        DOWNLOAD,
+        //Decoding of the response into the parser's records
+        DECODE,
+        //Writing one event into the sink
+        OUTPUT,
+        //One whole parse
+        SWEEP;
+
+        private static final Stage[] VALUES = values();
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(CrawlMetrics.class);
+    private final String bookmaker;
+    private final LatencyHistogram[] stages = newHistograms();
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private ObjectName objectName;
+    private ScheduledExecutorService reporter;
+    private Path reportFile;
+
+    public CrawlMetrics(String bookmaker) {
+        this.bookmaker = bookmaker;
+    }
+
+    /**
+     * @param stage
+     * @param nanos
+     */
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].recordNanos(nanos);
+    }
+
+    /**
+     * Records the latency for the host and for the stage over all hosts
+     * @param host
+     * @param stage
+     * @param nanos
+     */
+    public void record(String host, Stage stage, long nanos) {
+        host(host).stages[stage.ordinal()].recordNanos(nanos);
+        record(stage, nanos);
+    }
+
+    /**
+     * @param counter
+     */
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    /**
+     * @param counter
+     * @param value
+     */
+    public void add(String counter, long value) {
+        LongAdder adder = counters.get(counter);
+        if (adder == null) {
+            adder = counters.computeIfAbsent(counter, name -> new LongAdder());
+        }
+        adder.add(value);
+    }
+
+    void requestStarted(String host) {
+        host(host).inFlight.incrementAndGet();
+    }
+
+    void requestFinished(String host) {
+        host(host).inFlight.decrementAndGet();
+    }
+
+    void bytesReceived(String host, int bytes) {
+        host(host).bytesReceived.add(bytes);
+    }
+
+    private Host host(String name) {
+        Host host = hosts.get(name);
+        if (host == null) {
+            host = hosts.computeIfAbsent(name, Host::new);
+        }
+        return host;
+    }
+
+    /**
+     * Shows the metrics over JMX as com.insticore:type=CrawlMetrics,name=<bookmaker>
+     * Another parser of the same bookmaker in the same JVM is only logged
+     */
+    public synchronized void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("com.insticore:type=CrawlMetrics,name=" + ObjectName.quote(bookmaker));
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            logger.warn("Metrics of " + bookmaker + " are not registered in JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the report to the file every period until the metrics are closed
+     * The file is replaced as a whole, a reader never sees it half written
+     * @param file
+     * @param period
+     * @param unit
+     */
+    public synchronized void startReport(Path file, long period, TimeUnit unit) {
+        if (reporter != null) {
+            throw new IllegalStateException("Report is already started");
+        }
+        reportFile = file;
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::writeReport, period, period, unit);
+    }
+
+    /**
+     * Stops the report after writing it the last time and removes the metrics from JMX
+     */
+    @Override
+    public synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+            writeReport();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warn("Metrics of " + bookmaker + " are not unregistered from JMX: " + e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    private void writeReport() {
+        writeReport(reportFile, Collections.singletonList(this));
+    }
+
+    /**
+     * Writes the reports of all the metrics one after another to the file
+     * The file is replaced as a whole, a reader never sees it half written
+     * @param file
+     * @param metrics
+     */
+    public static void writeReport(Path file, Collection<CrawlMetrics> metrics) {
+        try {
+            Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(),
+                    file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                for (CrawlMetrics bookmakerMetrics : metrics) {
+                    writer.write(bookmakerMetrics.toString());
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LoggerFactory.getLogger(CrawlMetrics.class).warn("Metrics report is not written: " + file, e);
+        }
+    }
+
+    @Override
+    public String getBookmaker() {
+        return bookmaker;
+    }
+
+    @Override
+    public Map<String, LatencySummary> getStages() {
+        Map<String, LatencySummary> summaries = new TreeMap<>();
+        for (Stage stage : Stage.VALUES) {
+            if (stages[stage.ordinal()].getCount() > 0) {
+                summaries.put(stage.name(), stages[stage.ordinal()].summary());
+            }
+        }
+        return summaries;
+    }
+
+    @Override
+    public Map<String, LatencySummary> getHostStages() {
+        Map<String, LatencySummary> summaries = new TreeMap<>();
+        for (Host host : hosts.values()) {
+            for (Stage stage : Stage.VALUES) {
+                if (host.stages[stage.ordinal()].getCount() > 0) {
+                    summaries.put(host.name + " " + stage.name(), host.stages[stage.ordinal()].summary());
+                }
+            }
+        }
+        return summaries;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getInFlight() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Host host : hosts.values()) {
+            values.put(host.name, (long) host.inFlight.get());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getBytesReceived() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Host host : hosts.values()) {
+            values.put(host.name, host.bytesReceived.sum());
+        }
+        return values;
+    }
+
+    /**
+     * @return one line per stage, host stage, counter and gauge
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Metrics of ").append(bookmaker).append('\n');
+        for (Map.Entry<String, LatencySummary> stage : getStages().entrySet()) {
+            report.append("stage ").append(stage.getKey()).append(' ').append(stage.getValue()).append('\n');
+        }
+        for (Map.Entry<String, LatencySummary> stage : getHostStages().entrySet()) {
+            report.append("host ").append(stage.getKey()).append(' ').append(stage.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> inFlight : getInFlight().entrySet()) {
+            report.append("inFlight ").append(inFlight.getKey()).append(' ').append(inFlight.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> bytes : getBytesReceived().entrySet()) {
+            report.append("bytesReceived ").append(bytes.getKey()).append(' ').append(bytes.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            report.append("counter ").append(counter.getKey()).append(' ').append(counter.getValue()).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[Stage.VALUES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    private static class Host {
+        private final String name;
+        private final LatencyHistogram[] stages = newHistograms();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder bytesReceived = new LongAdder();
+
+        private Host(String name) {
+            this.name = name;
+        }
+    }
+}
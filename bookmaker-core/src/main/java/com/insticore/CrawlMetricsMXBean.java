@@ -0,0 +1,36 @@
+package com.insticore;
+
+import java.util.Map;
+
+/**
+ * What the crawl metrics show over JMX, the latencies are in microseconds
+ */
+public interface CrawlMetricsMXBean {
+
+    String getBookmaker();
+
+    /**
+     * @return latencies by stage over all hosts
+     */
+    Map<String, LatencySummary> getStages();
+
+    /**
+     * @return latencies of the http stages by "host stage"
+     */
+    Map<String, LatencySummary> getHostStages();
+
+    /**
+     * @return failures, skips and other counts by name
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return requests in flight by host
+     */
+    Map<String, Long> getInFlight();
+
+    /**
+     * @return body bytes received by host
+     */
+    Map<String, Long> getBytesReceived();
+}
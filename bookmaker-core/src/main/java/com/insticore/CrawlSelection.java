@@ -0,0 +1,263 @@
+package com.insticore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Tells what a bookmaker crawls: the sports, the countries, the tournaments, how far ahead the events start
+ * and the markets. The parsers check it as early as they can, so the pages of the left out tournaments and events
+ * are never requested and the left out markets are skipped while the events are decoded
+ * The file has one value per line: bookmaker or * for all of them, rule, value, separated by tabs, # starts
+ * a comment. The rules are sport (id or name), country, include and exclude (patterns found in the tournament
+ * name, case is ignored), hours (how far ahead the events start at most) and market (filter id or title).
+ * A rule which the file has replaces the default of the bookmaker, a rule with no values lets everything through
+ */
+public class CrawlSelection {
+    /**
+     * System property with the selection file
+     */
+    public static final String PROPERTY = "selection";
+    public static final String SPORT = "sport";
+    public static final String COUNTRY = "country";
+    public static final String INCLUDE = "include";
+    public static final String EXCLUDE = "exclude";
+    public static final String HOURS = "hours";
+    public static final String MARKET = "market";
+    /**
+     * Lets everything through
+     */
+    public static final CrawlSelection ALL = new CrawlSelection(Collections.emptyMap());
+    private static final String ALL_BOOKMAKERS = "*";
+    private static final int FIELD_COUNT = 3;
+    private static final List<String> RULES = Arrays.asList(SPORT, COUNTRY, INCLUDE, EXCLUDE, HOURS, MARKET);
+
+    private final Map<String, List<String>> rules;
+    private final Set<String> sports;
+    private final Set<String> countries;
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+    private final long windowMillis;
+    private final Set<Integer> marketIds = new HashSet<>();
+    private final Set<String> marketNames = new HashSet<>();
+
+    /**
+     * @param rules values of every rule by its name, the missing rules let everything through
+     */
+    public CrawlSelection(Map<String, List<String>> rules) {
+        for (String rule : rules.keySet()) {
+            if (!RULES.contains(rule)) {
+                throw new IllegalArgumentException("Unknown rule " + rule + ", known are " + RULES);
+            }
+        }
+        this.rules = new HashMap<>(rules);
+        sports = keys(values(SPORT));
+        countries = keys(values(COUNTRY));
+        includes = patterns(values(INCLUDE));
+        excludes = patterns(values(EXCLUDE));
+        List<String> hours = values(HOURS);
+        if (hours.size() > 1) {
+            throw new IllegalArgumentException("Only one value of hours is allowed: " + hours);
+        }
+        windowMillis = hours.isEmpty() ? 0 : TimeUnit.MINUTES.toMillis(Math.round(60 * number(hours.get(0))));
+        if (!hours.isEmpty() && windowMillis <= 0) {
+            throw new IllegalArgumentException("Hours must be above 0: " + hours.get(0));
+        }
+        for (String market : values(MARKET)) {
+            try {
+                marketIds.add(Integer.parseInt(market.trim()));
+            } catch (NumberFormatException e) {
+                marketNames.add(key(market));
+            }
+        }
+    }
+
+    /**
+     * @param file
+     * @param bookmaker only its lines and the ones for all bookmakers are read
+     * @param defaults the rules which the file does not have are taken from here
+     * @return selection of the bookmaker
+     * @throws IOException if the file can not be read
+     */
+    public static CrawlSelection load(Path file, String bookmaker, CrawlSelection defaults) throws IOException {
+        Map<String, List<String>> rules = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length != FIELD_COUNT) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + " has " + fields.length
+                            + " fields instead of " + FIELD_COUNT);
+                }
+                String rule = fields[1].trim().toLowerCase(Locale.ROOT);
+                if (!RULES.contains(rule)) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + " has unknown rule " + fields[1]
+                            + ", known are " + RULES);
+                }
+                String owner = fields[0].trim();
+                if (!owner.equals(ALL_BOOKMAKERS) && !owner.equalsIgnoreCase(bookmaker)) {
+                    continue;
+                }
+                List<String> values = rules.computeIfAbsent(rule, name -> new ArrayList<>());
+                if (!fields[2].trim().isEmpty()) {
+                    values.add(fields[2].trim());
+                }
+            }
+        }
+        for (Map.Entry<String, List<String>> rule : defaults.rules.entrySet()) {
+            rules.putIfAbsent(rule.getKey(), rule.getValue());
+        }
+        try {
+            return new CrawlSelection(rules);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(file + " " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param bookmaker
+     * @param defaults used alone when the property is not set
+     * @return selection of the bookmaker from the file of the selection property
+     * @throws UncheckedIOException if the file can not be read
+     */
+    public static CrawlSelection fromSystemProperty(String bookmaker, CrawlSelection defaults) {
+        String file = System.getProperty(PROPERTY);
+        if (file == null) {
+            return defaults;
+        }
+        try {
+            return load(Paths.get(file), bookmaker, defaults);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param id as the bookmaker gives it, or null
+     * @param name as the bookmaker gives it, or null
+     * @return whether the sport is crawled
+     */
+    public boolean isSport(String id, String name) {
+        return sports.isEmpty() || id != null && sports.contains(key(id)) || name != null && sports.contains(key(name));
+    }
+
+    public boolean isCountry(String name) {
+        return countries.isEmpty() || name != null && countries.contains(key(name));
+    }
+
+    /**
+     * @param name of the tournament
+     * @return whether the name has one of the included patterns, if there are any, and none of the excluded
+     */
+    public boolean isTournament(String name) {
+        String text = name != null ? name : "";
+        if (!includes.isEmpty() && !find(includes, text)) {
+            return false;
+        }
+        return !find(excludes, text);
+    }
+
+    /**
+     * @param startTime in epoch millis, 0 when it is not known
+     * @return whether the event starts within the window from now, the started ones and the unknown are kept
+     */
+    public boolean isStart(long startTime) {
+        return windowMillis == 0 || startTime == 0 || startTime <= System.currentTimeMillis() + windowMillis;
+    }
+
+    /**
+     * @param id filter id of the market
+     * @return whether the market can be crawled before its name is known, when there are market names
+     * it can be left out only by isMarket
+     */
+    public boolean isMarketId(int id) {
+        return marketIds.isEmpty() || !marketNames.isEmpty() || marketIds.contains(id);
+    }
+
+    /**
+     * @param id filter id of the market or Market.NO_ID
+     * @param name title of the market or null
+     * @return whether the market is crawled
+     */
+    public boolean isMarket(int id, String name) {
+        return marketIds.isEmpty() && marketNames.isEmpty() || marketIds.contains(id)
+                || name != null && marketNames.contains(key(name));
+    }
+
+    /**
+     * @param rule
+     * @return values of the rule, empty when everything goes through
+     */
+    public List<String> values(String rule) {
+        List<String> values = rules.get(rule);
+        return values != null ? Collections.unmodifiableList(values) : Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Selection:");
+        for (String rule : RULES) {
+            if (!values(rule).isEmpty()) {
+                builder.append(' ').append(rule).append(' ').append(values(rule));
+            }
+        }
+        return builder.length() == "Selection:".length() ? "Selection: everything" : builder.toString();
+    }
+
+    private static boolean find(List<Pattern> patterns, String text) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(text).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> keys(List<String> values) {
+        Set<String> keys = new HashSet<>();
+        for (String value : values) {
+            keys.add(key(value));
+        }
+        return keys;
+    }
+
+    private static List<Pattern> patterns(List<String> values) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String value : values) {
+            patterns.add(Pattern.compile(value, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+        }
+        return patterns;
+    }
+
+    private static double number(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value, e);
+        }
+    }
+
+    private static String key(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
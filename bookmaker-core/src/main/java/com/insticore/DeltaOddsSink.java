@@ -0,0 +1,167 @@
+package com.insticore;
+
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the odds of the previous sweep of every bookmaker and passes on only what is changed
+ * An odd is identified by the event id, the market id and name and the odd id.
+ * Added and changed odds are passed on as soon as they come, the removed ones when the sweep ends
+ * The sweeps are kept in an odds book, so a known odd costs a few array slots instead of objects
+ */
+public class DeltaOddsSink implements OddsSink {
+    private final Consumer<OddsChange> changes;
+    private final OddsBook book;
+    private final NameDictionary names;
+    private final OddsBookWriter writer;
+    //Odds of the previous sweep which are seen again in this one
+    private final BitSet matched = new BitSet();
+
+    private String bookmaker;
+    private BookmakerOdds previous;
+    private Event event;
+    private Market market;
+    private int marketName;
+    private long addedCount;
+    private long removedCount;
+    private long changedCount;
+
+    /**
+     * @param changes receives the changes one at a time
+     */
+    public DeltaOddsSink(Consumer<OddsChange> changes) {
+        this(changes, new OddsBook());
+    }
+
+    /**
+     * @param changes receives the changes one at a time
+     * @param book where the sweeps are kept, it can be shared with the other readers
+     */
+    public DeltaOddsSink(Consumer<OddsChange> changes, OddsBook book) {
+        this.changes = changes;
+        this.book = book;
+        this.names = book.getNames();
+        this.writer = book.newWriter();
+    }
+
+    @Override
+    public void begin(String bookmaker) {
+        this.bookmaker = bookmaker;
+        previous = book.getOdds(bookmaker);
+        matched.clear();
+        event = null;
+        market = null;
+        writer.begin(bookmaker);
+    }
+
+    @Override
+    public void sport(String name) {
+        writer.sport(name);
+    }
+
+    @Override
+    public void tournament(String name) {
+        writer.tournament(name);
+    }
+
+    @Override
+    public void event(Event event) {
+        this.event = event;
+        market = null;
+        writer.event(event);
+    }
+
+    @Override
+    public void market(Market market) {
+        if (event == null) {
+            return;
+        }
+        this.market = market;
+        marketName = names.intern(market.getName());
+        writer.market(market);
+    }
+
+    @Override
+    public void odd(Odd odd) {
+        if (event == null || market == null) {
+            return;
+        }
+        //The same odd can be listed twice in a sweep, the second one is compared with the first
+        BookmakerOdds building = writer.getBuilding();
+        int earlier = building.findOdd(event.getId(), market.getId(), marketName, odd.getId());
+        double before = earlier >= 0 ? building.getOddValue(earlier) : Double.NaN;
+        writer.odd(odd);
+        if (earlier < 0) {
+            int known = previous != null ? previous.findOdd(event.getId(), market.getId(), marketName, odd.getId()) : -1;
+            if (known < 0) {
+                addedCount++;
+                changes.accept(new OddsChange(OddsChange.Type.ADDED, System.currentTimeMillis(), bookmaker,
+                        event, market, odd, Double.NaN));
+                return;
+            }
+            matched.set(known);
+            before = previous.getOddValue(known);
+        }
+        if (Double.compare(before, odd.getValue()) != 0) {
+            changedCount++;
+            changes.accept(new OddsChange(OddsChange.Type.CHANGED, System.currentTimeMillis(), bookmaker,
+                    event, market, odd, before));
+        }
+    }
+
+    /**
+     * Everything which is left from the previous sweep is removed
+     */
+    @Override
+    public void end() {
+        if (previous != null) {
+            long now = System.currentTimeMillis();
+            for (int e = 0; e < previous.getEventCount(); e++) {
+                for (int m = previous.getMarketStart(e); m < previous.getMarketEnd(e); m++) {
+                    for (int o = previous.getOddStart(m); o < previous.getOddEnd(m); o++) {
+                        if (!matched.get(o)) {
+                            removedCount++;
+                            Odd removed = previous.toOdd(o);
+                            changes.accept(new OddsChange(OddsChange.Type.REMOVED, now, bookmaker,
+                                    previous.toEvent(e), previous.toMarket(m), removed, removed.getValue()));
+                        }
+                    }
+                }
+            }
+        }
+        writer.end();
+        previous = null;
+        event = null;
+        market = null;
+    }
+
+    public long getAddedCount() {
+        return addedCount;
+    }
+
+    public long getRemovedCount() {
+        return removedCount;
+    }
+
+    public long getChangedCount() {
+        return changedCount;
+    }
+
+    /**
+     * @param bookmaker
+     * @return how many odds of the bookmaker are known after the last sweep
+     */
+    public int size(String bookmaker) {
+        BookmakerOdds odds = book.getOdds(bookmaker);
+        return odds != null ? odds.getOddCount() : 0;
+    }
+
+    public OddsBook getBook() {
+        return book;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Odds changes: added %d, removed %d, changed %d", addedCount, removedCount, changedCount);
+    }
+}
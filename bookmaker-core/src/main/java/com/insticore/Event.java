@@ -0,0 +1,40 @@
+package com.insticore;
+
+/**
+ * Helper class to have the event info in one place
+ */
+public class Event {
+    private final String id;
+    private final String name;
+    private final String date;
+    private final long startTime;
+
+    /**
+     * @param id bookmaker id of the event
+     * @param name
+     * @param date start date as it is printed
+     * @param startTime start time in epoch millis, 0 when it is unknown
+     */
+    public Event(String id, String name, String date, long startTime) {
+        this.id = id;
+        this.name = name;
+        this.date = date;
+        this.startTime = startTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+}
@@ -0,0 +1,534 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the same fixture across the bookmakers and gives all its events one key, e.g. for SurebetEngine
+ * The team names are normalized, resolved through the alias table and compared by the trigrams of their folded
+ * spelling, see NameNormalizer.fold. The events are bucketed by sport and start time window and the candidates
+ * of a bucket are looked up by the trigrams, so an event is scored only against the few events which share
+ * its sport, time and some trigrams
+ * An event is matched once, the next sweeps find it by its id
+ */
+public class EventMatcher {
+    public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    public static final double DEFAULT_MIN_SCORE = 0.6;
+    private static final long GRAM_MIX = 0x9E3779B97F4A7C15L;
+    private static final String[] TEAM_SEPARATORS = {" vs. ", " vs ", " - ", " — ", " – "};
+
+    private final AliasTable aliases;
+    private final long windowMillis;
+    private final double minScore;
+    //Bookmaker -> event id -> entry
+    private final Map<String, Map<String, Entry>> bookmakers = new HashMap<>();
+    //Sport and start time slot -> bucket
+    private final Map<String, Bucket> buckets = new HashMap<>();
+    //Candidates of the event which is being matched with their common trigrams
+    private final Map<Entry, int[]> shared = new IdentityHashMap<>();
+    private long groupCount;
+    private long matchedCount;
+    private long scoredCount;
+
+    public EventMatcher() {
+        this(new AliasTable());
+    }
+
+    /**
+     * @param aliases of the team and sport names, the confirmed matches add to them
+     */
+    public EventMatcher(AliasTable aliases) {
+        this(aliases, DEFAULT_WINDOW_MILLIS, DEFAULT_MIN_SCORE);
+    }
+
+    /**
+     * @param aliases of the team and sport names, the confirmed matches add to them
+     * @param windowMillis how far apart the start times of the same fixture can be
+     * @param minScore similarity of the team names from 0 to 1 which is enough for a match
+     */
+    public EventMatcher(AliasTable aliases, long windowMillis, double minScore) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+        }
+        if (!(minScore > 0 && minScore <= 1)) {
+            throw new IllegalArgumentException("Min score must be above 0 and at most 1: " + minScore);
+        }
+        this.aliases = aliases;
+        this.windowMillis = windowMillis;
+        this.minScore = minScore;
+    }
+
+    /**
+     * Matches the event the first time it is seen or when its name or start time changes
+     * @param bookmaker
+     * @param sport name as the bookmaker gives it, null when it is not known
+     * @param event
+     * @return key of the fixture, the same for the matched events of all bookmakers
+     */
+    public synchronized String match(String bookmaker, String sport, Event event) {
+        Map<String, Entry> events = bookmakers.get(bookmaker);
+        if (events == null) {
+            events = new HashMap<>();
+            bookmakers.put(bookmaker, events);
+        }
+        Entry entry = events.get(event.getId());
+        if (entry != null) {
+            if (entry.isSame(sport, event)) {
+                return entry.group.key;
+            }
+            remove(entry);
+        }
+        entry = new Entry(bookmaker, sport, event, aliases);
+        events.put(event.getId(), entry);
+        Entry best = findBest(entry);
+        if (best != null) {
+            entry.group = best.group;
+            matchedCount++;
+        } else {
+            entry.group = new Group("f" + groupCount++);
+        }
+        entry.group.members.add(entry);
+        if (entry.startTime != 0) {
+            bucket(entry.sport, slot(entry.startTime), true).add(entry);
+        }
+        return entry.group.key;
+    }
+
+    /**
+     * @param bookmaker
+     * @param eventId
+     * @return key of the fixture of a matched event or null
+     */
+    public synchronized String getKey(String bookmaker, String eventId) {
+        Map<String, Entry> events = bookmakers.get(bookmaker);
+        Entry entry = events != null ? events.get(eventId) : null;
+        return entry != null ? entry.group.key : null;
+    }
+
+    /**
+     * Key function for SurebetEngine, only the events which went through match have a key
+     * @param bookmaker
+     * @param event
+     * @return key of the fixture or null
+     */
+    public String getKey(String bookmaker, Event event) {
+        return getKey(bookmaker, event.getId());
+    }
+
+    /**
+     * Puts both events under one key and learns the team names of one as the aliases of the other's
+     * @param bookmaker
+     * @param eventId
+     * @param otherBookmaker
+     * @param otherEventId
+     * @return whether both events are known
+     */
+    public synchronized boolean confirm(String bookmaker, String eventId, String otherBookmaker, String otherEventId) {
+        Entry entry = find(bookmaker, eventId);
+        Entry other = find(otherBookmaker, otherEventId);
+        if (entry == null || other == null) {
+            return false;
+        }
+        if (entry.teams.length == other.teams.length) {
+            for (int team = 0; team < entry.teams.length; team++) {
+                aliases.put(other.rawTeams[team], entry.rawTeams[team]);
+            }
+        }
+        if (other.group != entry.group) {
+            //The event of the same bookmaker which was matched before is not the fixture any more
+            for (Iterator<Entry> members = entry.group.members.iterator(); members.hasNext(); ) {
+                Entry member = members.next();
+                if (member.bookmaker.equals(otherBookmaker)) {
+                    members.remove();
+                    member.group = new Group("f" + groupCount++);
+                    member.group.members.add(member);
+                }
+            }
+            other.group.members.remove(other);
+            other.group = entry.group;
+            entry.group.members.add(other);
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the events which started before the time, called after every sweep by the sink
+     * @param startedBefore epoch millis
+     */
+    public synchronized void evict(long startedBefore) {
+        for (Map<String, Entry> events : bookmakers.values()) {
+            for (Iterator<Entry> entries = events.values().iterator(); entries.hasNext(); ) {
+                Entry entry = entries.next();
+                if (entry.startTime != 0 && entry.startTime < startedBefore) {
+                    entries.remove();
+                    removeFromBucket(entry);
+                    entry.group.members.remove(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param next gets everything the sink gets
+     * @return sink which matches every event before passing it on, e.g. in front of a DeltaOddsSink
+     */
+    public OddsSink newSink(OddsSink next) {
+        return new MatchingSink(next);
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Map<String, Entry> events : bookmakers.values()) {
+            size += events.size();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Event matcher: %d events, %d matched, %d scored, %d buckets, %d aliases",
+                size(), matchedCount, scoredCount, buckets.size(), aliases.size());
+    }
+
+    /**
+     * @return the candidate with the best score over the min score or null
+     */
+    private Entry findBest(Entry entry) {
+        if (entry.startTime == 0 || entry.grams.length == 0) {
+            return null;
+        }
+        //How many trigrams every candidate shares with the entry
+        shared.clear();
+        long slot = slot(entry.startTime);
+        for (long neighbour = slot - 1; neighbour <= slot + 1; neighbour++) {
+            Bucket bucket = bucket(entry.sport, neighbour, false);
+            if (bucket == null) {
+                continue;
+            }
+            for (long gram : entry.grams) {
+                List<Entry> posting = bucket.postings.get(gram);
+                if (posting == null) {
+                    continue;
+                }
+                for (Entry candidate : posting) {
+                    //The events of the same bookmaker are never the same fixture
+                    if (candidate.bookmaker.equals(entry.bookmaker)) {
+                        continue;
+                    }
+                    int[] count = shared.get(candidate);
+                    if (count == null) {
+                        shared.put(candidate, new int[]{1});
+                    } else {
+                        count[0]++;
+                    }
+                }
+            }
+        }
+        Entry best = null;
+        double bestScore = minScore;
+        for (Map.Entry<Entry, int[]> candidate : shared.entrySet()) {
+            Entry other = candidate.getKey();
+            //Not enough common trigrams for the min score even if the teams were split in the best way
+            if (2.0 * candidate.getValue()[0] / (entry.grams.length + other.grams.length) < minScore / 2
+                    || Math.abs(other.startTime - entry.startTime) > windowMillis
+                    || other.group.has(entry.bookmaker)) {
+                continue;
+            }
+            scoredCount++;
+            double score = score(entry, other);
+            if (score >= bestScore) {
+                best = other;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return mean similarity of the teams, in the given or the swapped order whichever is better
+     */
+    static double score(Entry entry, Entry other) {
+        if (entry.teams.length != other.teams.length) {
+            return dice(entry.grams, other.grams);
+        }
+        double direct = 0;
+        for (int team = 0; team < entry.teams.length; team++) {
+            direct += entry.teams[team].equals(other.teams[team]) ? 1 : dice(entry.teamGrams[team], other.teamGrams[team]);
+        }
+        direct /= entry.teams.length;
+        if (entry.teams.length != 2) {
+            return direct;
+        }
+        double swapped = (dice(entry.teamGrams[0], other.teamGrams[1]) + dice(entry.teamGrams[1], other.teamGrams[0])) / 2;
+        return Math.max(direct, swapped);
+    }
+
+    /**
+     * @return 2 * common / (size + size) of two sorted sets of trigrams
+     */
+    static double dice(long[] grams, long[] otherGrams) {
+        if (grams.length + otherGrams.length == 0) {
+            return 0;
+        }
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < grams.length && j < otherGrams.length) {
+            if (grams[i] == otherGrams[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (grams[i] < otherGrams[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return 2.0 * common / (grams.length + otherGrams.length);
+    }
+
+    /**
+     * @param name normalized and folded
+     * @return sorted distinct trigrams of the name padded with spaces, three chars packed in a long and mixed
+     */
+    static long[] trigrams(String name) {
+        if (name.isEmpty()) {
+            return new long[0];
+        }
+        String padded = ' ' + name + ' ';
+        long[] grams = new long[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            //Multiplied by an odd number the packed chars stay unique and spread over the hash buckets
+            grams[i] = ((long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2))
+                    * GRAM_MIX;
+        }
+        return distinct(grams);
+    }
+
+    private static long[] distinct(long[] grams) {
+        Arrays.sort(grams);
+        int size = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (size == 0 || grams[size - 1] != grams[i]) {
+                grams[size++] = grams[i];
+            }
+        }
+        return size == grams.length ? grams : Arrays.copyOf(grams, size);
+    }
+
+    private Entry find(String bookmaker, String eventId) {
+        Map<String, Entry> events = bookmakers.get(bookmaker);
+        return events != null ? events.get(eventId) : null;
+    }
+
+    private void remove(Entry entry) {
+        bookmakers.get(entry.bookmaker).remove(entry.eventId);
+        removeFromBucket(entry);
+        entry.group.members.remove(entry);
+    }
+
+    private void removeFromBucket(Entry entry) {
+        if (entry.startTime == 0) {
+            return;
+        }
+        String key = bucketKey(entry.sport, slot(entry.startTime));
+        Bucket bucket = buckets.get(key);
+        if (bucket != null && bucket.remove(entry)) {
+            buckets.remove(key);
+        }
+    }
+
+    private long slot(long startTime) {
+        return Math.floorDiv(startTime, windowMillis);
+    }
+
+    private Bucket bucket(String sport, long slot, boolean create) {
+        String key = bucketKey(sport, slot);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null && create) {
+            bucket = new Bucket();
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    private static String bucketKey(String sport, long slot) {
+        return sport + '@' + slot;
+    }
+
+    /**
+     * One event of one bookmaker with its normalized teams
+     */
+    static class Entry {
+        private final String bookmaker;
+        private final String eventId;
+        private final String rawSport;
+        private final String name;
+        private final String sport;
+        private final long startTime;
+        private final String[] rawTeams;
+        private final String[] teams;
+        private final long[][] teamGrams;
+        //All trigrams of all teams
+        private final long[] grams;
+        private Group group;
+
+        Entry(String bookmaker, String sport, Event event, AliasTable aliases) {
+            this.bookmaker = bookmaker;
+            this.eventId = event.getId();
+            this.rawSport = sport;
+            this.name = event.getName();
+            this.sport = aliases.resolve(NameNormalizer.normalize(sport));
+            this.startTime = event.getStartTime();
+            rawTeams = splitTeams(event.getName());
+            teams = new String[rawTeams.length];
+            teamGrams = new long[rawTeams.length][];
+            int gramCount = 0;
+            for (int team = 0; team < rawTeams.length; team++) {
+                teams[team] = aliases.resolve(NameNormalizer.normalize(rawTeams[team]));
+                teamGrams[team] = trigrams(NameNormalizer.fold(teams[team]));
+                gramCount += teamGrams[team].length;
+            }
+            long[] all = new long[gramCount];
+            int position = 0;
+            for (long[] team : teamGrams) {
+                System.arraycopy(team, 0, all, position, team.length);
+                position += team.length;
+            }
+            grams = distinct(all);
+        }
+
+        boolean isSame(String sport, Event event) {
+            return startTime == event.getStartTime() && equals(name, event.getName()) && equals(rawSport, sport);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        private static String[] splitTeams(String name) {
+            if (name == null) {
+                return new String[0];
+            }
+            for (String separator : TEAM_SEPARATORS) {
+                int split = name.indexOf(separator);
+                if (split > 0) {
+                    return new String[]{name.substring(0, split), name.substring(split + separator.length())};
+                }
+            }
+            return new String[]{name};
+        }
+    }
+
+    /**
+     * Events of the same fixture, at most one of every bookmaker
+     */
+    private static class Group {
+        private final String key;
+        private final List<Entry> members = new ArrayList<>(2);
+
+        Group(String key) {
+            this.key = key;
+        }
+
+        boolean has(String bookmaker) {
+            for (Entry member : members) {
+                if (member.bookmaker.equals(bookmaker)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Events of one sport and start time slot with the inverted index of their trigrams
+     */
+    private static class Bucket {
+        private final Map<Long, List<Entry>> postings = new HashMap<>();
+        private int size;
+
+        void add(Entry entry) {
+            for (long gram : entry.grams) {
+                postings.computeIfAbsent(gram, key -> new ArrayList<>(2)).add(entry);
+            }
+            size++;
+        }
+
+        /**
+         * @return whether the bucket is empty now
+         */
+        boolean remove(Entry entry) {
+            for (long gram : entry.grams) {
+                List<Entry> posting = postings.get(gram);
+                if (posting != null) {
+                    posting.remove(entry);
+                    if (posting.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+            return --size == 0;
+        }
+    }
+
+    /**
+     * Matches the events with the sport they come under, evicts the started ones at the end of the sweep
+     */
+    private class MatchingSink implements OddsSink {
+        private final OddsSink next;
+        private String bookmaker;
+        private String sport;
+
+        MatchingSink(OddsSink next) {
+            this.next = next;
+        }
+
+        @Override
+        public void begin(String bookmaker) {
+            this.bookmaker = bookmaker;
+            sport = null;
+            next.begin(bookmaker);
+        }
+
+        @Override
+        public void sport(String name) {
+            sport = name;
+            next.sport(name);
+        }
+
+        @Override
+        public void tournament(String name) {
+            next.tournament(name);
+        }
+
+        @Override
+        public void event(Event event) {
+            match(bookmaker, sport, event);
+            next.event(event);
+        }
+
+        @Override
+        public void market(Market market) {
+            next.market(market);
+        }
+
+        @Override
+        public void odd(Odd odd) {
+            next.odd(odd);
+        }
+
+        @Override
+        public void end() {
+            next.end();
+            //Prematch odds only, a started event is not offered any more
+            evict(System.currentTimeMillis() - windowMillis);
+        }
+    }
+}
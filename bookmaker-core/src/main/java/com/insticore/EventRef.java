@@ -0,0 +1,38 @@
+package com.insticore;
+
+/**
+ * An event which a bookmaker can load on its own, listed under its sport and tournament
+ */
+public class EventRef {
+    private final String sport;
+    private final String tournament;
+    private final String key;
+
+    /**
+     * @param sport name of the sport the event is listed under
+     * @param tournament name of the tournament the event is listed under
+     * @param key what the bookmaker needs to load the event, e.g. its id or link, the same in every listing
+     */
+    public EventRef(String sport, String tournament, String key) {
+        this.sport = sport;
+        this.tournament = tournament;
+        this.key = key;
+    }
+
+    public String getSport() {
+        return sport;
+    }
+
+    public String getTournament() {
+        return tournament;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return sport + "/" + tournament + "/" + key;
+    }
+}
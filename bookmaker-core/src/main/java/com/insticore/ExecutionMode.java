@@ -0,0 +1,67 @@
+package com.insticore;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Where the sport, tournament and event tasks of the bookmakers run
+ * The build stays on Java 8, the virtual threads are looked up at run time
+ */
+public enum ExecutionMode {
+    //A fixed pool of platform threads, one per processor
+    PLATFORM,
+    //A new virtual thread for every task, a blocked task does not hold an OS thread, needs Java 21 or newer
+    VIRTUAL;
+
+    /**
+     * System property which selects the mode, platform or virtual
+     */
+    public static final String PROPERTY = "bookmaker.execution";
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    /**
+     * @return the mode given by the system property, PLATFORM if it is not set
+     */
+    public static ExecutionMode fromSystemProperty() {
+        String mode = System.getProperty(PROPERTY);
+        return mode != null ? valueOf(mode.trim().toUpperCase(Locale.ROOT)) : PLATFORM;
+    }
+
+    /**
+     * @return whether the mode can be used on this JVM
+     */
+    public boolean isAvailable() {
+        return this == PLATFORM || NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @param threadFactory makes the platform threads of the pool
+     * @return executor of the tasks
+     */
+    ExecutorService newExecutor(ThreadFactory threadFactory) {
+        if (this == PLATFORM) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), threadFactory);
+        }
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new IllegalArgumentException("Virtual threads need Java 21 or newer, running on "
+                    + System.getProperty("java.version"));
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual thread executor is not created", e);
+        }
+    }
+
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.insticore;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import org.asynchttpclient.Request;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the slowest few percent of the requests from holding up the sweep: hedging and retries of the GETs
+ * <p>
+ * A request which has no response headers after the p95 time to the first byte of its endpoint is sent once more,
+ * the first response wins and the other request is cancelled. A request which fails or gets 429/5xx is sent again
+ * after an exponential backoff with jitter. The hedges and the retries take from one budget which every request
+ * fills by a tenth, so a host which is down does not get twice the load.
+ * <p>
+ * The headers decide the winner, only its body reaches the handler, so a response which fails in the middle
+ * of its body is not retried. Meant to be right over the limiter: every hedge and retry waits for its own permit
+ * and token, the limiter sees the status of each of them, and the hedge delay and the time to the first byte
+ * start when the limiter sends the attempt, see ResponseHandler.onSent. Set the system property to false
+ * to turn it off
+ */
+public class HedgingHttpFetcher implements HttpFetcher {
+    /**
+     * System property which turns hedging and retries off when it is false
+     */
+    public static final String PROPERTY = "bookmaker.hedging";
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_BACKOFF_MILLIS = 100;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 2000;
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+    //Hedges and retries which can be saved up, also the ones allowed before the first requests
+    private static final double MAX_BUDGET = 10;
+    //Endpoints beyond it share one per host, their paths are not alike enough
+    private static final int MAX_ENDPOINTS = 256;
+    //The hedge delay of an endpoint is computed again after so many responses
+    private static final int DELAY_REFRESH = 16;
+
+    private final HttpFetcher delegate;
+    private final CrawlMetrics metrics;
+    private final double hedgePercentile;
+    private final int minSamples;
+    private final int maxRetries;
+    private final long backoffNanos;
+    private final long maxBackoffNanos;
+    private final double budgetRatio;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    //Guarded by this
+    private double budget = MAX_BUDGET;
+
+    /**
+     * @param delegate
+     * @param metrics counts the hedges, their wins, the retries and the times the budget ran out
+     * @param scheduler sends the hedges and the retries when they are due
+     */
+    public HedgingHttpFetcher(HttpFetcher delegate, CrawlMetrics metrics, ScheduledExecutorService scheduler) {
+        this(delegate, metrics, DEFAULT_HEDGE_PERCENTILE, DEFAULT_MIN_SAMPLES, DEFAULT_MAX_RETRIES,
+                DEFAULT_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, DEFAULT_BUDGET_RATIO, scheduler);
+    }
+
+    /**
+     * @param delegate
+     * @param metrics counts the hedges, their wins, the retries and the times the budget ran out
+     * @param hedgePercentile of the time to the first byte of the endpoint after which the hedge is sent
+     * @param minSamples responses of an endpoint before its requests are hedged
+     * @param maxRetries how many times one request is sent again at most
+     * @param backoffMillis delay before the first retry, doubled for every next one
+     * @param maxBackoffMillis the delay never grows over it
+     * @param budgetRatio hedges and retries per request on average, e.g. 0.1 for one in ten
+     * @param scheduler sends the hedges and the retries when they are due
+     */
+    public HedgingHttpFetcher(HttpFetcher delegate, CrawlMetrics metrics, double hedgePercentile, int minSamples,
+                              int maxRetries, long backoffMillis, long maxBackoffMillis, double budgetRatio,
+                              ScheduledExecutorService scheduler) {
+        if (!(hedgePercentile > 0 && hedgePercentile < 100) || minSamples < 1) {
+            throw new IllegalArgumentException("Hedge percentile must be between 0 and 100 and min samples positive: "
+                    + hedgePercentile + ", " + minSamples);
+        }
+        if (maxRetries < 0 || backoffMillis < 0 || maxBackoffMillis < backoffMillis || !(budgetRatio >= 0)) {
+            throw new IllegalArgumentException("Retries, backoff and budget can not be negative, max backoff under backoff: "
+                    + maxRetries + ", " + backoffMillis + ", " + maxBackoffMillis + ", " + budgetRatio);
+        }
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.hedgePercentile = hedgePercentile;
+        this.minSamples = minSamples;
+        this.maxRetries = maxRetries;
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+        this.budgetRatio = budgetRatio;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return whether the system property leaves hedging and retries on, they are on if it is not set
+     */
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(PROPERTY));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler) {
+        return fetch(request, handler, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * The hedges and the retries are sent with a priority higher by one than the request
+     */
+    @Override
+    public <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler, int priority) {
+        //Only a GET can be sent twice without harm
+        if (!"GET".equals(request.getMethod())) {
+            return delegate.fetch(request, handler, priority);
+        }
+        deposit();
+        Call<T> call = new Call<>(request, handler, priority, endpoint(request));
+        call.send(false);
+        return call.result;
+    }
+
+    /**
+     * @return hedges and retries which can be sent now
+     */
+    public synchronized double getBudget() {
+        return budget;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Hedging: %d endpoints, budget %.1f", endpoints.size(), getBudget());
+    }
+
+    private synchronized void deposit() {
+        budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+    }
+
+    private synchronized boolean withdraw() {
+        if (budget < 1) {
+            metrics.increment(CrawlMetrics.RETRY_BUDGET_EXHAUSTED);
+            return false;
+        }
+        budget--;
+        return true;
+    }
+
+    /**
+     * The requests of one endpoint are alike: the same host and the same path but for the numbers in it,
+     * e.g. /cache/20/en/en/#/single-pre-event.json, the query is left out
+     */
+    private Endpoint endpoint(Request request) {
+        String host = request.getUri().getHost();
+        String path = request.getUri().getPath();
+        StringBuilder key = new StringBuilder(host.length() + path.length()).append(host);
+        int segmentStart = key.length();
+        boolean digits = false;
+        for (int i = 0; i <= path.length(); i++) {
+            char c = i < path.length() ? path.charAt(i) : '/';
+            if (c == '/') {
+                if (digits) {
+                    key.setLength(segmentStart);
+                    key.append('#');
+                }
+                if (i < path.length()) {
+                    key.append('/');
+                }
+                segmentStart = key.length();
+                digits = false;
+            } else {
+                digits |= c >= '0' && c <= '9';
+                key.append(c);
+            }
+        }
+        Endpoint endpoint = endpoints.get(key.toString());
+        if (endpoint != null) {
+            return endpoint;
+        }
+        String name = endpoints.size() < MAX_ENDPOINTS ? key.toString() : host + "/*";
+        return endpoints.computeIfAbsent(name, ignored -> new Endpoint());
+    }
+
+    private long backoff(int retry) {
+        long delay = Math.min(maxBackoffNanos, backoffNanos << Math.min(retry - 1, 30));
+        //Half of the delay is fixed, the other half random, so the retries of many requests spread out
+        return delay / 2 + (long) (ThreadLocalRandom.current().nextDouble() * (delay - delay / 2));
+    }
+
+    private static boolean isOverloaded(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Time to the first byte of the requests of one endpoint
+     */
+    private class Endpoint {
+        private final LatencyHistogram firstByte = new LatencyHistogram();
+        private final AtomicLong count = new AtomicLong();
+        //0 until the endpoint has enough responses
+        private volatile long hedgeDelayNanos;
+
+        void record(long nanos) {
+            firstByte.recordNanos(nanos);
+            long recorded = count.incrementAndGet();
+            if (recorded >= minSamples && (recorded == minSamples || recorded % DELAY_REFRESH == 0)) {
+                hedgeDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(1, firstByte.percentile(hedgePercentile)));
+            }
+        }
+    }
+
+    /**
+     * One request of the caller with all the times it is sent
+     * @param <T>
+     */
+    private class Call<T> {
+        private final Request request;
+        private final ResponseHandler<T> handler;
+        private final int priority;
+        private final Endpoint endpoint;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile Attempt<T> first;
+        //Guarded by this
+        private final List<Attempt<T>> inFlight = new ArrayList<>(2);
+        private Attempt<T> winner;
+        private int retries;
+        private boolean hedged;
+        private boolean finished;
+
+        private Call(Request request, ResponseHandler<T> handler, int priority, Endpoint endpoint) {
+            this.request = request;
+            this.handler = handler;
+            this.priority = priority;
+            this.endpoint = endpoint;
+        }
+
+        void send(boolean hedge) {
+            Attempt<T> attempt = new Attempt<>(this, hedge);
+            synchronized (this) {
+                if (finished || winner != null) {
+                    return;
+                }
+                inFlight.add(attempt);
+                if (first == null) {
+                    first = attempt;
+                }
+            }
+            CompletableFuture<T> response;
+            try {
+                //A hedge or a retry goes before the waiting requests of the same priority, its caller waits longest
+                response = delegate.fetch(request, attempt, attempt == first ? priority : priority + 1);
+            } catch (RuntimeException e) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+            boolean cancel;
+            synchronized (this) {
+                attempt.response = response;
+                cancel = attempt.cancelled;
+            }
+            if (cancel) {
+                response.cancel(true);
+            }
+            response.whenComplete((value, e) -> completed(attempt, value, e));
+        }
+
+        /**
+         * Starts the hedge timer when the limiter sends the attempt, not while it waits in the queue
+         */
+        void sent(Attempt<T> attempt) {
+            long hedgeDelay = endpoint.hedgeDelayNanos;
+            if (!attempt.hedge && hedgeDelay > 0) {
+                scheduler.schedule(this::hedge, hedgeDelay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Sends the request once more if it is still waiting for the headers
+         */
+        private void hedge() {
+            synchronized (this) {
+                if (finished || winner != null || hedged || inFlight.isEmpty() || !withdraw()) {
+                    return;
+                }
+                hedged = true;
+            }
+            metrics.increment(CrawlMetrics.HEDGED_REQUESTS);
+            send(true);
+        }
+
+        /**
+         * @return false if another attempt has won or the response is thrown away for a retry
+         */
+        boolean onHeaders(Attempt<T> attempt, int statusCode) {
+            List<Attempt<T>> losers;
+            synchronized (this) {
+                if (winner != null || finished) {
+                    return false;
+                }
+                if (isOverloaded(statusCode) && (inFlight.size() > 1 || retries < maxRetries && withdraw())) {
+                    //Another attempt can still make it, or this one is sent again, see completed
+                    attempt.retryable = inFlight.size() == 1;
+                    return false;
+                }
+                winner = attempt;
+                losers = new ArrayList<>(inFlight);
+                losers.remove(attempt);
+                for (Attempt<T> loser : losers) {
+                    loser.cancelled = true;
+                }
+            }
+            for (Attempt<T> loser : losers) {
+                if (loser.response != null) {
+                    loser.response.cancel(true);
+                }
+            }
+            endpoint.record(System.nanoTime() - attempt.sentAt);
+            if (attempt.hedge) {
+                metrics.increment(CrawlMetrics.HEDGE_WINS);
+            }
+            return true;
+        }
+
+        private void completed(Attempt<T> attempt, T value, Throwable e) {
+            boolean retry;
+            synchronized (this) {
+                inFlight.remove(attempt);
+                if (attempt == winner) {
+                    finished = true;
+                    retry = false;
+                } else {
+                    if (finished || winner != null || !inFlight.isEmpty()) {
+                        //The loser is cancelled or the other attempt is still on its way
+                        return;
+                    }
+                    retry = attempt.retryable || retries < maxRetries && withdraw();
+                    if (retry) {
+                        retries++;
+                    } else {
+                        finished = true;
+                    }
+                }
+            }
+            if (attempt == winner) {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(value);
+                }
+            } else if (retry) {
+                metrics.increment(CrawlMetrics.RETRIED_REQUESTS);
+                scheduler.schedule(() -> send(false), backoff(retries), TimeUnit.NANOSECONDS);
+            } else {
+                Throwable failure = e != null && !(e instanceof CancellationException) ? e
+                        : new IOException("Request failed after " + retries + " retries: " + request.getUrl());
+                handler.onThrowable(failure);
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * One time the request is sent, passes the response on only if it wins
+     * @param <T>
+     */
+    private static class Attempt<T> implements ResponseHandler<T> {
+        private final HedgingHttpFetcher.Call<T> call;
+        private final boolean hedge;
+        private volatile long sentAt = System.nanoTime();
+        //Guarded by the call
+        private CompletableFuture<T> response;
+        private boolean cancelled;
+        private boolean retryable;
+        //Only touched by the calls of this attempt, which come one at a time
+        private boolean won;
+
+        private Attempt(HedgingHttpFetcher.Call<T> call, boolean hedge) {
+            this.call = call;
+            this.hedge = hedge;
+        }
+
+        @Override
+        public void onSent() {
+            sentAt = System.nanoTime();
+            call.sent(this);
+        }
+
+        @Override
+        public void onConnecting() {
+            //The connection of the first attempt only, the handler expects the events of one request
+            if (call.first == this) {
+                call.handler.onConnecting();
+            }
+        }
+
+        @Override
+        public void onConnected() {
+            if (call.first == this) {
+                call.handler.onConnected();
+            }
+        }
+
+        @Override
+        public boolean onHeaders(int statusCode, HttpHeaders headers) {
+            won = call.onHeaders(this, statusCode);
+            return won && call.handler.onHeaders(statusCode, headers);
+        }
+
+        @Override
+        public void onBodyPart(ByteBuffer bytes) {
+            if (won) {
+                call.handler.onBodyPart(bytes);
+            }
+        }
+
+        @Override
+        public T onCompleted() {
+            return won ? call.handler.onCompleted() : null;
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            if (won) {
+                call.handler.onThrowable(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the next request to one host can be sent without blocking the caller
+ * <p>
+ * The concurrency limit follows AIMD: every request which completes in time adds 1/limit,
+ * an error or a 429/5xx response cuts it by half, the recent latency growing over twice
+ * the usual one cuts it by a tenth, at most once per round trip. A token bucket keeps the request rate
+ * under the ceiling. Requests over the limit wait in a bounded queue, the ones over
+ * the queue size fail right away. The waiting requests with a higher priority go first,
+ * the ones with the same priority in the order they came.
+ */
+public class HostLimiter {
+    private static final double ERROR_BACKOFF = 0.5;
+    private static final double LATENCY_BACKOFF = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    //The short average follows the last requests, the long one is the usual latency of the host
+    private static final double LATENCY_SMOOTHING = 0.1;
+    private static final double BASELINE_SMOOTHING = 0.01;
+
+    private final String host;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double ratePerSecond;
+    private final double burst;
+    private final int maxQueued;
+    private final ScheduledExecutorService scheduler;
+    private final PriorityQueue<Waiting> queue = new PriorityQueue<>(Comparator
+            .comparingInt((Waiting waiting) -> -waiting.priority).thenComparingLong(waiting -> waiting.sequence));
+
+    //Guarded by this
+    private double limit;
+    private int inFlight;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private boolean wakeUpScheduled;
+    private double smoothedLatencyNanos;
+    private double baselineLatencyNanos;
+    private long decreasedAt = System.nanoTime();
+    private long completedCount;
+    private long overloadCount;
+    private long rejectedCount;
+    private long queuedCount;
+
+    /**
+     * @param host
+     * @param initialLimit requests in flight to start with
+     * @param maxLimit the limit never grows over it
+     * @param ratePerSecond ceiling of the request rate, 0 for no ceiling
+     * @param maxQueued how many requests can wait
+     * @param scheduler wakes the queue up when a token is due
+     */
+    public HostLimiter(String host, int initialLimit, int maxLimit, double ratePerSecond, int maxQueued,
+                       ScheduledExecutorService scheduler) {
+        checkSettings(initialLimit, maxLimit, ratePerSecond, maxQueued);
+        this.host = host;
+        this.minLimit = 1;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, ratePerSecond);
+        this.tokens = burst;
+        this.maxQueued = maxQueued;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return future completed with the permit when the request can be sent,
+     * failed with RejectedExecutionException when the queue is full
+     */
+    public CompletableFuture<Permit> acquire() {
+        return acquire(HttpFetcher.DEFAULT_PRIORITY);
+    }
+
+    /**
+     * @param priority the higher the sooner the request is sent when it has to wait
+     * @return future completed with the permit when the request can be sent,
+     * failed with RejectedExecutionException when the queue is full
+     */
+    public CompletableFuture<Permit> acquire(int priority) {
+        CompletableFuture<Permit> permit = new CompletableFuture<>();
+        synchronized (this) {
+            if (queue.size() >= maxQueued) {
+                rejectedCount++;
+                permit.completeExceptionally(new RejectedExecutionException("Too many requests are waiting for " + host));
+                return permit;
+            }
+            queue.add(new Waiting(permit, priority, queuedCount++));
+        }
+        drain();
+        return permit;
+    }
+
+    static void checkSettings(int initialLimit, int maxLimit, double ratePerSecond, int maxQueued) {
+        if (maxLimit < 1 || initialLimit < 1 || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must be 1 <= initial <= max: " + initialLimit + ", " + maxLimit);
+        }
+        if (ratePerSecond < 0 || maxQueued < 0) {
+            throw new IllegalArgumentException("Rate and queue size can not be negative: " + ratePerSecond + ", " + maxQueued);
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return how many requests failed or got 429/5xx
+     */
+    public synchronized long getOverloadCount() {
+        return overloadCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public synchronized double getLatencyMillis() {
+        return smoothedLatencyNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: limit %d, in flight %d, queued %d, completed %d, overloaded %d, rejected %d, latency %.0f ms",
+                host, (int) limit, inFlight, queue.size(), completedCount, overloadCount, rejectedCount,
+                smoothedLatencyNanos / 1_000_000);
+    }
+
+    /**
+     * Sends the waiting requests while the limit and the tokens allow
+     */
+    private void drain() {
+        List<CompletableFuture<Permit>> ready = null;
+        long now;
+        synchronized (this) {
+            now = System.nanoTime();
+            refill(now);
+            while (!queue.isEmpty() && inFlight < (int) limit) {
+                if (queue.peek().permit.isDone()) {
+                    //Cancelled while it waited, it takes no slot and no token
+                    queue.poll();
+                    continue;
+                }
+                if (ratePerSecond > 0 && tokens < 1) {
+                    scheduleWakeUp((long) ((1 - tokens) / ratePerSecond * 1_000_000_000L) + 1);
+                    break;
+                }
+                tokens--;
+                inFlight++;
+                if (ready == null) {
+                    ready = new ArrayList<>();
+                }
+                ready.add(queue.poll().permit);
+            }
+        }
+        if (ready != null) {
+            //The requests are sent outside of the lock
+            for (CompletableFuture<Permit> waiting : ready) {
+                Permit permit = new Permit(now);
+                if (!waiting.complete(permit)) {
+                    permit.cancel();
+                }
+            }
+        }
+    }
+
+    private void refill(long now) {
+        if (ratePerSecond > 0) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerSecond / 1_000_000_000L);
+        }
+        refilledAt = now;
+    }
+
+    private void scheduleWakeUp(long delayNanos) {
+        if (!wakeUpScheduled) {
+            wakeUpScheduled = true;
+            scheduler.schedule(() -> {
+                synchronized (this) {
+                    wakeUpScheduled = false;
+                }
+                drain();
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void release(long startedAt, boolean overloaded) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            inFlight--;
+            completedCount++;
+            long latency = now - startedAt;
+            if (smoothedLatencyNanos == 0) {
+                smoothedLatencyNanos = latency;
+                baselineLatencyNanos = latency;
+            } else {
+                smoothedLatencyNanos += (latency - smoothedLatencyNanos) * LATENCY_SMOOTHING;
+                baselineLatencyNanos += (latency - baselineLatencyNanos) * BASELINE_SMOOTHING;
+            }
+            boolean slow = smoothedLatencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE;
+            if (overloaded) {
+                overloadCount++;
+            }
+            if (overloaded || slow) {
+                //Requests which were sent before the last decrease do not decrease it again
+                if (startedAt - decreasedAt >= 0) {
+                    limit = Math.max(minLimit, limit * (overloaded ? ERROR_BACKOFF : LATENCY_BACKOFF));
+                    decreasedAt = now;
+                }
+            } else if (inFlight + 1 >= (int) limit) {
+                //Only grow when the limit is actually used
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+        drain();
+    }
+
+    private void releaseUnused() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    /**
+     * A request in the queue
+     */
+    private static class Waiting {
+        private final CompletableFuture<Permit> permit;
+        private final int priority;
+        private final long sequence;
+
+        private Waiting(CompletableFuture<Permit> permit, int priority, long sequence) {
+            this.permit = permit;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Slot of one request, released exactly once when the response is complete
+     */
+    public class Permit {
+        private final long startedAt;
+        private boolean released;
+
+        private Permit(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        /**
+         * @param overloaded true when the request failed or the host answered it is overloaded
+         */
+        public void release(boolean overloaded) {
+            if (markReleased()) {
+                HostLimiter.this.release(startedAt, overloaded);
+            }
+        }
+
+        /**
+         * Gives the slot back without counting the request, e.g. when it was never sent
+         */
+        public void cancel() {
+            if (markReleased()) {
+                releaseUnused();
+            }
+        }
+
+        private synchronized boolean markReleased() {
+            if (released) {
+                return false;
+            }
+            released = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.insticore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recorded http responses in one append-only file, e.g. of a whole crawl, served again by ReplayServer
+ * Every record is its lengths, a header with the url, status and content type, then the body as it came.
+ * The index of the url to its latest record is built when the file is opened by reading only the headers,
+ * a record which is cut short by a crash is dropped and written over
+ */
+public class HttpArchive implements Closeable {
+    private static final int MAGIC = 0x48415243; // "HARC"
+    private static final int VERSION = 1;
+    private static final int RECORD_MAGIC = 0x52454331; // "REC1"
+    //Magic, header length and body length before every record
+    private static final int RECORD_PREFIX_LENGTH = 12;
+
+    private final Logger logger = LoggerFactory.getLogger(HttpArchive.class);
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private long size;
+    private long recordCount;
+
+    private HttpArchive(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * @param file created if missing, the records are appended to the ones in it
+     * @return the archive with the index of the records in the file
+     * @throws IOException if the file can not be read or is not an archive
+     */
+    public static HttpArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        HttpArchive archive = new HttpArchive(file, channel);
+        try {
+            archive.readIndex();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return archive;
+    }
+
+    /**
+     * Appends the response, it is the one found for its url from now on
+     * @param method
+     * @param url
+     * @param statusCode
+     * @param contentType null if the response has none
+     * @param body
+     * @throws IOException if the record can not be written
+     */
+    public synchronized void append(String method, String url, int statusCode, String contentType, byte[] body)
+            throws IOException {
+        long timestamp = System.currentTimeMillis();
+        byte[] header = header(timestamp, method, url, statusCode, contentType);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_PREFIX_LENGTH + header.length + body.length);
+        record.putInt(RECORD_MAGIC).putInt(header.length).putInt(body.length).put(header).put(body);
+        record.flip();
+        long position = size;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        long bodyOffset = size + RECORD_PREFIX_LENGTH + header.length;
+        records.put(url, new Record(timestamp, method, url, statusCode, contentType, bodyOffset, body.length));
+        size = position;
+        recordCount++;
+    }
+
+    /**
+     * @param url
+     * @return the latest record of the url or null
+     */
+    public Record find(String url) {
+        return records.get(url);
+    }
+
+    /**
+     * @return the latest record of every url
+     */
+    public Collection<Record> getRecords() {
+        return new ArrayList<>(records.values());
+    }
+
+    /**
+     * Reads the body from the file, safe to call from many threads at once
+     * @param record of this archive
+     * @return
+     * @throws IOException
+     */
+    public byte[] readBody(Record record) throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(record.bodyLength);
+        long position = record.bodyOffset;
+        while (body.hasRemaining()) {
+            int read = channel.read(body, position);
+            if (read < 0) {
+                throw new EOFException("Body of " + record.url + " is cut short in " + file);
+            }
+            position += read;
+        }
+        return body.array();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return how many records the file has, older records of the same url included
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Writes the appended records to the disk
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Http archive %s: %d records of %d urls, %d bytes", file, recordCount, records.size(), size);
+    }
+
+    private void readIndex() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize == 0) {
+            ByteBuffer start = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+            start.flip();
+            while (start.hasRemaining()) {
+                channel.write(start, start.position());
+            }
+            size = 8;
+            return;
+        }
+        ByteBuffer start = ByteBuffer.allocate(8);
+        if (read(start, 0) < 8 || start.getInt(0) != MAGIC) {
+            throw new IOException("Not an http archive: " + file);
+        }
+        if (start.getInt(4) != VERSION) {
+            throw new IOException("Unknown http archive version " + start.getInt(4) + ": " + file);
+        }
+        long position = 8;
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_LENGTH);
+        while (position < fileSize) {
+            prefix.clear();
+            if (read(prefix, position) < RECORD_PREFIX_LENGTH || prefix.getInt(0) != RECORD_MAGIC) {
+                break;
+            }
+            int headerLength = prefix.getInt(4);
+            int bodyLength = prefix.getInt(8);
+            long bodyOffset = position + RECORD_PREFIX_LENGTH + headerLength;
+            if (headerLength < 0 || bodyLength < 0 || bodyOffset + bodyLength > fileSize) {
+                break;
+            }
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            read(header, position + RECORD_PREFIX_LENGTH);
+            Record record = parseHeader(header.array(), bodyOffset, bodyLength);
+            records.put(record.url, record);
+            recordCount++;
+            position = bodyOffset + bodyLength;
+        }
+        if (position < fileSize) {
+            logger.warn("Http archive " + file + " is cut short at " + position + " of " + fileSize
+                    + " bytes, the rest is written over");
+            channel.truncate(position);
+        }
+        size = position;
+    }
+
+    /**
+     * @return how many bytes are read until the buffer is full or the file ends
+     */
+    private int read(ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static byte[] header(long timestamp, String method, String url, int statusCode, String contentType) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            data.writeLong(timestamp);
+            data.writeUTF(method);
+            data.writeUTF(url);
+            data.writeInt(statusCode);
+            data.writeUTF(contentType != null ? contentType : "");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Record parseHeader(byte[] header, long bodyOffset, int bodyLength) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(header));
+        long timestamp = data.readLong();
+        String method = data.readUTF();
+        String url = data.readUTF();
+        int statusCode = data.readInt();
+        String contentType = data.readUTF();
+        return new Record(timestamp, method, url, statusCode, contentType.isEmpty() ? null : contentType,
+                bodyOffset, bodyLength);
+    }
+
+    /**
+     * Where one response is in the file
+     */
+    public static class Record {
+        private final long timestamp;
+        private final String method;
+        private final String url;
+        private final int statusCode;
+        private final String contentType;
+        private final long bodyOffset;
+        private final int bodyLength;
+
+        private Record(long timestamp, String method, String url, int statusCode, String contentType,
+                       long bodyOffset, int bodyLength) {
+            this.timestamp = timestamp;
+            this.method = method;
+            this.url = url;
+            this.statusCode = statusCode;
+            this.contentType = contentType;
+            this.bodyOffset = bodyOffset;
+            this.bodyLength = bodyLength;
+        }
+
+        /**
+         * @return epoch millis when the response is recorded
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return content type or null
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        public int getBodyLength() {
+            return bodyLength;
+        }
+    }
+}
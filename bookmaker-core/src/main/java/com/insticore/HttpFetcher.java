@@ -0,0 +1,34 @@
+package com.insticore;
+
+import org.asynchttpclient.Request;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the requests of the parsers, the implementations can be stacked, e.g. a cache over the http client
+ */
+public interface HttpFetcher {
+    int DEFAULT_PRIORITY = 0;
+
+    /**
+     * Sends the request without blocking the calling thread
+     * @param request
+     * @param handler
+     * @param <T>
+     * @return future with the result of the handler
+     */
+    <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler);
+
+    /**
+     * Sends the request before the waiting ones with a lower priority, only the fetchers which queue
+     * the requests make a difference, the others pass the priority on
+     * @param request
+     * @param handler
+     * @param priority the higher the sooner, e.g. the depth of the page in the crawl
+     * @param <T>
+     * @return future with the result of the handler
+     */
+    default <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler, int priority) {
+        return fetch(request, handler);
+    }
+}
@@ -0,0 +1,116 @@
+package com.insticore;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import org.asynchttpclient.Request;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Records the connect, first byte and download latencies, the bytes and the failures of every request
+ * Meant to be right over the http client, so the time in the limiter queue is not counted
+ */
+public class InstrumentedHttpFetcher implements HttpFetcher {
+    private final HttpFetcher delegate;
+    private final CrawlMetrics metrics;
+
+    /**
+     * @param delegate
+     * @param metrics
+     */
+    public InstrumentedHttpFetcher(HttpFetcher delegate, CrawlMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler) {
+        String host = request.getUri().getHost();
+        metrics.requestStarted(host);
+        try {
+            return delegate.fetch(request, new TimingHandler<>(host, handler));
+        } catch (RuntimeException e) {
+            metrics.requestFinished(host);
+            metrics.increment(CrawlMetrics.FAILED_REQUESTS);
+            throw e;
+        }
+    }
+
+    /**
+     * The calls come one at a time, so the plain fields are enough
+     * @param <T>
+     */
+    private class TimingHandler<T> implements ResponseHandler<T> {
+        private final String host;
+        private final ResponseHandler<T> handler;
+        private final long sentAt = System.nanoTime();
+        private long connectingAt;
+        private long headersAt;
+        private boolean finished;
+
+        private TimingHandler(String host, ResponseHandler<T> handler) {
+            this.host = host;
+            this.handler = handler;
+        }
+
+        @Override
+        public void onConnecting() {
+            connectingAt = System.nanoTime();
+            handler.onConnecting();
+        }
+
+        @Override
+        public void onConnected() {
+            if (connectingAt != 0) {
+                metrics.record(host, CrawlMetrics.Stage.CONNECT, System.nanoTime() - connectingAt);
+            }
+            handler.onConnected();
+        }
+
+        @Override
+        public boolean onHeaders(int statusCode, HttpHeaders headers) {
+            headersAt = System.nanoTime();
+            metrics.record(host, CrawlMetrics.Stage.FIRST_BYTE, headersAt - sentAt);
+            if (statusCode >= 400) {
+                metrics.increment(CrawlMetrics.HTTP_ERRORS);
+            }
+            return handler.onHeaders(statusCode, headers);
+        }
+
+        @Override
+        public void onBodyPart(ByteBuffer bytes) {
+            metrics.bytesReceived(host, bytes.remaining());
+            handler.onBodyPart(bytes);
+        }
+
+        @Override
+        public T onCompleted() {
+            try {
+                return handler.onCompleted();
+            } finally {
+                if (headersAt != 0) {
+                    metrics.record(host, CrawlMetrics.Stage.DOWNLOAD, System.nanoTime() - headersAt);
+                }
+                finish();
+            }
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            //A cancelled request did not fail, e.g. the loser of a hedged pair
+            if (!(t instanceof CancellationException)) {
+                metrics.increment(CrawlMetrics.FAILED_REQUESTS);
+            }
+            finish();
+            handler.onThrowable(t);
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                metrics.requestFinished(host);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.insticore;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import org.asynchttpclient.Request;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * Sends the requests through the limiter of their host, see HostLimiter
+ */
+public class LimitingHttpFetcher implements HttpFetcher {
+    public static final int DEFAULT_INITIAL_LIMIT = 8;
+    public static final int DEFAULT_MAX_LIMIT = 64;
+    public static final double DEFAULT_RATE_PER_SECOND = 100;
+    public static final int DEFAULT_MAX_QUEUED = 50_000;
+    /**
+     * System property which overrides the default rate ceiling, e.g. 0 against a local stub server
+     */
+    public static final String RATE_PROPERTY = "limiter.ratePerSecond";
+
+    private final HttpFetcher delegate;
+    private final int initialLimit;
+    private final int maxLimit;
+    private final double ratePerSecond;
+    private final int maxQueued;
+    private final ConcurrentHashMap<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public LimitingHttpFetcher(HttpFetcher delegate) {
+        this(delegate, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * @param delegate
+     * @param maxLimit how many requests can be in flight to one host at most
+     */
+    public LimitingHttpFetcher(HttpFetcher delegate, int maxLimit) {
+        this(delegate, maxLimit, newScheduler());
+    }
+
+    /**
+     * @param delegate
+     * @param maxLimit how many requests can be in flight to one host at most
+     * @param scheduler releases the delayed requests, it can be shared with the other fetchers
+     */
+    public LimitingHttpFetcher(HttpFetcher delegate, int maxLimit, ScheduledExecutorService scheduler) {
+        this(delegate, Math.min(DEFAULT_INITIAL_LIMIT, maxLimit), maxLimit,
+                Double.parseDouble(System.getProperty(RATE_PROPERTY, String.valueOf(DEFAULT_RATE_PER_SECOND))),
+                DEFAULT_MAX_QUEUED, scheduler);
+    }
+
+    /**
+     * @param delegate
+     * @param initialLimit requests in flight to one host to start with
+     * @param maxLimit how many requests can be in flight to one host at most
+     * @param ratePerSecond ceiling of the request rate to one host, 0 for no ceiling
+     * @param maxQueued how many requests can wait for one host
+     */
+    public LimitingHttpFetcher(HttpFetcher delegate, int initialLimit, int maxLimit, double ratePerSecond, int maxQueued) {
+        this(delegate, initialLimit, maxLimit, ratePerSecond, maxQueued, newScheduler());
+    }
+
+    /**
+     * @param delegate
+     * @param initialLimit requests in flight to one host to start with
+     * @param maxLimit how many requests can be in flight to one host at most
+     * @param ratePerSecond ceiling of the request rate to one host, 0 for no ceiling
+     * @param maxQueued how many requests can wait for one host
+     * @param scheduler releases the delayed requests, it can be shared with the other fetchers
+     */
+    public LimitingHttpFetcher(HttpFetcher delegate, int initialLimit, int maxLimit, double ratePerSecond, int maxQueued,
+                               ScheduledExecutorService scheduler) {
+        HostLimiter.checkSettings(initialLimit, maxLimit, ratePerSecond, maxQueued);
+        this.delegate = delegate;
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.ratePerSecond = ratePerSecond;
+        this.maxQueued = maxQueued;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler) {
+        return fetch(request, handler, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * The requests which wait for their host are sent in the order of their priority, then in the order they came.
+     * Cancelling the returned future takes the request out of the queue or aborts it, the limiter does not count it
+     */
+    @Override
+    public <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler, int priority) {
+        HostLimiter limiter = limiters.computeIfAbsent(request.getUri().getHost(),
+                host -> new HostLimiter(host, initialLimit, maxLimit, ratePerSecond, maxQueued, scheduler));
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<HostLimiter.Permit> waiting = limiter.acquire(priority);
+        waiting.whenComplete((permit, rejected) -> {
+            if (rejected != null) {
+                result.completeExceptionally(rejected);
+                return;
+            }
+            if (result.isDone()) {
+                permit.cancel();
+                return;
+            }
+            StatusHandler<T> statusHandler = new StatusHandler<>(handler);
+            CompletableFuture<T> response;
+            try {
+                handler.onSent();
+                response = delegate.fetch(request, statusHandler);
+            } catch (RuntimeException e) {
+                permit.release(true);
+                result.completeExceptionally(e);
+                return;
+            }
+            response.whenComplete((value, e) -> {
+                if (e instanceof CancellationException) {
+                    permit.cancel();
+                    result.cancel(false);
+                    return;
+                }
+                permit.release(e != null || isOverloaded(statusHandler.statusCode));
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(value);
+                }
+            });
+            result.whenComplete((value, e) -> {
+                if (e instanceof CancellationException) {
+                    response.cancel(true);
+                }
+            });
+        });
+        result.whenComplete((value, e) -> {
+            if (e instanceof CancellationException) {
+                waiting.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the limiters of all hosts which got requests
+     */
+    public Collection<HostLimiter> getHostLimiters() {
+        return Collections.unmodifiableCollection(limiters.values());
+    }
+
+    @Override
+    public String toString() {
+        return limiters.values().stream().map(HostLimiter::toString)
+                .collect(Collectors.joining("; ", "Host limits: ", ""));
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "host-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static boolean isOverloaded(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Remembers the status of the response for the limiter
+     * @param <T>
+     */
+    private static class StatusHandler<T> implements ResponseHandler<T> {
+        private final ResponseHandler<T> handler;
+        private volatile int statusCode;
+
+        private StatusHandler(ResponseHandler<T> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onConnecting() {
+            handler.onConnecting();
+        }
+
+        @Override
+        public void onConnected() {
+            handler.onConnected();
+        }
+
+        @Override
+        public boolean onHeaders(int statusCode, HttpHeaders headers) {
+            this.statusCode = statusCode;
+            return handler.onHeaders(statusCode, headers);
+        }
+
+        @Override
+        public void onBodyPart(ByteBuffer bytes) {
+            handler.onBodyPart(bytes);
+        }
+
+        @Override
+        public T onCompleted() {
+            return handler.onCompleted();
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            handler.onThrowable(t);
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The latest odds of every event of every bookmaker, updated event by event while the sweeps run
+ * <p>
+ * An event is kept as an immutable record which is replaced as a whole when the event comes again, so the readers
+ * take no lock and always see whole events. The records are found through the indexes by the sport, the tournament,
+ * the market name and the market filter id, every one ordered by the start time, and through the index of all events
+ * by the start time. The writer adds the index entries of a new record before the record and removes the stale ones
+ * after it, a reader skips the entries which do not lead to the current record of their event.
+ * The names are matched ignoring the case, e.g. sport=football finds the Football events
+ */
+public class LiveOddsStore {
+    public static final int DEFAULT_LIMIT = 1000;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, EventOdds>> bookmakers = new ConcurrentHashMap<>();
+    private final NavigableSet<Slot> all = new ConcurrentSkipListSet<>();
+    private final Index<String> sports = new Index<>();
+    private final Index<String> tournaments = new Index<>();
+    private final Index<String> marketNames = new Index<>();
+    private final Index<Integer> marketIds = new Index<>();
+    private final AtomicLong sweeps = new AtomicLong();
+    //Start time changes, a query which runs during one can meet an event twice
+    private final AtomicLong moves = new AtomicLong();
+
+    /**
+     * @return sink which keeps the store up to date, one for every sweep which runs at the same time
+     */
+    public OddsSink newSink() {
+        return new LiveOddsWriter(this, null);
+    }
+
+    /**
+     * @param next gets everything the sink gets, e.g. a DeltaOddsSink
+     * @return sink which keeps the store up to date before passing the odds on
+     */
+    public OddsSink newSink(OddsSink next) {
+        return new LiveOddsWriter(this, next);
+    }
+
+    /**
+     * @param query
+     * @return the current records of the matching events by the start time, with the matching markets only
+     * if the query has a market
+     */
+    public List<EventOdds> find(Query query) {
+        long movesBefore = moves.get();
+        NavigableSet<Slot> slots;
+        if (query.tournament != null) {
+            slots = tournaments.get(key(query.tournament));
+        } else if (query.marketId != Market.NO_ID) {
+            slots = marketIds.get(query.marketId);
+        } else if (query.market != null) {
+            slots = marketNames.get(key(query.market));
+        } else if (query.sport != null) {
+            slots = sports.get(key(query.sport));
+        } else {
+            slots = all;
+        }
+        List<EventOdds> found = new ArrayList<>();
+        if (slots == null || query.from >= query.to) {
+            return found;
+        }
+        for (Slot slot : slots.subSet(new Slot(query.from, "", ""), true, new Slot(query.to, "", ""), false)) {
+            Map<String, EventOdds> events = bookmakers.get(slot.bookmaker);
+            EventOdds record = events != null ? events.get(slot.id) : null;
+            if (record == null || !record.slot.equals(slot) || !query.matches(record)) {
+                continue;
+            }
+            EventOdds selected = query.select(record);
+            if (selected != null) {
+                found.add(selected);
+                if (found.size() == query.limit) {
+                    break;
+                }
+            }
+        }
+        if (moves.get() != movesBefore) {
+            //The later record of an event which moved during the query is the newer one
+            Map<String, EventOdds> unique = new LinkedHashMap<>();
+            for (EventOdds record : found) {
+                unique.put(record.bookmaker + '\n' + record.getId(), record);
+            }
+            found = new ArrayList<>(unique.values());
+        }
+        return found;
+    }
+
+    /**
+     * @param bookmaker
+     * @param id bookmaker id of the event
+     * @return the current record of the event or null
+     */
+    public EventOdds getEvent(String bookmaker, String id) {
+        Map<String, EventOdds> events = bookmakers.get(bookmaker);
+        return events != null ? events.get(id) : null;
+    }
+
+    /**
+     * @return how many events are kept
+     */
+    public int size() {
+        int size = 0;
+        for (Map<String, EventOdds> events : bookmakers.values()) {
+            size += events.size();
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "Live odds store: " + size() + " events, " + sports.size() + " sports, " + tournaments.size()
+                + " tournaments, " + marketNames.size() + " markets";
+    }
+
+    /**
+     * @return number of a new sweep, higher than all before
+     */
+    long nextSweep() {
+        return sweeps.incrementAndGet();
+    }
+
+    /**
+     * Replaces the record of the event, one writer per bookmaker at a time
+     */
+    void put(EventOdds record) {
+        ConcurrentMap<String, EventOdds> events = bookmakers.computeIfAbsent(record.bookmaker,
+                bookmaker -> new ConcurrentHashMap<>());
+        EventOdds old = events.get(record.getId());
+        index(record);
+        if (old != null && !old.slot.equals(record.slot)) {
+            //Before the new record can be seen, so a query which sees it sees the move as well
+            moves.incrementAndGet();
+        }
+        events.put(record.getId(), record);
+        if (old != null) {
+            unindex(old, record);
+        }
+    }
+
+    /**
+     * Removes the events of the bookmaker which are not seen since the given sweep
+     */
+    void removeOlder(String bookmaker, long sweep) {
+        Map<String, EventOdds> events = bookmakers.get(bookmaker);
+        if (events == null) {
+            return;
+        }
+        for (EventOdds record : events.values()) {
+            if (record.sweep < sweep && events.remove(record.getId(), record)) {
+                unindex(record, null);
+            }
+        }
+    }
+
+    /**
+     * Removes the event of the bookmaker, e.g. when it is not listed any more
+     */
+    void remove(String bookmaker, String id) {
+        Map<String, EventOdds> events = bookmakers.get(bookmaker);
+        EventOdds record = events != null ? events.remove(id) : null;
+        if (record != null) {
+            unindex(record, null);
+        }
+    }
+
+    private void index(EventOdds record) {
+        Slot slot = record.slot;
+        all.add(slot);
+        sports.add(key(record.sport), slot);
+        tournaments.add(key(record.tournament), slot);
+        for (MarketOdds market : record.markets) {
+            marketNames.add(key(market.getName()), slot);
+            if (market.getId() != Market.NO_ID) {
+                marketIds.add(market.getId(), slot);
+            }
+        }
+    }
+
+    /**
+     * Removes the index entries of the old record which the new one does not have
+     * @param old
+     * @param record null when the event is removed
+     */
+    private void unindex(EventOdds old, EventOdds record) {
+        Slot slot = old.slot;
+        if (record == null || !slot.equals(record.slot)) {
+            all.remove(slot);
+            sports.remove(key(old.sport), slot);
+            tournaments.remove(key(old.tournament), slot);
+            for (MarketOdds market : old.markets) {
+                marketNames.remove(key(market.getName()), slot);
+                marketIds.remove(market.getId(), slot);
+            }
+            return;
+        }
+        if (!key(old.sport).equals(key(record.sport))) {
+            sports.remove(key(old.sport), slot);
+        }
+        if (!key(old.tournament).equals(key(record.tournament))) {
+            tournaments.remove(key(old.tournament), slot);
+        }
+        Set<String> names = new HashSet<>();
+        Set<Integer> ids = new HashSet<>();
+        for (MarketOdds market : record.markets) {
+            names.add(key(market.getName()));
+            ids.add(market.getId());
+        }
+        for (MarketOdds market : old.markets) {
+            if (!names.contains(key(market.getName()))) {
+                marketNames.remove(key(market.getName()), slot);
+            }
+            if (!ids.contains(market.getId())) {
+                marketIds.remove(market.getId(), slot);
+            }
+        }
+    }
+
+    private static String key(String name) {
+        return name != null ? name.toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static boolean matches(String wanted, String name) {
+        return wanted == null || wanted.equalsIgnoreCase(name != null ? name : "");
+    }
+
+    /**
+     * What to look for, a null or NO_ID field matches everything
+     */
+    public static class Query {
+        private final String bookmaker;
+        private final String sport;
+        private final String tournament;
+        private final String market;
+        private final int marketId;
+        private final long from;
+        private final long to;
+        private final int limit;
+
+        /**
+         * @param bookmaker
+         * @param sport
+         * @param tournament
+         * @param market name of the market
+         * @param marketId filter id of the market or Market.NO_ID
+         * @param from the events which start from it on, in epoch millis
+         * @param to the events which start before it, in epoch millis
+         * @param limit how many events are found at most
+         */
+        public Query(String bookmaker, String sport, String tournament, String market, int marketId,
+                     long from, long to, int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit must be positive: " + limit);
+            }
+            this.bookmaker = bookmaker;
+            this.sport = sport;
+            this.tournament = tournament;
+            this.market = market;
+            this.marketId = marketId;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+        }
+
+        private boolean matches(EventOdds record) {
+            return (bookmaker == null || bookmaker.equals(record.bookmaker))
+                    && LiveOddsStore.matches(sport, record.sport)
+                    && LiveOddsStore.matches(tournament, record.tournament);
+        }
+
+        /**
+         * @return the record with the markets of the query only, null if it has none of them
+         */
+        private EventOdds select(EventOdds record) {
+            if (market == null && marketId == Market.NO_ID) {
+                return record;
+            }
+            List<MarketOdds> markets = new ArrayList<>(1);
+            for (MarketOdds odds : record.markets) {
+                if (LiveOddsStore.matches(market, odds.getName())
+                        && (marketId == Market.NO_ID || marketId == odds.getId())) {
+                    markets.add(odds);
+                }
+            }
+            return markets.isEmpty() ? null : new EventOdds(record, markets);
+        }
+    }
+
+    /**
+     * The odds of one event as the last sweep of its bookmaker gave them
+     */
+    public static class EventOdds {
+        private final String bookmaker;
+        private final String sport;
+        private final String tournament;
+        private final Event event;
+        private final List<MarketOdds> markets;
+        private final long sweep;
+        private final Slot slot;
+
+        EventOdds(String bookmaker, String sport, String tournament, Event event, List<MarketOdds> markets,
+                  long sweep) {
+            this.bookmaker = bookmaker;
+            this.sport = sport;
+            this.tournament = tournament;
+            this.event = event;
+            this.markets = Collections.unmodifiableList(markets);
+            this.sweep = sweep;
+            this.slot = new Slot(event.getStartTime(), bookmaker, event.getId());
+        }
+
+        /**
+         * Same event with other markets
+         */
+        private EventOdds(EventOdds record, List<MarketOdds> markets) {
+            this.bookmaker = record.bookmaker;
+            this.sport = record.sport;
+            this.tournament = record.tournament;
+            this.event = record.event;
+            this.markets = Collections.unmodifiableList(markets);
+            this.sweep = record.sweep;
+            this.slot = record.slot;
+        }
+
+        public String getBookmaker() {
+            return bookmaker;
+        }
+
+        public String getSport() {
+            return sport;
+        }
+
+        public String getTournament() {
+            return tournament;
+        }
+
+        public String getId() {
+            return event.getId();
+        }
+
+        public Event getEvent() {
+            return event;
+        }
+
+        public List<MarketOdds> getMarkets() {
+            return markets;
+        }
+
+        /**
+         * @return number of the sweep which gave the record, the higher the newer
+         */
+        public long getSweep() {
+            return sweep;
+        }
+    }
+
+    /**
+     * The odds of one market of an event
+     */
+    public static class MarketOdds {
+        private final Market market;
+        private final List<Odd> odds;
+
+        MarketOdds(Market market, List<Odd> odds) {
+            this.market = market;
+            this.odds = Collections.unmodifiableList(odds);
+        }
+
+        /**
+         * @return filter id of the market or Market.NO_ID
+         */
+        public int getId() {
+            return market.getId();
+        }
+
+        public String getName() {
+            return market.getName();
+        }
+
+        public List<Odd> getOdds() {
+            return odds;
+        }
+    }
+
+    /**
+     * Index entry of an event, ordered by the start time
+     */
+    private static final class Slot implements Comparable<Slot> {
+        private final long startTime;
+        private final String bookmaker;
+        private final String id;
+
+        Slot(long startTime, String bookmaker, String id) {
+            this.startTime = startTime;
+            this.bookmaker = bookmaker;
+            this.id = id != null ? id : "";
+        }
+
+        @Override
+        public int compareTo(Slot other) {
+            int order = Long.compare(startTime, other.startTime);
+            if (order == 0) {
+                order = bookmaker.compareTo(other.bookmaker);
+            }
+            return order != 0 ? order : id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Slot)) {
+                return false;
+            }
+            Slot other = (Slot) o;
+            return startTime == other.startTime && bookmaker.equals(other.bookmaker) && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(startTime) * 31 + bookmaker.hashCode()) * 31 + id.hashCode();
+        }
+    }
+
+    /**
+     * Events by a key, ordered by the start time, the emptied keys are kept for the next sweeps
+     */
+    private static final class Index<K> {
+        private final ConcurrentMap<K, NavigableSet<Slot>> slots = new ConcurrentHashMap<>();
+
+        NavigableSet<Slot> get(K key) {
+            return slots.get(key);
+        }
+
+        void add(K key, Slot slot) {
+            NavigableSet<Slot> keySlots = slots.get(key);
+            if (keySlots == null) {
+                keySlots = slots.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>());
+            }
+            keySlots.add(slot);
+        }
+
+        void remove(K key, Slot slot) {
+            NavigableSet<Slot> keySlots = slots.get(key);
+            if (keySlots != null) {
+                keySlots.remove(slot);
+            }
+        }
+
+        int size() {
+            return slots.size();
+        }
+    }
+}
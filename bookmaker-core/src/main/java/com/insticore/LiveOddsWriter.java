@@ -0,0 +1,129 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the live odds store up to date while a sweep runs: every event replaces its record as soon as its last odd
+ * has come, the events which the sweep did not give are removed when it ends
+ * A sweep which gave no event is taken for a failed one, e.g. its menu was not loaded, the known events are kept
+ * The odds which come before their event or market are ignored, like the events with no id
+ */
+public class LiveOddsWriter implements OddsSink {
+    private final LiveOddsStore store;
+    private final OddsSink next;
+    private String bookmaker;
+    private long sweep;
+    private int published;
+    private String sport;
+    private String tournament;
+    private Event event;
+    private List<LiveOddsStore.MarketOdds> markets;
+    private List<Odd> odds;
+
+    /**
+     * @param store
+     * @param next gets everything the sink gets or null
+     */
+    LiveOddsWriter(LiveOddsStore store, OddsSink next) {
+        this.store = store;
+        this.next = next;
+    }
+
+    @Override
+    public void begin(String bookmaker) {
+        this.bookmaker = bookmaker;
+        sweep = store.nextSweep();
+        published = 0;
+        sport = null;
+        tournament = null;
+        event = null;
+        odds = null;
+        if (next != null) {
+            next.begin(bookmaker);
+        }
+    }
+
+    @Override
+    public void sport(String name) {
+        publish();
+        sport = name;
+        tournament = null;
+        if (next != null) {
+            next.sport(name);
+        }
+    }
+
+    @Override
+    public void tournament(String name) {
+        publish();
+        tournament = name;
+        if (next != null) {
+            next.tournament(name);
+        }
+    }
+
+    @Override
+    public void event(Event event) {
+        publish();
+        if (event.getId() != null) {
+            this.event = event;
+            markets = new ArrayList<>();
+        }
+        odds = null;
+        if (next != null) {
+            next.event(event);
+        }
+    }
+
+    @Override
+    public void market(Market market) {
+        if (event != null) {
+            //The record is not seen before it is published, the list is filled until then
+            odds = new ArrayList<>();
+            markets.add(new LiveOddsStore.MarketOdds(market, odds));
+        }
+        if (next != null) {
+            next.market(market);
+        }
+    }
+
+    @Override
+    public void odd(Odd odd) {
+        if (odds != null) {
+            odds.add(odd);
+        }
+        if (next != null) {
+            next.odd(odd);
+        }
+    }
+
+    /**
+     * Publishes the last event and removes the ones which are gone, unless the sweep gave none
+     */
+    @Override
+    public void end() {
+        publish();
+        if (published > 0) {
+            store.removeOlder(bookmaker, sweep);
+        }
+        if (next != null) {
+            next.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return next != null ? next.toString() : store.toString();
+    }
+
+    private void publish() {
+        if (event != null) {
+            store.put(new LiveOddsStore.EventOdds(bookmaker, sport, tournament, event, markets, sweep));
+            published++;
+            event = null;
+            markets = null;
+            odds = null;
+        }
+    }
+}
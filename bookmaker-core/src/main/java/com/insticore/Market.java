@@ -0,0 +1,31 @@
+package com.insticore;
+
+/**
+ * Helper class to have the market info in one place
+ */
+public class Market {
+    /**
+     * Id of the markets which have only a title
+     */
+    public static final int NO_ID = 0;
+
+    private final int id;
+    private final String name;
+
+    /**
+     * @param id filter id of the market or NO_ID
+     * @param name null for the odds which are shown without a market title
+     */
+    public Market(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,79 @@
+package com.insticore;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns the names which repeat across the events, every name is kept once and referred to by its int id
+ * The ids are never reused, a name keeps its id for the life of the dictionary, so only the names from a small set
+ * belong here: the sports, the tournaments, the markets and the odds, not the event ids, names or dates
+ * Looking up a known name and reading a name by id do not allocate
+ */
+public class NameDictionary {
+    /**
+     * Id of a missing name
+     */
+    public static final int NO_NAME = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @param name
+     * @return id of the name, a new one for a name which is not known yet, NO_NAME for null
+     */
+    public int intern(String name) {
+        if (name == null) {
+            return NO_NAME;
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = name;
+            //The name must be readable by id before the id can be seen
+            names = current;
+            ids.put(name, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @param name
+     * @return id of the name or NO_NAME if it is not known, the name is not added
+     */
+    public int find(String name) {
+        if (name == null) {
+            return NO_NAME;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : NO_NAME;
+    }
+
+    /**
+     * @param id
+     * @return the name, null for NO_NAME
+     */
+    public String get(int id) {
+        return id == NO_NAME ? null : names[id];
+    }
+
+    /**
+     * @return how many names are known
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,116 @@
+package com.insticore;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Brings the team and sport names of all bookmakers to one form: Latin lower case letters and digits,
+ * words separated by single spaces, Cyrillic transliterated, accents and club prefixes like FC dropped
+ * e.g. "ФК Спартак Москва" and "Spartak  Moskva" both become "spartak moskva"
+ */
+public final class NameNormalizer {
+    //Transliteration of а to я, ё comes after я in the code table
+    private static final String[] CYRILLIC = {"a", "b", "v", "g", "d", "e", "zh", "z", "i", "y", "k", "l", "m", "n", "o",
+            "p", "r", "s", "t", "u", "f", "kh", "ts", "ch", "sh", "shch", "", "y", "", "e", "yu", "ya"};
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "fc", "fk", "sc", "sk", "cf", "ac", "afc", "bc", "bk", "hc", "hk", "club", "klub"));
+
+    private NameNormalizer() {
+    }
+
+    /**
+     * @param name
+     * @return the normalized name, empty for null
+     */
+    public static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        //Composed, so й and ё stay single letters
+        String composed = Normalizer.normalize(name, Normalizer.Form.NFC);
+        StringBuilder normalized = new StringBuilder(composed.length());
+        int wordStart = 0;
+        for (int i = 0; i <= composed.length(); i++) {
+            char c = i < composed.length() ? Character.toLowerCase(composed.charAt(i)) : ' ';
+            if (c >= 'а' && c <= 'я') {
+                normalized.append(CYRILLIC[c - 'а']);
+            } else if (c == 'ё') {
+                normalized.append('e');
+            } else if (c == 'і') {
+                normalized.append('i');
+            } else if (c < 128 ? Character.isLetterOrDigit(c) : Character.isLetter(c)) {
+                if (c < 128) {
+                    normalized.append(c);
+                } else {
+                    //Split an accented letter into the letter and the accent and drop the accent
+                    for (char part : Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).toCharArray()) {
+                        if (Character.isLetter(part)) {
+                            normalized.append(part);
+                        }
+                    }
+                }
+            } else if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            } else if (normalized.length() > wordStart) {
+                //End of a word, drop it if it is a stop word
+                if (STOP_WORDS.contains(normalized.substring(wordStart))) {
+                    normalized.setLength(wordStart);
+                } else {
+                    normalized.append(' ');
+                    wordStart = normalized.length();
+                }
+            }
+        }
+        //The trailing space of the last word
+        if (normalized.length() > 0 && normalized.charAt(normalized.length() - 1) == ' ') {
+            normalized.setLength(normalized.length() - 1);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Folds the spellings which the transliteration and the English names disagree on, e.g. "tska moskva" and
+     * "cska moscow" become "kska moskva" and "kska moskov", only for the comparison, not for the aliases
+     * @param normalized
+     * @return
+     */
+    public static String fold(String normalized) {
+        StringBuilder folded = new StringBuilder(normalized.length());
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            char next = i + 1 < normalized.length() ? normalized.charAt(i + 1) : ' ';
+            if (c == 't' && next == 's' || c == 'k' && next == 'h' || c == 'p' && next == 'h' || c == 'c' && next == 'k') {
+                //ts -> k, kh -> h, ph -> f, ck -> k
+                folded.append(c == 't' || c == 'c' ? 'k' : c == 'k' ? 'h' : 'f');
+                i++;
+                continue;
+            }
+            switch (c) {
+                case 'c':
+                case 'q':
+                    c = 'k';
+                    break;
+                case 'w':
+                    c = 'v';
+                    break;
+                case 'y':
+                case 'j':
+                    c = 'i';
+                    break;
+                case 'x':
+                    folded.append('k');
+                    c = 's';
+                    break;
+                default:
+                    break;
+            }
+            //Double letters once
+            if (folded.length() == 0 || folded.charAt(folded.length() - 1) != c) {
+                folded.append(c);
+            }
+        }
+        return folded.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package com.insticore;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The last complete sweep of every bookmaker, shared by all the bookmakers and their readers
+ * A sweep is filled by a writer and replaces the previous one of the bookmaker only when it ends,
+ * so a reader always sees whole sweeps
+ */
+public class OddsBook {
+    private final NameDictionary names;
+    private final ConcurrentMap<String, BookmakerOdds> books = new ConcurrentHashMap<>();
+
+    public OddsBook() {
+        this(new NameDictionary());
+    }
+
+    /**
+     * @param names dictionary of the sport, tournament, market and odd names
+     */
+    public OddsBook(NameDictionary names) {
+        this.names = names;
+    }
+
+    /**
+     * @return sink which fills the book, one for every sweep which runs at the same time
+     */
+    public OddsBookWriter newWriter() {
+        return new OddsBookWriter(this);
+    }
+
+    /**
+     * @param bookmaker
+     * @return the last complete sweep of the bookmaker or null
+     */
+    public BookmakerOdds getOdds(String bookmaker) {
+        return books.get(bookmaker);
+    }
+
+    public Set<String> getBookmakers() {
+        return books.keySet();
+    }
+
+    public NameDictionary getNames() {
+        return names;
+    }
+
+    void publish(BookmakerOdds odds) {
+        books.put(odds.getBookmaker(), odds);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("Odds book: ").append(names.size()).append(" names");
+        for (BookmakerOdds odds : books.values()) {
+            text.append("; ").append(odds);
+        }
+        return text.toString();
+    }
+}
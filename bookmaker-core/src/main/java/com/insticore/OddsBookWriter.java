@@ -0,0 +1,85 @@
+package com.insticore;
+
+/**
+ * Fills the odds book with one sweep at a time, the buffers are reused between the sweeps
+ * The odds which come before their event or market are ignored, an odd listed twice keeps the last value
+ */
+public class OddsBookWriter implements OddsSink {
+    private final OddsBook book;
+    private final NameDictionary names;
+    private BookmakerOdds building;
+    private int sport = NameDictionary.NO_NAME;
+    private int tournament = NameDictionary.NO_NAME;
+    private int event = -1;
+    private int market = -1;
+
+    OddsBookWriter(OddsBook book) {
+        this.book = book;
+        this.names = book.getNames();
+    }
+
+    @Override
+    public void begin(String bookmaker) {
+        if (building == null || !building.getBookmaker().equals(bookmaker)) {
+            building = new BookmakerOdds(names, bookmaker);
+        } else {
+            building.clear();
+        }
+        sport = NameDictionary.NO_NAME;
+        tournament = NameDictionary.NO_NAME;
+        event = -1;
+        market = -1;
+    }
+
+    @Override
+    public void sport(String name) {
+        sport = names.intern(name);
+        tournament = NameDictionary.NO_NAME;
+    }
+
+    @Override
+    public void tournament(String name) {
+        tournament = names.intern(name);
+    }
+
+    @Override
+    public void event(Event event) {
+        //The event ids, names and dates do not repeat across the events, they are not interned
+        this.event = building.addEvent(event.getId(), event.getName(), event.getDate(), event.getStartTime(),
+                sport, tournament);
+        market = -1;
+    }
+
+    @Override
+    public void market(Market market) {
+        if (event < 0) {
+            return;
+        }
+        this.market = building.addMarket(market.getId(), names.intern(market.getName()));
+    }
+
+    @Override
+    public void odd(Odd odd) {
+        if (market < 0) {
+            return;
+        }
+        building.putOdd(odd.getId(), names.intern(odd.getName()), odd.getValue());
+    }
+
+    /**
+     * Publishes the sweep in the book
+     */
+    @Override
+    public void end() {
+        book.publish(building.trimmedCopy());
+        event = -1;
+        market = -1;
+    }
+
+    /**
+     * @return the sweep which is being filled, only valid until the next call
+     */
+    BookmakerOdds getBuilding() {
+        return building;
+    }
+}
@@ -0,0 +1,87 @@
+package com.insticore;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * One odd which is added, removed or has a new price since the previous sweep
+ */
+public class OddsChange {
+    public enum Type {
+        ADDED, REMOVED, CHANGED
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final String bookmaker;
+    private final Event event;
+    private final Market market;
+    private final Odd odd;
+    private final double previousValue;
+
+    /**
+     * @param type
+     * @param timestamp epoch millis when the change is found
+     * @param bookmaker
+     * @param event
+     * @param market
+     * @param odd the new odd, the last known one when it is removed
+     * @param previousValue the price before the change, NaN when the odd is added
+     */
+    public OddsChange(Type type, long timestamp, String bookmaker, Event event, Market market, Odd odd,
+                      double previousValue) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.bookmaker = bookmaker;
+        this.event = event;
+        this.market = market;
+        this.odd = odd;
+        this.previousValue = previousValue;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getBookmaker() {
+        return bookmaker;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public Market getMarket() {
+        return market;
+    }
+
+    public Odd getOdd() {
+        return odd;
+    }
+
+    public double getPreviousValue() {
+        return previousValue;
+    }
+
+    /**
+     * @return one line like "2020-01-01 10:00:00.000 CHANGED 22Bet, 123, A vs. B, 1x2, W1, 1.50 -> 1.55, 7"
+     */
+    @Override
+    public String toString() {
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(timestamp));
+        String price;
+        switch (type) {
+            case CHANGED:
+                price = String.format("%.2f -> %.2f", previousValue, odd.getValue());
+                break;
+            default:
+                price = String.format("%.2f", odd.getValue());
+        }
+        return String.format("%s %s %s, %s, %s, %s, %s, %s, %d", time, type, bookmaker, event.getId(), event.getName(),
+                market.getName(), odd.getName(), price, odd.getId());
+    }
+}
@@ -0,0 +1,935 @@
+package com.insticore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Every odds change in a segmented append-only log on the local disk, for the price history of the events
+ * <p>
+ * A segment is three files: the changes (.log), the keys (.keys) and the sparse index (.idx). The keys define every
+ * string, event and odd series (bookmaker, event id, market and odd id) of the segment once, a change refers to its
+ * series by number. The changes come in blocks of about BLOCK_SIZE bytes, a block starts with its full timestamp,
+ * then every change has the millis since the one before, the number of its series and its price in thousandths
+ * as the difference to the previous price of the series in the block, all of them varints. The index has the offset,
+ * the first timestamp and a bitmap of the events of every block, so the history of an event maps only the segments
+ * which have the event and reads only the blocks of the time range which may have it. A sweep gives the changes
+ * event by event, so an event is in a few blocks of a sweep.
+ * <p>
+ * The changes are kept in time order, a timestamp before the one of the previous change is logged as that one.
+ * The buffers are written and forced to the disk every syncMillis and when the log is closed, a segment which
+ * is cut short by a crash is read up to its last whole change when the log is opened again. One process
+ * writes the log at a time
+ */
+public class OddsHistoryLog implements Consumer<OddsChange>, Closeable {
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_SYNC_MILLIS = 1000;
+    static final int BLOCK_SIZE = 4096;
+    //The last block may go over the segment size
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE - 2 * BLOCK_SIZE;
+    //Bits of the events of a block in the index, the event number modulo the bits
+    private static final int EVENT_BITS = 1024;
+    private static final int EVENT_WORDS = EVENT_BITS / 64;
+
+    private static final int MAGIC = 0x4F484C47; // "OHLG"
+    private static final int VERSION = 1;
+    //Magic and version at the start of the changes and the keys
+    private static final int HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    //Header, timestamp, series and two raw prices
+    private static final int MAX_CHANGE_SIZE = 1 + 10 + 5 + 16;
+    private static final String DATA_SUFFIX = ".log";
+    private static final String KEYS_SUFFIX = ".keys";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    //Start of a block, then its timestamp in 8 bytes
+    private static final int BLOCK = 0xFF;
+    //Header of a change: the type in the low bits and the price encoding above them
+    private static final int TYPE_MASK = 0x03;
+    private static final int ENCODING_MASK = 0x0C;
+    //Difference to the previous price of the series in the block
+    private static final int DELTA = 0;
+    //Thousandths of the price, and of the previous price for a change
+    private static final int ABSOLUTE = 1 << 2;
+    //Prices which are not whole thousandths, as doubles
+    private static final int RAW = 2 << 2;
+    private static final OddsChange.Type[] TYPES = OddsChange.Type.values();
+
+    //Records of the keys
+    private static final byte STRING = 1;
+    private static final byte EVENT = 2;
+    private static final byte SERIES = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(OddsHistoryLog.class);
+    private final Path directory;
+    private final long segmentSize;
+    private final long segmentMillis;
+    //Sealed segments and the active one last, by number
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    //The active segment
+    private Segment active;
+    private FileChannel dataChannel;
+    private FileChannel keysChannel;
+    private final ByteBuffer data = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+    private final DataOutputStream keys = new DataOutputStream(keyBytes);
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final Map<String, Integer> eventIds = new HashMap<>();
+    private final Map<String, Integer> seriesIds = new HashMap<>();
+    //Offset of the next byte of the changes, whether they are written or still buffered
+    private long position;
+    private long blockStart;
+    private int blockNumber;
+    private long lastTimestamp;
+    //Previous price of every series in the current block, valid where the block number matches
+    private long[] lastPrices = new long[1024];
+    private int[] lastBlocks = new int[1024];
+    private boolean dirty;
+    private boolean closed;
+    private long changeCount;
+
+    private OddsHistoryLog(Path directory, long segmentSize, long segmentMillis, long syncMillis) {
+        if (segmentSize <= HEADER_SIZE || segmentMillis <= 0 || syncMillis <= 0) {
+            throw new IllegalArgumentException("Segment size, segment millis and sync millis must be positive: "
+                    + segmentSize + ", " + segmentMillis + ", " + syncMillis);
+        }
+        if (segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Segment size must be " + MAX_SEGMENT_SIZE + " at most, a segment is "
+                    + "mapped as a whole: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segmentMillis = segmentMillis;
+        scheduler = Executors.newSingleThreadScheduledExecutor(BookmakerContext.newThreadFactory("history-sync", true));
+        scheduler.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param directory created if missing, the changes are appended to the segments in it
+     * @return the log with the default segment size, segment time and sync period
+     * @throws IOException if the directory can not be read or has a broken segment
+     */
+    public static OddsHistoryLog open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENT_MILLIS, DEFAULT_SYNC_MILLIS);
+    }
+
+    /**
+     * @param directory created if missing, the changes are appended to the segments in it
+     * @param segmentSize a new segment is started when the changes of the active one reach this many bytes
+     * @param segmentMillis a new segment is started when the active one spans this many millis
+     * @param syncMillis how often the changes are written and forced to the disk
+     * @return
+     * @throws IOException if the directory can not be read or has a broken segment
+     */
+    public static OddsHistoryLog open(Path directory, long segmentSize, long segmentMillis, long syncMillis)
+            throws IOException {
+        Files.createDirectories(directory);
+        OddsHistoryLog log = new OddsHistoryLog(directory, segmentSize, segmentMillis, syncMillis);
+        try {
+            log.load();
+        } catch (IOException | RuntimeException e) {
+            log.scheduler.shutdownNow();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * Logs the change, it is on the disk after the next sync
+     * @param change
+     * @throws UncheckedIOException if the change can not be written
+     */
+    @Override
+    public synchronized void accept(OddsChange change) {
+        if (closed) {
+            throw new IllegalStateException("History log is closed: " + directory);
+        }
+        try {
+            append(change);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Change is not logged in " + directory, e);
+        }
+    }
+
+    /**
+     * @param bookmaker
+     * @param eventId bookmaker id of the event
+     * @param from the changes from it on, in epoch millis
+     * @param to the changes up to it, in epoch millis
+     * @return the changes of the event in time order, their events and markets have the names of the first change
+     * of the series in the segment
+     * @throws IOException if a segment can not be read
+     */
+    public List<OddsChange> history(String bookmaker, String eventId, long from, long to) throws IOException {
+        List<Scan> scans = new ArrayList<>();
+        synchronized (this) {
+            if (!closed) {
+                flush();
+            }
+            for (Segment segment : segments.values()) {
+                if (segment.blockCount == 0 || segment.minTime > to || segment.maxTime < from) {
+                    continue;
+                }
+                Scan scan = segment.scan(bookmaker, eventId, from, to);
+                if (scan != null) {
+                    scans.add(scan);
+                }
+            }
+        }
+        List<OddsChange> changes = new ArrayList<>();
+        for (Scan scan : scans) {
+            scan.read(from, to, changes);
+        }
+        return changes;
+    }
+
+    /**
+     * @return how many changes are logged since the log is opened
+     */
+    public synchronized long getChangeCount() {
+        return changeCount;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return bytes of the changes of all segments, without the keys and the indexes
+     */
+    public synchronized long getSize() {
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment == active ? position : segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Writes what is buffered, forces it to the disk and seals the active segment
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        scheduler.shutdownNow();
+        seal();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Odds history %s: %d segments, %d changes logged, %d bytes", directory,
+                getSegmentCount(), getChangeCount(), getSize());
+    }
+
+    private synchronized void sync() {
+        if (closed || !dirty) {
+            return;
+        }
+        try {
+            flush();
+            keysChannel.force(false);
+            dataChannel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            logger.error("History is not synced to " + directory, e);
+        }
+    }
+
+    /**
+     * Reads the segments in the directory, seals the one which was active when the log was last closed or crashed,
+     * and starts a new segment
+     */
+    private void load() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + DATA_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    long number = Long.parseLong(name.substring(0, name.length() - DATA_SUFFIX.length()));
+                    segments.put(number, new Segment(directory, number));
+                } catch (NumberFormatException e) {
+                    logger.warn("Not a history segment: " + file);
+                }
+            }
+        }
+        for (Segment segment : segments.values()) {
+            if (!Files.exists(segment.index)) {
+                logger.info("Recovering history segment " + segment.data);
+                segment.recover();
+                segment.writeIndex();
+            } else {
+                segment.readIndex();
+            }
+        }
+        startSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+    }
+
+    private void append(OddsChange change) throws IOException {
+        long timestamp = Math.max(change.getTimestamp(), lastTimestamp);
+        if (data.remaining() < MAX_CHANGE_SIZE) {
+            flush();
+        }
+        if (active.blockCount == 0 || position - blockStart >= BLOCK_SIZE) {
+            if (active.blockCount > 0
+                    && (position >= segmentSize || timestamp - active.minTime >= segmentMillis)) {
+                seal();
+                startSegment(active.number + 1);
+            }
+            startBlock(timestamp);
+        }
+        int series = seriesId(change);
+        active.markEvent(active.series.get(series).event);
+        int before = data.position();
+        OddsChange.Type type = change.getType();
+        double value = change.getOdd().getValue();
+        double previous = change.getPreviousValue();
+        boolean changed = type == OddsChange.Type.CHANGED;
+        long thousandths = Math.round(value * 1000);
+        long previousThousandths = Math.round(previous * 1000);
+        int encoding;
+        if (thousandths / 1000.0 != value || changed && previousThousandths / 1000.0 != previous) {
+            encoding = RAW;
+        } else if (lastBlocks[series] == blockNumber && (!changed || lastPrices[series] == previousThousandths)) {
+            encoding = DELTA;
+        } else {
+            encoding = ABSOLUTE;
+        }
+        data.put((byte) (type.ordinal() | encoding));
+        putVarLong(data, timestamp - lastTimestamp);
+        putVarLong(data, series);
+        switch (encoding) {
+            case DELTA:
+                putVarLong(data, zigZag(thousandths - lastPrices[series]));
+                break;
+            case ABSOLUTE:
+                putVarLong(data, zigZag(thousandths));
+                if (changed) {
+                    putVarLong(data, zigZag(previousThousandths));
+                }
+                break;
+            default:
+                data.putDouble(value);
+                if (changed) {
+                    data.putDouble(previous);
+                }
+        }
+        if (encoding == RAW) {
+            lastBlocks[series] = -1;
+        } else {
+            lastPrices[series] = thousandths;
+            lastBlocks[series] = blockNumber;
+        }
+        position += data.position() - before;
+        lastTimestamp = timestamp;
+        active.maxTime = timestamp;
+        changeCount++;
+        dirty = true;
+    }
+
+    private void startBlock(long timestamp) {
+        blockStart = position;
+        blockNumber++;
+        active.addBlock(position, timestamp);
+        data.put((byte) BLOCK).putLong(timestamp);
+        position += 9;
+        lastTimestamp = timestamp;
+    }
+
+    private void startSegment(long number) throws IOException {
+        active = new Segment(directory, number);
+        active.loaded = true;
+        segments.put(number, active);
+        dataChannel = FileChannel.open(active.data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        keysChannel = FileChannel.open(active.keys, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        data.putInt(MAGIC).putInt(VERSION);
+        keys.writeInt(MAGIC);
+        keys.writeInt(VERSION);
+        stringIds.clear();
+        eventIds.clear();
+        seriesIds.clear();
+        position = HEADER_SIZE;
+        blockStart = position;
+        //Each segment starts with no known prices
+        blockNumber++;
+        dirty = true;
+    }
+
+    /**
+     * Writes and forces the active segment and its index, it takes no more changes
+     */
+    private void seal() throws IOException {
+        try {
+            flush();
+            keysChannel.force(false);
+            dataChannel.force(false);
+            dirty = false;
+        } finally {
+            keysChannel.close();
+            dataChannel.close();
+        }
+        active.size = position;
+        active.writeIndex();
+    }
+
+    /**
+     * Writes the buffered keys and then the changes, so a change is never on the disk before its series
+     */
+    private void flush() throws IOException {
+        if (keyBytes.size() > 0) {
+            ByteBuffer bytes = ByteBuffer.wrap(keyBytes.toByteArray());
+            while (bytes.hasRemaining()) {
+                keysChannel.write(bytes);
+            }
+            keyBytes.reset();
+        }
+        data.flip();
+        while (data.hasRemaining()) {
+            dataChannel.write(data);
+        }
+        data.clear();
+    }
+
+    private int seriesId(OddsChange change) throws IOException {
+        Event event = change.getEvent();
+        Market market = change.getMarket();
+        Odd odd = change.getOdd();
+        String eventKey = change.getBookmaker() + '\n' + event.getId();
+        String seriesKey = eventKey + '\n' + market.getId() + '\n' + market.getName() + '\n' + odd.getId()
+                + '\n' + odd.getName();
+        Integer id = seriesIds.get(seriesKey);
+        if (id != null) {
+            return id;
+        }
+        Integer eventId = eventIds.get(eventKey);
+        if (eventId == null) {
+            int bookmaker = stringId(change.getBookmaker());
+            int key = stringId(event.getId());
+            int name = stringId(event.getName());
+            int date = stringId(event.getDate());
+            keys.writeByte(EVENT);
+            keys.writeInt(bookmaker);
+            keys.writeInt(key);
+            keys.writeInt(name);
+            keys.writeInt(date);
+            keys.writeLong(event.getStartTime());
+            eventId = active.events.size();
+            active.events.add(new EventKey(change.getBookmaker(), event));
+            eventIds.put(eventKey, eventId);
+        }
+        int marketName = stringId(market.getName());
+        int oddName = stringId(odd.getName());
+        keys.writeByte(SERIES);
+        keys.writeInt(eventId);
+        keys.writeInt(market.getId());
+        keys.writeInt(marketName);
+        keys.writeInt(odd.getId());
+        keys.writeInt(oddName);
+        id = active.series.size();
+        active.series.add(new Series(eventId, market, odd.getId(), odd.getName()));
+        seriesIds.put(seriesKey, id);
+        if (id == lastPrices.length) {
+            lastPrices = Arrays.copyOf(lastPrices, id * 2);
+            lastBlocks = Arrays.copyOf(lastBlocks, id * 2);
+        }
+        lastBlocks[id] = -1;
+        return id;
+    }
+
+    /**
+     * @return id of the string in the active segment, -1 for null
+     */
+    private int stringId(String s) throws IOException {
+        if (s == null) {
+            return -1;
+        }
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = active.strings.size();
+            keys.writeByte(STRING);
+            keys.writeUTF(s);
+            active.strings.add(s);
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unZigZag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long n) {
+        while ((n & ~0x7FL) != 0) {
+            buffer.put((byte) ((n & 0x7F) | 0x80));
+            n >>>= 7;
+        }
+        buffer.put((byte) n);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long n = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            n |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return n;
+            }
+        }
+        throw new IllegalStateException("Varint is too long at " + buffer.position());
+    }
+
+    /**
+     * Bookmaker and event of a series
+     */
+    private static final class EventKey {
+        private final String bookmaker;
+        private final Event event;
+
+        EventKey(String bookmaker, Event event) {
+            this.bookmaker = bookmaker;
+            this.event = event;
+        }
+    }
+
+    /**
+     * One odd of one market of an event, its prices are the changes which refer to it
+     */
+    private static final class Series {
+        private final int event;
+        private final Market market;
+        private final int oddId;
+        private final String oddName;
+
+        Series(int event, Market market, int oddId, String oddName) {
+            this.event = event;
+            this.market = market;
+            this.oddId = oddId;
+            this.oddName = oddName;
+        }
+    }
+
+    /**
+     * The files, keys and index of one segment, the keys of a sealed segment are read on the first query
+     */
+    private static final class Segment {
+        private final long number;
+        private final Path data;
+        private final Path keys;
+        private final Path index;
+        private final List<String> strings = new ArrayList<>();
+        private final List<EventKey> events = new ArrayList<>();
+        private final List<Series> series = new ArrayList<>();
+        private long[] blockOffsets = new long[16];
+        private long[] blockTimes = new long[16];
+        private long[] blockEvents = new long[16 * EVENT_WORDS];
+        private int blockCount;
+        //Bytes of the changes, set when the segment is sealed
+        private long size;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+        private boolean loaded;
+
+        Segment(Path directory, long number) {
+            this.number = number;
+            String name = String.format("%010d", number);
+            this.data = directory.resolve(name + DATA_SUFFIX);
+            this.keys = directory.resolve(name + KEYS_SUFFIX);
+            this.index = directory.resolve(name + INDEX_SUFFIX);
+        }
+
+        void addBlock(long offset, long timestamp) {
+            if (blockCount == blockOffsets.length) {
+                blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+                blockTimes = Arrays.copyOf(blockTimes, blockCount * 2);
+                blockEvents = Arrays.copyOf(blockEvents, blockCount * 2 * EVENT_WORDS);
+            }
+            blockOffsets[blockCount] = offset;
+            blockTimes[blockCount] = timestamp;
+            blockCount++;
+            minTime = Math.min(minTime, timestamp);
+            maxTime = Math.max(maxTime, timestamp);
+        }
+
+        /**
+         * Marks the event in the last block
+         */
+        void markEvent(int event) {
+            int bit = event % EVENT_BITS;
+            blockEvents[(blockCount - 1) * EVENT_WORDS + bit / 64] |= 1L << bit;
+        }
+
+        private boolean hasEvent(int block, int event) {
+            int bit = event % EVENT_BITS;
+            return (blockEvents[block * EVENT_WORDS + bit / 64] & 1L << bit) != 0;
+        }
+
+        /**
+         * @return what to read for the history of the event, null if the segment does not have the event
+         */
+        Scan scan(String bookmaker, String eventId, long from, long to) throws IOException {
+            loadKeys();
+            int event = -1;
+            for (int i = 0; i < events.size(); i++) {
+                EventKey key = events.get(i);
+                if (key.bookmaker.equals(bookmaker) && eventId.equals(key.event.getId())) {
+                    event = i;
+                    break;
+                }
+            }
+            if (event < 0) {
+                return null;
+            }
+            BitSet wanted = new BitSet();
+            for (int i = 0; i < series.size(); i++) {
+                if (series.get(i).event == event) {
+                    wanted.set(i);
+                }
+            }
+            //The last block which starts at or before from has the first changes
+            int first = Math.max(0, upperBound(from) - 1);
+            int last = upperBound(to);
+            long end = size > 0 ? size : Files.size(data);
+            //Start and end of the runs of the blocks which may have the event
+            long[] ranges = new long[8];
+            int rangeCount = 0;
+            for (int block = first; block < last; block++) {
+                if (!hasEvent(block, event)) {
+                    continue;
+                }
+                long blockEnd = block + 1 < blockCount ? blockOffsets[block + 1] : end;
+                if (rangeCount > 0 && ranges[rangeCount - 1] == blockOffsets[block]) {
+                    ranges[rangeCount - 1] = blockEnd;
+                } else {
+                    if (rangeCount == ranges.length) {
+                        ranges = Arrays.copyOf(ranges, rangeCount * 2);
+                    }
+                    ranges[rangeCount++] = blockOffsets[block];
+                    ranges[rangeCount++] = blockEnd;
+                }
+            }
+            if (rangeCount == 0) {
+                return null;
+            }
+            return new Scan(data, Arrays.copyOf(ranges, rangeCount), events.get(event),
+                    series.toArray(new Series[0]), wanted);
+        }
+
+        /**
+         * @return index of the first block which starts after the time
+         */
+        private int upperBound(long timestamp) {
+            int low = 0;
+            int high = blockCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (blockTimes[middle] <= timestamp) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Reads the keys of a sealed segment, a record which is cut short by a crash is dropped
+         */
+        private void loadKeys() throws IOException {
+            if (loaded) {
+                return;
+            }
+            byte[] bytes = Files.readAllBytes(keys);
+            ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+            DataInputStream in = new DataInputStream(stream);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not history keys of version " + VERSION + ": " + keys);
+            }
+            try {
+                while (stream.available() > 0) {
+                    byte type = in.readByte();
+                    switch (type) {
+                        case STRING:
+                            strings.add(in.readUTF());
+                            break;
+                        case EVENT:
+                            String bookmaker = string(in.readInt());
+                            events.add(new EventKey(bookmaker, new Event(string(in.readInt()),
+                                    string(in.readInt()), string(in.readInt()), in.readLong())));
+                            break;
+                        case SERIES:
+                            int event = in.readInt();
+                            int marketId = in.readInt();
+                            String marketName = string(in.readInt());
+                            series.add(new Series(event, new Market(marketId, marketName), in.readInt(),
+                                    string(in.readInt())));
+                            break;
+                        default:
+                            throw new IOException("Unknown key record " + type + " in " + keys);
+                    }
+                }
+            } catch (EOFException e) {
+                //The changes of the cut off keys were never written
+            }
+            loaded = true;
+        }
+
+        private String string(int id) {
+            return id >= 0 ? strings.get(id) : null;
+        }
+
+        /**
+         * Rebuilds the index of a segment which was not sealed from its changes, and cuts off
+         * a change which is cut short
+         */
+        void recover() throws IOException {
+            loadKeys();
+            try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long fileSize = channel.size();
+                if (fileSize < HEADER_SIZE) {
+                    //Nothing was written yet
+                    channel.truncate(0);
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                    header.flip();
+                    channel.write(header, 0);
+                    size = HEADER_SIZE;
+                    return;
+                }
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+                checkHeader(mapped, data);
+                long whole = HEADER_SIZE;
+                long timestamp = 0;
+                try {
+                    while (mapped.hasRemaining()) {
+                        int header = mapped.get() & 0xFF;
+                        if (header == BLOCK) {
+                            timestamp = mapped.getLong();
+                            addBlock(whole, timestamp);
+                        } else {
+                            timestamp += getVarLong(mapped);
+                            long id = getVarLong(mapped);
+                            skipPrices(mapped, header);
+                            if (id < series.size() && blockCount > 0) {
+                                markEvent(series.get((int) id).event);
+                            }
+                            maxTime = Math.max(maxTime, timestamp);
+                        }
+                        whole = mapped.position();
+                    }
+                } catch (BufferUnderflowException | IllegalStateException e) {
+                    //The last change is cut short
+                }
+                if (whole < fileSize) {
+                    channel.truncate(whole);
+                }
+                size = whole;
+            }
+        }
+
+        void writeIndex() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 28 + blockCount * (16 + EVENT_WORDS * 8));
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(size).putLong(minTime).putLong(maxTime).putInt(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                buffer.putLong(blockOffsets[i]).putLong(blockTimes[i]);
+                for (int word = 0; word < EVENT_WORDS; word++) {
+                    buffer.putLong(blockEvents[i * EVENT_WORDS + word]);
+                }
+            }
+            buffer.flip();
+            Path temporary = index.resolveSibling(index.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void readIndex() throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(index));
+            try {
+                checkHeader(buffer, index);
+                size = buffer.getLong();
+                minTime = buffer.getLong();
+                maxTime = buffer.getLong();
+                int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    addBlock(buffer.getLong(), buffer.getLong());
+                    for (int word = 0; word < EVENT_WORDS; word++) {
+                        blockEvents[i * EVENT_WORDS + word] = buffer.getLong();
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("History index is cut short: " + index, e);
+            }
+        }
+    }
+
+    private static void checkHeader(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a history file of version " + VERSION + ": " + file);
+        }
+    }
+
+    private static OddsChange.Type type(int header) {
+        int type = header & TYPE_MASK;
+        if (type >= TYPES.length) {
+            throw new IllegalStateException("Unknown change type " + header);
+        }
+        return TYPES[type];
+    }
+
+    private static void skipPrices(ByteBuffer buffer, int header) {
+        boolean changed = type(header) == OddsChange.Type.CHANGED;
+        switch (header & ENCODING_MASK) {
+            case DELTA:
+                getVarLong(buffer);
+                break;
+            case ABSOLUTE:
+                getVarLong(buffer);
+                if (changed) {
+                    getVarLong(buffer);
+                }
+                break;
+            case RAW:
+                buffer.position(buffer.position() + (changed ? 16 : 8));
+                break;
+            default:
+                throw new IllegalStateException("Unknown price encoding " + header);
+        }
+    }
+
+    /**
+     * The blocks of one segment which may have changes of one event, read with no lock on the log
+     */
+    private static final class Scan {
+        private final Path data;
+        //Start and end offsets of the runs of blocks
+        private final long[] ranges;
+        private final EventKey event;
+        private final Series[] series;
+        private final BitSet wanted;
+
+        Scan(Path data, long[] ranges, EventKey event, Series[] series, BitSet wanted) {
+            this.data = data;
+            this.ranges = ranges;
+            this.event = event;
+            this.series = series;
+            this.wanted = wanted;
+        }
+
+        void read(long from, long to, List<OddsChange> changes) throws IOException {
+            long start = ranges[0];
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, ranges[ranges.length - 1] - start);
+            }
+            //The writer starts every block with whole prices, so a delta always has its price here
+            long[] prices = new long[series.length];
+            for (int range = 0; range < ranges.length; range += 2) {
+                mapped.limit((int) (ranges[range + 1] - start)).position((int) (ranges[range] - start));
+                if (!read(mapped, prices, from, to, changes)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return false if the changes after the time range are reached
+         */
+        private boolean read(ByteBuffer mapped, long[] prices, long from, long to, List<OddsChange> changes) {
+            long timestamp = 0;
+            while (mapped.hasRemaining()) {
+                int header = mapped.get() & 0xFF;
+                if (header == BLOCK) {
+                    timestamp = mapped.getLong();
+                    continue;
+                }
+                timestamp += getVarLong(mapped);
+                int id = (int) getVarLong(mapped);
+                OddsChange.Type type = type(header);
+                if (id >= series.length) {
+                    //The keys of the series were cut off by a crash
+                    skipPrices(mapped, header);
+                    continue;
+                }
+                boolean changed = type == OddsChange.Type.CHANGED;
+                double value;
+                double previous = Double.NaN;
+                switch (header & ENCODING_MASK) {
+                    case DELTA:
+                        long delta = unZigZag(getVarLong(mapped));
+                        if (changed) {
+                            previous = prices[id] / 1000.0;
+                        }
+                        prices[id] += delta;
+                        value = prices[id] / 1000.0;
+                        break;
+                    case ABSOLUTE:
+                        prices[id] = unZigZag(getVarLong(mapped));
+                        value = prices[id] / 1000.0;
+                        if (changed) {
+                            previous = unZigZag(getVarLong(mapped)) / 1000.0;
+                        }
+                        break;
+                    default:
+                        value = mapped.getDouble();
+                        if (changed) {
+                            previous = mapped.getDouble();
+                        }
+                }
+                if (timestamp > to) {
+                    return false;
+                }
+                if (timestamp < from || !wanted.get(id)) {
+                    continue;
+                }
+                if (type == OddsChange.Type.REMOVED) {
+                    previous = value;
+                }
+                Series odd = series[id];
+                changes.add(new OddsChange(type, timestamp, event.bookmaker, event.event, odd.market,
+                        new Odd(odd.oddId, odd.oddName, value), previous));
+            }
+            return true;
+        }
+    }
+}
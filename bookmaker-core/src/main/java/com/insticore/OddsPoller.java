@@ -0,0 +1,70 @@
+package com.insticore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs the sweep again and again with a fixed delay between the sweeps
+ * The sweeps never overlap, so the sink sees one bookmaker sweep at a time
+ */
+public class OddsPoller implements Closeable {
+    private final Logger logger = LoggerFactory.getLogger(OddsPoller.class);
+    private final Consumer<OddsSink> sweep;
+    private final OddsSink sink;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private volatile long sweepCount;
+
+    /**
+     * @param sweep loads all odds once and writes them to the given sink, e.g. parser::parse
+     * @param sink
+     */
+    public OddsPoller(Consumer<OddsSink> sweep, OddsSink sink) {
+        this.sweep = sweep;
+        this.sink = sink;
+    }
+
+    /**
+     * Starts the first sweep right away
+     * @param interval delay between the end of a sweep and the start of the next one
+     * @param unit
+     */
+    public void start(long interval, TimeUnit unit) {
+        scheduler.scheduleWithFixedDelay(this::sweepOnce, 0, interval, unit);
+    }
+
+    public long getSweepCount() {
+        return sweepCount;
+    }
+
+    /**
+     * Stops polling, the running sweep is finished
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sweepOnce() {
+        long start = System.nanoTime();
+        try {
+            sweep.accept(sink);
+        } catch (RuntimeException e) {
+            //The next sweep is still scheduled
+            logger.error("Sweep failed", e);
+        }
+        sweepCount++;
+        logger.info("Sweep " + sweepCount + " finished in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms, " + sink);
+    }
+}
@@ -0,0 +1,371 @@
+package com.insticore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the live odds store as json on the loopback address, the odds are read while the sweeps go on
+ * GET /odds takes the optional parameters bookmaker, sport, tournament, market (name), marketId (filter id),
+ * from and to (epoch millis), minutes (the events which start within so many minutes from now or from "from")
+ * and limit, e.g. all football 1X2 prices starting in the next 2 hours:
+ * curl 'http://127.0.0.1:8081/odds?sport=Football&market=1X2&minutes=120'
+ * With a history log GET /history takes bookmaker, event (id), from and to or minutes (the last so many minutes)
+ * and gives the logged changes of the event, e.g. curl 'http://127.0.0.1:8081/history?bookmaker=22Bet&event=1&minutes=60'
+ */
+public class OddsQueryServer implements Closeable {
+    /**
+     * System property with the port of the query server
+     */
+    public static final String PORT_PROPERTY = "query.port";
+    public static final int DEFAULT_THREADS = 2;
+    //Values from it on and the negative ones go through Double.toString, the long math could overflow
+    private static final double MAX_FAST_VALUE = 1e12;
+
+    //The headers and the body are written one after the other, with Nagle the body waits for the delayed ack
+    //of the client, some 40 ms. The http server reads it once, when the first server of the JVM is created
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final Logger logger = LoggerFactory.getLogger(OddsQueryServer.class);
+    private final LiveOddsStore store;
+    private final OddsHistoryLog history;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+
+    /**
+     * @param store
+     * @param port 0 for a free one
+     * @throws IOException if the server can not be started
+     */
+    public OddsQueryServer(LiveOddsStore store, int port) throws IOException {
+        this(store, null, port);
+    }
+
+    /**
+     * @param store
+     * @param history served on /history, null for none
+     * @param port 0 for a free one
+     * @throws IOException if the server can not be started
+     */
+    public OddsQueryServer(LiveOddsStore store, OddsHistoryLog history, int port) throws IOException {
+        this.store = store;
+        this.history = history;
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        executor = Executors.newFixedThreadPool(DEFAULT_THREADS, BookmakerContext.newThreadFactory("query-server", true));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 128);
+        server.setExecutor(executor);
+        server.createContext("/odds", this::handle);
+        if (history != null) {
+            server.createContext("/history", this::handleHistory);
+        }
+        server.start();
+    }
+
+    /**
+     * @return e.g. http://127.0.0.1:8081
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getQueryCount() {
+        return queryCount.get();
+    }
+
+    @Override
+    public String toString() {
+        long count = queryCount.get();
+        return String.format("Odds query server %s: queries %d, mean %d us, %s", getUrl(), count,
+                count > 0 ? TimeUnit.NANOSECONDS.toMicros(queryNanos.get() / count) : 0, store);
+    }
+
+    /**
+     * Stops the server, the store is left as it is
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "{\"error\":\"GET only\"}");
+                return;
+            }
+            long start = System.nanoTime();
+            LiveOddsStore.Query query;
+            try {
+                query = parseQuery(exchange.getRequestURI().getRawQuery(), System.currentTimeMillis());
+            } catch (IllegalArgumentException e) {
+                StringBuilder error = new StringBuilder("{\"error\":");
+                appendString(error, e.getMessage());
+                respond(exchange, 400, error.append('}').toString());
+                return;
+            }
+            List<LiveOddsStore.EventOdds> events = store.find(query);
+            String body = toJson(events, System.nanoTime() - start);
+            queryNanos.addAndGet(System.nanoTime() - start);
+            queryCount.incrementAndGet();
+            respond(exchange, 200, body);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Query is not served: " + exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleHistory(HttpExchange exchange) {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "{\"error\":\"GET only\"}");
+                return;
+            }
+            long start = System.nanoTime();
+            Map<String, String> parameters;
+            long from;
+            long to;
+            try {
+                parameters = parameters(exchange.getRequestURI().getRawQuery());
+                String minutes = parameters.remove("minutes");
+                long now = System.currentTimeMillis();
+                from = number(parameters.remove("from"),
+                        minutes != null ? now - TimeUnit.MINUTES.toMillis(number(minutes, 0)) : Long.MIN_VALUE);
+                to = number(parameters.remove("to"), Long.MAX_VALUE);
+                if (parameters.get("bookmaker") == null || parameters.get("event") == null || parameters.size() > 2) {
+                    throw new IllegalArgumentException("Parameters bookmaker and event are required, from, to and "
+                            + "minutes are optional: " + parameters.keySet());
+                }
+            } catch (IllegalArgumentException e) {
+                StringBuilder error = new StringBuilder("{\"error\":");
+                appendString(error, e.getMessage());
+                respond(exchange, 400, error.append('}').toString());
+                return;
+            }
+            List<OddsChange> changes = history.history(parameters.get("bookmaker"), parameters.get("event"), from, to);
+            String body = historyToJson(changes, System.nanoTime() - start);
+            queryNanos.addAndGet(System.nanoTime() - start);
+            queryCount.incrementAndGet();
+            respond(exchange, 200, body);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("History is not served: " + exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @param rawQuery query string of the url, null for none
+     * @param now the window given by minutes starts at it unless from is given
+     * @return
+     * @throws IllegalArgumentException if a parameter is not known or not a number where one is expected
+     */
+    static LiveOddsStore.Query parseQuery(String rawQuery, long now) {
+        Map<String, String> parameters = parameters(rawQuery);
+        String bookmaker = parameters.remove("bookmaker");
+        String sport = parameters.remove("sport");
+        String tournament = parameters.remove("tournament");
+        String market = parameters.remove("market");
+        int marketId = (int) number(parameters.remove("marketId"), Market.NO_ID);
+        String minutes = parameters.remove("minutes");
+        long from = number(parameters.remove("from"), minutes != null ? now : Long.MIN_VALUE);
+        long to = number(parameters.remove("to"), Long.MAX_VALUE);
+        if (minutes != null) {
+            to = Math.min(to, from + TimeUnit.MINUTES.toMillis(number(minutes, 0)));
+        }
+        long limit = number(parameters.remove("limit"), LiveOddsStore.DEFAULT_LIMIT);
+        if (!parameters.isEmpty()) {
+            throw new IllegalArgumentException("Unknown parameters: " + parameters.keySet());
+        }
+        return new LiveOddsStore.Query(bookmaker, sport, tournament, market, marketId, from, to,
+                (int) Math.min(limit, Integer.MAX_VALUE));
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery != null && !rawQuery.isEmpty()) {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                String name = decode(equals >= 0 ? pair.substring(0, equals) : pair);
+                parameters.put(name, equals >= 0 ? decode(pair.substring(equals + 1)) : "");
+            }
+        }
+        return parameters;
+    }
+
+    private static long number(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param events
+     * @param nanos time the query took so far
+     * @return e.g. {"count":1,"micros":42,"events":[{"bookmaker":"22Bet",...,"markets":[{"id":1,"name":"1X2",
+     * "odds":[{"id":1,"name":"1","value":1.85},...]}]}]}
+     */
+    static String toJson(List<LiveOddsStore.EventOdds> events, long nanos) {
+        StringBuilder json = new StringBuilder(256 + events.size() * 512);
+        json.append("{\"count\":").append(events.size())
+                .append(",\"micros\":").append(TimeUnit.NANOSECONDS.toMicros(nanos))
+                .append(",\"events\":[");
+        for (int e = 0; e < events.size(); e++) {
+            LiveOddsStore.EventOdds record = events.get(e);
+            Event event = record.getEvent();
+            json.append(e > 0 ? ",{" : "{");
+            appendField(json, "bookmaker", record.getBookmaker()).append(',');
+            appendField(json, "sport", record.getSport()).append(',');
+            appendField(json, "tournament", record.getTournament()).append(',');
+            appendField(json, "id", event.getId()).append(',');
+            appendField(json, "name", event.getName()).append(',');
+            appendField(json, "date", event.getDate());
+            json.append(",\"startTime\":").append(event.getStartTime()).append(",\"markets\":[");
+            List<LiveOddsStore.MarketOdds> markets = record.getMarkets();
+            for (int m = 0; m < markets.size(); m++) {
+                LiveOddsStore.MarketOdds market = markets.get(m);
+                json.append(m > 0 ? ",{" : "{").append("\"id\":").append(market.getId()).append(',');
+                appendField(json, "name", market.getName()).append(",\"odds\":[");
+                List<Odd> odds = market.getOdds();
+                for (int o = 0; o < odds.size(); o++) {
+                    Odd odd = odds.get(o);
+                    json.append(o > 0 ? ",{" : "{").append("\"id\":").append(odd.getId()).append(',');
+                    appendField(json, "name", odd.getName()).append(",\"value\":");
+                    appendValue(json, odd.getValue());
+                    json.append('}');
+                }
+                json.append("]}");
+            }
+            json.append("]}");
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * @param changes
+     * @param nanos time the query took so far
+     * @return e.g. {"count":1,"micros":42,"changes":[{"time":1792346400000,"type":"CHANGED","marketId":1,
+     * "market":"1X2","oddId":1,"odd":"1","value":1.85,"previous":1.8}]}
+     */
+    static String historyToJson(List<OddsChange> changes, long nanos) {
+        StringBuilder json = new StringBuilder(256 + changes.size() * 128);
+        json.append("{\"count\":").append(changes.size())
+                .append(",\"micros\":").append(TimeUnit.NANOSECONDS.toMicros(nanos))
+                .append(",\"changes\":[");
+        for (int c = 0; c < changes.size(); c++) {
+            OddsChange change = changes.get(c);
+            json.append(c > 0 ? ",{" : "{").append("\"time\":").append(change.getTimestamp())
+                    .append(",\"type\":\"").append(change.getType()).append("\",\"marketId\":")
+                    .append(change.getMarket().getId()).append(',');
+            appendField(json, "market", change.getMarket().getName())
+                    .append(",\"oddId\":").append(change.getOdd().getId()).append(',');
+            appendField(json, "odd", change.getOdd().getName()).append(",\"value\":");
+            appendValue(json, change.getOdd().getValue());
+            json.append(",\"previous\":");
+            appendValue(json, change.getPreviousValue());
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Odds have 3 decimals at most, they are written digit by digit, Double.toString is much slower
+     */
+    private static void appendValue(StringBuilder json, double value) {
+        long thousandths = Math.round(value * 1000);
+        if (value >= 0 && value < MAX_FAST_VALUE && thousandths / 1000.0 == value) {
+            json.append(thousandths / 1000);
+            int decimals = (int) (thousandths % 1000);
+            if (decimals != 0) {
+                json.append('.').append((char) ('0' + decimals / 100));
+                if (decimals % 100 != 0) {
+                    json.append((char) ('0' + decimals / 10 % 10));
+                    if (decimals % 10 != 0) {
+                        json.append((char) ('0' + decimals % 10));
+                    }
+                }
+            }
+        } else if (Double.isNaN(value) || Double.isInfinite(value)) {
+            //json has no NaN or Infinity
+            json.append("null");
+        } else {
+            json.append(value);
+        }
+    }
+
+    private static StringBuilder appendField(StringBuilder json, String name, String value) {
+        json.append('"').append(name).append("\":");
+        appendString(json, value);
+        return json;
+    }
+
+    private static void appendString(StringBuilder json, String s) {
+        if (s == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        int plain = 0;
+        while (plain < s.length() && s.charAt(plain) >= 0x20 && s.charAt(plain) != '"' && s.charAt(plain) != '\\') {
+            plain++;
+        }
+        //Most names need no escaping and are copied at once
+        json.append(s, 0, plain);
+        for (int i = plain; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
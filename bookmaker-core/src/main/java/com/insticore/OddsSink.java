@@ -0,0 +1,36 @@
+package com.insticore;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the parsed odds in the sport -> tournament -> event -> market -> odd order
+ * The calls come one at a time, every call belongs to the last call of the upper level
+ */
+public interface OddsSink extends Closeable {
+
+    /**
+     * Start of the bookmaker sweep
+     * @param bookmaker
+     */
+    void begin(String bookmaker);
+
+    void sport(String name);
+
+    void tournament(String name);
+
+    void event(Event event);
+
+    void market(Market market);
+
+    void odd(Odd odd);
+
+    /**
+     * End of the bookmaker sweep
+     */
+    void end();
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,224 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects results which come in any order and emits them in the order of the tree
+ * Every node reserves its place when it is added, so the sport -> tournament -> event order
+ * does not depend on which page is loaded first
+ * A node is emitted as soon as its output is set and everything before it is emitted,
+ * the output runs on the output executor so the loading threads never wait for it
+ * The collector lets go of an output once it ran and of a node once its subtree is emitted,
+ * so only the part of the tree which waits for a page stays on the heap
+ */
+public class OrderedCollector {
+    private static final Runnable NO_OUTPUT = () -> {
+    };
+
+    private final Executor outputExecutor;
+    private final Node root = new Node(null, 0);
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final AtomicInteger pendingDrains = new AtomicInteger();
+
+    //Emission cursor, only used by the drain task
+    private final List<Node> path = new ArrayList<>();
+    private final List<Integer> nextChildren = new ArrayList<>();
+
+    /**
+     * @param outputExecutor runs the outputs, one at a time
+     */
+    public OrderedCollector(Executor outputExecutor) {
+        this.outputExecutor = outputExecutor;
+        //The cursor must be ready before the first drain is scheduled
+        path.add(root);
+        nextChildren.add(0);
+        root.setOutput(NO_OUTPUT);
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * @return future completed when the root is sealed and all nodes are emitted
+     */
+    public CompletableFuture<Void> getDone() {
+        return done;
+    }
+
+    private void changed() {
+        if (pendingDrains.getAndIncrement() == 0) {
+            outputExecutor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Emits everything which is ready in the tree order
+     */
+    private void drain() {
+        int drains = pendingDrains.get();
+        while (true) {
+            try {
+                emitReady();
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+            drains = pendingDrains.addAndGet(-drains);
+            if (drains == 0) {
+                return;
+            }
+        }
+    }
+
+    private void emitReady() {
+        while (!path.isEmpty()) {
+            int top = path.size() - 1;
+            Node node = path.get(top);
+            if (!node.emitted) {
+                Runnable output = node.getOutput();
+                if (output == null) {
+                    return;
+                }
+                node.emitted = true;
+                node.releaseOutput();
+                output.run();
+            }
+            int next = nextChildren.get(top);
+            Node child = node.getChild(next);
+            if (child != null) {
+                nextChildren.set(top, next + 1);
+                path.add(child);
+                nextChildren.add(0);
+                continue;
+            }
+            if (!node.isSealed()) {
+                return;
+            }
+            if (node.getChild(next) != null) {
+                //Added right before the node was sealed
+                continue;
+            }
+            //The node and all its children are emitted
+            path.remove(top);
+            nextChildren.remove(top);
+            if (top > 0) {
+                path.get(top - 1).releaseChild(node.index);
+            }
+        }
+        done.complete(null);
+    }
+
+    /**
+     * Place in the output tree
+     */
+    public class Node {
+        private final Node parent;
+        private final int index;
+        private final List<Node> children = new ArrayList<>();
+        private Runnable output;
+        private boolean sealed;
+        //Only used by the drain task
+        private boolean emitted;
+
+        private Node(Node parent, int index) {
+            this.parent = parent;
+            this.index = index;
+        }
+
+        /**
+         * Reserves the place for the next child
+         * @return
+         */
+        public Node addChild() {
+            Node child;
+            synchronized (this) {
+                if (sealed) {
+                    throw new IllegalStateException("Node is already sealed");
+                }
+                child = new Node(this, children.size());
+                children.add(child);
+            }
+            changed();
+            return child;
+        }
+
+        /**
+         * Sets what is emitted for the node itself before its children, only the first output is used
+         * @param output
+         */
+        public void setOutput(Runnable output) {
+            synchronized (this) {
+                if (this.output != null) {
+                    return;
+                }
+                this.output = output;
+            }
+            changed();
+        }
+
+        /**
+         * No more children will be added
+         */
+        public void seal() {
+            synchronized (this) {
+                sealed = true;
+            }
+            changed();
+        }
+
+        /**
+         * The node has nothing to emit, e.g. its page is failed or filtered out
+         * The children which are already added are still emitted
+         */
+        public void skip() {
+            synchronized (this) {
+                if (output == null) {
+                    output = NO_OUTPUT;
+                }
+                sealed = true;
+            }
+            changed();
+        }
+
+        public Node getParent() {
+            return parent;
+        }
+
+        /**
+         * @return place of the node among the children of its parent, 0 for the root
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        private synchronized Runnable getOutput() {
+            return output;
+        }
+
+        /**
+         * Keeps later outputs out too, only the first one is used
+         */
+        private synchronized void releaseOutput() {
+            output = NO_OUTPUT;
+        }
+
+        /**
+         * The slot stays, so the indexes of the next children do not move
+         */
+        private synchronized void releaseChild(int index) {
+            children.set(index, null);
+        }
+
+        private synchronized boolean isSealed() {
+            return sealed;
+        }
+
+        private synchronized Node getChild(int index) {
+            return index < children.size() ? children.get(index) : null;
+        }
+    }
+}
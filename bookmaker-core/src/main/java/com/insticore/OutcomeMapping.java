@@ -0,0 +1,127 @@
+package com.insticore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tells which outcome of a common market an odd of a bookmaker is, e.g. 22Bet "1x2" "W1" and Olimp "Основные" "П1"
+ * are both outcome 0 of 3 of "1X2"
+ * The file has one odd per line: bookmaker, market name, odd name, market key, outcome index, outcome count,
+ * separated by tabs, the empty market name stands for the odds without a market title, # starts a comment
+ */
+public class OutcomeMapping {
+    private static final int FIELD_COUNT = 6;
+
+    //Bookmaker -> market name -> odd name -> outcome, the lookup does not allocate
+    private final Map<String, Map<String, Map<String, Outcome>>> outcomes = new HashMap<>();
+    private final Map<String, Integer> outcomeCounts = new HashMap<>();
+
+    /**
+     * One outcome of a common market
+     */
+    public static class Outcome {
+        private final String marketKey;
+        private final int index;
+        private final int count;
+
+        Outcome(String marketKey, int index, int count) {
+            this.marketKey = marketKey;
+            this.index = index;
+            this.count = count;
+        }
+
+        public String getMarketKey() {
+            return marketKey;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return how many outcomes the market has, all of them together cover every result
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * @param file
+     * @return mapping with all lines of the file
+     * @throws IOException if the file can not be read
+     */
+    public static OutcomeMapping load(Path file) throws IOException {
+        OutcomeMapping mapping = new OutcomeMapping();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length != FIELD_COUNT) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + " has " + fields.length
+                            + " fields instead of " + FIELD_COUNT);
+                }
+                try {
+                    mapping.add(fields[0], fields[1], fields[2], fields[3], Integer.parseInt(fields[4].trim()),
+                            Integer.parseInt(fields[5].trim()));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + " " + e.getMessage(), e);
+                }
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * @param bookmaker
+     * @param marketName empty or null for the odds without a market title
+     * @param oddName
+     * @param marketKey the same for all bookmakers
+     * @param index of the outcome in the market
+     * @param count of the outcomes in the market, the same for all bookmakers
+     */
+    public void add(String bookmaker, String marketName, String oddName, String marketKey, int index, int count) {
+        if (count < 2 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Outcome " + index + " of " + count + " is not valid");
+        }
+        Integer known = outcomeCounts.putIfAbsent(marketKey, count);
+        if (known != null && known != count) {
+            throw new IllegalArgumentException("Market " + marketKey + " has " + known + " outcomes, not " + count);
+        }
+        outcomes.computeIfAbsent(bookmaker, name -> new HashMap<>())
+                .computeIfAbsent(marketName != null ? marketName : "", name -> new HashMap<>())
+                .put(oddName, new Outcome(marketKey, index, count));
+    }
+
+    /**
+     * @param bookmaker
+     * @param marketName
+     * @param oddName
+     * @return the outcome or null if the odd is not mapped
+     */
+    public Outcome find(String bookmaker, String marketName, String oddName) {
+        Map<String, Map<String, Outcome>> markets = outcomes.get(bookmaker);
+        if (markets == null) {
+            return null;
+        }
+        Map<String, Outcome> odds = markets.get(marketName != null ? marketName : "");
+        return odds != null ? odds.get(oddName) : null;
+    }
+
+    /**
+     * @return how many common markets are mapped
+     */
+    public int size() {
+        return outcomeCounts.size();
+    }
+}
@@ -0,0 +1,105 @@
+package com.insticore;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.asynchttpclient.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Appends every response to an http archive while it is passed on, e.g. to replay a crawl with ReplayServer
+ * Meant to be right over the http client. A 304 has no body to replay and a response whose body
+ * is skipped is not complete, neither is recorded
+ */
+public class RecordingHttpFetcher implements HttpFetcher {
+    private final Logger logger = LoggerFactory.getLogger(RecordingHttpFetcher.class);
+    private final HttpFetcher delegate;
+    private final HttpArchive archive;
+
+    /**
+     * @param delegate
+     * @param archive the responses are appended to
+     */
+    public RecordingHttpFetcher(HttpFetcher delegate, HttpArchive archive) {
+        this.delegate = delegate;
+        this.archive = archive;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> fetch(Request request, ResponseHandler<T> handler) {
+        return delegate.fetch(request, new RecordingHandler<>(request, handler));
+    }
+
+    private class RecordingHandler<T> implements ResponseHandler<T> {
+        private final Request request;
+        private final ResponseHandler<T> handler;
+        private int statusCode;
+        private String contentType;
+        private ByteArrayOutputStream body;
+
+        private RecordingHandler(Request request, ResponseHandler<T> handler) {
+            this.request = request;
+            this.handler = handler;
+        }
+
+        @Override
+        public void onConnecting() {
+            handler.onConnecting();
+        }
+
+        @Override
+        public void onConnected() {
+            handler.onConnected();
+        }
+
+        @Override
+        public boolean onHeaders(int statusCode, HttpHeaders headers) {
+            boolean readBody = handler.onHeaders(statusCode, headers);
+            if (readBody && statusCode != 304) {
+                this.statusCode = statusCode;
+                contentType = headers.get(HttpHeaderNames.CONTENT_TYPE);
+                body = new ByteArrayOutputStream(headers.getInt(HttpHeaderNames.CONTENT_LENGTH, 8192));
+            }
+            return readBody;
+        }
+
+        @Override
+        public void onBodyPart(ByteBuffer bytes) {
+            if (body != null) {
+                ByteBuffer copy = bytes.duplicate();
+                if (copy.hasArray()) {
+                    body.write(copy.array(), copy.arrayOffset() + copy.position(), copy.remaining());
+                } else {
+                    byte[] part = new byte[copy.remaining()];
+                    copy.get(part);
+                    body.write(part, 0, part.length);
+                }
+            }
+            handler.onBodyPart(bytes);
+        }
+
+        @Override
+        public T onCompleted() {
+            if (body != null) {
+                try {
+                    archive.append(request.getMethod(), request.getUrl(), statusCode, contentType, body.toByteArray());
+                } catch (IOException e) {
+                    logger.warn("Response is not recorded: " + request.getUrl(), e);
+                }
+                body = null;
+            }
+            return handler.onCompleted();
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            body = null;
+            handler.onThrowable(t);
+        }
+    }
+}
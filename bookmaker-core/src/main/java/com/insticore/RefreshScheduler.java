@@ -0,0 +1,461 @@
+package com.insticore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Refreshes every event of a bookmaker on its own schedule instead of sweeping all of them at one pace
+ * An event is due the sooner the closer its start is and the more often its odds changed in the last refreshes.
+ * The events due first are loaded first, all within one request budget, so with the budget of a sweep the hot
+ * events are refreshed many times more often. The changes are found like in DeltaOddsSink, only event by event:
+ * the removed odds come when an event is refreshed without them or is not listed any more
+ */
+public class RefreshScheduler implements Closeable {
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 20;
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    //The interval is at most the time to the start divided by this, e.g. a minute an hour before the start
+    public static final long DEFAULT_LEAD_DIVISOR = 60;
+    //An event whose every refresh finds changes is refreshed this many times more often than a quiet one
+    public static final double DEFAULT_HOT_SPEEDUP = 8;
+    //Weight of the last refresh in the change rate of an event
+    private static final double ACTIVITY_WEIGHT = 0.3;
+
+    private final Logger logger = LoggerFactory.getLogger(RefreshScheduler.class);
+    private final RefreshableBookmaker bookmaker;
+    private final Consumer<OddsChange> changes;
+    private final EventMatcher matcher;
+    private final LiveOddsStore store;
+    private final double requestsPerSecond;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final ScheduledExecutorService timer;
+    private final ScheduledExecutorService lister;
+    //The events and the budget are touched on the timer thread only
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private double permits = 1;
+    private long refilled = System.currentTimeMillis();
+    private long sequence;
+    private ScheduledFuture<?> wakeup;
+    private long wakeupAt;
+    private volatile boolean closed;
+    private volatile int eventCount;
+    private volatile long listCount;
+    private volatile long refreshCount;
+    private volatile long failedCount;
+    private volatile long changeCount;
+    private volatile long latenessMillis;
+
+    /**
+     * @param bookmaker
+     * @param changes receives the changes one at a time
+     * @param requestsPerSecond how many events can be refreshed per second at most
+     */
+    public RefreshScheduler(RefreshableBookmaker bookmaker, Consumer<OddsChange> changes, double requestsPerSecond) {
+        this(bookmaker, changes, null, null, requestsPerSecond, DEFAULT_MIN_INTERVAL_MILLIS,
+                DEFAULT_MAX_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param bookmaker
+     * @param changes receives the changes one at a time
+     * @param matcher matches every refreshed event, so the changes have a fixture key, or null
+     * @param store gets every refreshed event, or null
+     * @param requestsPerSecond how many events can be refreshed per second at most
+     * @param minIntervalMillis an event is not refreshed more often, even a hot one just before its start
+     * @param maxIntervalMillis an event is refreshed at least this often while there is budget for it
+     */
+    public RefreshScheduler(RefreshableBookmaker bookmaker, Consumer<OddsChange> changes, EventMatcher matcher,
+                            LiveOddsStore store, double requestsPerSecond, long minIntervalMillis,
+                            long maxIntervalMillis) {
+        if (!(requestsPerSecond > 0)) {
+            throw new IllegalArgumentException("Requests per second must be above 0: " + requestsPerSecond);
+        }
+        if (minIntervalMillis <= 0 || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException("Intervals must be above 0 and the max at least the min: "
+                    + minIntervalMillis + ", " + maxIntervalMillis);
+        }
+        this.bookmaker = bookmaker;
+        this.changes = changes;
+        this.matcher = matcher;
+        this.store = store;
+        this.requestsPerSecond = requestsPerSecond;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        timer = Executors.newSingleThreadScheduledExecutor(
+                BookmakerContext.newThreadFactory("refresh-" + bookmaker.getName(), false));
+        lister = Executors.newSingleThreadScheduledExecutor(
+                BookmakerContext.newThreadFactory("listing-" + bookmaker.getName(), false));
+    }
+
+    /**
+     * Lists the events right away, the new ones are refreshed as soon as the budget lets them
+     * @param interval delay between the end of a listing and the start of the next one
+     * @param unit
+     */
+    public void start(long interval, TimeUnit unit) {
+        lister.scheduleWithFixedDelay(this::list, 0, interval, unit);
+    }
+
+    /**
+     * How long an event waits for its next refresh
+     * @param startsInMillis time to the start of the event, negative when it started
+     * @param activity share of the recent refreshes which found changes, from 0 to 1
+     * @param minIntervalMillis
+     * @param maxIntervalMillis
+     * @return interval in millis
+     */
+    static long interval(long startsInMillis, double activity, long minIntervalMillis, long maxIntervalMillis) {
+        long ceiling = Math.max(minIntervalMillis, Math.min(maxIntervalMillis, startsInMillis / DEFAULT_LEAD_DIVISOR));
+        return Math.max(minIntervalMillis, (long) (ceiling / (1 + DEFAULT_HOT_SPEEDUP * activity)));
+    }
+
+    /**
+     * @return how many events are listed
+     */
+    public int size() {
+        return eventCount;
+    }
+
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Stops the listings and the refreshes, the running listing is finished, the refreshes in flight are dropped
+     */
+    @Override
+    public void close() {
+        closed = true;
+        lister.shutdown();
+        timer.shutdownNow();
+        try {
+            lister.awaitTermination(1, TimeUnit.MINUTES);
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        long refreshes = refreshCount;
+        return String.format("Refresh of %s: %d events, %d listings, %d refreshes, %d failed, %d changes, "
+                        + "%d ms late on average", bookmaker.getName(), eventCount, listCount, refreshes, failedCount,
+                changeCount, refreshes > 0 ? latenessMillis / refreshes : 0);
+    }
+
+    private void list() {
+        List<EventRef> events;
+        try {
+            events = bookmaker.listEvents();
+        } catch (RuntimeException e) {
+            //The next listing is still scheduled
+            logger.error("Listing of " + bookmaker.getName() + " failed", e);
+            return;
+        }
+        try {
+            timer.execute(() -> update(events));
+        } catch (RejectedExecutionException e) {
+            //Closed while listing
+        }
+    }
+
+    /**
+     * Adds the new events as due now, drops the ones which are not listed any more
+     * An empty listing is taken for a failed one, the known events are kept
+     */
+    private void update(List<EventRef> events) {
+        long now = System.currentTimeMillis();
+        Set<String> listed = new HashSet<>();
+        for (EventRef ref : events) {
+            if (!listed.add(ref.getKey())) {
+                continue;
+            }
+            Entry entry = entries.get(ref.getKey());
+            if (entry == null) {
+                entry = new Entry(ref, now, sequence++);
+                entries.put(ref.getKey(), entry);
+                queue.add(entry);
+            } else {
+                entry.ref = ref;
+            }
+        }
+        if (!listed.isEmpty()) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (!listed.contains(entry.ref.getKey())) {
+                    iterator.remove();
+                    //Not in the queue while it is refreshed, its refresh is ignored then
+                    queue.remove(entry);
+                    entry.gone = true;
+                    drop(entry, now);
+                }
+            }
+        }
+        eventCount = entries.size();
+        listCount++;
+        if (matcher != null) {
+            //Prematch odds only, a started event is not offered any more
+            matcher.evict(now - EventMatcher.DEFAULT_WINDOW_MILLIS);
+        }
+        dispatch();
+    }
+
+    /**
+     * Refreshes the due events while there is budget, then waits for the next due event or permit
+     */
+    private void dispatch() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (wakeup != null && wakeupAt <= now) {
+            wakeup = null;
+        }
+        permits = Math.min(Math.max(1, requestsPerSecond), permits + (now - refilled) * requestsPerSecond / 1000);
+        refilled = now;
+        while (!queue.isEmpty() && queue.peek().due <= now && permits >= 1) {
+            permits--;
+            send(queue.poll(), now);
+        }
+        if (queue.isEmpty()) {
+            return;
+        }
+        long next = queue.peek().due;
+        if (permits < 1) {
+            next = Math.max(next, now + (long) Math.ceil((1 - permits) * 1000 / requestsPerSecond));
+        }
+        if (wakeup != null && wakeupAt <= next) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        wakeupAt = next;
+        wakeup = timer.schedule(this::dispatch, Math.max(0, next - now), TimeUnit.MILLISECONDS);
+    }
+
+    private void send(Entry entry, long now) {
+        latenessMillis += now - entry.due;
+        EventCollector collector = new EventCollector();
+        CompletableFuture<Void> refresh;
+        try {
+            refresh = bookmaker.refresh(entry.ref, collector);
+        } catch (RuntimeException e) {
+            refresh = new CompletableFuture<>();
+            refresh.completeExceptionally(e);
+        }
+        refresh.whenCompleteAsync((ignored, e) -> done(entry, collector, e), timer);
+    }
+
+    private void done(Entry entry, EventCollector collector, Throwable e) {
+        if (entry.gone || closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        refreshCount++;
+        if (e != null) {
+            failedCount++;
+            logger.error("Failed to refresh " + bookmaker.getName() + " event " + entry.ref, e);
+        } else {
+            apply(entry, collector, now);
+        }
+        long startsIn = entry.startTime != 0 ? entry.startTime - now : Long.MAX_VALUE;
+        entry.due = now + interval(startsIn, entry.activity, minIntervalMillis, maxIntervalMillis);
+        queue.add(entry);
+        dispatch();
+    }
+
+    /**
+     * Passes on what is changed since the last refresh of the event and keeps its odds for the next one
+     */
+    private void apply(Entry entry, EventCollector collector, long now) {
+        String name = bookmaker.getName();
+        Event event = collector.event;
+        Map<String, Quote> odds = new HashMap<>();
+        int changed = 0;
+        if (event != null) {
+            if (matcher != null) {
+                matcher.match(name, entry.ref.getSport(), event);
+            }
+            for (int m = 0; m < collector.markets.size(); m++) {
+                Market market = collector.markets.get(m);
+                for (Odd odd : collector.odds.get(m)) {
+                    String key = market.getId() + "/" + market.getName() + "/" + odd.getId();
+                    //The same odd can be listed twice in an event, the second one is compared with the first
+                    Quote earlier = odds.put(key, new Quote(event, market, odd));
+                    Quote before = earlier != null ? earlier : entry.odds.remove(key);
+                    if (before == null) {
+                        changed++;
+                        changes.accept(new OddsChange(OddsChange.Type.ADDED, now, name, event, market, odd,
+                                Double.NaN));
+                    } else if (Double.compare(before.odd.getValue(), odd.getValue()) != 0) {
+                        changed++;
+                        changes.accept(new OddsChange(OddsChange.Type.CHANGED, now, name, event, market, odd,
+                                before.odd.getValue()));
+                    }
+                }
+            }
+            entry.startTime = event.getStartTime();
+        }
+        changed += drop(entry, now);
+        if (store != null) {
+            if (entry.event != null && (event == null || !Objects.equals(entry.event.getId(), event.getId()))) {
+                store.remove(name, entry.event.getId());
+            }
+            if (event != null && event.getId() != null) {
+                List<LiveOddsStore.MarketOdds> markets = new ArrayList<>();
+                for (int m = 0; m < collector.markets.size(); m++) {
+                    markets.add(new LiveOddsStore.MarketOdds(collector.markets.get(m), collector.odds.get(m)));
+                }
+                store.put(new LiveOddsStore.EventOdds(name, entry.ref.getSport(), entry.ref.getTournament(), event,
+                        markets, store.nextSweep()));
+            }
+        }
+        //The first refresh adds everything, it says nothing about how often the odds change
+        if (entry.refreshed) {
+            entry.activity = entry.activity * (1 - ACTIVITY_WEIGHT) + (changed > 0 ? ACTIVITY_WEIGHT : 0);
+        }
+        changeCount += changed;
+        entry.refreshed = true;
+        entry.event = event;
+        entry.odds = odds;
+    }
+
+    /**
+     * Removes the odds which the event had and are not seen again, also from the store when the event is gone
+     * @return how many odds are removed
+     */
+    private int drop(Entry entry, long now) {
+        String name = bookmaker.getName();
+        int removed = 0;
+        for (Quote quote : entry.odds.values()) {
+            removed++;
+            changes.accept(new OddsChange(OddsChange.Type.REMOVED, now, name, quote.event, quote.market, quote.odd,
+                    quote.odd.getValue()));
+        }
+        entry.odds.clear();
+        if (entry.gone && store != null && entry.event != null) {
+            store.remove(name, entry.event.getId());
+        }
+        return removed;
+    }
+
+    /**
+     * A listed event and what its last refresh gave
+     */
+    private static final class Entry implements Comparable<Entry> {
+        private final long sequence;
+        private EventRef ref;
+        private long due;
+        private long startTime;
+        private double activity;
+        private boolean refreshed;
+        private Event event;
+        private Map<String, Quote> odds = new HashMap<>();
+        private boolean gone;
+
+        Entry(EventRef ref, long due, long sequence) {
+            this.ref = ref;
+            this.due = due;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byDue = Long.compare(due, other.due);
+            return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * An odd with the event and market it came under
+     */
+    private static final class Quote {
+        private final Event event;
+        private final Market market;
+        private final Odd odd;
+
+        Quote(Event event, Market market, Odd odd) {
+            this.event = event;
+            this.market = market;
+            this.odd = odd;
+        }
+    }
+
+    /**
+     * Keeps what one refresh writes, the last event if it writes more
+     */
+    private static final class EventCollector implements OddsSink {
+        private Event event;
+        private final List<Market> markets = new ArrayList<>();
+        private final List<List<Odd>> odds = new ArrayList<>();
+
+        @Override
+        public void begin(String bookmaker) {
+        }
+
+        @Override
+        public void sport(String name) {
+        }
+
+        @Override
+        public void tournament(String name) {
+        }
+
+        @Override
+        public void event(Event event) {
+            this.event = event;
+            markets.clear();
+            odds.clear();
+        }
+
+        @Override
+        public void market(Market market) {
+            if (event != null) {
+                markets.add(market);
+                odds.add(new ArrayList<>());
+            }
+        }
+
+        @Override
+        public void odd(Odd odd) {
+            if (!odds.isEmpty()) {
+                odds.get(odds.size() - 1).add(odd);
+            }
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+}
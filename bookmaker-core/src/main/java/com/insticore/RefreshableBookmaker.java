@@ -0,0 +1,26 @@
+package com.insticore;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A bookmaker whose events can be loaded one at a time, see RefreshScheduler
+ * The listing pages give the events, then every event is refreshed on its own schedule instead of in a sweep
+ */
+public interface RefreshableBookmaker extends Bookmaker {
+
+    /**
+     * Loads the pages which list the events and waits for them
+     * @return the events of all desired sports, the ones whose listing page failed are missing
+     */
+    List<EventRef> listEvents();
+
+    /**
+     * Loads the event without blocking the calling thread and writes it to the sink
+     * @param event
+     * @param sink gets the event, its markets and odds, no begin, sport, tournament or end, nothing when the event
+     *             has no odds any more
+     * @return future which completes when the event is written, exceptionally if its page failed
+     */
+    CompletableFuture<Void> refresh(EventRef event, OddsSink sink);
+}
@@ -0,0 +1,252 @@
+package com.insticore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves an http archive on the loopback address, so the parsers crawl a recorded sweep with no network at all
+ * The recorded host is the first part of the path: https://host/path is served as http://127.0.0.1:port/host/path,
+ * see baseUrl. Every response can be held back by a fixed latency and a random jitter and replaced by a 503 error,
+ * a held back response does not hold a thread, so the server keeps up with any number of requests in flight
+ * e.g. java -Dport=8080 -Dlatency=50 -Djitter=20 -DerrorRate=0.01 com.insticore.ReplayServer crawl.har
+ * and then java -Dbookmaker.replay=http://127.0.0.1:8080 com.insticore.RunnerMain
+ */
+public class ReplayServer implements Closeable {
+    /**
+     * System property with the url of the replay server the bookmakers are crawled from, see baseUrl
+     */
+    public static final String PROPERTY = "bookmaker.replay";
+    public static final int DEFAULT_THREADS = 8;
+
+    private final Logger logger = LoggerFactory.getLogger(ReplayServer.class);
+    private final HttpArchive archive;
+    private final long latencyMillis;
+    private final double jitterMillis;
+    private final double errorRate;
+    private final HttpServer server;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    /**
+     * Serves at full speed on a free port
+     * @param archive
+     * @throws IOException if the server can not be started
+     */
+    public ReplayServer(HttpArchive archive) throws IOException {
+        this(archive, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param archive the responses are served from
+     * @param port 0 for a free one
+     * @param latencyMillis every response is held back at least this long
+     * @param jitterMillis mean of the random delay added to the latency, exponentially distributed for a long tail
+     * @param errorRate share of the requests answered by 503 Service Unavailable, from 0 to 1
+     * @throws IOException if the server can not be started
+     */
+    public ReplayServer(HttpArchive archive, int port, long latencyMillis, long jitterMillis, double errorRate)
+            throws IOException {
+        if (latencyMillis < 0 || jitterMillis < 0) {
+            throw new IllegalArgumentException("Latency and jitter must not be negative: " + latencyMillis + ", "
+                    + jitterMillis);
+        }
+        if (!(errorRate >= 0 && errorRate <= 1)) {
+            throw new IllegalArgumentException("Error rate must be from 0 to 1: " + errorRate);
+        }
+        this.archive = archive;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(DEFAULT_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "replay-server-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @param baseUrl the real base url of a bookmaker, e.g. https://nodejs08.tglab.io
+     * @return the base url on the replay server given by the system property or the base url itself if it is not set
+     */
+    public static String baseUrl(String baseUrl) {
+        String serverUrl = System.getProperty(PROPERTY);
+        return serverUrl != null ? baseUrl(serverUrl, baseUrl) : baseUrl;
+    }
+
+    /**
+     * @param serverUrl e.g. http://127.0.0.1:8080
+     * @param baseUrl e.g. https://nodejs08.tglab.io
+     * @return e.g. http://127.0.0.1:8080/nodejs08.tglab.io
+     */
+    public static String baseUrl(String serverUrl, String baseUrl) {
+        int scheme = baseUrl.indexOf("://");
+        String server = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+        return server + '/' + (scheme >= 0 ? baseUrl.substring(scheme + 3) : baseUrl);
+    }
+
+    /**
+     * @return e.g. http://127.0.0.1:8080
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return how many requests are not in the archive and got 404
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return how many requests got the injected 503
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Replay server %s: requests %d, misses %d, errors %d, served %d bytes",
+                getUrl(), getRequestCount(), getMissCount(), getErrorCount(), getBytesServed());
+    }
+
+    /**
+     * Stops the server, the archive stays open
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) {
+        requestCount.incrementAndGet();
+        long delayMillis = latencyMillis;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (jitterMillis > 0) {
+            delayMillis += (long) (-jitterMillis * Math.log(1 - random.nextDouble()));
+        }
+        boolean error = errorRate > 0 && random.nextDouble() < errorRate;
+        if (delayMillis == 0) {
+            respond(exchange, error);
+        } else {
+            executor.schedule(() -> respond(exchange, error), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void respond(HttpExchange exchange, boolean error) {
+        try {
+            if (error) {
+                errorCount.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            HttpArchive.Record record = find(exchange);
+            if (record == null) {
+                missCount.incrementAndGet();
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = archive.readBody(record);
+            if (record.getContentType() != null) {
+                exchange.getResponseHeaders().set("Content-Type", record.getContentType());
+            }
+            exchange.sendResponseHeaders(record.getStatusCode(), body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            bytesServed.addAndGet(body.length);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Response is not served: " + exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the record of the host and path of the request, https first
+     */
+    private HttpArchive.Record find(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getRawPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        String target = path.substring(1) + (query != null ? '?' + query : "");
+        HttpArchive.Record record = archive.find("https://" + target);
+        if (record == null) {
+            record = archive.find("http://" + target);
+        }
+        return record != null && record.getMethod().equals(exchange.getRequestMethod()) ? record : null;
+    }
+
+    /**
+     * Serves the archive given as the argument until the process is killed
+     * -Dport, -Dlatency and -Djitter in millis and -DerrorRate set up the server
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java [-Dport=0] [-Dlatency=0] [-Djitter=0] [-DerrorRate=0] "
+                    + ReplayServer.class.getName() + " <archive>");
+            System.exit(1);
+        }
+        HttpArchive archive = HttpArchive.open(Paths.get(args[0]));
+        ReplayServer server = new ReplayServer(archive, Integer.getInteger("port", 0), Long.getLong("latency", 0),
+                Long.getLong("jitter", 0), Double.parseDouble(System.getProperty("errorRate", "0")));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println(server);
+            server.close();
+            try {
+                archive.close();
+            } catch (IOException e) {
+                System.err.println("Archive is not closed: " + e);
+            }
+        }));
+        System.out.println(archive);
+        Set<String> hosts = new TreeSet<>();
+        for (HttpArchive.Record record : archive.getRecords()) {
+            String url = record.getUrl();
+            int scheme = url.indexOf("://") + 3;
+            int path = url.indexOf('/', scheme);
+            hosts.add(url.substring(0, path >= 0 ? path : url.length()));
+        }
+        for (String host : hosts) {
+            System.out.println(host + " is served as " + baseUrl(server.getUrl(), host));
+        }
+        System.out.println("Crawl it with -D" + PROPERTY + "=" + server.getUrl());
+    }
+}
@@ -0,0 +1,57 @@
+package com.insticore;
+
+import io.netty.handler.codec.http.HttpHeaders;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives one response as it is downloaded
+ * The calls come one at a time: the connection events, onHeaders, the body parts, then onCompleted
+ * @param <T> result of the response
+ */
+public interface ResponseHandler<T> {
+
+    /**
+     * The request leaves the queue of its host and goes to the http client, called by the fetchers which
+     * queue the requests only, before any other call
+     */
+    default void onSent() {
+    }
+
+    /**
+     * A new connection is opened for the request, before the host name is resolved
+     * Not called when a pooled connection is reused
+     */
+    default void onConnecting() {
+    }
+
+    /**
+     * The new connection is ready to send the request, after the TLS handshake for https
+     */
+    default void onConnected() {
+    }
+
+    /**
+     * @param statusCode
+     * @param headers
+     * @return false to skip the body, onCompleted is still called
+     */
+    boolean onHeaders(int statusCode, HttpHeaders headers);
+
+    /**
+     * @param bytes only valid during the call
+     */
+    void onBodyPart(ByteBuffer bytes);
+
+    /**
+     * @return the result of the response
+     */
+    T onCompleted();
+
+    /**
+     * Called instead of onCompleted when the request fails, the failure itself is reported through the future
+     * @param t
+     */
+    default void onThrowable(Throwable t) {
+    }
+}
@@ -0,0 +1,232 @@
+package com.insticore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Crawls all bookmakers found on the classpath in one JVM, e.g.
+ * java -cp bookmaker-core.jar:olimp.jar:twenty-two-bet.jar:<dependencies> com.insticore.RunnerMain
+ */
+public class RunnerMain {
+    private static final long WORKER_START_SECONDS = 30;
+
+    public static void main(String[] args) throws IOException {
+        //-Dbookmakers=22Bet,Olimp crawls only the listed bookmakers
+        String names = System.getProperty("bookmakers");
+        //-DmaxInFlight=<requests> caps the requests to one host
+        int maxInFlight = Integer.getInteger("maxInFlight", LimitingHttpFetcher.DEFAULT_MAX_LIMIT);
+        //-Dsurebets=<outcome mapping file> with -Dpoll also prints the surebets across the bookmakers
+        String surebets = System.getProperty("surebets");
+        OutcomeMapping outcomes = surebets != null ? OutcomeMapping.load(Paths.get(surebets)) : null;
+        //-Daliases=<file> keeps the team and sport aliases of the event matching between the runs
+        String aliasFile = System.getProperty("aliases");
+        AliasTable aliases = aliasFile != null ? AliasTable.load(Paths.get(aliasFile)) : new AliasTable();
+        //-Dselection=<file> tells which sports, countries, tournaments, start times and markets are crawled,
+        //the rest is not requested at all, see CrawlSelection
+        //-Dbookmaker.execution=virtual runs the tasks on virtual threads, needs Java 21 or newer
+        //-Dcache=<directory> keeps the responses and asks only for the changed ones, -Doffline=true uses only them
+        //-Dcache.record=true also keeps the responses which can not be asked for as changed, for -Doffline=true later,
+        //-Dcache.maxIdleSweeps=<sweeps> deletes the kept responses not used for that many sweeps, 0 never does
+        String cache = System.getProperty("cache");
+        Path cacheDirectory = cache != null ? Paths.get(cache) : null;
+        //-Drecord=<archive> appends every response to the archive, ReplayServer serves it again
+        //-Dbookmaker.replay=<url of a ReplayServer> crawls the recorded responses instead of the bookmakers
+        String record = System.getProperty("record");
+        HttpArchive recording = record != null ? HttpArchive.open(Paths.get(record)) : null;
+        BookmakerContext context = new BookmakerContext(maxInFlight, cacheDirectory, Boolean.getBoolean("offline"),
+                ExecutionMode.fromSystemProperty(), recording);
+        //-Dshard.port=<port> splits the sweeps over the worker processes which connect to it, see ShardWorker
+        //-Dshard.workers=<count> starts that many workers on this box
+        String shardPort = System.getProperty(ShardCoordinator.PORT_PROPERTY);
+        int shardWorkers = Integer.getInteger(ShardCoordinator.WORKERS_PROPERTY, 0);
+        ShardCoordinator coordinator = null;
+        BookmakerRunner runner;
+        try {
+            List<Bookmaker> bookmakers = BookmakerRunner.load(context,
+                    names != null ? Arrays.asList(names.split(",")) : null);
+            if (shardPort != null || shardWorkers > 0) {
+                coordinator = new ShardCoordinator(shardPort != null ? Integer.parseInt(shardPort) : 0);
+                for (int i = 0; i < bookmakers.size(); i++) {
+                    bookmakers.set(i, coordinator.shard(bookmakers.get(i)));
+                }
+                startWorkers(coordinator, shardWorkers);
+            }
+            runner = new BookmakerRunner(context, bookmakers);
+        } catch (IOException | RuntimeException e) {
+            close(coordinator);
+            context.close();
+            close(recording);
+            throw e;
+        }
+        ShardCoordinator shards = coordinator;
+        //-Dmetrics=<file> writes the latencies and counters of all bookmakers to the file periodically
+        String metrics = System.getProperty("metrics");
+        if (metrics != null) {
+            runner.startReport(Paths.get(metrics), CrawlMetrics.DEFAULT_REPORT_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+        //The odds of all bookmakers meet in one book
+        OddsBook book = new OddsBook();
+        //-Dpoll=<seconds> keeps polling and prints only the changed odds
+        String poll = System.getProperty("poll");
+        //-Dsnapshot=<file> writes a binary snapshot instead of the console output
+        String snapshot = System.getProperty("snapshot");
+        //-Dtext=<file> writes the console output to the file instead
+        String text = System.getProperty("text");
+        if (poll != null) {
+            //The same fixture of all bookmakers gets one key before its odds reach the surebet engine
+            EventMatcher matcher = new EventMatcher(aliases);
+            Consumer<OddsChange> changes = System.out::println;
+            if (outcomes != null) {
+                changes = changes.andThen(new SurebetEngine(outcomes, matcher::getKey, System.out::println,
+                        SurebetEngine.DEFAULT_MIN_PROFIT));
+            }
+            //-Dquery.port=<port> keeps the latest odds of every event and serves queries on them, see OddsQueryServer
+            //-Dhistory=<directory> logs every change, the query server serves the history of the events as well
+            String historyDirectory = System.getProperty("history");
+            OddsHistoryLog history = historyDirectory != null ? OddsHistoryLog.open(Paths.get(historyDirectory)) : null;
+            if (history != null) {
+                changes = changes.andThen(history);
+            }
+            String queryPort = System.getProperty(OddsQueryServer.PORT_PROPERTY);
+            LiveOddsStore store = queryPort != null ? new LiveOddsStore() : null;
+            OddsQueryServer queries = store != null
+                    ? new OddsQueryServer(store, history, Integer.parseInt(queryPort)) : null;
+            if (queries != null) {
+                System.err.println("Odds are served on " + queries.getUrl() + "/odds");
+            }
+            //-Drefresh=<requests per second> refreshes the events one by one within that budget, the hot ones
+            //and the ones about to start more often, the poll interval is then the one of the event listings
+            String refresh = System.getProperty("refresh");
+            List<OddsPoller> pollers = new ArrayList<>();
+            List<RefreshScheduler> schedulers = new ArrayList<>();
+            for (Bookmaker bookmaker : runner.getBookmakers()) {
+                if (refresh != null && bookmaker instanceof RefreshableBookmaker) {
+                    schedulers.add(new RefreshScheduler((RefreshableBookmaker) bookmaker, changes, matcher, store,
+                            Double.parseDouble(refresh), RefreshScheduler.DEFAULT_MIN_INTERVAL_MILLIS,
+                            RefreshScheduler.DEFAULT_MAX_INTERVAL_MILLIS));
+                    continue;
+                }
+                OddsSink sink = new DeltaOddsSink(changes, book);
+                if (store != null) {
+                    sink = store.newSink(sink);
+                }
+                pollers.add(new OddsPoller(bookmaker::parse, matcher.newSink(sink)));
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                pollers.forEach(OddsPoller::close);
+                for (RefreshScheduler scheduler : schedulers) {
+                    scheduler.close();
+                    System.err.println(scheduler);
+                }
+                if (queries != null) {
+                    System.err.println(queries);
+                    queries.close();
+                }
+                if (history != null) {
+                    try {
+                        System.err.println(history);
+                        history.close();
+                    } catch (IOException e) {
+                        System.err.println("History is not closed: " + e);
+                    }
+                }
+                close(shards);
+                runner.close();
+                context.close();
+                close(recording);
+                try {
+                    aliases.save();
+                } catch (IOException e) {
+                    System.err.println("Aliases are not saved: " + e);
+                }
+            }));
+            for (OddsPoller poller : pollers) {
+                poller.start(Long.parseLong(poll), TimeUnit.SECONDS);
+            }
+            for (RefreshScheduler scheduler : schedulers) {
+                scheduler.start(Long.parseLong(poll), TimeUnit.SECONDS);
+            }
+            return;
+        }
+        try {
+            runner.parse(book);
+            if (snapshot != null) {
+                try (SnapshotWriter writer = new SnapshotWriter(Paths.get(snapshot))) {
+                    replay(runner, book, writer);
+                }
+            } else if (text != null) {
+                try (TextOddsSink sink = new TextOddsSink(Paths.get(text))) {
+                    replay(runner, book, sink);
+                }
+            } else {
+                replay(runner, book, new TextOddsSink(System.out));
+            }
+        } finally {
+            close(shards);
+            runner.close();
+            context.close();
+            close(recording);
+        }
+    }
+
+    /**
+     * Starts the worker processes and waits a while for them to connect, the units of a sweep with no workers
+     * are loaded by the coordinator itself
+     */
+    private static void startWorkers(ShardCoordinator coordinator, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        for (int i = 1; i <= count; i++) {
+            Process worker = ShardWorker.start(coordinator.getAddress(), "worker-" + i);
+            Runtime.getRuntime().addShutdownHook(new Thread(worker::destroy));
+        }
+        try {
+            if (!coordinator.awaitWorkers(count, WORKER_START_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Only " + coordinator.getWorkerCount() + " of " + count + " workers connected");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Disconnects the workers, they exit when the coordinator goes away
+     */
+    private static void close(ShardCoordinator coordinator) {
+        if (coordinator != null) {
+            coordinator.close();
+        }
+    }
+
+    private static void close(HttpArchive recording) {
+        if (recording == null) {
+            return;
+        }
+        try {
+            System.err.println(recording);
+            recording.close();
+        } catch (IOException e) {
+            System.err.println("Recording is not closed: " + e);
+        }
+    }
+
+    /**
+     * Writes the bookmakers one after another in the order of the runner
+     */
+    private static void replay(BookmakerRunner runner, OddsBook book, OddsSink sink) {
+        for (Bookmaker bookmaker : runner.getBookmakers()) {
+            BookmakerOdds odds = book.getOdds(bookmaker.getName());
+            if (odds != null) {
+                odds.replay(sink);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,467 @@
+package com.insticore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the sweeps of the bookmakers over worker processes on the same box, see ShardWorker
+ * <p>
+ * The coordinator loads the pages which list the tournaments and hands every tournament to the worker which owns
+ * it on a consistent hash ring of the worker names, so a tournament stays with the same worker from sweep to sweep
+ * and its caches stay warm there. When a worker goes away its unfinished tournaments are handed to the owners
+ * on the ring without it, when no worker is left the coordinator loads them itself. The workers send the odds
+ * of every tournament back and the coordinator writes them in the order of the listing, so the output is the same
+ * as from one process. A worker which hangs without closing its connection holds the sweep up
+ * e.g. java -Dshard.port=7000 com.insticore.RunnerMain, then java -Dshard.coordinator=127.0.0.1:7000 com.insticore.ShardWorker
+ */
+public class ShardCoordinator implements Closeable {
+    /**
+     * System property with the port the coordinator listens on, 0 for a free one
+     */
+    public static final String PORT_PROPERTY = "shard.port";
+    /**
+     * System property with the number of workers the coordinator starts itself as local processes
+     */
+    public static final String WORKERS_PROPERTY = "shard.workers";
+    private static final String REASSIGNED_UNITS = "reassignedUnits";
+    private static final String LOCAL_UNITS = "localUnits";
+
+    private final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+    private final ServerSocket serverSocket;
+    //Reads the workers and loads the units no worker is left for
+    private final ExecutorService threads;
+    //Guarded by this
+    private final ConsistentHashRing ring = new ConsistentHashRing();
+    private final Map<String, Worker> workers = new HashMap<>();
+    private final Map<Integer, Sweep> sweeps = new ConcurrentHashMap<>();
+    private final AtomicInteger sweepIds = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Listens on the loopback address for the workers
+     * @param port 0 for a free one
+     * @throws IOException if the port can not be used
+     */
+    public ShardCoordinator(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        threads = Executors.newCachedThreadPool(BookmakerContext.newThreadFactory("shard-coordinator", true));
+        threads.execute(this::accept);
+    }
+
+    /**
+     * @param bookmaker
+     * @return bookmaker whose sweeps are split over the workers, the bookmaker itself if it can not be split
+     */
+    public Bookmaker shard(Bookmaker bookmaker) {
+        return bookmaker instanceof ShardedBookmaker ? new CoordinatedBookmaker((ShardedBookmaker) bookmaker)
+                : bookmaker;
+    }
+
+    /**
+     * @return e.g. 127.0.0.1:7000, what the workers connect to
+     */
+    public String getAddress() {
+        return serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+    }
+
+    public synchronized int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * @param count
+     * @param timeout
+     * @param unit
+     * @return whether that many workers are connected before the timeout
+     * @throws InterruptedException
+     */
+    public synchronized boolean awaitWorkers(int count, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (workers.size() < count) {
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Shard coordinator " + getAddress() + ": workers " + workers.keySet();
+    }
+
+    /**
+     * Disconnects the workers, the sweeps still waiting for them fail
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Shard coordinator is not closed", e);
+        }
+        List<Worker> connected;
+        synchronized (this) {
+            connected = new ArrayList<>(workers.values());
+        }
+        for (Worker worker : connected) {
+            worker.close();
+        }
+        threads.shutdownNow();
+        for (Sweep sweep : sweeps.values()) {
+            sweep.wakeUp();
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                threads.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Workers are not accepted any more", e);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the results of one worker until it goes away
+     */
+    private void serve(Socket socket) {
+        Worker worker = null;
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            worker = new Worker(ShardProtocol.readHello(in), socket);
+            if (!join(worker)) {
+                logger.warn("Worker " + worker.name + " is already connected");
+                worker = null;
+                return;
+            }
+            logger.info("Worker " + worker.name + " joined from " + socket.getRemoteSocketAddress());
+            while (true) {
+                byte type = in.readByte();
+                if (type != ShardProtocol.RESULT) {
+                    throw new IOException("Unexpected frame " + type);
+                }
+                int sweepId = in.readInt();
+                int index = in.readInt();
+                byte[] odds = new byte[in.readInt()];
+                in.readFully(odds);
+                Sweep sweep = sweeps.get(sweepId);
+                //The units of a finished sweep or of one handed over twice are dropped
+                if (sweep != null) {
+                    sweep.unitDone(index, odds);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.warn("Worker " + (worker != null ? worker.name : socket.getRemoteSocketAddress())
+                        + " is disconnected: " + e);
+            }
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Worker socket is not closed", e);
+            }
+            if (worker != null) {
+                leave(worker);
+            }
+        }
+    }
+
+    private synchronized boolean join(Worker worker) {
+        if (workers.containsKey(worker.name)) {
+            return false;
+        }
+        workers.put(worker.name, worker);
+        ring.add(worker.name);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Hands the unfinished units of the worker to the others
+     */
+    private void leave(Worker worker) {
+        synchronized (this) {
+            worker.left = true;
+            if (workers.get(worker.name) != worker) {
+                return;
+            }
+            workers.remove(worker.name);
+            ring.remove(worker.name);
+        }
+        if (!closed) {
+            logger.warn("Worker " + worker.name + " left, its units go to the others");
+            for (Sweep sweep : sweeps.values()) {
+                sweep.reassign(worker);
+            }
+        }
+    }
+
+    /**
+     * @return owner of the key on the ring, null when no worker is connected
+     */
+    private synchronized Worker owner(String key) {
+        String name = ring.get(key);
+        return name != null ? workers.get(name) : null;
+    }
+
+    /**
+     * Connection of one worker process
+     */
+    private class Worker {
+        private final String name;
+        private final Socket socket;
+        private final DataOutputStream out;
+        //Guarded by the coordinator
+        private boolean left;
+
+        private Worker(String name, Socket socket) throws IOException {
+            this.name = name;
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        synchronized void send(ShardProtocol.Assignment assignment) throws IOException {
+            ShardProtocol.writeAssignment(out, assignment);
+            out.flush();
+        }
+
+        /**
+         * The reading thread of the worker sees the closed socket and hands its units over
+         */
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Worker socket is not closed", e);
+            }
+        }
+    }
+
+    /**
+     * One sweep of one bookmaker: its units, who loads them and their odds as they come back
+     */
+    private class Sweep {
+        private final int id;
+        private final ShardedBookmaker bookmaker;
+        private final List<WorkUnit> units;
+        //Guarded by this
+        private final byte[][] results;
+        private final Worker[] owners;
+
+        private Sweep(int id, ShardedBookmaker bookmaker, List<WorkUnit> units) {
+            this.id = id;
+            this.bookmaker = bookmaker;
+            this.units = units;
+            this.results = new byte[units.size()][];
+            this.owners = new Worker[units.size()];
+        }
+
+        /**
+         * Sends every unit to its owner on the ring, the units with no owner are loaded here
+         * @param indexes of the units in the sweep
+         */
+        void assign(List<Integer> indexes) {
+            Map<Worker, List<Integer>> assigned = new LinkedHashMap<>();
+            List<Integer> local = new ArrayList<>();
+            for (int index : indexes) {
+                Worker worker = owner(bookmaker.getName() + '/' + units.get(index).getKey());
+                synchronized (this) {
+                    if (results[index] != null) {
+                        continue;
+                    }
+                    owners[index] = worker;
+                }
+                if (worker != null) {
+                    assigned.computeIfAbsent(worker, ignored -> new ArrayList<>()).add(index);
+                } else {
+                    local.add(index);
+                }
+            }
+            for (Map.Entry<Worker, List<Integer>> entry : assigned.entrySet()) {
+                Worker worker = entry.getKey();
+                try {
+                    worker.send(assignment(entry.getValue()));
+                } catch (IOException e) {
+                    logger.warn("Units are not sent to worker " + worker.name + ": " + e);
+                    worker.close();
+                }
+                boolean left;
+                synchronized (ShardCoordinator.this) {
+                    left = worker.left;
+                }
+                //The worker left before it got the units, nobody else would hand them over
+                if (left) {
+                    reassign(worker);
+                }
+            }
+            if (!local.isEmpty()) {
+                bookmaker.getMetrics().add(LOCAL_UNITS, local.size());
+                ShardProtocol.Assignment assignment = assignment(local);
+                threads.execute(() -> parseLocally(assignment));
+            }
+        }
+
+        /**
+         * Sends the unfinished units of the worker to their new owners
+         */
+        void reassign(Worker worker) {
+            List<Integer> orphans = new ArrayList<>();
+            synchronized (this) {
+                for (int i = 0; i < owners.length; i++) {
+                    if (owners[i] == worker && results[i] == null) {
+                        orphans.add(i);
+                    }
+                }
+            }
+            if (!orphans.isEmpty()) {
+                bookmaker.getMetrics().add(REASSIGNED_UNITS, orphans.size());
+                assign(orphans);
+            }
+        }
+
+        synchronized void unitDone(int index, byte[] odds) {
+            if (results[index] == null) {
+                results[index] = odds;
+                notifyAll();
+            }
+        }
+
+        synchronized void wakeUp() {
+            notifyAll();
+        }
+
+        /**
+         * Writes the units in their order as soon as the next one is back, the sport before its first unit
+         */
+        void write(OddsSink sink) {
+            sink.begin(bookmaker.getName());
+            try {
+                String sport = null;
+                for (int i = 0; i < units.size(); i++) {
+                    byte[] odds = await(i);
+                    WorkUnit unit = units.get(i);
+                    if (!unit.getSport().equals(sport)) {
+                        sport = unit.getSport();
+                        sink.sport(sport);
+                    }
+                    ShardProtocol.replay(odds, sink);
+                }
+            } finally {
+                sink.end();
+            }
+        }
+
+        private synchronized byte[] await(int index) {
+            try {
+                while (results[index] == null) {
+                    if (closed) {
+                        throw new IllegalStateException("Shard coordinator is closed");
+                    }
+                    wait();
+                }
+                return results[index];
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Sweep of " + bookmaker.getName() + " is interrupted", e);
+            }
+        }
+
+        private void parseLocally(ShardProtocol.Assignment assignment) {
+            try {
+                bookmaker.parse(assignment.units, new ShardProtocol.UnitEncoder(assignment.indexes, this::unitDone));
+            } catch (RuntimeException e) {
+                logger.error("Units of " + bookmaker.getName() + " are not loaded", e);
+            } finally {
+                //A failed unit is written empty like a failed tournament of one process
+                for (int index : assignment.indexes) {
+                    unitDone(index, new byte[0]);
+                }
+            }
+        }
+
+        private ShardProtocol.Assignment assignment(List<Integer> indexes) {
+            int[] array = new int[indexes.size()];
+            List<WorkUnit> assigned = new ArrayList<>(indexes.size());
+            for (int i = 0; i < array.length; i++) {
+                array[i] = indexes.get(i);
+                assigned.add(units.get(array[i]));
+            }
+            return new ShardProtocol.Assignment(id, bookmaker.getName(), array, assigned);
+        }
+    }
+
+    /**
+     * The bookmaker as the runner sees it: it discovers the units and writes what the workers send back
+     */
+    private class CoordinatedBookmaker implements Bookmaker {
+        private final ShardedBookmaker bookmaker;
+
+        private CoordinatedBookmaker(ShardedBookmaker bookmaker) {
+            this.bookmaker = bookmaker;
+        }
+
+        @Override
+        public String getName() {
+            return bookmaker.getName();
+        }
+
+        @Override
+        public void parse(OddsSink sink) {
+            long start = System.nanoTime();
+            Sweep sweep = new Sweep(sweepIds.incrementAndGet(), bookmaker, bookmaker.discover());
+            sweeps.put(sweep.id, sweep);
+            try {
+                List<Integer> indexes = new ArrayList<>(sweep.units.size());
+                for (int i = 0; i < sweep.units.size(); i++) {
+                    indexes.add(i);
+                }
+                sweep.assign(indexes);
+                sweep.write(sink);
+            } finally {
+                sweeps.remove(sweep.id);
+                bookmaker.getMetrics().record(CrawlMetrics.Stage.SWEEP, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public CrawlMetrics getMetrics() {
+            return bookmaker.getMetrics();
+        }
+
+        @Override
+        public void close() {
+            bookmaker.close();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.insticore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frames between the shard coordinator and its workers, over one socket per worker
+ * <p>
+ * The worker says HELLO with its name, which decides its units on the ring. The coordinator sends ASSIGN
+ * with the units of a sweep of one bookmaker and the worker answers with one RESULT per unit in the order
+ * of the assignment. A result carries the odds of the unit as records, the same as the calls of the sink.
+ */
+final class ShardProtocol {
+    static final int MAGIC = 0x53484152; // "SHAR"
+    static final int VERSION = 1;
+
+    static final byte HELLO = 1;
+    static final byte ASSIGN = 2;
+    static final byte RESULT = 3;
+
+    //Records of a unit result
+    private static final byte TOURNAMENT = 1;
+    private static final byte EVENT = 2;
+    private static final byte MARKET = 3;
+    private static final byte ODD = 4;
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Units of one sweep of one bookmaker for one worker
+     */
+    static class Assignment {
+        final int sweep;
+        final String bookmaker;
+        final int[] indexes;
+        final List<WorkUnit> units;
+
+        Assignment(int sweep, String bookmaker, int[] indexes, List<WorkUnit> units) {
+            this.sweep = sweep;
+            this.bookmaker = bookmaker;
+            this.indexes = indexes;
+            this.units = units;
+        }
+    }
+
+    /**
+     * Receives the encoded odds of every unit once it is complete
+     */
+    interface ResultListener {
+        /**
+         * @param index of the unit in its sweep
+         * @param odds the records of the unit, see replay
+         */
+        void unitDone(int index, byte[] odds);
+    }
+
+    static void writeHello(DataOutput out, String worker) throws IOException {
+        out.writeByte(HELLO);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(worker);
+    }
+
+    /**
+     * @return name of the worker
+     * @throws IOException if the peer does not speak this protocol
+     */
+    static String readHello(DataInput in) throws IOException {
+        if (in.readByte() != HELLO || in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a shard worker of version " + VERSION);
+        }
+        return in.readUTF();
+    }
+
+    static void writeAssignment(DataOutput out, Assignment assignment) throws IOException {
+        out.writeByte(ASSIGN);
+        out.writeInt(assignment.sweep);
+        out.writeUTF(assignment.bookmaker);
+        out.writeInt(assignment.units.size());
+        for (int i = 0; i < assignment.units.size(); i++) {
+            WorkUnit unit = assignment.units.get(i);
+            out.writeInt(assignment.indexes[i]);
+            out.writeUTF(unit.getSport());
+            out.writeUTF(unit.getKey());
+            writeNullable(out, unit.getName());
+        }
+    }
+
+    /**
+     * Reads the assignment after its frame type
+     */
+    static Assignment readAssignment(DataInput in) throws IOException {
+        int sweep = in.readInt();
+        String bookmaker = in.readUTF();
+        int count = in.readInt();
+        int[] indexes = new int[count];
+        List<WorkUnit> units = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            indexes[i] = in.readInt();
+            units.add(new WorkUnit(in.readUTF(), in.readUTF(), readNullable(in)));
+        }
+        return new Assignment(sweep, bookmaker, indexes, units);
+    }
+
+    static void writeResult(DataOutput out, int sweep, int index, byte[] odds) throws IOException {
+        out.writeByte(RESULT);
+        out.writeInt(sweep);
+        out.writeInt(index);
+        out.writeInt(odds.length);
+        out.write(odds);
+    }
+
+    /**
+     * Writes the records of a unit to the sink, the unit itself is not written
+     * @param odds
+     * @param sink
+     */
+    static void replay(byte[] odds, OddsSink sink) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(odds));
+        try {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    return;
+                }
+                switch (type) {
+                    case TOURNAMENT:
+                        sink.tournament(readNullable(in));
+                        break;
+                    case EVENT:
+                        sink.event(new Event(readNullable(in), readNullable(in), readNullable(in), in.readLong()));
+                        break;
+                    case MARKET:
+                        sink.market(new Market(in.readInt(), readNullable(in)));
+                        break;
+                    case ODD:
+                        sink.odd(new Odd(in.readInt(), readNullable(in), in.readDouble()));
+                        break;
+                    default:
+                        throw new IOException("Unknown record " + type);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IllegalStateException("Unit result is cut off", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNullable(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Encodes the odds of every unit of an assignment and gives them to the listener unit by unit,
+     * the units which are never started are given empty at the end
+     */
+    static class UnitEncoder implements ShardedBookmaker.UnitSink {
+        private final int[] indexes;
+        private final ResultListener listener;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        //Position of the current unit in the assignment, -1 before the first one
+        private int current = -1;
+
+        /**
+         * @param indexes of the units in their sweep, in the order of the assignment
+         * @param listener
+         */
+        UnitEncoder(int[] indexes, ResultListener listener) {
+            this.indexes = indexes;
+            this.listener = listener;
+        }
+
+        @Override
+        public void begin(String bookmaker) {
+        }
+
+        @Override
+        public void unit(WorkUnit unit) {
+            done();
+            current++;
+        }
+
+        @Override
+        public void sport(String name) {
+        }
+
+        @Override
+        public void tournament(String name) {
+            write(TOURNAMENT);
+            write(name);
+        }
+
+        @Override
+        public void event(Event event) {
+            write(EVENT);
+            write(event.getId());
+            write(event.getName());
+            write(event.getDate());
+            try {
+                out.writeLong(event.getStartTime());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void market(Market market) {
+            write(MARKET);
+            try {
+                out.writeInt(market.getId());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            write(market.getName());
+        }
+
+        @Override
+        public void odd(Odd odd) {
+            write(ODD);
+            try {
+                out.writeInt(odd.getId());
+                writeNullable(out, odd.getName());
+                out.writeDouble(odd.getValue());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Gives the last unit and the ones which were never started, e.g. after the sweep failed
+         */
+        @Override
+        public void end() {
+            done();
+            while (++current < indexes.length) {
+                listener.unitDone(indexes[current], new byte[0]);
+            }
+        }
+
+        private void done() {
+            if (current >= 0 && current < indexes.length) {
+                listener.unitDone(indexes[current], bytes.toByteArray());
+            }
+            bytes.reset();
+        }
+
+        private void write(byte type) {
+            try {
+                out.writeByte(type);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write(String s) {
+            try {
+                writeNullable(out, s);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.insticore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Worker process of a ShardCoordinator: loads the units it is given and sends their odds back
+ * The name of the worker decides which units it gets, a worker started again under the same name
+ * gets the same units back. The worker runs until the coordinator goes away
+ * e.g. java -Dshard.coordinator=127.0.0.1:7000 -Dshard.worker=worker-1 com.insticore.ShardWorker
+ */
+public class ShardWorker implements Closeable {
+    /**
+     * System property with the host:port of the coordinator
+     */
+    public static final String COORDINATOR_PROPERTY = "shard.coordinator";
+    /**
+     * System property with the name of the worker, the process id if it is not set
+     */
+    public static final String NAME_PROPERTY = "shard.worker";
+    //The coordinator may still be starting when its workers are
+    private static final long CONNECT_TIMEOUT_MILLIS = 30_000;
+    private static final long CONNECT_RETRY_MILLIS = 200;
+
+    private final Logger logger = LoggerFactory.getLogger(ShardWorker.class);
+    private final String name;
+    private final Map<String, ShardedBookmaker> bookmakers = new HashMap<>();
+    //A sweep blocks its thread until all its units are written
+    private final ExecutorService sweeps;
+    private Socket socket;
+    private DataOutputStream out;
+
+    /**
+     * @param name of the worker on the ring of the coordinator
+     * @param bookmakers the ones which can not be split are ignored
+     */
+    public ShardWorker(String name, List<Bookmaker> bookmakers) {
+        this.name = name;
+        for (Bookmaker bookmaker : bookmakers) {
+            if (bookmaker instanceof ShardedBookmaker) {
+                this.bookmakers.put(bookmaker.getName(), (ShardedBookmaker) bookmaker);
+            }
+        }
+        sweeps = Executors.newCachedThreadPool(BookmakerContext.newThreadFactory("shard-worker", true));
+    }
+
+    /**
+     * Connects to the coordinator and loads the units it sends until it closes the connection
+     * @param address host:port of the coordinator
+     * @throws IOException if the coordinator can not be reached or the connection fails
+     */
+    public void run(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Coordinator address must be host:port: " + address);
+        }
+        socket = connect(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        synchronized (this) {
+            ShardProtocol.writeHello(out, name);
+            out.flush();
+        }
+        logger.info("Worker " + name + " connected to " + address);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type != ShardProtocol.ASSIGN) {
+                    throw new IOException("Unexpected frame " + type);
+                }
+                ShardProtocol.Assignment assignment = ShardProtocol.readAssignment(in);
+                sweeps.execute(() -> parse(assignment));
+            }
+        } catch (EOFException e) {
+            logger.info("Coordinator closed the connection of " + name);
+        }
+    }
+
+    @Override
+    public void close() {
+        sweeps.shutdownNow();
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Worker socket is not closed", e);
+            }
+        }
+    }
+
+    private Socket connect(String host, int port) throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return new Socket(InetAddress.getByName(host), port);
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(CONNECT_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void parse(ShardProtocol.Assignment assignment) {
+        ShardProtocol.UnitEncoder encoder = new ShardProtocol.UnitEncoder(assignment.indexes,
+                (index, odds) -> send(assignment.sweep, index, odds));
+        ShardedBookmaker bookmaker = bookmakers.get(assignment.bookmaker);
+        if (bookmaker == null) {
+            logger.error("Worker " + name + " has no bookmaker " + assignment.bookmaker);
+            encoder.end();
+            return;
+        }
+        try {
+            bookmaker.parse(assignment.units, encoder);
+        } catch (RuntimeException e) {
+            logger.error("Units of " + assignment.bookmaker + " are not loaded", e);
+            encoder.end();
+        }
+    }
+
+    private synchronized void send(int sweep, int index, byte[] odds) {
+        try {
+            ShardProtocol.writeResult(out, sweep, index, odds);
+            out.flush();
+        } catch (IOException e) {
+            //The coordinator hands the unit to another worker when it sees the connection is gone
+            logger.warn("Unit " + index + " is not sent: " + e);
+        }
+    }
+
+    /**
+     * Starts a worker process on this box with the class path and the system properties of this JVM,
+     * its log goes to the same console
+     * @param coordinator host:port of the coordinator
+     * @param name of the worker
+     * @return the worker process
+     * @throws IOException if the process can not be started
+     */
+    public static Process start(String coordinator, String name) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            //The memory settings and the system properties, not the agents and the debugger
+            if (argument.startsWith("-D") || argument.startsWith("-X")) {
+                command.add(argument);
+            }
+        }
+        command.addAll(Arrays.asList("-D" + COORDINATOR_PROPERTY + "=" + coordinator, "-D" + NAME_PROPERTY + "=" + name,
+                "-cp", System.getProperty("java.class.path"), ShardWorker.class.getName()));
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * Runs a worker with the bookmakers found on the class path, -Dbookmakers and -DmaxInFlight
+     * are read like by RunnerMain
+     */
+    public static void main(String[] args) throws IOException {
+        String coordinator = System.getProperty(COORDINATOR_PROPERTY);
+        if (coordinator == null) {
+            System.err.println("Usage: java -D" + COORDINATOR_PROPERTY + "=<host:port> [-D" + NAME_PROPERTY
+                    + "=<name>] " + ShardWorker.class.getName());
+            System.exit(1);
+        }
+        //pid@host
+        String process = ManagementFactory.getRuntimeMXBean().getName();
+        String name = System.getProperty(NAME_PROPERTY, "worker-" + process.split("@")[0]);
+        String names = System.getProperty("bookmakers");
+        BookmakerContext context = new BookmakerContext(Integer.getInteger("maxInFlight",
+                LimitingHttpFetcher.DEFAULT_MAX_LIMIT), null, false, ExecutionMode.fromSystemProperty(), null);
+        List<Bookmaker> bookmakers = new ArrayList<>();
+        try {
+            bookmakers.addAll(BookmakerRunner.load(context, names != null ? Arrays.asList(names.split(",")) : null));
+            try (ShardWorker worker = new ShardWorker(name, bookmakers)) {
+                worker.run(coordinator);
+            }
+        } finally {
+            for (Bookmaker bookmaker : bookmakers) {
+                bookmaker.close();
+            }
+            context.close();
+        }
+    }
+}
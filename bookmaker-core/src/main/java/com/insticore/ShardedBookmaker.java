@@ -0,0 +1,35 @@
+package com.insticore;
+
+import java.util.List;
+
+/**
+ * A bookmaker whose sweep can be split into work units and crawled by several processes, see ShardCoordinator
+ * The coordinator loads the pages which list the tournaments, the workers load the tournaments and their events
+ */
+public interface ShardedBookmaker extends Bookmaker {
+
+    /**
+     * Loads the pages which list the units and waits for them
+     * @return the units of one sweep in the output order, the ones whose listing page failed are missing
+     */
+    List<WorkUnit> discover();
+
+    /**
+     * Loads the given units only and writes them in the given order, the sport of a unit is not written
+     * @param units
+     * @param sink gets unit before the output of every unit, also of the ones which have nothing to write
+     */
+    void parse(List<WorkUnit> units, UnitSink sink);
+
+    /**
+     * Receives the odds of a sweep of work units
+     */
+    interface UnitSink extends OddsSink {
+
+        /**
+         * Start of the next unit of the list, the calls up to the next unit belong to it
+         * @param unit
+         */
+        void unit(WorkUnit unit);
+    }
+}
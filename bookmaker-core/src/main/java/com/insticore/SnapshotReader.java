@@ -0,0 +1,199 @@
+package com.insticore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-maps a snapshot written by SnapshotWriter
+ * Records are read straight from the mapped file by index, strings are decoded only when asked
+ */
+public class SnapshotReader implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer mapped;
+    private final int recordCount;
+    private final int stringCount;
+    private final int stringOffsetsPosition;
+    private final int stringDataPosition;
+    private final long createdAt;
+
+    public SnapshotReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < SnapshotWriter.HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mapped.getInt(0) != SnapshotWriter.MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            if (mapped.getInt(4) != SnapshotWriter.VERSION) {
+                throw new IOException("Unsupported snapshot version " + mapped.getInt(4) + " in " + file);
+            }
+            recordCount = mapped.getInt(8);
+            stringCount = mapped.getInt(12);
+            stringOffsetsPosition = (int) mapped.getLong(16);
+            stringDataPosition = stringOffsetsPosition + (stringCount + 1) * 4;
+            createdAt = mapped.getLong(24);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getStringCount() {
+        return stringCount;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @param record
+     * @return one of the record types of SnapshotWriter
+     */
+    public byte getType(int record) {
+        return mapped.get(position(record) + SnapshotWriter.TYPE_OFFSET);
+    }
+
+    /**
+     * @param record
+     * @return index of the parent record or NO_INDEX for a bookmaker
+     */
+    public int getParent(int record) {
+        return mapped.getInt(position(record) + SnapshotWriter.PARENT_OFFSET);
+    }
+
+    public int getNameId(int record) {
+        return mapped.getInt(position(record) + SnapshotWriter.NAME_OFFSET);
+    }
+
+    /**
+     * @param record
+     * @return name of the bookmaker, sport, tournament, event, market or odd
+     */
+    public String getName(int record) {
+        return getString(getNameId(record));
+    }
+
+    /**
+     * @param record
+     * @return event id for an event record
+     */
+    public String getKey(int record) {
+        return getString(mapped.getInt(position(record) + SnapshotWriter.KEY_OFFSET));
+    }
+
+    /**
+     * @param record
+     * @return market id for a market record, odd id for an odd record
+     */
+    public int getNumber(int record) {
+        return mapped.getInt(position(record) + SnapshotWriter.NUMBER_OFFSET);
+    }
+
+    /**
+     * @param record
+     * @return printed date for an event record
+     */
+    public String getText(int record) {
+        return getString(mapped.getInt(position(record) + SnapshotWriter.TEXT_OFFSET));
+    }
+
+    /**
+     * @param record
+     * @return start time for an event record
+     */
+    public long getStartTime(int record) {
+        return mapped.getLong(position(record) + SnapshotWriter.VALUE_OFFSET);
+    }
+
+    /**
+     * @param record
+     * @return odd value for an odd record
+     */
+    public double getOddValue(int record) {
+        return Double.longBitsToDouble(mapped.getLong(position(record) + SnapshotWriter.VALUE_OFFSET));
+    }
+
+    /**
+     * @param id
+     * @return the string or null for NO_INDEX
+     */
+    public String getString(int id) {
+        if (id == SnapshotWriter.NO_INDEX) {
+            return null;
+        }
+        if (id < 0 || id >= stringCount) {
+            throw new IndexOutOfBoundsException("String " + id + " of " + stringCount);
+        }
+        int start = mapped.getInt(stringOffsetsPosition + id * 4);
+        int end = mapped.getInt(stringOffsetsPosition + (id + 1) * 4);
+        ByteBuffer bytes = mapped.duplicate();
+        bytes.position(stringDataPosition + start);
+        bytes.limit(stringDataPosition + end);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    /**
+     * Sends all records of the snapshot to the sink in the order they were written
+     * @param sink
+     */
+    public void replay(OddsSink sink) {
+        boolean begun = false;
+        for (int record = 0; record < recordCount; record++) {
+            switch (getType(record)) {
+                case SnapshotWriter.BOOKMAKER:
+                    if (begun) {
+                        sink.end();
+                    }
+                    sink.begin(getName(record));
+                    begun = true;
+                    break;
+                case SnapshotWriter.SPORT:
+                    sink.sport(getName(record));
+                    break;
+                case SnapshotWriter.TOURNAMENT:
+                    sink.tournament(getName(record));
+                    break;
+                case SnapshotWriter.EVENT:
+                    sink.event(new Event(getKey(record), getName(record), getText(record), getStartTime(record)));
+                    break;
+                case SnapshotWriter.MARKET:
+                    sink.market(new Market(getNumber(record), getName(record)));
+                    break;
+                case SnapshotWriter.ODD:
+                    sink.odd(new Odd(getNumber(record), getName(record), getOddValue(record)));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown record type " + getType(record) + " at " + record);
+            }
+        }
+        if (begun) {
+            sink.end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int position(int record) {
+        if (record < 0 || record >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + record + " of " + recordCount);
+        }
+        return SnapshotWriter.HEADER_SIZE + record * SnapshotWriter.RECORD_SIZE;
+    }
+}
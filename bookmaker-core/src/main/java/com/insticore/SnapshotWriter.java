@@ -0,0 +1,208 @@
+package com.insticore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the odds into a binary snapshot file which can be memory-mapped by SnapshotReader
+ * <p>
+ * Layout: a header, fixed-width records in the order they came, then the string table.
+ * Every record points to its parent record, names and ids are indexes in the string table,
+ * so every string is stored once. The file is written next to the target and moved over it
+ * when closed, readers never see a half written snapshot.
+ */
+public class SnapshotWriter implements OddsSink {
+    public static final int MAGIC = 0x4F444453; // "ODDS"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 32;
+    public static final int NO_INDEX = -1;
+
+    public static final byte BOOKMAKER = 1;
+    public static final byte SPORT = 2;
+    public static final byte TOURNAMENT = 3;
+    public static final byte EVENT = 4;
+    public static final byte MARKET = 5;
+    public static final byte ODD = 6;
+
+    //Offsets of the record fields
+    static final int TYPE_OFFSET = 0;
+    static final int PARENT_OFFSET = 4;
+    static final int NAME_OFFSET = 8;
+    static final int KEY_OFFSET = 12;
+    static final int NUMBER_OFFSET = 16;
+    static final int TEXT_OFFSET = 20;
+    static final int VALUE_OFFSET = 24;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Path temporaryFile;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    private int recordCount;
+    private int bookmakerRecord = NO_INDEX;
+    private int sportRecord = NO_INDEX;
+    private int tournamentRecord = NO_INDEX;
+    private int eventRecord = NO_INDEX;
+    private int marketRecord = NO_INDEX;
+
+    public SnapshotWriter(Path file) throws IOException {
+        this.file = file;
+        this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        this.channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(HEADER_SIZE);
+    }
+
+    @Override
+    public void begin(String bookmaker) {
+        bookmakerRecord = writeRecord(BOOKMAKER, NO_INDEX, bookmaker, null, 0, null, 0);
+        sportRecord = tournamentRecord = eventRecord = marketRecord = NO_INDEX;
+    }
+
+    @Override
+    public void sport(String name) {
+        sportRecord = writeRecord(SPORT, bookmakerRecord, name, null, 0, null, 0);
+    }
+
+    @Override
+    public void tournament(String name) {
+        tournamentRecord = writeRecord(TOURNAMENT, sportRecord, name, null, 0, null, 0);
+    }
+
+    @Override
+    public void event(Event event) {
+        eventRecord = writeRecord(EVENT, tournamentRecord, event.getName(), event.getId(), 0, event.getDate(),
+                event.getStartTime());
+    }
+
+    @Override
+    public void market(Market market) {
+        marketRecord = writeRecord(MARKET, eventRecord, market.getName(), null, market.getId(), null, 0);
+    }
+
+    @Override
+    public void odd(Odd odd) {
+        writeRecord(ODD, marketRecord, odd.getName(), null, odd.getId(), null,
+                Double.doubleToRawLongBits(odd.getValue()));
+    }
+
+    @Override
+    public void end() {
+    }
+
+    /**
+     * Writes the string table and the header and replaces the target file
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            long stringTableOffset = channel.position();
+            writeStringTable();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(recordCount).putInt(strings.size())
+                    .putLong(stringTableOffset).putLong(System.currentTimeMillis());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return how many records are written so far
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    private int writeRecord(byte type, int parent, String name, String key, int number, String text, long value) {
+        if (buffer.remaining() < RECORD_SIZE) {
+            flush();
+        }
+        buffer.put(type).put((byte) 0).putShort((short) 0)
+                .putInt(parent)
+                .putInt(stringId(name))
+                .putInt(stringId(key))
+                .putInt(number)
+                .putInt(stringId(text))
+                .putLong(value);
+        return recordCount++;
+    }
+
+    private void writeStringTable() throws IOException {
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        ByteBuffer offsets = ByteBuffer.allocate((strings.size() + 1) * 4);
+        int offset = 0;
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            offsets.putInt(offset);
+            offset += bytes.length;
+        }
+        offsets.putInt(offset);
+        offsets.flip();
+        writeFully(offsets);
+        for (byte[] bytes : encoded) {
+            if (buffer.remaining() < bytes.length) {
+                flush();
+            }
+            if (bytes.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+            } else {
+                buffer.put(bytes);
+            }
+        }
+        flush();
+    }
+
+    private int stringId(String string) {
+        if (string == null) {
+            return NO_INDEX;
+        }
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+        return id;
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            writeFully(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot was not written to " + temporaryFile, e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
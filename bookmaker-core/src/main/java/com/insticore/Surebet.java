@@ -0,0 +1,98 @@
+package com.insticore;
+
+/**
+ * The best prices of all outcomes of one market across the bookmakers, when the sum of 1/price is below 1
+ * a bet on every outcome at its best price in proportion to the stakes wins whatever the outcome is
+ */
+public class Surebet {
+    public enum Type {
+        //The market turned into a surebet
+        OPENED,
+        //Still a surebet, but a best price or its bookmaker is changed
+        CHANGED,
+        //Not a surebet any more, the prices are the last ones which made it
+        CLOSED
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final String eventKey;
+    private final String marketKey;
+    private final String[] bookmakers;
+    private final double[] prices;
+    private final double inverseSum;
+
+    /**
+     * @param type
+     * @param timestamp epoch millis of the change which opened, changed or closed the surebet
+     * @param eventKey
+     * @param marketKey
+     * @param bookmakers bookmaker of the best price of every outcome
+     * @param prices best price of every outcome
+     * @param inverseSum sum of 1/price of the best prices
+     */
+    public Surebet(Type type, long timestamp, String eventKey, String marketKey, String[] bookmakers, double[] prices,
+                   double inverseSum) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.eventKey = eventKey;
+        this.marketKey = marketKey;
+        this.bookmakers = bookmakers;
+        this.prices = prices;
+        this.inverseSum = inverseSum;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getEventKey() {
+        return eventKey;
+    }
+
+    public String getMarketKey() {
+        return marketKey;
+    }
+
+    public int getOutcomeCount() {
+        return prices.length;
+    }
+
+    public String getBookmaker(int outcome) {
+        return bookmakers[outcome];
+    }
+
+    public double getPrice(int outcome) {
+        return prices[outcome];
+    }
+
+    /**
+     * @return the guaranteed return on the whole stake, e.g. 0.02 for 2%
+     */
+    public double getProfit() {
+        return 1 / inverseSum - 1;
+    }
+
+    /**
+     * @param outcome
+     * @return part of the whole stake to put on the outcome
+     */
+    public double getStake(int outcome) {
+        return 1 / prices[outcome] / inverseSum;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("Surebet ").append(type).append(' ').append(eventKey).append(' ')
+                .append(marketKey).append(String.format(", profit %.2f%%:", getProfit() * 100));
+        for (int outcome = 0; outcome < prices.length; outcome++) {
+            text.append(String.format(" %d at %.2f on %s (stake %.1f%%)", outcome, prices[outcome], bookmakers[outcome],
+                    getStake(outcome) * 100));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,305 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Finds the surebets across the bookmakers as the odds come and change, nothing is recomputed for the whole book
+ * The price of every bookmaker is kept for every outcome of the mapped markets, an update touches only its market:
+ * the best price of the outcome is found again among the bookmakers and the sum of 1/price among the outcomes
+ * Feed it with the changes of a DeltaOddsSink per bookmaker, the updates of all bookmakers are serialized,
+ * the listener is called in the update and must be quick
+ */
+public class SurebetEngine implements Consumer<OddsChange> {
+    public static final double DEFAULT_MIN_PROFIT = 0;
+    /**
+     * Events are the same when their names and start times are, good enough for the bookmakers which name them alike,
+     * EventMatcher matches the others
+     */
+    public static final BiFunction<String, Event, String> EVENT_NAME_KEYS = (bookmaker, event) ->
+            event.getStartTime() != 0 && event.getName() != null
+                    ? NameNormalizer.normalize(event.getName()) + '@' + event.getStartTime() : null;
+
+    private final OutcomeMapping outcomes;
+    private final BiFunction<String, Event, String> eventKeys;
+    private final Consumer<Surebet> surebets;
+    private final double maxInverseSum;
+    private final Map<String, Integer> bookmakerIndexes = new HashMap<>();
+    private final List<String> bookmakers = new ArrayList<>();
+    //Event key -> market key -> prices
+    private final Map<String, Map<String, MarketPrices>> events = new HashMap<>();
+    private int marketCount;
+    private int openCount;
+    private long updateCount;
+    private long openedCount;
+    private long closedCount;
+
+    /**
+     * @param outcomes which odds are compared and how
+     * @param surebets receives every opened, changed and closed surebet
+     */
+    public SurebetEngine(OutcomeMapping outcomes, Consumer<Surebet> surebets) {
+        this(outcomes, EVENT_NAME_KEYS, surebets, DEFAULT_MIN_PROFIT);
+    }
+
+    /**
+     * @param outcomes which odds are compared and how
+     * @param eventKeys gives the common key of an event of a bookmaker, null when the event is not compared
+     * @param surebets receives every opened, changed and closed surebet
+     * @param minProfit return below which a surebet is not reported, e.g. 0.01 for 1%
+     */
+    public SurebetEngine(OutcomeMapping outcomes, BiFunction<String, Event, String> eventKeys,
+                         Consumer<Surebet> surebets, double minProfit) {
+        if (minProfit < 0 || Double.isNaN(minProfit)) {
+            throw new IllegalArgumentException("Min profit must not be negative: " + minProfit);
+        }
+        this.outcomes = outcomes;
+        this.eventKeys = eventKeys;
+        this.surebets = surebets;
+        this.maxInverseSum = 1 / (1 + minProfit);
+    }
+
+    /**
+     * Takes the change if its odd is mapped, a removed odd takes its price away
+     * @param change
+     */
+    @Override
+    public void accept(OddsChange change) {
+        OutcomeMapping.Outcome outcome = outcomes.find(change.getBookmaker(), change.getMarket().getName(),
+                change.getOdd().getName());
+        if (outcome == null) {
+            return;
+        }
+        String eventKey = eventKeys.apply(change.getBookmaker(), change.getEvent());
+        if (eventKey == null) {
+            return;
+        }
+        double price = change.getType() == OddsChange.Type.REMOVED ? Double.NaN : change.getOdd().getValue();
+        update(change.getBookmaker(), eventKey, outcome.getMarketKey(), outcome.getIndex(), outcome.getCount(), price,
+                change.getTimestamp());
+    }
+
+    /**
+     * @param bookmaker
+     * @param eventKey common key of the event
+     * @param marketKey common key of the market
+     * @param outcome index of the outcome in the market
+     * @param outcomeCount how many outcomes the market has
+     * @param price the new price, NaN when the bookmaker does not offer the outcome any more
+     * @param timestamp epoch millis of the change
+     */
+    public synchronized void update(String bookmaker, String eventKey, String marketKey, int outcome, int outcomeCount,
+                                    double price, long timestamp) {
+        //A price of 1 or less is no bet at all
+        if (!(price > 1)) {
+            price = Double.NaN;
+        }
+        Map<String, MarketPrices> markets = events.get(eventKey);
+        if (markets == null) {
+            if (Double.isNaN(price)) {
+                return;
+            }
+            markets = new HashMap<>();
+            events.put(eventKey, markets);
+        }
+        MarketPrices market = markets.get(marketKey);
+        if (market == null) {
+            if (Double.isNaN(price)) {
+                return;
+            }
+            market = new MarketPrices(eventKey, marketKey, outcomeCount);
+            markets.put(marketKey, market);
+            marketCount++;
+        }
+        if (outcome < 0 || outcome >= market.outcomeCount) {
+            throw new IllegalArgumentException("Market " + marketKey + " has no outcome " + outcome);
+        }
+        updateCount++;
+        market.set(outcome, bookmakerIndex(bookmaker), price);
+        check(market, timestamp);
+        if (market.pricedCount == 0) {
+            markets.remove(marketKey);
+            marketCount--;
+            if (markets.isEmpty()) {
+                events.remove(eventKey);
+            }
+        }
+    }
+
+    /**
+     * @return the surebets which are open now
+     */
+    public synchronized List<Surebet> getOpenSurebets() {
+        List<Surebet> open = new ArrayList<>(openCount);
+        for (Map<String, MarketPrices> markets : events.values()) {
+            for (MarketPrices market : markets.values()) {
+                if (market.open) {
+                    open.add(toSurebet(Surebet.Type.OPENED, market, market.openedAt));
+                }
+            }
+        }
+        return open;
+    }
+
+    public synchronized int getOpenCount() {
+        return openCount;
+    }
+
+    public synchronized long getUpdateCount() {
+        return updateCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Surebets: %d open, %d opened, %d closed, %d updates of %d markets of %d events",
+                openCount, openedCount, closedCount, updateCount, marketCount, events.size());
+    }
+
+    private int bookmakerIndex(String bookmaker) {
+        Integer index = bookmakerIndexes.get(bookmaker);
+        if (index == null) {
+            index = bookmakers.size();
+            bookmakers.add(bookmaker);
+            bookmakerIndexes.put(bookmaker, index);
+        }
+        return index;
+    }
+
+    /**
+     * Compares the market with the surebet reported last and reports the difference
+     */
+    private void check(MarketPrices market, long timestamp) {
+        double inverseSum = market.inverseSum();
+        if (inverseSum < maxInverseSum) {
+            if (!market.open) {
+                market.open = true;
+                market.openedAt = timestamp;
+                market.remember(inverseSum);
+                openCount++;
+                openedCount++;
+                surebets.accept(toSurebet(Surebet.Type.OPENED, market, timestamp));
+            } else if (market.isChanged()) {
+                market.remember(inverseSum);
+                surebets.accept(toSurebet(Surebet.Type.CHANGED, market, timestamp));
+            }
+        } else if (market.open) {
+            market.open = false;
+            openCount--;
+            closedCount++;
+            surebets.accept(toSurebet(Surebet.Type.CLOSED, market, timestamp));
+        }
+    }
+
+    private Surebet toSurebet(Surebet.Type type, MarketPrices market, long timestamp) {
+        String[] names = new String[market.outcomeCount];
+        for (int outcome = 0; outcome < names.length; outcome++) {
+            names[outcome] = bookmakers.get(market.reportedBest[outcome]);
+        }
+        return new Surebet(type, timestamp, market.eventKey, market.marketKey, names,
+                market.reportedPrices.clone(), market.reportedInverseSum);
+    }
+
+    /**
+     * Prices of one market by outcome and bookmaker with the best one of every outcome
+     */
+    private static class MarketPrices {
+        private final String eventKey;
+        private final String marketKey;
+        private final int outcomeCount;
+        //outcome * bookmakerCapacity + bookmaker, NaN when the bookmaker has no price
+        private double[] prices;
+        private int bookmakerCapacity;
+        //Bookmaker of the best price of every outcome, -1 when no one has a price
+        private final int[] best;
+        private int pricedCount;
+        private boolean open;
+        private long openedAt;
+        //What is reported last, a closed surebet is reported with the prices which made it
+        private final int[] reportedBest;
+        private final double[] reportedPrices;
+        private double reportedInverseSum;
+
+        MarketPrices(String eventKey, String marketKey, int outcomeCount) {
+            this.eventKey = eventKey;
+            this.marketKey = marketKey;
+            this.outcomeCount = outcomeCount;
+            bookmakerCapacity = 2;
+            prices = new double[outcomeCount * bookmakerCapacity];
+            Arrays.fill(prices, Double.NaN);
+            best = new int[outcomeCount];
+            Arrays.fill(best, -1);
+            reportedBest = new int[outcomeCount];
+            reportedPrices = new double[outcomeCount];
+        }
+
+        void set(int outcome, int bookmaker, double price) {
+            if (bookmaker >= bookmakerCapacity) {
+                grow(bookmaker + 1);
+            }
+            int slot = outcome * bookmakerCapacity + bookmaker;
+            if (Double.isNaN(prices[slot]) != Double.isNaN(price)) {
+                pricedCount += Double.isNaN(price) ? -1 : 1;
+            }
+            prices[slot] = price;
+            int bestBookmaker = -1;
+            double bestPrice = Double.NaN;
+            int start = outcome * bookmakerCapacity;
+            for (int b = 0; b < bookmakerCapacity; b++) {
+                //NaN is never greater
+                if (prices[start + b] > bestPrice || bestBookmaker < 0 && !Double.isNaN(prices[start + b])) {
+                    bestBookmaker = b;
+                    bestPrice = prices[start + b];
+                }
+            }
+            best[outcome] = bestBookmaker;
+        }
+
+        /**
+         * @return sum of 1/price of the best prices, NaN while an outcome has no price
+         */
+        double inverseSum() {
+            double sum = 0;
+            for (int outcome = 0; outcome < outcomeCount; outcome++) {
+                if (best[outcome] < 0) {
+                    return Double.NaN;
+                }
+                sum += 1 / prices[outcome * bookmakerCapacity + best[outcome]];
+            }
+            return sum;
+        }
+
+        boolean isChanged() {
+            for (int outcome = 0; outcome < outcomeCount; outcome++) {
+                if (best[outcome] != reportedBest[outcome]
+                        || prices[outcome * bookmakerCapacity + best[outcome]] != reportedPrices[outcome]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void remember(double inverseSum) {
+            for (int outcome = 0; outcome < outcomeCount; outcome++) {
+                reportedBest[outcome] = best[outcome];
+                reportedPrices[outcome] = prices[outcome * bookmakerCapacity + best[outcome]];
+            }
+            reportedInverseSum = inverseSum;
+        }
+
+        private void grow(int bookmakerCount) {
+            int capacity = Math.max(bookmakerCount, bookmakerCapacity * 2);
+            double[] grown = new double[outcomeCount * capacity];
+            Arrays.fill(grown, Double.NaN);
+            for (int outcome = 0; outcome < outcomeCount; outcome++) {
+                System.arraycopy(prices, outcome * bookmakerCapacity, grown, outcome * capacity, bookmakerCapacity);
+            }
+            prices = grown;
+            bookmakerCapacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.insticore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Prints the odds as text, one line per sport, tournament, event, market and odd
+ * <p>
+ * The text is put together in a reused buffer, numbers are written digit by digit, and it is encoded and written
+ * in large blocks: whenever a sport or a tournament starts after the flush size is reached, and at the end.
+ * The calls come one at a time, so one buffer per sink is enough. The output is the same as with
+ * a println per line and String.format("%.2f") for the odd values
+ */
+public class TextOddsSink implements OddsSink {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    //Values from it on and the negative ones go through String.format, the long math could overflow
+    private static final double MAX_FAST_VALUE = 1e12;
+    //Longest int with its sign
+    private static final int MAX_INT_LENGTH = 11;
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final boolean ownsChannel;
+    private final CharsetEncoder encoder;
+    private final char[] text;
+    private final CharBuffer textBuffer;
+    private final ByteBuffer bytes;
+    private final int flushSize;
+    private final String lineSeparator = System.lineSeparator();
+    //0 when the digits of the locale are not 0-9 and every value is formatted by String.format
+    private final char decimalSeparator;
+    private int length;
+
+    /**
+     * Prints in the default charset, like System.out
+     * @param out
+     */
+    public TextOddsSink(OutputStream out) {
+        this(out, null, false, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel e.g. a file channel, it is left open
+     * @param charset
+     */
+    public TextOddsSink(WritableByteChannel channel, Charset charset) {
+        this(null, channel, false, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the file in the default charset, the file is replaced and closed with the sink
+     * @param file
+     * @throws IOException if the file can not be opened
+     */
+    public TextOddsSink(Path file) throws IOException {
+        this(null, FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), true, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE);
+    }
+
+    private TextOddsSink(OutputStream out, WritableByteChannel channel, boolean ownsChannel, Charset charset,
+                         int bufferSize) {
+        this.out = out;
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        //Like PrintStream, the characters the charset does not have are replaced
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.text = new char[bufferSize];
+        this.textBuffer = CharBuffer.wrap(text);
+        this.bytes = ByteBuffer.allocate((int) Math.ceil(bufferSize * encoder.maxBytesPerChar()));
+        this.flushSize = bufferSize / 2;
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        this.decimalSeparator = symbols.getZeroDigit() == '0' ? symbols.getDecimalSeparator() : 0;
+    }
+
+    @Override
+    public void begin(String bookmaker) {
+    }
+
+    @Override
+    public void sport(String name) {
+        flushBlock();
+        append(name);
+        newLine();
+    }
+
+    @Override
+    public void tournament(String name) {
+        flushBlock();
+        append(name);
+        newLine();
+    }
+
+    @Override
+    public void event(Event event) {
+        append(event.getName());
+        append(", ");
+        append(event.getDate());
+        append(", ");
+        append(event.getId());
+        newLine();
+    }
+
+    @Override
+    public void market(Market market) {
+        if (market.getName() != null) {
+            append(market.getName());
+            newLine();
+        }
+    }
+
+    @Override
+    public void odd(Odd odd) {
+        append("\t\t");
+        append(odd.getName());
+        append(", ");
+        appendValue(odd.getValue());
+        append(", ");
+        appendInt(odd.getId());
+        newLine();
+    }
+
+    @Override
+    public void end() {
+        flush(true);
+    }
+
+    /**
+     * Writes what is left and closes the file if the sink opened it
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(true);
+        } finally {
+            if (ownsChannel) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered blocks if they are large enough, called between the blocks only
+     */
+    private void flushBlock() {
+        if (length >= flushSize) {
+            flush(false);
+        }
+    }
+
+    private void newLine() {
+        append(lineSeparator);
+    }
+
+    private void append(String s) {
+        if (s == null) {
+            s = "null";
+        }
+        int start = 0;
+        while (start < s.length()) {
+            if (length == text.length) {
+                flush(false);
+            }
+            int end = Math.min(s.length(), start + text.length - length);
+            s.getChars(start, end, text, length);
+            length += end - start;
+            start = end;
+        }
+    }
+
+    private void appendInt(long value) {
+        if (text.length - length < MAX_INT_LENGTH + 1) {
+            flush(false);
+        }
+        if (value < 0) {
+            text[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * Same as String.format("%.2f"), which rounds the shortest decimal form of the value half up,
+     * e.g. 1.005 to 1.01 even though the double is a bit less than 1.005
+     */
+    private void appendValue(double value) {
+        if (!(value >= 0 && value < MAX_FAST_VALUE) || decimalSeparator == 0) {
+            append(String.format("%.2f", value));
+            return;
+        }
+        long thousandths = Math.round(value * 1000);
+        //Odds have 3 decimals at most, then the shortest form is exactly the thousandths, the other values
+        //go through String.format as well, rounding their double could differ from its shortest form
+        if (thousandths / 1000.0 != value) {
+            append(String.format("%.2f", value));
+            return;
+        }
+        long hundredths = (thousandths + 5) / 10;
+        appendInt(hundredths / 100);
+        if (text.length - length < 3) {
+            flush(false);
+        }
+        int cents = (int) (hundredths % 100);
+        text[length++] = decimalSeparator;
+        text[length++] = (char) ('0' + cents / 10);
+        text[length++] = (char) ('0' + cents % 10);
+    }
+
+    /**
+     * Encodes the buffered text and writes it
+     * @param endOfInput whether no more text follows for now, then the stream is flushed as well
+     */
+    private void flush(boolean endOfInput) {
+        try {
+            textBuffer.limit(length).position(0);
+            while (true) {
+                CoderResult result = encoder.encode(textBuffer, bytes, endOfInput);
+                if (result.isOverflow()) {
+                    write();
+                } else {
+                    break;
+                }
+            }
+            if (endOfInput) {
+                while (encoder.flush(bytes).isOverflow()) {
+                    write();
+                }
+                encoder.reset();
+            }
+            write();
+            //A high surrogate at the end waits for its pair
+            int left = textBuffer.remaining();
+            System.arraycopy(text, textBuffer.position(), text, 0, left);
+            length = left;
+            if (endOfInput && out != null) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write() throws IOException {
+        bytes.flip();
+        if (channel != null) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } else if (bytes.hasRemaining()) {
+            out.write(bytes.array(), bytes.arrayOffset(), bytes.limit());
+        }
+        bytes.clear();
+    }
+}
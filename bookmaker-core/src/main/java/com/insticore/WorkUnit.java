@@ -0,0 +1,38 @@
+package com.insticore;
+
+/**
+ * Part of a sweep which one worker loads on its own: a tournament with all its events
+ */
+public class WorkUnit {
+    private final String sport;
+    private final String key;
+    private final String name;
+
+    /**
+     * @param sport name of the sport the tournament is written under
+     * @param key what the bookmaker needs to load the tournament, e.g. its id or link, the same in every sweep
+     * @param name of the tournament if it is known before its page is loaded, otherwise null
+     */
+    public WorkUnit(String sport, String key, String name) {
+        this.sport = sport;
+        this.key = key;
+        this.name = name;
+    }
+
+    public String getSport() {
+        return sport;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return sport + "/" + key;
+    }
+}
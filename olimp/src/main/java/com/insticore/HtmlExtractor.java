@@ -0,0 +1,259 @@
+package com.insticore;
+
+import java.util.Arrays;
+
+/**
+ * Base of the targeted page extractors
+ * Keeps only the stack of the open elements, the subclasses mark the interesting elements
+ * and capture the small subtrees they need as fragments
+ * @param <T> result of the extraction
+ */
+public abstract class HtmlExtractor<T> implements HtmlTokenizer.Handler {
+    private static final String[] TABLE_SCOPE = {"table", "html"};
+    private static final String[] DEFAULT_SCOPE = {"td", "th", "table", "caption", "html"};
+    private static final String[] TABLE_TAGS = {"table", "caption", "tbody", "thead", "tfoot", "tr", "td", "th"};
+    private static final String[] CLOSING_P_TAGS = {"div", "p", "table", "ul", "ol", "dl", "form", "pre",
+            "blockquote", "h1", "h2", "h3", "h4", "h5", "h6"};
+
+    private Frame[] frames = new Frame[32];
+    private int depth;
+    private HtmlTokenizer.Attributes currentAttributes;
+
+    /**
+     * Called when an element is opened, it is already on the top of the stack
+     * @param name
+     * @param attributes
+     */
+    protected abstract void onStart(String name, HtmlTokenizer.Attributes attributes);
+
+    /**
+     * Called when a captured element is closed
+     * @param fragment
+     * @param marker the one set when the element was opened
+     */
+    protected abstract void onCaptured(HtmlFragment fragment, int marker);
+
+    /**
+     * @return what is extracted from the page
+     */
+    public abstract T getResult();
+
+    /**
+     * Called when an element is closed, the marker is the one set when it was opened
+     * @param name
+     * @param marker
+     */
+    protected void onEnd(String name, int marker) {
+    }
+
+    @Override
+    public void startTag(String name, HtmlTokenizer.Attributes attributes, boolean selfClosing) {
+        closeImplied(name);
+        HtmlFragment parentFragment = depth > 0 ? frames[depth - 1].fragment : null;
+        if (selfClosing) {
+            if (parentFragment != null) {
+                HtmlFragment.element(name, attributes, parentFragment);
+            }
+            return;
+        }
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Frame frame = frames[depth];
+        if (frame == null) {
+            frame = new Frame();
+            frames[depth] = frame;
+        }
+        frame.name = name;
+        frame.classes = attributes.get("class");
+        frame.marker = 0;
+        frame.captureRoot = false;
+        frame.fragment = parentFragment != null ? HtmlFragment.element(name, attributes, parentFragment) : null;
+        depth++;
+
+        currentAttributes = attributes;
+        onStart(name, attributes);
+        currentAttributes = null;
+    }
+
+    @Override
+    public void endTag(String name) {
+        String[] scope = contains(TABLE_TAGS, name) ? TABLE_SCOPE : DEFAULT_SCOPE;
+        for (int i = depth - 1; i >= 0; i--) {
+            String open = frames[i].name;
+            if (open.equals(name)) {
+                popTo(i);
+                return;
+            }
+            if (contains(scope, open)) {
+                //The element is not in scope, the end tag is ignored like in browsers
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void text(CharSequence text) {
+        if (depth > 0 && frames[depth - 1].fragment != null) {
+            frames[depth - 1].fragment.appendText(text);
+        }
+    }
+
+    /**
+     * Closes the elements which are still open when the document is over
+     */
+    public void finish() {
+        popTo(0);
+    }
+
+    /**
+     * Captures the current element with all its subtree, it is passed to onCaptured when closed
+     */
+    protected void capture() {
+        Frame frame = frames[depth - 1];
+        if (frame.fragment == null) {
+            frame.fragment = HtmlFragment.element(frame.name, currentAttributes, null);
+        }
+        frame.captureRoot = true;
+    }
+
+    /**
+     * Marks the current element so the subclass can find it among the ancestors
+     * @param marker any positive value
+     */
+    protected void mark(int marker) {
+        frames[depth - 1].marker = marker;
+    }
+
+    /**
+     * @param marker
+     * @return true when the current element or any of its ancestors has the marker
+     */
+    protected boolean hasMarker(int marker) {
+        for (int i = depth - 1; i >= 0; i--) {
+            if (frames[i].marker == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the element on the given level of the stack
+     * @param level 0 is the current element, 1 is its parent and so on
+     * @param tag
+     * @param className null to check the tag only
+     * @return
+     */
+    protected boolean isAt(int level, String tag, String className) {
+        int index = depth - 1 - level;
+        if (index < 0) {
+            return false;
+        }
+        Frame frame = frames[index];
+        return frame.name.equals(tag) && (className == null || containsClass(frame.classes, className));
+    }
+
+    protected int markerAt(int level) {
+        int index = depth - 1 - level;
+        return index < 0 ? 0 : frames[index].marker;
+    }
+
+    /**
+     * Checks if the class attribute contains the class name
+     * @param classes
+     * @param className
+     * @return
+     */
+    static boolean containsClass(String classes, String className) {
+        if (classes == null) {
+            return false;
+        }
+        int from = 0;
+        while (true) {
+            int index = classes.indexOf(className, from);
+            if (index < 0) {
+                return false;
+            }
+            int end = index + className.length();
+            if ((index == 0 || Character.isWhitespace(classes.charAt(index - 1)))
+                    && (end == classes.length() || Character.isWhitespace(classes.charAt(end)))) {
+                return true;
+            }
+            from = end;
+        }
+    }
+
+    /**
+     * Closes the elements which can not contain the new one, e.g. an open cell when a new row starts
+     * @param name
+     */
+    private void closeImplied(String name) {
+        switch (name) {
+            case "tr":
+                closeOpen(new String[]{"tr"}, TABLE_SCOPE);
+                break;
+            case "td":
+            case "th":
+                closeOpen(new String[]{"td", "th"}, new String[]{"tr", "table", "html"});
+                break;
+            case "li":
+                closeOpen(new String[]{"li"}, new String[]{"ul", "ol", "table", "html"});
+                break;
+            case "option":
+                closeOpen(new String[]{"option"}, new String[]{"select", "html"});
+                break;
+            default:
+                if (contains(CLOSING_P_TAGS, name)) {
+                    closeOpen(new String[]{"p"}, DEFAULT_SCOPE);
+                }
+        }
+    }
+
+    private void closeOpen(String[] names, String[] scope) {
+        for (int i = depth - 1; i >= 0; i--) {
+            String open = frames[i].name;
+            if (contains(names, open)) {
+                popTo(i);
+                return;
+            }
+            if (contains(scope, open)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes all elements down to the given index of the stack
+     * @param index
+     */
+    private void popTo(int index) {
+        while (depth > index) {
+            depth--;
+            Frame frame = frames[depth];
+            if (frame.captureRoot) {
+                onCaptured(frame.fragment, frame.marker);
+            }
+            onEnd(frame.name, frame.marker);
+            frame.fragment = null;
+            frame.classes = null;
+        }
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String candidate : names) {
+            if (candidate.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Frame {
+        private String name;
+        private String classes;
+        private int marker;
+        private boolean captureRoot;
+        private HtmlFragment fragment;
+    }
+}
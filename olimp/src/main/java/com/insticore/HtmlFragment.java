@@ -0,0 +1,264 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Small piece of the page kept by an extractor, either an element with its subtree or a text node
+ * Text is collected raw and decoded once the node is completed
+ */
+public class HtmlFragment {
+    private static final String[] BLOCK_TAGS = {"address", "article", "aside", "blockquote", "body", "dd", "div",
+            "dl", "dt", "fieldset", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr",
+            "html", "li", "main", "nav", "ol", "p", "pre", "section", "table", "tbody", "td", "tfoot", "th",
+            "thead", "tr", "ul"};
+
+    private final String tagName;
+    private final HtmlFragment parent;
+    private String[] attributes;
+    private List<HtmlFragment> childNodes;
+    private StringBuilder rawText;
+    private String text;
+
+    private HtmlFragment(String tagName, HtmlFragment parent) {
+        this.tagName = tagName;
+        this.parent = parent;
+    }
+
+    /**
+     * Creates an element copying its attributes
+     * @param tagName
+     * @param attributes
+     * @param parent null for the root of the captured subtree
+     * @return
+     */
+    static HtmlFragment element(String tagName, HtmlTokenizer.Attributes attributes, HtmlFragment parent) {
+        HtmlFragment element = new HtmlFragment(tagName, parent);
+        element.attributes = new String[attributes.size() * 2];
+        for (int i = 0; i < attributes.size(); i++) {
+            element.attributes[i * 2] = attributes.getName(i);
+            element.attributes[i * 2 + 1] = attributes.getValue(i);
+        }
+        element.childNodes = new ArrayList<>();
+        if (parent != null) {
+            parent.childNodes.add(element);
+        }
+        return element;
+    }
+
+    /**
+     * Appends the raw text to the last text node of the element or creates a new one
+     * @param text
+     */
+    void appendText(CharSequence text) {
+        HtmlFragment last = childNodes.isEmpty() ? null : childNodes.get(childNodes.size() - 1);
+        if (last == null || !last.isText() || last.rawText == null) {
+            last = new HtmlFragment(null, this);
+            last.rawText = new StringBuilder();
+            childNodes.add(last);
+        }
+        last.rawText.append(text);
+    }
+
+    public boolean isText() {
+        return tagName == null;
+    }
+
+    public String tagName() {
+        return tagName;
+    }
+
+    public HtmlFragment parent() {
+        return parent;
+    }
+
+    /**
+     * @param name
+     * @return the attribute value or empty string
+     */
+    public String attr(String name) {
+        if (attributes != null) {
+            for (int i = 0; i < attributes.length; i += 2) {
+                if (attributes[i].equals(name)) {
+                    return attributes[i + 1];
+                }
+            }
+        }
+        return "";
+    }
+
+    public boolean hasAttr(String name) {
+        if (attributes != null) {
+            for (int i = 0; i < attributes.length; i += 2) {
+                if (attributes[i].equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean hasClass(String className) {
+        return HtmlExtractor.containsClass(attr("class"), className);
+    }
+
+    public boolean is(String tag, String className) {
+        return tag.equals(tagName) && (className == null || hasClass(className));
+    }
+
+    public List<HtmlFragment> childNodes() {
+        return childNodes == null ? Collections.emptyList() : childNodes;
+    }
+
+    /**
+     * @return element children without text nodes
+     */
+    public List<HtmlFragment> children() {
+        List<HtmlFragment> children = new ArrayList<>();
+        for (HtmlFragment node : childNodes()) {
+            if (!node.isText()) {
+                children.add(node);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Finds the first element in the subtree matching the condition, the element itself included
+     * @param condition
+     * @return
+     */
+    public HtmlFragment first(Predicate<HtmlFragment> condition) {
+        if (!isText() && condition.test(this)) {
+            return this;
+        }
+        for (HtmlFragment node : childNodes()) {
+            HtmlFragment found = node.first(condition);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds all elements in the subtree matching the condition in the document order
+     * @param condition
+     * @return
+     */
+    public List<HtmlFragment> select(Predicate<HtmlFragment> condition) {
+        List<HtmlFragment> found = new ArrayList<>();
+        select(condition, found);
+        return found;
+    }
+
+    /**
+     * Joins the texts of all matching elements with a space
+     * @param condition
+     * @return
+     */
+    public String selectText(Predicate<HtmlFragment> condition) {
+        StringBuilder joined = new StringBuilder();
+        for (HtmlFragment element : select(condition)) {
+            if (joined.length() != 0) {
+                joined.append(' ');
+            }
+            joined.append(element.text());
+        }
+        return joined.toString();
+    }
+
+    /**
+     * For a text node it is the text with collapsed whitespaces
+     * For an element it is the normalized and trimmed text of all its descendants
+     * @return
+     */
+    public String text() {
+        if (isText()) {
+            StringBuilder normalized = new StringBuilder();
+            appendNormalized(normalized, decodedText(), false);
+            return normalized.toString();
+        }
+        StringBuilder accumulated = new StringBuilder();
+        accumulateText(accumulated);
+        return accumulated.toString().trim();
+    }
+
+    private void accumulateText(StringBuilder accumulated) {
+        for (HtmlFragment node : childNodes()) {
+            if (node.isText()) {
+                appendNormalized(accumulated, node.decodedText(), endsWithWhitespace(accumulated));
+            } else {
+                if (accumulated.length() > 0 && (node.isBlock() || "br".equals(node.tagName))
+                        && !endsWithWhitespace(accumulated)) {
+                    accumulated.append(' ');
+                }
+                node.accumulateText(accumulated);
+            }
+        }
+    }
+
+    private String decodedText() {
+        if (text == null) {
+            text = HtmlTokenizer.decodeEntities(rawText);
+            rawText = null;
+        }
+        return text;
+    }
+
+    private boolean isBlock() {
+        for (String tag : BLOCK_TAGS) {
+            if (tag.equals(tagName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void select(Predicate<HtmlFragment> condition, List<HtmlFragment> found) {
+        if (isText()) {
+            return;
+        }
+        if (condition.test(this)) {
+            found.add(this);
+        }
+        for (HtmlFragment node : childNodes) {
+            node.select(condition, found);
+        }
+    }
+
+    private static boolean endsWithWhitespace(StringBuilder accumulated) {
+        return accumulated.length() > 0 && accumulated.charAt(accumulated.length() - 1) == ' ';
+    }
+
+    /**
+     * Appends the text collapsing every run of whitespaces into one space
+     * @param accumulated
+     * @param text
+     * @param stripLeading
+     */
+    private static void appendNormalized(StringBuilder accumulated, String text, boolean stripLeading) {
+        boolean lastWasWhite = false;
+        boolean reachedNonWhite = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isWhitespace(c)) {
+                if ((stripLeading && !reachedNonWhite) || lastWasWhite) {
+                    continue;
+                }
+                accumulated.append(' ');
+                lastWasWhite = true;
+            } else {
+                accumulated.append(c);
+                lastWasWhite = false;
+                reachedNonWhite = true;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == '\u00a0';
+    }
+}
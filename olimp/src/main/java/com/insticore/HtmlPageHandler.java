@@ -0,0 +1,145 @@
+package com.insticore;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Feeds the response body into the extractor chunk by chunk as it arrives
+ * The body is never kept as a whole
+ * @param <T> result of the extractor
+ */
+public class HtmlPageHandler<T> implements ResponseHandler<T> {
+    private static final int CHAR_BUFFER_SIZE = 8192;
+
+    private final HtmlExtractor<T> extractor;
+    private final HtmlTokenizer tokenizer;
+    private final boolean requireOk;
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    private CharsetDecoder decoder = newDecoder(StandardCharsets.UTF_8);
+    //Bytes of a char split between two body parts
+    private ByteBuffer leftover;
+    private int statusCode;
+    //Time spent in decoding and extracting, it is interleaved with the download
+    private long extractNanos;
+
+    /**
+     * @param extractor
+     * @param requireOk when true the body of a non 200 response is not read and the result is empty
+     */
+    public HtmlPageHandler(HtmlExtractor<T> extractor, boolean requireOk) {
+        this.extractor = extractor;
+        this.tokenizer = new HtmlTokenizer(extractor);
+        this.requireOk = requireOk;
+    }
+
+    @Override
+    public boolean onHeaders(int statusCode, HttpHeaders headers) {
+        this.statusCode = statusCode;
+        if (requireOk && statusCode != 200) {
+            return false;
+        }
+        Charset charset = parseCharset(headers.get(HttpHeaderNames.CONTENT_TYPE));
+        if (charset != null) {
+            decoder = newDecoder(charset);
+        }
+        return true;
+    }
+
+    @Override
+    public void onBodyPart(ByteBuffer bytes) {
+        long start = System.nanoTime();
+        if (leftover != null && leftover.hasRemaining()) {
+            ByteBuffer joined = ByteBuffer.allocate(leftover.remaining() + bytes.remaining());
+            joined.put(leftover).put(bytes).flip();
+            bytes = joined;
+        }
+        decode(bytes, false);
+        leftover = bytes.hasRemaining() ? ByteBuffer.allocate(bytes.remaining()).put(bytes) : null;
+        if (leftover != null) {
+            leftover.flip();
+        }
+        extractNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public T onCompleted() {
+        long start = System.nanoTime();
+        decode(leftover != null ? leftover : ByteBuffer.allocate(0), true);
+        while (decoder.flush(chars).isOverflow()) {
+            flushChars();
+        }
+        flushChars();
+        tokenizer.finish();
+        extractor.finish();
+        extractNanos += System.nanoTime() - start;
+        return extractor.getResult();
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return time spent in decoding and extracting the body so far
+     */
+    public long getExtractNanos() {
+        return extractNanos;
+    }
+
+    /**
+     * Decodes the bytes and feeds the chars to the tokenizer
+     * An incomplete char at the end stays in the bytes until the next part comes
+     * @param bytes
+     * @param endOfInput
+     */
+    private void decode(ByteBuffer bytes, boolean endOfInput) {
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            flushChars();
+        } while (result.isOverflow());
+    }
+
+    private void flushChars() {
+        chars.flip();
+        if (chars.hasRemaining()) {
+            tokenizer.feed(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        }
+        chars.clear();
+    }
+
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private static Charset parseCharset(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int index = contentType.toLowerCase().indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        String name = contentType.substring(index + "charset=".length()).trim();
+        int end = name.indexOf(';');
+        if (end >= 0) {
+            name = name.substring(0, end);
+        }
+        name = name.replace("\"", "").trim();
+        try {
+            return Charset.forName(name);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
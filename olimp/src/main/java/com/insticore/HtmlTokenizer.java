@@ -0,0 +1,524 @@
+package com.insticore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incremental HTML tokenizer
+ * Chars can be fed in chunks of any size, tags and comments split between chunks are kept until completed
+ * Text is reported raw, consecutive text callbacks belong to the same text node
+ */
+public class HtmlTokenizer {
+
+    /**
+     * Receives the tokens in the document order
+     */
+    public interface Handler {
+        /**
+         * @param name lowercase tag name
+         * @param attributes valid only during the call
+         * @param selfClosing true for void elements and "/>" tags, no end tag will follow
+         */
+        void startTag(String name, Attributes attributes, boolean selfClosing);
+
+        void endTag(String name);
+
+        /**
+         * @param text raw text, entities are not decoded
+         */
+        void text(CharSequence text);
+    }
+
+    /**
+     * Reusable attributes of the current tag
+     */
+    public static class Attributes {
+        private String[] names = new String[8];
+        private String[] values = new String[8];
+        private int size;
+
+        /**
+         * @param name
+         * @return decoded value or null if the attribute is absent
+         */
+        public String get(String name) {
+            for (int i = 0; i < size; i++) {
+                if (names[i].equals(name)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        public boolean has(String name) {
+            return get(name) != null;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String getName(int index) {
+            return names[index];
+        }
+
+        public String getValue(int index) {
+            return values[index];
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void add(String name, String value) {
+            if (get(name) != null) {
+                //The first one wins like in browsers
+                return;
+            }
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            names[size] = name;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    private static final String[] VOID_TAGS = {"area", "base", "br", "col", "embed", "hr", "img", "input",
+            "link", "meta", "param", "source", "track", "wbr"};
+    //Content of these tags is not parsed as markup and is not reported
+    private static final String[] RAW_TEXT_TAGS = {"script", "style", "textarea", "title", "noscript"};
+
+    private static final String ENTITIES_FILE = "html-entities.tsv";
+    private static final char REPLACEMENT_CHAR = '\ufffd';
+    //&#128; to &#159; are taken as windows-1252, e.g. &#133; is the ellipsis
+    private static final int WIN1252_START = 0x80;
+    private static final int[] WIN1252 = {
+            0x20AC, 0x0081, 0x201A, 0x0192, 0x201E, 0x2026, 0x2020, 0x2021,
+            0x02C6, 0x2030, 0x0160, 0x2039, 0x0152, 0x008D, 0x017D, 0x008F,
+            0x0090, 0x2018, 0x2019, 0x201C, 0x201D, 0x2022, 0x2013, 0x2014,
+            0x02DC, 0x2122, 0x0161, 0x203A, 0x0153, 0x009D, 0x017E, 0x0178
+    };
+    //Every HTML5 named reference and the text it stands for
+    private static final Map<String, String> ENTITIES = new HashMap<>();
+    //The ones which are decoded without the ";" as well
+    private static final Set<String> LEGACY_ENTITIES = new HashSet<>();
+
+    static {
+        try (InputStream in = HtmlTokenizer.class.getResourceAsStream(ENTITIES_FILE)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                StringBuilder text = new StringBuilder(2);
+                for (String codePoint : fields[1].split(" ")) {
+                    text.appendCodePoint(Integer.parseInt(codePoint, 16));
+                }
+                ENTITIES.put(fields[0], text.toString());
+                if (fields.length > 2) {
+                    LEGACY_ENTITIES.add(fields[0]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("HTML entities are not read from " + ENTITIES_FILE, e);
+        }
+    }
+
+    private final Handler handler;
+    private final StringBuilder buffer = new StringBuilder();
+    private final Attributes attributes = new Attributes();
+    //Name of the raw text tag which content is being skipped
+    private String rawTextTag;
+
+    public HtmlTokenizer(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Tokenizes the next chunk of the document
+     * @param chars
+     * @param offset
+     * @param length
+     */
+    public void feed(char[] chars, int offset, int length) {
+        buffer.append(chars, offset, length);
+        int consumed = tokenize(false);
+        buffer.delete(0, consumed);
+    }
+
+    public void feed(CharSequence chars) {
+        buffer.append(chars);
+        int consumed = tokenize(false);
+        buffer.delete(0, consumed);
+    }
+
+    /**
+     * Reports everything left in the buffer, an unfinished tag is reported as text
+     */
+    public void finish() {
+        int consumed = tokenize(true);
+        if (consumed < buffer.length() && rawTextTag == null) {
+            handler.text(buffer.subSequence(consumed, buffer.length()));
+        }
+        buffer.setLength(0);
+    }
+
+    /**
+     * Decodes the character references in the text
+     * @param text
+     * @return
+     */
+    public static String decodeEntities(CharSequence text) {
+        return decodeEntities(text, false);
+    }
+
+    /**
+     * Decodes the character references the way Jsoup does: every HTML5 named reference with the ";",
+     * the legacy ones without it too, except in an attribute value when a letter, a digit, "=", "-" or "_"
+     * follows, the numeric ones with or without the ";", 128 to 159 as windows-1252, the invalid code points as U+FFFD
+     * @param text
+     * @param inAttribute whether the text is an attribute value
+     * @return
+     */
+    public static String decodeEntities(CharSequence text, boolean inAttribute) {
+        int amp = indexOf(text, '&', 0);
+        if (amp < 0) {
+            return text.toString();
+        }
+        StringBuilder decoded = new StringBuilder(text.length());
+        decoded.append(text, 0, amp);
+        int i = amp;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c != '&') {
+                decoded.append(c);
+                i++;
+                continue;
+            }
+            int end = decodeReference(text, i + 1, inAttribute, decoded);
+            if (end < 0) {
+                decoded.append(c);
+                i++;
+            } else {
+                i = end;
+            }
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * @param start right after the "&"
+     * @return where the reference ends or -1 if it is not one, then nothing is appended
+     */
+    private static int decodeReference(CharSequence text, int start, boolean inAttribute, StringBuilder decoded) {
+        int length = text.length();
+        if (start < length && text.charAt(start) == '#') {
+            int digitsStart = start + 1;
+            boolean hex = digitsStart < length && (text.charAt(digitsStart) == 'x' || text.charAt(digitsStart) == 'X');
+            if (hex) {
+                digitsStart++;
+            }
+            int end = digitsStart;
+            while (end < length && Character.digit(text.charAt(end), hex ? 16 : 10) >= 0
+                    && text.charAt(end) < 128) {
+                end++;
+            }
+            if (end == digitsStart) {
+                return -1;
+            }
+            int codePoint = parseCodePoint(text.subSequence(digitsStart, end).toString(), hex ? 16 : 10);
+            if (codePoint < 0 || codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+                decoded.append(REPLACEMENT_CHAR);
+            } else if (codePoint >= WIN1252_START && codePoint < WIN1252_START + WIN1252.length) {
+                decoded.appendCodePoint(WIN1252[codePoint - WIN1252_START]);
+            } else {
+                decoded.appendCodePoint(codePoint);
+            }
+            return end < length && text.charAt(end) == ';' ? end + 1 : end;
+        }
+        //Letters, then digits, e.g. frac12
+        int end = start;
+        while (end < length && Character.isLetter(text.charAt(end))) {
+            end++;
+        }
+        while (end < length && text.charAt(end) >= '0' && text.charAt(end) <= '9') {
+            end++;
+        }
+        String name = text.subSequence(start, end).toString();
+        boolean terminated = end < length && text.charAt(end) == ';';
+        String value = ENTITIES.get(name);
+        if (value == null || !terminated && !LEGACY_ENTITIES.contains(name)) {
+            return -1;
+        }
+        if (inAttribute && end < length) {
+            char next = text.charAt(end);
+            if (Character.isLetterOrDigit(next) || next == '=' || next == '-' || next == '_') {
+                return -1;
+            }
+        }
+        decoded.append(value);
+        return terminated ? end + 1 : end;
+    }
+
+    /**
+     * @param last true when no more chars will come
+     * @return how many chars of the buffer were consumed
+     */
+    private int tokenize(boolean last) {
+        int position = 0;
+        int length = buffer.length();
+        while (position < length) {
+            if (rawTextTag != null) {
+                int end = findRawTextEnd(position);
+                if (end < 0) {
+                    //Keep the tail which can be the beginning of the closing tag
+                    return Math.max(position, length - rawTextTag.length() - 2);
+                }
+                int close = buffer.indexOf(">", end);
+                if (close < 0) {
+                    return end;
+                }
+                String tag = rawTextTag;
+                rawTextTag = null;
+                handler.endTag(tag);
+                position = close + 1;
+                continue;
+            }
+            char c = buffer.charAt(position);
+            if (c != '<') {
+                int next = buffer.indexOf("<", position);
+                int end = next < 0 ? length : next;
+                handler.text(buffer.subSequence(position, end));
+                position = end;
+                continue;
+            }
+            if (position + 1 >= length) {
+                return position;
+            }
+            char next = buffer.charAt(position + 1);
+            int consumed;
+            if (next == '!' || next == '?') {
+                consumed = skipDeclaration(position, last);
+            } else if (next == '/') {
+                consumed = readEndTag(position);
+            } else if (Character.isLetter(next)) {
+                consumed = readStartTag(position);
+            } else {
+                //Not a tag, the '<' is a text
+                handler.text(buffer.subSequence(position, position + 1));
+                consumed = position + 1;
+            }
+            if (consumed < 0) {
+                return position;
+            }
+            position = consumed;
+        }
+        return position;
+    }
+
+    private int findRawTextEnd(int from) {
+        String closing = "</" + rawTextTag;
+        int length = buffer.length() - closing.length();
+        for (int i = from; i <= length; i++) {
+            if (buffer.charAt(i) == '<' && buffer.charAt(i + 1) == '/' && regionMatchesIgnoreCase(i + 2, rawTextTag)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatchesIgnoreCase(int from, String lowerCase) {
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if (Character.toLowerCase(buffer.charAt(from + i)) != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips comments, doctype and processing instructions
+     * @param position
+     * @param last
+     * @return position after the declaration or -1 if it is not complete yet
+     */
+    private int skipDeclaration(int position, boolean last) {
+        if (buffer.length() < position + 4 && !last) {
+            return -1;
+        }
+        if (buffer.length() >= position + 4 && buffer.charAt(position + 2) == '-' && buffer.charAt(position + 3) == '-') {
+            int end = buffer.indexOf("-->", position + 4);
+            return end < 0 ? -1 : end + 3;
+        }
+        int end = buffer.indexOf(">", position + 2);
+        return end < 0 ? -1 : end + 1;
+    }
+
+    private int readEndTag(int position) {
+        int end = findTagEnd(position + 2);
+        if (end < 0) {
+            return -1;
+        }
+        int nameEnd = position + 2;
+        while (nameEnd < end && isNameChar(buffer.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd > position + 2) {
+            handler.endTag(toLowerCase(position + 2, nameEnd));
+        }
+        return end + 1;
+    }
+
+    private int readStartTag(int position) {
+        int end = findTagEnd(position + 1);
+        if (end < 0) {
+            return -1;
+        }
+        int i = position + 1;
+        while (i < end && isNameChar(buffer.charAt(i))) {
+            i++;
+        }
+        String name = toLowerCase(position + 1, i);
+        boolean selfClosing = buffer.charAt(end - 1) == '/';
+        int attributesEnd = selfClosing ? end - 1 : end;
+
+        attributes.clear();
+        while (i < attributesEnd) {
+            char c = buffer.charAt(i);
+            if (Character.isWhitespace(c) || c == '/') {
+                i++;
+                continue;
+            }
+            int nameStart = i;
+            while (i < attributesEnd && !Character.isWhitespace(buffer.charAt(i)) && buffer.charAt(i) != '='
+                    && buffer.charAt(i) != '/') {
+                i++;
+            }
+            String attributeName = toLowerCase(nameStart, i);
+            while (i < attributesEnd && Character.isWhitespace(buffer.charAt(i))) {
+                i++;
+            }
+            String value = "";
+            if (i < attributesEnd && buffer.charAt(i) == '=') {
+                i++;
+                while (i < attributesEnd && Character.isWhitespace(buffer.charAt(i))) {
+                    i++;
+                }
+                if (i < attributesEnd && (buffer.charAt(i) == '"' || buffer.charAt(i) == '\'')) {
+                    char quote = buffer.charAt(i);
+                    int valueEnd = buffer.indexOf(String.valueOf(quote), i + 1);
+                    if (valueEnd < 0 || valueEnd > end) {
+                        valueEnd = attributesEnd;
+                    }
+                    value = decodeEntities(buffer.subSequence(i + 1, valueEnd), true);
+                    i = Math.min(valueEnd + 1, attributesEnd);
+                } else {
+                    int valueStart = i;
+                    while (i < attributesEnd && !Character.isWhitespace(buffer.charAt(i))) {
+                        i++;
+                    }
+                    value = decodeEntities(buffer.subSequence(valueStart, i), true);
+                }
+            }
+            if (!attributeName.isEmpty()) {
+                attributes.add(attributeName, value);
+            }
+        }
+
+        boolean isVoid = selfClosing || isVoidTag(name);
+        handler.startTag(name, attributes, isVoid);
+        if (!isVoid && isRawTextTag(name)) {
+            rawTextTag = name;
+        }
+        return end + 1;
+    }
+
+    /**
+     * Finds the closing '>' of a tag skipping quoted attribute values
+     * @param from
+     * @return position of the '>' or -1 if the tag is not complete yet
+     */
+    private int findTagEnd(int from) {
+        char quote = 0;
+        boolean afterEquals = false;
+        for (int i = from; i < buffer.length(); i++) {
+            char c = buffer.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '>') {
+                return i;
+            } else if ((c == '"' || c == '\'') && afterEquals) {
+                quote = c;
+            }
+            if (quote == 0 && !Character.isWhitespace(c)) {
+                afterEquals = c == '=';
+            }
+        }
+        return -1;
+    }
+
+    private String toLowerCase(int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = Character.toLowerCase(buffer.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == ':';
+    }
+
+    private static boolean isVoidTag(String name) {
+        for (String tag : VOID_TAGS) {
+            if (tag.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRawTextTag(String name) {
+        for (String tag : RAW_TEXT_TAGS) {
+            if (tag.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(CharSequence text, char c, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseCodePoint(String digits, int radix) {
+        if (digits.isEmpty()) {
+            return -1;
+        }
+        try {
+            int codePoint = Integer.parseInt(digits, radix);
+            return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
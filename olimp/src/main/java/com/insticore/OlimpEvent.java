@@ -0,0 +1,83 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Event with its markets as they are shown on the event page
+ */
+public class OlimpEvent {
+    private final String name;
+    private final String date;
+    private final String id;
+    private final List<Market> markets = new ArrayList<>();
+
+    public OlimpEvent(String name, String date, String id) {
+        this.name = name;
+        this.date = date;
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public List<Market> getMarkets() {
+        return markets;
+    }
+
+    /**
+     * Market title with its odds, the title is null for the odds which come before any title
+     */
+    public static class Market {
+        private final String name;
+        private final List<Outcome> outcomes = new ArrayList<>();
+
+        public Market(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Outcome> getOutcomes() {
+            return outcomes;
+        }
+    }
+
+    /**
+     * Odd as it is written on the page
+     */
+    public static class Outcome {
+        private final String name;
+        private final String value;
+        private final String id;
+
+        public Outcome(String name, String value, String id) {
+            this.name = name;
+            this.value = value;
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+}
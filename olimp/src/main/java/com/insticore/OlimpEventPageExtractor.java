@@ -0,0 +1,192 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Extracts the event title, date, id and the odds of the selected markets from an event page
+ * Only the first row of table.koeftable2, the div.tab > nobr main odds and the children of
+ * div.tab > div[data-match-id-show] are kept, each of them is processed as soon as it is closed.
+ * The odds of a market which is not selected are not captured at all
+ */
+public class OlimpEventPageExtractor extends HtmlExtractor<OlimpEvent> {
+    static final String MAIN_MARKET_NAME = "Главные исходы";
+
+    private static final int EVENTS_TABLE = 1;
+    private static final int EVENT_ROW = 2;
+    private static final int MAIN_ODD = 3;
+    private static final int ODDS = 4;
+    private static final int ODDS_CHILD = 5;
+
+    private static final Predicate<HtmlFragment> GOOGLE_STAT_ISSUE = e -> e.is("span", "googleStatIssue");
+    private static final Predicate<HtmlFragment> GOOGLE_STAT_ISSUE_NAME = e -> e.is("span", "googleStatIssueName");
+    private static final Predicate<HtmlFragment> ODD_SPAN = e -> e.is("span", null) && e.hasAttr("data-id");
+    //b.value_js > span#googleStatKef
+    private static final Predicate<HtmlFragment> ODD_VALUE = e -> e.is("span", null)
+            && "googleStatKef".equals(e.attr("id")) && e.parent() != null && e.parent().is("b", "value_js");
+    //div.gameNameLine > font > b > span
+    private static final Predicate<HtmlFragment> EVENT_NAME = e -> e.is("span", null)
+            && e.parent() != null && e.parent().is("b", null)
+            && e.parent().parent() != null && e.parent().parent().is("font", null)
+            && e.parent().parent().parent() != null && e.parent().parent().parent().is("div", "gameNameLine");
+
+    private final CrawlSelection selection;
+    private final boolean mainMarketSelected;
+    //The odds which follow the title of a left out market are left out as well
+    private boolean skippingMarket;
+    private boolean tableFound;
+    private boolean rowFound;
+    private String name;
+    private String date;
+    private String id;
+    private int oddsChildren;
+    private final OlimpEvent.Market mainMarket = new OlimpEvent.Market(MAIN_MARKET_NAME);
+    private final List<OlimpEvent.Market> markets = new ArrayList<>();
+
+    public OlimpEventPageExtractor() {
+        this(CrawlSelection.ALL);
+    }
+
+    /**
+     * @param selection its market titles are checked, the markets have no ids on the page
+     */
+    public OlimpEventPageExtractor(CrawlSelection selection) {
+        this.selection = selection;
+        mainMarketSelected = selection.isMarket(Market.NO_ID, MAIN_MARKET_NAME);
+        skippingMarket = !selection.isMarket(Market.NO_ID, null);
+    }
+
+    @Override
+    protected void onStart(String tagName, HtmlTokenizer.Attributes attributes) {
+        if (markerAt(1) == ODDS) {
+            //Market title or market odds
+            mark(ODDS_CHILD);
+            if (!skippingMarket || "b".equals(tagName)) {
+                capture();
+            }
+            oddsChildren++;
+        } else if (!tableFound && isAt(0, "table", "koeftable2")) {
+            tableFound = true;
+            mark(EVENTS_TABLE);
+        } else if (!rowFound && OlimpTournamentPageExtractor.isEventRow(this) && hasMarker(EVENTS_TABLE)) {
+            rowFound = true;
+            mark(EVENT_ROW);
+            capture();
+        } else if (id == null && "div".equals(tagName) && attributes.has("data-match-id-show") && isAt(1, "div", "tab")) {
+            id = attributes.get("data-match-id-show");
+            mark(ODDS);
+        } else if (mainMarketSelected && "nobr".equals(tagName) && isAt(1, "div", "tab")) {
+            mark(MAIN_ODD);
+            capture();
+        }
+    }
+
+    @Override
+    protected void onCaptured(HtmlFragment fragment, int marker) {
+        switch (marker) {
+            case EVENT_ROW:
+                readEventRow(fragment);
+                break;
+            case MAIN_ODD:
+                readMainOdd(fragment);
+                break;
+            case ODDS_CHILD:
+                readOddsChild(fragment);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return the event or null if the page has no events table or no odds
+     */
+    @Override
+    public OlimpEvent getResult() {
+        if (!rowFound || id == null || oddsChildren == 0) {
+            return null;
+        }
+        OlimpEvent event = new OlimpEvent(name, date, id);
+        if (!mainMarket.getOutcomes().isEmpty()) {
+            event.getMarkets().add(mainMarket);
+        }
+        event.getMarkets().addAll(markets);
+        return event;
+    }
+
+    private void readEventRow(HtmlFragment row) {
+        HtmlFragment firstCell = row.first(e -> e.is("td", null));
+        date = firstCell != null ? firstCell.text() : "";
+        HtmlFragment gameNameLine = row.first(EVENT_NAME);
+        name = gameNameLine != null ? gameNameLine.text() : "";
+    }
+
+    private void readMainOdd(HtmlFragment mainOdd) {
+        HtmlFragment googleStatIssue = mainOdd.first(GOOGLE_STAT_ISSUE);
+        if (googleStatIssue == null) {
+            return;
+        }
+        HtmlFragment googleStatIssueName = googleStatIssue.first(GOOGLE_STAT_ISSUE_NAME);
+        String mainOddName = googleStatIssueName != null ? googleStatIssueName.text() : "";
+        addOdd(mainMarket, mainOddName, googleStatIssue.first(ODD_SPAN));
+    }
+
+    private void readOddsChild(HtmlFragment market) {
+        if ("b".equals(market.tagName())) {
+            //Here is the market title
+            String name = OlimpParser.cleanName(market.text(), ":");
+            skippingMarket = !selection.isMarket(Market.NO_ID, name);
+            if (!skippingMarket) {
+                markets.add(new OlimpEvent.Market(name));
+            }
+        } else if ("nobr".equals(market.tagName()) && !skippingMarket) {
+            //Here are the odds of the market
+            if (markets.isEmpty()) {
+                markets.add(new OlimpEvent.Market(null));
+            }
+            readMarketOdds(markets.get(markets.size() - 1), market);
+        }
+    }
+
+    /**
+     * There are different variants where odds elements are located
+     * @param market
+     * @param nobr
+     */
+    private void readMarketOdds(OlimpEvent.Market market, HtmlFragment nobr) {
+        //1. Title and value under the nobr tag itself
+        List<HtmlFragment> nodes = nobr.childNodes();
+        String oddName = "";
+        HtmlFragment googleStatIssue = nobr.first(GOOGLE_STAT_ISSUE);
+        if (googleStatIssue != null) {
+            HtmlFragment googleStatIssueName = googleStatIssue.first(GOOGLE_STAT_ISSUE_NAME);
+            List<HtmlFragment> googleStatIssueNameNodes = googleStatIssueName != null
+                    ? googleStatIssueName.childNodes() : new ArrayList<>();
+            if (googleStatIssueNameNodes.size() > 1) {
+                //2. Title and value in the googleStatIssueName
+                nodes = googleStatIssueNameNodes;
+            } else if (googleStatIssueNameNodes.size() == 1 && googleStatIssueNameNodes.get(0).isText()) {
+                //3. Title in googleStatIssueName and value in googleStatIssue
+                oddName = OlimpParser.cleanName(googleStatIssueName.text(), " - ");
+                addOdd(market, oddName, googleStatIssue.first(ODD_SPAN));
+                return;
+            }
+        }
+        //If title and value are under the same element
+        for (HtmlFragment node : nodes) {
+            if (node.isText()) {
+                oddName = OlimpParser.cleanName(node.text(), " - ");
+            } else {
+                addOdd(market, oddName, node);
+            }
+        }
+    }
+
+    private void addOdd(OlimpEvent.Market market, String oddName, HtmlFragment span) {
+        if (span == null) {
+            return;
+        }
+        market.getOutcomes().add(new OlimpEvent.Outcome(oddName, span.selectText(ODD_VALUE), span.attr("data-id")));
+    }
+}
@@ -0,0 +1,25 @@
+package com.insticore;
+
+import java.io.IOException;
+
+/**
+ * Lets the runner find Olimp, registered in META-INF/services/com.insticore.BookmakerFactory
+ */
+public class OlimpFactory implements BookmakerFactory {
+    /**
+     * System property with the base url to crawl instead of the default one
+     */
+    public static final String BASE_URL_PROPERTY = "olimp.baseUrl";
+
+    @Override
+    public String getName() {
+        return OlimpParser.BOOKMAKER;
+    }
+
+    @Override
+    public Bookmaker create(BookmakerContext context) throws IOException {
+        //A replay server given by its property serves the recorded host under its own url
+        return new OlimpParser(ReplayServer.baseUrl(System.getProperty(BASE_URL_PROPERTY, OlimpParser.DEFAULT_BASE_URL)),
+                context);
+    }
+}
@@ -0,0 +1,22 @@
+package com.insticore;
+
+/**
+ * Link found on a page with its text
+ */
+public class OlimpLink {
+    private final String href;
+    private final String text;
+
+    public OlimpLink(String href, String text) {
+        this.href = href;
+        this.text = text;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
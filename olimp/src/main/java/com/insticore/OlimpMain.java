@@ -1,10 +1,44 @@
 package com.insticore;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 public class OlimpMain {
 
-    public static void main(String[] args) {
-        OlimpParser olimpParser = new OlimpParser();
-        olimpParser.parseToConsole();
+    public static void main(String[] args) throws IOException {
+        //-Dcache=<directory> keeps the responses and asks only for the changed ones, -Doffline=true uses only them
+        String cache = System.getProperty("cache");
+        boolean offline = Boolean.getBoolean("offline");
+        if (offline && cache == null) {
+            throw new IllegalArgumentException("Offline mode needs the cache directory");
+        }
+        OlimpParser olimpParser = cache != null ? new OlimpParser(Paths.get(cache), offline) : new OlimpParser();
+        //-Dmetrics=<file> writes the latencies and counters to the file periodically, they are in JMX anyway
+        String metrics = System.getProperty("metrics");
+        if (metrics != null) {
+            olimpParser.getMetrics().startReport(Paths.get(metrics), CrawlMetrics.DEFAULT_REPORT_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+        //-Dpoll=<seconds> keeps polling and prints only the changed odds
+        String poll = System.getProperty("poll");
+        //-Dsnapshot=<file> writes a binary snapshot instead of the console output
+        String snapshot = System.getProperty("snapshot");
+        if (poll != null) {
+            OddsPoller poller = new OddsPoller(olimpParser::parse, new DeltaOddsSink(System.out::println));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                poller.close();
+                olimpParser.close();
+            }));
+            poller.start(Long.parseLong(poll), TimeUnit.SECONDS);
+        } else if (snapshot != null) {
+            try (SnapshotWriter writer = new SnapshotWriter(Paths.get(snapshot))) {
+                olimpParser.parse(writer);
+            } finally {
+                olimpParser.close();
+            }
+        } else {
+            olimpParser.parseToConsole();
+        }
     }
 
 }
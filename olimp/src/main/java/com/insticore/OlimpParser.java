@@ -1,308 +1,566 @@
 package com.insticore;
 
 import org.asynchttpclient.*;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Node;
-import org.jsoup.nodes.TextNode;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
-public class OlimpParser {
+public class OlimpParser implements ShardedBookmaker, RefreshableBookmaker {
+    public static final String BOOKMAKER = "Olimp";
+    public static final String DEFAULT_BASE_URL = "https://504f0c.olimp0bae.top";
+    private static final String DATE_PATTERN = "dd.MM.yyyy HH:mm";
+    //SimpleDateFormat is not thread safe, one per thread instead of one per event
+    private static final ThreadLocal<SimpleDateFormat> START_TIME_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat(DATE_PATTERN));
+    private static final String SKIPPED_TOURNAMENTS = "skippedTournaments";
+    private static final String SKIPPED_EVENTS = "skippedEvents";
+    private static final String SKIPPED_EMPTY_EVENTS = "skippedEmptyEvents";
+    private static final String SKIPPED_ODDS = "skippedOdds";
+    private static final String FAILED_SPORTS = "failedSports";
+    private static final String FAILED_TOURNAMENTS = "failedTournaments";
+    private static final String FAILED_EVENTS = "failedEvents";
+    //Depths of the pages, the deeper ones of a sport are sent first, see priority
+    private static final int SPORT_DEPTH = 0;
+    private static final int TOURNAMENT_DEPTH = 1;
+    private static final int EVENT_DEPTH = 2;
+    //Sport pages by the last part of their link, the names are written to the output
+    private static final Map<String, String> SPORT_NAMES = new LinkedHashMap<>();
+    static {
+        SPORT_NAMES.put("soccer", "Футбол");
+        SPORT_NAMES.put("tennis", "Тенис");
+        SPORT_NAMES.put("basketball", "Баскетбол");
+        SPORT_NAMES.put("hockey", "Хоккей");
+        SPORT_NAMES.put("volleyball", "Воллейбол");
+        SPORT_NAMES.put("rugby-league", "Рэгби-Лига");
+        SPORT_NAMES.put("rugby-union", "Рэгби-Союз");
+    }
+    //Skip "Итоги"-like tournaments as they are not relevant to odds
+    private static final List<String> DEFAULT_EXCLUDED_TOURNAMENTS = Collections.singletonList("Итоги");
+
     private final Logger logger = LoggerFactory.getLogger(OlimpParser.class);
+    private String baseUrl;
+    private BookmakerContext context;
+    private boolean ownsContext;
     private AsyncHttpClient asyncHttpClient;
+    private HttpFetcher httpFetcher;
+    private CachingHttpFetcher httpCache;
+    private LimitingHttpFetcher hostLimits;
     private ExecutorService executorService;
+    private ExecutorService outputExecutor;
+    private CrawlMetrics metrics;
+    private CrawlSelection selection;
 
+    public OlimpParser() {
+        this(DEFAULT_BASE_URL);
+    }
 
-    private Lock sportLock = new ReentrantLock();
-    private Lock tournamentLock = new ReentrantLock();
-    private Lock eventLock = new ReentrantLock();
+    /**
+     * @param baseUrl where the sports, the tournaments and the events are loaded from
+     */
+    public OlimpParser(String baseUrl) {
+        this(baseUrl, new BookmakerContext(), true);
+    }
 
-    public OlimpParser() {
-        asyncHttpClient = Dsl.asyncHttpClient(Dsl.config().setUserAgent("Mozilla/5.0").setRequestTimeout(100000));
-        executorService = Executors.newCachedThreadPool();
+    /**
+     * @param cacheDirectory where the pages are kept between the sweeps and the runs
+     * @param offline when true nothing is downloaded, only the cached pages are used
+     * @throws IOException if the cache directory can not be created
+     */
+    public OlimpParser(Path cacheDirectory, boolean offline) throws IOException {
+        this();
+        httpCache = new CachingHttpFetcher(httpFetcher, cacheDirectory, offline);
+        httpFetcher = httpCache;
     }
 
-    public void parseToConsole() {
-        loadSports();
+    /**
+     * Shares the client and the executors of the context with the other bookmakers
+     * @param baseUrl where the sports, the tournaments and the events are loaded from
+     * @param context its cache directory is used if it has one
+     * @throws IOException if the cache directory can not be created
+     */
+    public OlimpParser(String baseUrl, BookmakerContext context) throws IOException {
+        this(baseUrl, context, false);
+        if (context.getCacheDirectory() != null) {
+            httpCache = new CachingHttpFetcher(httpFetcher, context.getCacheDirectory(), context.isOffline());
+            httpFetcher = httpCache;
+        }
     }
 
-    private void loadSports() {
-        //Use predefined sports urls as they are preselected and stable
-        //Map them to their titles
-        Map<String, String> preparedSportsMap = new HashMap<>();
-        preparedSportsMap.put("https://504f0c.olimp0bae.top/betting/soccer", "Футбол");
-        preparedSportsMap.put("https://504f0c.olimp0bae.top/betting/tennis", "Тенис");
-        preparedSportsMap.put("https://504f0c.olimp0bae.top/betting/basketball", "Баскетбол");
-        preparedSportsMap.put("https://504f0c.olimp0bae.top/betting/hockey", "Хоккей");
-        preparedSportsMap.put("https://504f0c.olimp0bae.top/betting/volleyball", "Воллейбол");
-        preparedSportsMap.put("https://504f0c.olimp0bae.top/betting/rugby-league", "Рэгби-Лига");
-        preparedSportsMap.put("https://504f0c.olimp0bae.top/betting/rugby-union", "Рэгби-Союз");
+    private OlimpParser(String baseUrl, BookmakerContext context, boolean ownsContext) {
+        this.baseUrl = baseUrl;
+        this.context = context;
+        this.ownsContext = ownsContext;
+        asyncHttpClient = context.getHttpClient();
+        //Every tournament and event is requested at once, the limiter decides how many really go out
+        metrics = new CrawlMetrics(BOOKMAKER);
+        metrics.registerMBean();
+        hostLimits = context.newHostLimits(metrics, context.getMaxInFlight());
+        httpFetcher = context.newFetcher(hostLimits, metrics);
+        executorService = context.getExecutor();
+        outputExecutor = context.getOutputExecutor();
+        selection = CrawlSelection.fromSystemProperty(BOOKMAKER, defaultSelection());
+    }
 
-        //How many sports will be loaded as async tasks
-        CountDownLatch countDownLatch = new CountDownLatch(preparedSportsMap.size());
+    /**
+     * @return the sports with known pages without the "Итоги"-like tournaments
+     */
+    static CrawlSelection defaultSelection() {
+        Map<String, List<String>> rules = new HashMap<>();
+        rules.put(CrawlSelection.SPORT, new ArrayList<>(SPORT_NAMES.keySet()));
+        rules.put(CrawlSelection.EXCLUDE, DEFAULT_EXCLUDED_TOURNAMENTS);
+        return new CrawlSelection(rules);
+    }
 
-       for (HashMap.Entry<String, String> sportEntry : preparedSportsMap.entrySet()) {
-            String sportUrl = sportEntry.getKey();
-            String sportName = sportEntry.getValue();
-            loadSportAsync(sportUrl, sportName, countDownLatch);
+    public void parseToConsole() {
+        try {
+            parse(new TextOddsSink(System.out));
+        } finally {
+            close();
         }
+    }
 
+    /**
+     * Loads all sports and writes them to the sink in the order of the pages
+     * Can be called again and again, the client stays alive until the parser is closed
+     * @param sink
+     */
+    @Override
+    public void parse(OddsSink sink) {
+        long start = System.nanoTime();
+        OrderedCollector collector = new OrderedCollector(outputExecutor);
+        sink.begin(BOOKMAKER);
+        loadSports(collector.getRoot(), sink);
         try {
-            //Wait until all async tasks are completed
-            countDownLatch.await();
-            asyncHttpClient.close();
-        } catch (Exception e) {
-            logger.error("Parsing sports finished with exception " + e.getMessage(), e);
+            //Wait until everything is loaded and written
+            collector.getDone().join();
+        } catch (CompletionException e) {
+            logger.error("Parsing sports finished with exception " + e.getMessage(), e.getCause());
+        } finally {
+            end(sink, start);
         }
     }
 
     /**
-     *  Loads tournaments for the given sport async
-     * @param url
-     * @param name
-     * @param countDownLatch
+     * Loads all sport pages, every tournament linked from them is a unit
+     * @return
      */
-    private void loadSportAsync(String url, String name, CountDownLatch countDownLatch) {
-        Request request = asyncHttpClient.prepareGet(url).build();
-        ListenableFuture<Response> listenableFuture = asyncHttpClient
-                .executeRequest(request);
-        listenableFuture.addListener(() -> {
-            try {
-                Response response = listenableFuture.get();
-                //Make sure sport printing is an atomic operation
-                sportLock.lock();
-                System.out.println(name); // Print sport
-                loadTournaments(response);
-                sportLock.unlock();
-
-            } catch (Exception e) {
-                logger.error("Failed to load sport: " + url, e);
-            }  finally {
-                //The task is completed
-                countDownLatch.countDown();
-            }
-        }, executorService);
+    @Override
+    public List<WorkUnit> discover() {
+        List<CompletableFuture<List<WorkUnit>>> sports = new ArrayList<>();
+        for (Map.Entry<String, String> sportEntry : sportUrls().entrySet()) {
+            String sportUrl = sportEntry.getKey();
+            String sportName = sportEntry.getValue();
+            sports.add(loadPage(sportUrl, new OlimpSportPageExtractor(), true, priority(SPORT_DEPTH, sports.size(), 0))
+                    .thenApply(tournaments -> {
+                        List<WorkUnit> units = new ArrayList<>();
+                        for (OlimpLink tournament : tournaments) {
+                            String name = tournamentName(tournament);
+                            if (name != null) {
+                                units.add(new WorkUnit(sportName, tournament.getHref(), name));
+                            }
+                        }
+                        return units;
+                    })
+                    .exceptionally(e -> {
+                        logger.error("Failed to load sport: " + sportUrl, e);
+                        metrics.increment(FAILED_SPORTS);
+                        return Collections.emptyList();
+                    }));
+        }
+        List<WorkUnit> units = new ArrayList<>();
+        for (CompletableFuture<List<WorkUnit>> sport : sports) {
+            units.addAll(sport.join());
+        }
+        return units;
     }
 
     /**
-     *  Parses the page with tournaments
-     * @param response
+     * Loads the given tournaments only, a unit key is the link of the tournament
+     * @param units
+     * @param sink
      */
-    private void loadTournaments(Response response) {
-        Document document = Jsoup.parse(response.getResponseBody());
-        if (response.getStatusCode() != 200) {
-            return;
+    @Override
+    public void parse(List<WorkUnit> units, UnitSink sink) {
+        long start = System.nanoTime();
+        OrderedCollector collector = new OrderedCollector(outputExecutor);
+        sink.begin(BOOKMAKER);
+        try {
+            OrderedCollector.Node root = collector.getRoot();
+            for (WorkUnit unit : units) {
+                OrderedCollector.Node node = root.addChild();
+                node.setOutput(() -> sink.unit(unit));
+                loadTournamentAsync(baseUrl + "/betting/" + unit.getKey(), unit.getName(), node.addChild(), sink);
+                node.seal();
+            }
+            root.seal();
+            collector.getDone().join();
+        } catch (CompletionException e) {
+            logger.error("Parsing tournaments finished with exception " + e.getMessage(), e.getCause());
+        } finally {
+            end(sink, start);
         }
-        Elements tournaments = document.select("table.live_main_table a[data-s]");
-
-        //How many tournaments will be loaded as async tasks
-        CountDownLatch countDownLatch = new CountDownLatch(tournaments.size());
-
-        for (org.jsoup.nodes.Element tournament : tournaments) {
-            String href = tournament.attr("href");
-            String name = cleanName(tournament.text(), "(");
+    }
 
-            //Skip "Итоги"-like tournaments as they are not relevant to odds
-            if (name.contains("Итоги")) {
-                countDownLatch.countDown();
-                continue;
-            }
-            String tournamentUrl = "https://504f0c.olimp0bae.top/betting/" + href;
-            loadTournamentAsync(tournamentUrl, name, countDownLatch);
+    /**
+     * Loads the sport pages and the tournament pages linked from them, a key of an event is its link
+     * @return
+     */
+    @Override
+    public List<EventRef> listEvents() {
+        List<CompletableFuture<List<EventRef>>> tournaments = new ArrayList<>();
+        for (WorkUnit unit : discover()) {
+            String url = baseUrl + "/betting/" + unit.getKey();
+            tournaments.add(loadEventLinks(url, priority(TOURNAMENT_DEPTH, 0, tournaments.size()))
+                    .thenApply(eventLinks -> {
+                        List<EventRef> events = new ArrayList<>();
+                        for (String href : eventLinks) {
+                            events.add(new EventRef(unit.getSport(), unit.getName(), href));
+                        }
+                        return events;
+                    })
+                    .exceptionally(e -> {
+                        logger.error("Failed to load tournament: " + url, e);
+                        metrics.increment(FAILED_TOURNAMENTS);
+                        return Collections.emptyList();
+                    }));
         }
-        try {
-            //Wait until all async loading tasks are completed
-            countDownLatch.await();
-        } catch (InterruptedException e) {
-            logger.error("Loading tournaments interrupted", e);
+        List<EventRef> events = new ArrayList<>();
+        for (CompletableFuture<List<EventRef>> tournament : tournaments) {
+            events.addAll(tournament.join());
         }
+        return events;
     }
 
     /**
-     * Loads all events for the given tournament async
-     * @param url
-     * @param name
-     * @param countDownLatch
+     * Loads the event page, it goes before the waiting listing pages
+     * @param event
+     * @param sink
+     * @return
      */
-    private void loadTournamentAsync(String url, String name, CountDownLatch countDownLatch) {
-        Request request = asyncHttpClient.prepareGet(url).build();
-        ListenableFuture<Response> listenableFuture = asyncHttpClient
-                .executeRequest(request);
-        listenableFuture.addListener(() -> {
-            try {
-                Response response = listenableFuture.get();
-                //Make sure tournament printing is atomic
-                tournamentLock.lock();
-                System.out.println(name); // Print tournament
-                loadEvents(response);
-                tournamentLock.unlock();
-            } catch (Exception e) {
-                logger.error("Failed to load tournament: " + url, e);
-            } finally {
-                //The task is completed
-                countDownLatch.countDown();
-            }
+    @Override
+    public CompletableFuture<Void> refresh(EventRef event, OddsSink sink) {
+        return loadPage(baseUrl + event.getKey(), new OlimpEventPageExtractor(selection), false, priority(EVENT_DEPTH, 0, 0))
+                .thenAccept(olimpEvent -> {
+                    if (olimpEvent == null) {
+                        metrics.increment(SKIPPED_EMPTY_EVENTS);
+                        return;
+                    }
+                    writeEvent(olimpEvent, sink);
+                })
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        metrics.increment(FAILED_EVENTS);
+                    }
+                });
+    }
+
+    /**
+     * Ends the sweep and logs how it went
+     */
+    private void end(OddsSink sink, long start) {
+        sink.end();
+        metrics.record(CrawlMetrics.Stage.SWEEP, System.nanoTime() - start);
+        logger.info(metrics.toString());
+        logger.info(hostLimits.toString());
+        if (httpCache != null) {
+            httpCache.endSweep();
+            logger.info(httpCache.toString());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return BOOKMAKER;
+    }
 
-        }, executorService);
+    /**
+     * @return latencies, gauges and counters of the parser, also shown over JMX
+     */
+    @Override
+    public CrawlMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * Loads all events for the tournament in the response
-     * @param response
+     * Stops the executors and closes the http client unless they are shared with the other bookmakers
      */
-    private void loadEvents(Response response) {
-        Document document = Jsoup.parse(response.getResponseBody());
-        Element table = document.select("table.koeftable2").first();
-        if (table == null) {
-            return;
+    @Override
+    public void close() {
+        metrics.close();
+        if (ownsContext) {
+            context.close();
         }
-        Elements events = table.select("tbody > tr.hi");
+    }
 
-        //How many events will be loaded as async tasks
-        CountDownLatch countDownLatch = new CountDownLatch(events.size());
+    /**
+     * Starts loading all sports, every sport gets its place in the output in the order of the map
+     * @param root
+     * @param sink
+     */
+    private void loadSports(OrderedCollector.Node root, OddsSink sink) {
+        for (Map.Entry<String, String> sportEntry : sportUrls().entrySet()) {
+            String sportUrl = sportEntry.getKey();
+            String sportName = sportEntry.getValue();
+            loadSportAsync(sportUrl, sportName, root.addChild(), sink);
+        }
+        root.seal();
+    }
 
-        for (org.jsoup.nodes.Element event : events) {
-            //Here is the event link
-            Element gameNameLine = event.select("div.gameNameLine > font > b > span > a").first();
-            String href = gameNameLine.attr("href");
-            String eventUrl = "https://504f0c.olimp0bae.top" + href;
-            loadEventAsync(eventUrl, countDownLatch);
+    /**
+     * The pages of the selected sports only are loaded, a sport is selected by the last part of its link or
+     * its name, the links of the other sports are taken as they are given
+     * @return urls of the sport pages mapped to the sport names in the output order
+     */
+    private Map<String, String> sportUrls() {
+        Map<String, String> sportUrls = new LinkedHashMap<>();
+        for (Map.Entry<String, String> sport : SPORT_NAMES.entrySet()) {
+            if (selection.isSport(sport.getKey(), sport.getValue())) {
+                sportUrls.put(baseUrl + "/betting/" + sport.getKey(), sport.getValue());
+            }
         }
-        try {
-            //Wait until all events are loaded async
-            countDownLatch.await();
-        } catch (InterruptedException e) {
-            logger.error("Loading events interrupted", e);
+        for (String sport : selection.values(CrawlSelection.SPORT)) {
+            if (!SPORT_NAMES.containsKey(sport) && !SPORT_NAMES.containsValue(sport)) {
+                sportUrls.put(baseUrl + "/betting/" + sport, sport);
+            }
         }
+        return sportUrls;
     }
 
     /**
-     * Loads odds for the give event
+     * Loads the page and extracts what is needed while it is downloaded
      * @param url
-     * @param countDownLatch
+     * @param extractor
+     * @param requireOk when true the result of a non 200 response is empty
+     * @param priority the waiting pages with a higher priority are sent first
+     * @param <T>
+     * @return future with the extractor result
      */
-    private void loadEventAsync(String url, CountDownLatch countDownLatch) {
+    private <T> CompletableFuture<T> loadPage(String url, HtmlExtractor<T> extractor, boolean requireOk, int priority) {
         Request request = asyncHttpClient.prepareGet(url).build();
-        ListenableFuture<Response> listenableFuture = asyncHttpClient
-                .executeRequest(request);
-        listenableFuture.addListener(() -> {
-            try {
-                Response response = listenableFuture.get();
-                //Make sure event printing is atomic
-                eventLock.lock();
-                loadEvent(response);
-                eventLock.unlock();
-            } catch (Exception e) {
-                logger.error("Failed to load tournament: " + url, e);
-            } finally {
-                //The task is completed
-                countDownLatch.countDown();
-            }
+        HtmlPageHandler<T> handler = new HtmlPageHandler<>(extractor, requireOk);
+        return httpFetcher.fetch(request, handler, priority).thenApply(result -> {
+            metrics.record(CrawlMetrics.Stage.DECODE, handler.getExtractNanos());
+            return result;
+        });
+    }
 
-        }, executorService);
+    /**
+     * Depth first in the order of the output: the pages of an earlier sport go first, then within a sport the events
+     * before the tournaments, then the pages of an earlier tournament. The first events are complete within
+     * the first round trips instead of at the end of the sweep, and the later sports do not pile up loaded events
+     * which have to wait for the earlier ones to be written anyway
+     * @param depth of the page
+     * @param sport place of the sport of the page in the output
+     * @param tournament place of the tournament of the page in its sport, 0 for a sport page
+     * @return priority of the request
+     */
+    private static int priority(int depth, int sport, int tournament) {
+        return (0xFF - Math.min(sport, 0xFF)) << 20 | depth << 16 | 0xFFFF - Math.min(tournament, 0xFFFF);
     }
 
     /**
-     * Read all odds for the event in response
-     * @param response
+     *  Loads tournaments for the given sport async
+     * @param url
+     * @param name
+     * @param sport place of the sport in the output
+     * @param sink
      */
-    private void loadEvent(Response response) {
-        Document eventPage = Jsoup.parse(response.getResponseBody());
-        Element table = eventPage.select("table.koeftable2").first();
-        if (table == null) {
-            return;
-        }
-        Element element = table.select("tbody > tr.hi").first();
-        //Here is the event date ant title
-        String date = element.select("td").first().text();
-        Element gameNameLine = element.select("div.gameNameLine > font > b > span").first();
-        String name = gameNameLine.text();
+    private void loadSportAsync(String url, String name, OrderedCollector.Node sport, OddsSink sink) {
+        //Only the tournament links are extracted while the page is downloaded
+        loadPage(url, new OlimpSportPageExtractor(), true, priority(SPORT_DEPTH, sport.getIndex(), 0))
+                .thenAcceptAsync(tournaments -> {
+                    sport.setOutput(() -> sink.sport(name));
+                    loadTournaments(tournaments, sport, sink);
+                }, executorService)
+                .exceptionally(e -> {
+                    logger.error("Failed to load sport: " + url, e);
+                    metrics.increment(FAILED_SPORTS);
+                    sport.skip();
+                    return null;
+                });
+    }
 
+    /**
+     *  Loads the tournaments found on the sport page
+     * @param tournaments
+     * @param sport
+     * @param sink
+     */
+    private void loadTournaments(List<OlimpLink> tournaments, OrderedCollector.Node sport, OddsSink sink) {
+        for (OlimpLink tournament : tournaments) {
+            String name = tournamentName(tournament);
+            if (name != null) {
+                String tournamentUrl = baseUrl + "/betting/" + tournament.getHref();
+                loadTournamentAsync(tournamentUrl, name, sport.addChild(), sink);
+            }
+        }
+        sport.seal();
+    }
 
-        Element odds = eventPage.select("div.tab > div[data-match-id-show]").first();
-        if (odds == null || odds.children().size() == 0) {
-            //No odds in the event, nothing to do here
-            return;
+    /**
+     * The country and the tournament are checked before the tournament page is requested
+     * @param tournament link on the sport page, its text is like "Англия. Премьер-лига (20)"
+     * @return name of the tournament, null if it is skipped
+     */
+    private String tournamentName(OlimpLink tournament) {
+        String name = cleanName(tournament.getText(), "(");
+        if (!selection.isCountry(cleanName(name, ". ")) || !selection.isTournament(name)) {
+            metrics.increment(SKIPPED_TOURNAMENTS);
+            return null;
         }
-        String id =  odds.attr("data-match-id-show");
-
-        System.out.println(String.join(", ", name, date, id));  // Print event
-
-        Elements mainOdds = eventPage.select("div.tab > nobr");
-        if (mainOdds != null && mainOdds.size() > 0) {
-            System.out.println("Главные исходы");
-            for (Element mainOdd : mainOdds) {
-                Element googleStatIssue = mainOdd.select("span.googleStatIssue").first();
-                Element googleStatIssueName = googleStatIssue.select("span.googleStatIssueName").first();
-                String mainOddName = googleStatIssueName.text();
-                Element span = googleStatIssue.select("span[data-id]").first();
-                String mainOddId = span.attr("data-id");
-                String mainOddValue = span.select("b.value_js > span#googleStatKef").text();
-                //Print odd
-                System.out.println(String.join(", ", "\t\t" + mainOddName, mainOddValue, mainOddId));
-            }
+        return name;
+    }
+
+    /**
+     * Loads the tournament page, only the links of the events which start within the selected window are kept
+     * @param url
+     * @param priority
+     * @return future with the event links
+     */
+    private CompletableFuture<List<String>> loadEventLinks(String url, int priority) {
+        OlimpTournamentPageExtractor extractor = new OlimpTournamentPageExtractor(selection);
+        return loadPage(url, extractor, false, priority).thenApply(eventLinks -> {
+            metrics.add(SKIPPED_EVENTS, extractor.getSkippedCount());
+            return eventLinks;
+        });
+    }
 
+    /**
+     * Loads all events for the given tournament async
+     * @param url
+     * @param name
+     * @param tournament place of the tournament in the output
+     * @param sink
+     */
+    private void loadTournamentAsync(String url, String name, OrderedCollector.Node tournament, OddsSink sink) {
+        loadEventLinks(url, priority(TOURNAMENT_DEPTH, tournament.getParent().getIndex(), tournament.getIndex()))
+                .thenAcceptAsync(eventLinks -> {
+                    tournament.setOutput(() -> sink.tournament(name));
+                    loadEvents(eventLinks, tournament, sink);
+                }, executorService)
+                .exceptionally(e -> {
+                    logger.error("Failed to load tournament: " + url, e);
+                    metrics.increment(FAILED_TOURNAMENTS);
+                    tournament.skip();
+                    return null;
+                });
+    }
+
+    /**
+     * Loads all events found on the tournament page
+     * @param eventLinks
+     * @param tournament
+     * @param sink
+     */
+    private void loadEvents(List<String> eventLinks, OrderedCollector.Node tournament, OddsSink sink) {
+        for (String href : eventLinks) {
+            String eventUrl = baseUrl + href;
+            loadEventAsync(eventUrl, tournament.addChild(), sink);
         }
+        tournament.seal();
+    }
 
-        Elements markets = odds.children();
-
-        for (Element market : markets) {
-            if ("b".equals(market.tagName())) {
-                //Here is the market title
-                String marketName = cleanName(market.text(), ":");
-                System.out.println(marketName); // Print market
-            } else if ("nobr".equals(market.tagName())) {
-                //Here are the odds of the market
-                //There are different variants where odds elements are located
-                //1. Title and value under the nobr tag itself
-                List<Node> nodes = market.childNodes();
-                String oddName = "";
-                Element googleStatIssue = market.select("span.googleStatIssue").first();
-                if (googleStatIssue != null) {
-                    Element googleStatIssueName = googleStatIssue.select("span.googleStatIssueName").first();
-                    List<Node> googleStatIssueNameNodes = googleStatIssueName.childNodes();
-                    if (googleStatIssueNameNodes.size() > 1) {
-                        //2.  Title and value in the googleStatIssueName
-                        nodes = googleStatIssueNameNodes;
-                    } else if (googleStatIssueNameNodes.size() == 1 && googleStatIssueNameNodes.get(0) instanceof TextNode) {
-                        //3. Title in googleStatIssueName and value in googleStatIssue
-                        oddName = cleanName(googleStatIssueName.text(), " - ");
-                        Element span = googleStatIssue.select("span[data-id]").first();
-                        String oddId = span.attr("data-id");
-                        String oddValue = span.select("b.value_js > span#googleStatKef").text();
-                        //Print odd
-                        System.out.println(String.join(", ", "\t\t" + oddName, oddValue, oddId));
-                        continue;
-                    }
-                }
-                //If title and value are under the same element
-                for (Node node : nodes) {
-                    if (node instanceof TextNode) {
-                        oddName = cleanName(((TextNode) node).text(), " - ");
-                    } else if (node instanceof Element) {
-                        Element span = (Element) node;
-                        String oddId = span.attr("data-id");
-                        String oddValue = span.select("b.value_js > span#googleStatKef").text();
-                        //Print odd
-                        System.out.println(String.join(", ", "\t\t" + oddName, oddValue, oddId));
+    /**
+     * Loads odds for the give event
+     * @param url
+     * @param event place of the event in the output
+     * @param sink
+     */
+    private void loadEventAsync(String url, OrderedCollector.Node event, OddsSink sink) {
+        loadPage(url, new OlimpEventPageExtractor(selection), false,
+                priority(EVENT_DEPTH, event.getParent().getParent().getIndex(), event.getParent().getIndex()))
+                .thenAccept(olimpEvent -> {
+                    if (olimpEvent == null) {
+                        //No odds in the event, nothing to do here
+                        metrics.increment(SKIPPED_EMPTY_EVENTS);
+                        event.skip();
+                        return;
                     }
+                    event.setOutput(() -> {
+                        long start = System.nanoTime();
+                        writeEvent(olimpEvent, sink);
+                        metrics.record(CrawlMetrics.Stage.OUTPUT, System.nanoTime() - start);
+                    });
+                    event.seal();
+                })
+                .exceptionally(e -> {
+                    logger.error("Failed to load event: " + url, e);
+                    metrics.increment(FAILED_EVENTS);
+                    event.skip();
+                    return null;
+                });
+    }
+
+    /**
+     * Writes the event with all its odds
+     * The odds on the page have no market ids, the odd id is taken from data-id
+     * @param event
+     * @param sink
+     */
+    void writeEvent(OlimpEvent event, OddsSink sink) {
+        sink.event(new Event(event.getId(), event.getName(), event.getDate(), parseStartTime(event.getDate())));
+        for (OlimpEvent.Market market : event.getMarkets()) {
+            sink.market(new Market(Market.NO_ID, market.getName()));
+            for (OlimpEvent.Outcome outcome : market.getOutcomes()) {
+                Odd odd = toOdd(outcome);
+                if (odd != null) {
+                    sink.odd(odd);
                 }
             }
         }
+    }
 
+    /**
+     * @param outcome
+     * @return the odd or null if the value or the id is not a number
+     */
+    private Odd toOdd(OlimpEvent.Outcome outcome) {
+        double value;
+        try {
+            value = Double.parseDouble(outcome.getValue().trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            logger.debug("Odd value is not a number: " + outcome.getValue());
+            metrics.increment(SKIPPED_ODDS);
+            return null;
+        }
+        int id;
+        try {
+            id = Integer.parseInt(outcome.getId());
+        } catch (NumberFormatException e) {
+            //A made up id could be the same as another odd of the event
+            logger.debug("Odd id is not a number: " + outcome.getId());
+            metrics.increment(SKIPPED_ODDS);
+            return null;
+        }
+        return new Odd(id, outcome.getName(), value);
+    }
 
+    /**
+     * @param date as it is shown on the page, the time may be followed by other text
+     * @return start time in epoch millis, 0 when it is unknown
+     */
+    static long parseStartTime(String date) {
+        if (date == null || date.length() < DATE_PATTERN.length()) {
+            return 0;
+        }
+        try {
+            return START_TIME_FORMAT.get().parse(date.substring(0, DATE_PATTERN.length())).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
     }
 
     /**
@@ -312,7 +570,7 @@ public class OlimpParser {
      * @param tail
      * @return
      */
-    private String cleanName(String name, String tail){
+    static String cleanName(String name, String tail) {
         if (name == null || name.isEmpty()) {
             return "";
         }
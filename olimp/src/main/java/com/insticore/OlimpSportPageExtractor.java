@@ -0,0 +1,32 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the tournament links from a sport page (table.live_main_table a[data-s])
+ */
+public class OlimpSportPageExtractor extends HtmlExtractor<List<OlimpLink>> {
+    private static final int LIVE_TABLE = 1;
+
+    private final List<OlimpLink> tournaments = new ArrayList<>();
+
+    @Override
+    protected void onStart(String name, HtmlTokenizer.Attributes attributes) {
+        if (isAt(0, "table", "live_main_table")) {
+            mark(LIVE_TABLE);
+        } else if ("a".equals(name) && attributes.has("data-s") && hasMarker(LIVE_TABLE)) {
+            capture();
+        }
+    }
+
+    @Override
+    protected void onCaptured(HtmlFragment fragment, int marker) {
+        tournaments.add(new OlimpLink(fragment.attr("href"), fragment.text()));
+    }
+
+    @Override
+    public List<OlimpLink> getResult() {
+        return tournaments;
+    }
+}
@@ -0,0 +1,88 @@
+package com.insticore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the event links from a tournament page
+ * The links are in the rows of the first table.koeftable2 (tbody > tr.hi),
+ * under div.gameNameLine > font > b > span > a, the first cell of the row has the start time
+ */
+public class OlimpTournamentPageExtractor extends HtmlExtractor<List<String>> {
+    private static final int EVENTS_TABLE = 1;
+    private static final int EVENT_ROW = 2;
+    private static final int DATE_CELL = 3;
+
+    private final CrawlSelection selection;
+    private final List<String> eventLinks = new ArrayList<>();
+    private boolean tableFound;
+    private boolean rowLinkFound;
+    private boolean rowDateFound;
+    private long rowStartTime;
+    private int skippedCount;
+
+    public OlimpTournamentPageExtractor() {
+        this(CrawlSelection.ALL);
+    }
+
+    /**
+     * @param selection the links of the events which start after its window are left out
+     */
+    public OlimpTournamentPageExtractor(CrawlSelection selection) {
+        this.selection = selection;
+    }
+
+    @Override
+    protected void onStart(String name, HtmlTokenizer.Attributes attributes) {
+        if (!tableFound && isAt(0, "table", "koeftable2")) {
+            tableFound = true;
+            mark(EVENTS_TABLE);
+        } else if (isEventRow(this) && hasMarker(EVENTS_TABLE)) {
+            mark(EVENT_ROW);
+            rowLinkFound = false;
+            rowDateFound = false;
+            rowStartTime = 0;
+        } else if (!rowDateFound && "td".equals(name) && markerAt(1) == EVENT_ROW) {
+            rowDateFound = true;
+            mark(DATE_CELL);
+            capture();
+        } else if (!rowLinkFound && "a".equals(name) && isAt(1, "span", null) && isAt(2, "b", null)
+                && isAt(3, "font", null) && isAt(4, "div", "gameNameLine") && hasMarker(EVENT_ROW)) {
+            //Only the first link of the row is the event link
+            rowLinkFound = true;
+            if (selection.isStart(rowStartTime)) {
+                eventLinks.add(attributes.get("href") != null ? attributes.get("href") : "");
+            } else {
+                skippedCount++;
+            }
+        }
+    }
+
+    @Override
+    protected void onCaptured(HtmlFragment fragment, int marker) {
+        if (marker == DATE_CELL) {
+            rowStartTime = OlimpParser.parseStartTime(fragment.text());
+        }
+    }
+
+    /**
+     * @return how many event links are left out by the selection
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    @Override
+    public List<String> getResult() {
+        return eventLinks;
+    }
+
+    /**
+     * The row of the events table, the tbody is optional in the markup as browsers add it themselves
+     * @param extractor
+     * @return
+     */
+    static boolean isEventRow(HtmlExtractor<?> extractor) {
+        return extractor.isAt(0, "tr", "hi") && (extractor.isAt(1, "tbody", null) || extractor.isAt(1, "table", null));
+    }
+}
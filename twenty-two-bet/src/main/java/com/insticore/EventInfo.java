@@ -0,0 +1,40 @@
+package com.insticore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Event details with its odds split into markets by filter id
+ */
+public class EventInfo {
+    private final String sportId;
+    private final String dateStart;
+    private final List<String> teams;
+    private final Map<Integer, List<Odd>> markets;
+
+    public EventInfo(String sportId, String dateStart, List<String> teams, Map<Integer, List<Odd>> markets) {
+        this.sportId = sportId;
+        this.dateStart = dateStart;
+        this.teams = teams;
+        this.markets = markets;
+    }
+
+    public String getSportId() {
+        return sportId;
+    }
+
+    public String getDateStart() {
+        return dateStart;
+    }
+
+    /**
+     * @return team names, null for the teams which are not strings in the json
+     */
+    public List<String> getTeams() {
+        return teams;
+    }
+
+    public Map<Integer, List<Odd>> getMarkets() {
+        return markets;
+    }
+}
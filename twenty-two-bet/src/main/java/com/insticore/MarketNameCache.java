@@ -0,0 +1,204 @@
+package com.insticore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Shared cache of market names (filter id -> name) per sport and language
+ * Concurrent misses for the same key share one request, entries expire after the ttl
+ * and are reloaded in background once they are older than the refresh interval
+ */
+public class MarketNameCache {
+    public static final long DEFAULT_TTL_MINUTES = 60;
+    public static final long DEFAULT_REFRESH_MINUTES = 10;
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final Logger logger = LoggerFactory.getLogger(MarketNameCache.class);
+    private final BiFunction<String, String, CompletableFuture<Map<Integer, String>>> loader;
+    private final long ttlNanos;
+    private final long refreshNanos;
+    private final int maxSize;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param loader loads the market names for the sport id and language
+     */
+    public MarketNameCache(BiFunction<String, String, CompletableFuture<Map<Integer, String>>> loader) {
+        this(loader, DEFAULT_TTL_MINUTES, DEFAULT_REFRESH_MINUTES, TimeUnit.MINUTES, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param loader loads the market names for the sport id and language
+     * @param ttl how long an entry can be used
+     * @param refreshAfter age after which an entry is reloaded in background, should be less than the ttl
+     * @param unit
+     * @param maxSize how many sport/language entries are kept
+     */
+    public MarketNameCache(BiFunction<String, String, CompletableFuture<Map<Integer, String>>> loader,
+                           long ttl, long refreshAfter, TimeUnit unit, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.loader = loader;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.refreshNanos = unit.toNanos(refreshAfter);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the market names for the sport, loading them if they are not cached yet
+     * @param sportId
+     * @param language
+     * @return future with the market names by filter id
+     */
+    public CompletableFuture<Map<Integer, String>> get(String sportId, String language) {
+        String key = sportId + '/' + language;
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.isExpired(now)) {
+            hitCount.incrementAndGet();
+            if (entry.needsRefresh(now)) {
+                refresh(key, sportId, language, entry);
+            }
+            return entry.names;
+        }
+
+        //Only the caller which put the new entry loads it, the others wait for its future
+        Entry created = new Entry(new CompletableFuture<>(), now);
+        Entry current = entries.compute(key, (k, existing) ->
+                existing != null && !existing.isExpired(now) ? existing : created);
+        if (current != created) {
+            hitCount.incrementAndGet();
+            return current.names;
+        }
+        missCount.incrementAndGet();
+        load(sportId, language).whenComplete((names, e) -> {
+            if (e != null) {
+                //Do not keep failures, the next caller will try again
+                entries.remove(key, created);
+                created.names.completeExceptionally(e);
+            } else {
+                created.names.complete(names);
+            }
+        });
+        evictIfNeeded();
+        return created.names;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MarketNameCache{size=%d, hits=%d, misses=%d, refreshes=%d, loadFailures=%d, evictions=%d}",
+                size(), getHitCount(), getMissCount(), getRefreshCount(), getLoadFailureCount(), getEvictionCount());
+    }
+
+    /**
+     * Reloads the entry in background, the old names are served until the new ones are loaded
+     * @param key
+     * @param sportId
+     * @param language
+     * @param entry
+     */
+    private void refresh(String key, String sportId, String language, Entry entry) {
+        if (!entry.names.isDone() || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        refreshCount.incrementAndGet();
+        load(sportId, language).whenComplete((names, e) -> {
+            if (e != null) {
+                logger.warn("Market names for sport " + sportId + " were not refreshed", e);
+                entry.refreshing.set(false);
+            } else {
+                entries.replace(key, entry, new Entry(CompletableFuture.completedFuture(names), System.nanoTime()));
+            }
+        });
+    }
+
+    private CompletableFuture<Map<Integer, String>> load(String sportId, String language) {
+        CompletableFuture<Map<Integer, String>> names;
+        try {
+            names = loader.apply(sportId, language);
+        } catch (RuntimeException e) {
+            names = new CompletableFuture<>();
+            names.completeExceptionally(e);
+        }
+        return names.whenComplete((ignored, e) -> {
+            if (e != null) {
+                loadFailureCount.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Removes the oldest entries until the cache fits its size
+     */
+    private void evictIfNeeded() {
+        while (entries.size() > maxSize) {
+            Map.Entry<String, Entry> oldest = null;
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (oldest == null || candidate.getValue().loadedAt - oldest.getValue().loadedAt < 0) {
+                    oldest = candidate;
+                }
+            }
+            if (oldest != null && entries.remove(oldest.getKey(), oldest.getValue())) {
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    private class Entry {
+        private final CompletableFuture<Map<Integer, String>> names;
+        private final long loadedAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(CompletableFuture<Map<Integer, String>> names, long loadedAt) {
+            this.names = names;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - loadedAt >= ttlNanos;
+        }
+
+        private boolean needsRefresh(long now) {
+            return now - loadedAt >= refreshNanos;
+        }
+    }
+}
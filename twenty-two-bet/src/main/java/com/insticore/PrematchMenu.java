@@ -0,0 +1,29 @@
+package com.insticore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parts of the prematch menu used to find the tournaments
+ */
+public class PrematchMenu {
+    private final Map<Integer, String> sportTitles;
+    private final Map<Integer, List<String>> sportTournaments;
+
+    /**
+     * @param sportTitles sport titles by sport id
+     * @param sportTournaments tournament ids by sport id in the menu order
+     */
+    public PrematchMenu(Map<Integer, String> sportTitles, Map<Integer, List<String>> sportTournaments) {
+        this.sportTitles = sportTitles;
+        this.sportTournaments = sportTournaments;
+    }
+
+    public Map<Integer, String> getSportTitles() {
+        return sportTitles;
+    }
+
+    public Map<Integer, List<String>> getSportTournaments() {
+        return sportTournaments;
+    }
+}
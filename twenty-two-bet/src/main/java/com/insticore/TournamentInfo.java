@@ -0,0 +1,39 @@
+package com.insticore;
+
+import java.util.List;
+
+/**
+ * Tournament title and its events ids
+ */
+public class TournamentInfo {
+    private final String name;
+    private final List<String> eventIds;
+    private final int skippedEventCount;
+
+    public TournamentInfo(String name, List<String> eventIds) {
+        this(name, eventIds, 0);
+    }
+
+    /**
+     * @param name
+     * @param eventIds of the selected events
+     * @param skippedEventCount how many events are left out by the selection
+     */
+    public TournamentInfo(String name, List<String> eventIds, int skippedEventCount) {
+        this.name = name;
+        this.eventIds = eventIds;
+        this.skippedEventCount = skippedEventCount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getEventIds() {
+        return eventIds;
+    }
+
+    public int getSkippedEventCount() {
+        return skippedEventCount;
+    }
+}
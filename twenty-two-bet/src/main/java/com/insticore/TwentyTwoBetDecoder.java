@@ -0,0 +1,384 @@
+package com.insticore;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Streaming decoders for the 22Bet json payloads
+ * Only the used fields are read, everything else is skipped without building a tree
+ */
+public final class TwentyTwoBetDecoder {
+
+    /**
+     * Decodes a response body into a compact record
+     * @param <T>
+     */
+    @FunctionalInterface
+    public interface BodyDecoder<T> {
+        T decode(byte[] body) throws IOException;
+    }
+
+    //Thread-safe once configured, shared by all decoders
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private TwentyTwoBetDecoder() {
+    }
+
+    /**
+     * Reads the sports titles and the tournaments of every sport from prematch-menu.json
+     * @param body
+     * @return
+     * @throws IOException
+     */
+    public static PrematchMenu decodeMenu(byte[] body) throws IOException {
+        return decodeMenu(body, CrawlSelection.ALL);
+    }
+
+    /**
+     * Reads the sports titles and the tournaments of the selected countries from prematch-menu.json
+     * @param body
+     * @param selection its countries are checked here, the sports are left to the caller
+     * @return
+     * @throws IOException
+     */
+    public static PrematchMenu decodeMenu(byte[] body, CrawlSelection selection) throws IOException {
+        Map<Integer, String> sportTitles = new HashMap<>();
+        Map<Integer, List<String>> sportTournaments = new LinkedHashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            startObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("data".equals(field)) {
+                    readMenuData(parser, sportTitles);
+                } else if ("sports_menu".equals(field)) {
+                    readSportsMenu(parser, sportTournaments, selection);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new PrematchMenu(sportTitles, sportTournaments);
+    }
+
+    /**
+     * Reads the tournament title and the events ids from prematch-by-tournaments.json
+     * @param body
+     * @return
+     * @throws IOException
+     */
+    public static TournamentInfo decodeTournament(byte[] body) throws IOException {
+        return decodeTournament(body, CrawlSelection.ALL);
+    }
+
+    /**
+     * Reads the tournament title and the ids of the events which start within the selected window
+     * from prematch-by-tournaments.json
+     * @param body
+     * @param selection
+     * @return
+     * @throws IOException
+     */
+    public static TournamentInfo decodeTournament(byte[] body, CrawlSelection selection) throws IOException {
+        String name = null;
+        List<String> eventIds = new ArrayList<>();
+        int skipped = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            startObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (!"events".equals(field) || parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    String eventId = null;
+                    long startTime = 0;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String eventField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("id".equals(eventField)) {
+                            eventId = parser.getValueAsString();
+                        } else if ("date_start".equals(eventField)) {
+                            startTime = parseInstant(parser.getValueAsString());
+                        } else if ("tournament_name".equals(eventField) && name == null) {
+                            //The title is taken from the first event
+                            name = readEnglish(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    //The events which start too late are never requested
+                    if (eventId == null) {
+                        continue;
+                    }
+                    if (selection.isStart(startTime)) {
+                        eventIds.add(eventId);
+                    } else {
+                        skipped++;
+                    }
+                }
+            }
+        }
+        return new TournamentInfo(name, eventIds, skipped);
+    }
+
+    /**
+     * Reads the event info and its odds grouped by filter id from single-pre-event.json
+     * @param body
+     * @return
+     * @throws IOException
+     */
+    public static EventInfo decodeEvent(byte[] body) throws IOException {
+        return decodeEvent(body, CrawlSelection.ALL);
+    }
+
+    /**
+     * Reads the event info and the odds of the selected markets grouped by filter id from single-pre-event.json,
+     * the odds of the other markets are skipped without reading their names
+     * @param body
+     * @param selection
+     * @return
+     * @throws IOException
+     */
+    public static EventInfo decodeEvent(byte[] body, CrawlSelection selection) throws IOException {
+        String sportId = null;
+        String dateStart = null;
+        List<String> teams = new ArrayList<>();
+        Map<Integer, List<Odd>> markets = new TreeMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            startObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("info".equals(field) && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String infoField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("sport_id".equals(infoField)) {
+                            sportId = parser.getValueAsString();
+                        } else if ("date_start".equals(infoField)) {
+                            dateStart = parser.getValueAsString();
+                        } else if ("teams".equals(infoField) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                teams.add(parser.getCurrentToken() == JsonToken.VALUE_STRING ? parser.getText() : null);
+                                parser.skipChildren();
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if ("odds".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readOdd(parser, markets, selection);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new EventInfo(sportId, dateStart, teams, markets);
+    }
+
+    /**
+     * Reads market names by filter id from odd-filters.json
+     * @param body
+     * @return
+     * @throws IOException
+     */
+    public static Map<Integer, String> decodeOddFilters(byte[] body) throws IOException {
+        Map<Integer, String> oddNamesMap = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Odd filters array expected but got " + parser.getCurrentToken());
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int filterId = 0;
+                String name = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("filter_id".equals(field)) {
+                        filterId = parser.getValueAsInt();
+                    } else if ("translation".equals(field)) {
+                        name = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                oddNamesMap.put(filterId, name);
+            }
+        }
+        return oddNamesMap;
+    }
+
+    private static void readMenuData(JsonParser parser, Map<Integer, String> sportTitles) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (!"sports".equals(field) || parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int id = 0;
+                String title = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String sportField = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("id".equals(sportField)) {
+                        id = parser.getValueAsInt();
+                    } else if ("title".equals(sportField)) {
+                        title = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                sportTitles.put(id, title);
+            }
+        }
+    }
+
+    private static void readSportsMenu(JsonParser parser, Map<Integer, List<String>> sportTournaments,
+                                       CrawlSelection selection) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int id = 0;
+            List<String> tournaments = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("id".equals(field)) {
+                    id = parser.getValueAsInt();
+                } else if ("countries".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readCountryTournaments(parser, tournaments, selection);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            sportTournaments.put(id, tournaments);
+        }
+    }
+
+    /**
+     * Adds the tournaments of the country if it is selected, the title may come after the tournaments
+     */
+    private static void readCountryTournaments(JsonParser parser, List<String> tournaments, CrawlSelection selection)
+            throws IOException {
+        String title = null;
+        List<String> countryTournaments = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("tournaments".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    countryTournaments.add(parser.getValueAsString());
+                    parser.skipChildren();
+                }
+            } else if ("title".equals(field)) {
+                title = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (selection.isCountry(title)) {
+            tournaments.addAll(countryTournaments);
+        }
+    }
+
+    private static void readOdd(JsonParser parser, Map<Integer, List<Odd>> markets, CrawlSelection selection)
+            throws IOException {
+        int filterId = 0;
+        boolean selected = true;
+        Odd odd = new Odd();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("filter_id".equals(field)) {
+                filterId = parser.getValueAsInt();
+                selected = selection.isMarketId(filterId);
+            } else if (!selected) {
+                //The rest of an odd of a market which is not crawled is only skipped
+                parser.skipChildren();
+            } else if ("id".equals(field)) {
+                odd.setId(parser.getValueAsInt());
+            } else if ("team_name".equals(field)) {
+                odd.setName(readEnglish(parser));
+            } else if ("odd_value".equals(field)) {
+                odd.setValue(parser.getValueAsDouble());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (!selected) {
+            return;
+        }
+        List<Odd> odds = markets.get(filterId);
+        if (odds == null) {
+            odds = new ArrayList<>();
+            markets.put(filterId, odds);
+        }
+        odds.add(odd);
+    }
+
+    /**
+     * Reads the "en" field of a translations object
+     * @param parser positioned at the start of the object
+     * @return
+     * @throws IOException
+     */
+    private static String readEnglish(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String english = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("en".equals(field)) {
+                english = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return english;
+    }
+
+    /**
+     * @param date like 2026-10-18T10:00:00.000Z
+     * @return epoch millis, 0 when the date is missing or not parsed
+     */
+    private static long parseInstant(String date) {
+        if (date == null) {
+            return 0;
+        }
+        try {
+            return Instant.parse(date).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private static void startObject(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Json object expected but got " + parser.getCurrentToken());
+        }
+    }
+}
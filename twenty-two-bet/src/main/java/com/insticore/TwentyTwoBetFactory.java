@@ -0,0 +1,27 @@
+package com.insticore;
+
+import java.io.IOException;
+
+/**
+ * Lets the runner find 22Bet, registered in META-INF/services/com.insticore.BookmakerFactory
+ */
+public class TwentyTwoBetFactory implements BookmakerFactory {
+    /**
+     * System properties with the base urls to crawl instead of the default ones
+     */
+    public static final String BASE_URL_PROPERTY = "22bet.baseUrl";
+    public static final String FILTERS_BASE_URL_PROPERTY = "22bet.filtersBaseUrl";
+
+    @Override
+    public String getName() {
+        return TwentyTwoBetParser.BOOKMAKER;
+    }
+
+    @Override
+    public Bookmaker create(BookmakerContext context) throws IOException {
+        //A replay server given by its property serves the recorded hosts under its own url
+        String baseUrl = System.getProperty(BASE_URL_PROPERTY, TwentyTwoBetParser.DEFAULT_BASE_URL);
+        String filtersBaseUrl = System.getProperty(FILTERS_BASE_URL_PROPERTY, TwentyTwoBetParser.DEFAULT_FILTERS_BASE_URL);
+        return new TwentyTwoBetParser(ReplayServer.baseUrl(baseUrl), ReplayServer.baseUrl(filtersBaseUrl), context);
+    }
+}
@@ -1,9 +1,45 @@
 package com.insticore;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 public class TwentyTwoBetMain {
 
-    public static void main(String[] args) {
-        TwentyTwoBetParser twentyTwoBetParser = new TwentyTwoBetParser();
-        twentyTwoBetParser.parseToConsole();
+    public static void main(String[] args) throws IOException {
+        //Optional first argument is the cap on requests in flight to one host
+        int maxInFlight = args.length > 0 ? Integer.parseInt(args[0]) : TwentyTwoBetParser.DEFAULT_MAX_IN_FLIGHT;
+        //-Dcache=<directory> keeps the responses and asks only for the changed ones, -Doffline=true uses only them
+        String cache = System.getProperty("cache");
+        boolean offline = Boolean.getBoolean("offline");
+        if (offline && cache == null) {
+            throw new IllegalArgumentException("Offline mode needs the cache directory");
+        }
+        TwentyTwoBetParser twentyTwoBetParser = cache != null ? new TwentyTwoBetParser(maxInFlight, Paths.get(cache), offline) : new TwentyTwoBetParser(maxInFlight);
+        //-Dmetrics=<file> writes the latencies and counters to the file periodically, they are in JMX anyway
+        String metrics = System.getProperty("metrics");
+        if (metrics != null) {
+            twentyTwoBetParser.getMetrics().startReport(Paths.get(metrics), CrawlMetrics.DEFAULT_REPORT_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+        //-Dpoll=<seconds> keeps polling and prints only the changed odds
+        String poll = System.getProperty("poll");
+        //-Dsnapshot=<file> writes a binary snapshot instead of the console output
+        String snapshot = System.getProperty("snapshot");
+        if (poll != null) {
+            OddsPoller poller = new OddsPoller(twentyTwoBetParser::parse, new DeltaOddsSink(System.out::println));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                poller.close();
+                twentyTwoBetParser.close();
+            }));
+            poller.start(Long.parseLong(poll), TimeUnit.SECONDS);
+        } else if (snapshot != null) {
+            try (SnapshotWriter writer = new SnapshotWriter(Paths.get(snapshot))) {
+                twentyTwoBetParser.parse(writer);
+            } finally {
+                twentyTwoBetParser.close();
+            }
+        } else {
+            twentyTwoBetParser.parseToConsole();
+        }
     }
 }
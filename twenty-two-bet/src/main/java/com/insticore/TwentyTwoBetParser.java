@@ -1,274 +1,556 @@
 package com.insticore;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.asynchttpclient.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
-public class TwentyTwoBetParser {
+public class TwentyTwoBetParser implements ShardedBookmaker, RefreshableBookmaker {
+
+    public static final String BOOKMAKER = "22Bet";
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    public static final String DEFAULT_BASE_URL = "https://nodejs08.tglab.io";
+    public static final String DEFAULT_FILTERS_BASE_URL = "https://nodejs.tglab.io";
+    private static final String LANGUAGE = "en";
+    private static final String SKIPPED_TOURNAMENTS = "skippedTournaments";
+    private static final String SKIPPED_EVENTS = "skippedEvents";
+    private static final String SKIPPED_EMPTY_TOURNAMENTS = "skippedEmptyTournaments";
+    private static final String FAILED_TOURNAMENTS = "failedTournaments";
+    private static final String FAILED_EVENTS = "failedEvents";
+    //Crawled unless the selection file says otherwise, see CrawlSelection
+    private static final List<String> DEFAULT_SPORTS = Arrays.asList("1", "2", "3", "4", "6", "12");
+    // "Winner"-like tournaments are not necessary and should be omitted
+    private static final List<String> DEFAULT_EXCLUDED_TOURNAMENTS = Collections.singletonList("Winner");
+    //SimpleDateFormat is not thread safe, one per thread instead of two per event
+    private static final ThreadLocal<SimpleDateFormat> START_TIME_FORMAT = ThreadLocal.withInitial(() ->
+            new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX", Locale.ENGLISH));
+    private static final ThreadLocal<SimpleDateFormat> OUTPUT_DATE_FORMAT = ThreadLocal.withInitial(() ->
+            new SimpleDateFormat("dd.MM.yyyy HH:mm"));
 
     private final Logger logger = LoggerFactory.getLogger(TwentyTwoBetParser.class);
+    private String baseUrl;
+    private String filtersBaseUrl;
+    private BookmakerContext context;
+    private boolean ownsContext;
     private AsyncHttpClient asyncHttpClient;
-    private static ExecutorService executorService;
-    private static Lock tournamentLock = new ReentrantLock();
+    private HttpFetcher httpFetcher;
+    private CachingHttpFetcher httpCache;
+    private ExecutorService executorService;
+    private ExecutorService outputExecutor;
+    private LimitingHttpFetcher hostLimits;
+    private MarketNameCache marketNameCache;
+    private CrawlMetrics metrics;
+    private CrawlSelection selection;
 
     public TwentyTwoBetParser() {
-        asyncHttpClient = Dsl.asyncHttpClient(Dsl.config().setUserAgent("Mozilla/5.0"));
-        executorService = Executors.newCachedThreadPool();
+        this(DEFAULT_MAX_IN_FLIGHT);
     }
 
-    public void parseToConsole() {
-        loadSports();
+    /**
+     * @param maxInFlight how many requests can be sent to one host at once at most
+     */
+    public TwentyTwoBetParser(int maxInFlight) {
+        this(maxInFlight, DEFAULT_BASE_URL, DEFAULT_FILTERS_BASE_URL);
     }
 
+    /**
+     * @param maxInFlight how many requests can be sent to one host at once at most
+     * @param baseUrl where the menu, the tournaments and the events are loaded from
+     * @param filtersBaseUrl where the market names are loaded from
+     */
+    public TwentyTwoBetParser(int maxInFlight, String baseUrl, String filtersBaseUrl) {
+        this(baseUrl, filtersBaseUrl, new BookmakerContext(maxInFlight, null, false), true);
+    }
 
-    private void loadSports() {
-        //Load page where sports links can be retrieved
-        JsonNode prematchMenu = getJson("https://nodejs08.tglab.io/cache/20/en/en/Europe%2FPrague/prematch-menu.json");
-        if (prematchMenu == null) {
-            logger.error("Json wasn't received from nodejs08.tglab.io");
-            return;
+    /**
+     * @param maxInFlight how many requests can be sent to one host at once at most
+     * @param cacheDirectory where the responses are kept between the sweeps and the runs
+     * @param offline when true nothing is downloaded, only the cached responses are used
+     * @throws IOException if the cache directory can not be created
+     */
+    public TwentyTwoBetParser(int maxInFlight, Path cacheDirectory, boolean offline) throws IOException {
+        this(maxInFlight);
+        httpCache = new CachingHttpFetcher(httpFetcher, cacheDirectory, offline);
+        httpFetcher = httpCache;
+    }
+
+    /**
+     * Shares the client and the executors of the context with the other bookmakers
+     * @param baseUrl where the menu, the tournaments and the events are loaded from
+     * @param filtersBaseUrl where the market names are loaded from
+     * @param context its max in flight and cache directory are used
+     * @throws IOException if the cache directory can not be created
+     */
+    public TwentyTwoBetParser(String baseUrl, String filtersBaseUrl, BookmakerContext context) throws IOException {
+        this(baseUrl, filtersBaseUrl, context, false);
+        if (context.getCacheDirectory() != null) {
+            httpCache = new CachingHttpFetcher(httpFetcher, context.getCacheDirectory(), context.isOffline());
+            httpFetcher = httpCache;
         }
-        Iterator<JsonNode> sports = prematchMenu.get("data").get("sports").elements();
+    }
 
-        //Map sports ids to their titles
-        Map<Integer, String> sportsMap = new HashMap<>();
-        while (sports.hasNext()) {
-            JsonNode sport = sports.next();
-            sportsMap.put(sport.get("id").asInt(), sport.get("title").asText());
+    private TwentyTwoBetParser(String baseUrl, String filtersBaseUrl, BookmakerContext context, boolean ownsContext) {
+        this.baseUrl = baseUrl;
+        this.filtersBaseUrl = filtersBaseUrl;
+        this.context = context;
+        this.ownsContext = ownsContext;
+        asyncHttpClient = context.getHttpClient();
+        metrics = new CrawlMetrics(BOOKMAKER);
+        metrics.registerMBean();
+        hostLimits = context.newHostLimits(metrics, context.getMaxInFlight());
+        httpFetcher = context.newFetcher(hostLimits, metrics);
+        executorService = context.getExecutor();
+        outputExecutor = context.getOutputExecutor();
+        marketNameCache = new MarketNameCache(this::loadMarketNames);
+        selection = CrawlSelection.fromSystemProperty(BOOKMAKER, defaultSelection());
+    }
 
-        }
+    /**
+     * @return the desired sports without the "Winner"-like tournaments
+     */
+    static CrawlSelection defaultSelection() {
+        Map<String, List<String>> rules = new HashMap<>();
+        rules.put(CrawlSelection.SPORT, DEFAULT_SPORTS);
+        rules.put(CrawlSelection.EXCLUDE, DEFAULT_EXCLUDED_TOURNAMENTS);
+        return new CrawlSelection(rules);
+    }
 
-        //Some sports preselected -> can be done as input data
-        final Integer[] DESIRED_SPORTS = {1, 2, 3, 4, 6, 12};
-        List<Integer> desiredSportsList = Arrays.asList(DESIRED_SPORTS);
-        Iterator<JsonNode> sportsMenu = prematchMenu.get("sports_menu").elements();
+    public void parseToConsole() {
+        try {
+            parse(new TextOddsSink(System.out));
+        } finally {
+            close();
+        }
+    }
 
-        while (sportsMenu.hasNext()) {
-            JsonNode sportsMenuItem = sportsMenu.next();
+    /**
+     * Loads all desired sports and writes them to the sink in the menu order
+     * Can be called again and again, the client and the caches stay alive until the parser is closed
+     * @param sink
+     */
+    @Override
+    public void parse(OddsSink sink) {
+        long start = System.nanoTime();
+        OrderedCollector collector = new OrderedCollector(outputExecutor);
+        sink.begin(BOOKMAKER);
+        try {
+            loadSports(collector.getRoot(), sink);
+            //Wait until everything is loaded and written
+            collector.getDone().join();
+        } catch (CompletionException e) {
+            logger.error("Parsing sports finished with exception " + e.getMessage(), e.getCause());
+        } finally {
+            end(sink, start);
+        }
+    }
 
-            //For each sport id, which is in the desired list read the countries which have leagues to read
-            Integer sportId = sportsMenuItem.get("id").asInt();
-            if (desiredSportsList.contains(sportId)) {
-                String sportName = sportsMap.get(sportId);
-                System.out.println(sportName); // Print sport
-                JsonNode countries = sportsMenuItem.get("countries");
-                Iterator<JsonNode> countriesIterator = countries.elements();
-                CountDownLatch countDownLatch = new CountDownLatch(countries.size());
-                while (countriesIterator.hasNext()) {
-                    JsonNode country = countriesIterator.next();
-
-                    //For each country retrieve the tournaments
-                    Iterator<JsonNode> tournaments = country.get("tournaments").elements();
-                    while (tournaments.hasNext()) {
-                        JsonNode tournament = tournaments.next();
-                        String tournamentId = tournament.asText();
-                        loadTournamentAsync(tournamentId, countDownLatch);
+    /**
+     * Loads the prematch menu, every tournament of the desired sports is a unit
+     * @return
+     */
+    @Override
+    public List<WorkUnit> discover() {
+        List<WorkUnit> units = new ArrayList<>();
+        try {
+            PrematchMenu prematchMenu = getJson(prematchMenuUrl(), body -> TwentyTwoBetDecoder.decodeMenu(body, selection)).join();
+            for (Map.Entry<Integer, List<String>> sportsMenuItem : prematchMenu.getSportTournaments().entrySet()) {
+                Integer sportId = sportsMenuItem.getKey();
+                String sportName = prematchMenu.getSportTitles().get(sportId);
+                if (selection.isSport(String.valueOf(sportId), sportName)) {
+                    for (String tournamentId : sportsMenuItem.getValue()) {
+                        units.add(new WorkUnit(sportName, tournamentId, null));
                     }
                 }
-                try {
-                    //Wait until all async tournaments loading tasks are completed
-                    countDownLatch.await();
-                } catch (InterruptedException e) {
-                    logger.error(e.getMessage(), e);
-                }
             }
+        } catch (CompletionException e) {
+            logger.error("Json wasn't received from " + prematchMenuUrl(), e.getCause());
         }
+        return units;
+    }
+
+    /**
+     * Loads the given tournaments only, a unit key is the tournament id
+     * @param units
+     * @param sink
+     */
+    @Override
+    public void parse(List<WorkUnit> units, UnitSink sink) {
+        long start = System.nanoTime();
+        OrderedCollector collector = new OrderedCollector(outputExecutor);
+        sink.begin(BOOKMAKER);
         try {
-            asyncHttpClient.close();
-        } catch (IOException e) {
-            logger.error(e.getMessage(), e);
+            OrderedCollector.Node root = collector.getRoot();
+            for (WorkUnit unit : units) {
+                OrderedCollector.Node node = root.addChild();
+                node.setOutput(() -> sink.unit(unit));
+                loadTournamentAsync(unit.getKey(), node.addChild(), sink);
+                node.seal();
+            }
+            root.seal();
+            collector.getDone().join();
+        } catch (CompletionException e) {
+            logger.error("Parsing tournaments finished with exception " + e.getMessage(), e.getCause());
+        } finally {
+            end(sink, start);
         }
     }
 
     /**
-     * Read json with blocking of the calling thread
-     * @param url
+     * Loads the prematch menu and the tournaments of the desired sports, a key of an event is its id
      * @return
      */
-    private JsonNode getJson(String url) {
-        BoundRequestBuilder getRequest = asyncHttpClient.prepareGet(url);
-        Future<Response> responseFuture = getRequest.execute();
-        try {
-            Response response = responseFuture.get();
-            String json = response.getResponseBody();
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.readTree(json);
-        } catch (Exception e) {
-            logger.error("JSON was not loaded from " + url, e);
+    @Override
+    public List<EventRef> listEvents() {
+        List<CompletableFuture<List<EventRef>>> tournaments = new ArrayList<>();
+        for (WorkUnit unit : discover()) {
+            String url = tournamentUrl(unit.getKey());
+            tournaments.add(getJson(url, body -> TwentyTwoBetDecoder.decodeTournament(body, selection))
+                    .thenApply(tournamentInfo -> {
+                        List<EventRef> events = new ArrayList<>();
+                        String tournamentName = tournamentName(tournamentInfo);
+                        if (tournamentName != null) {
+                            for (String eventId : tournamentInfo.getEventIds()) {
+                                events.add(new EventRef(unit.getSport(), tournamentName, eventId));
+                            }
+                        }
+                        return events;
+                    })
+                    .exceptionally(e -> {
+                        logger.error("Failed to load tournament: " + url, e);
+                        metrics.increment(FAILED_TOURNAMENTS);
+                        return Collections.emptyList();
+                    }));
         }
-        return null;
+        List<EventRef> events = new ArrayList<>();
+        for (CompletableFuture<List<EventRef>> tournament : tournaments) {
+            events.addAll(tournament.join());
+        }
+        return events;
     }
 
     /**
-     * Reads all events for the tournament with async tasks
-     * @param tournamentId
-     * @param countDownLatch
+     * Loads the event page and the market names of its sport, they are mostly cached already
+     * @param event
+     * @param sink
+     * @return
      */
-    private void loadTournamentAsync(String tournamentId, CountDownLatch countDownLatch) {
-        String url = String.format("https://nodejs08.tglab.io/cache/20/en/en/%s/prematch-by-tournaments.json", tournamentId);
-        Request request = asyncHttpClient.prepareGet(url).build();
-        ListenableFuture<Response> listenableFuture = asyncHttpClient
-                .executeRequest(request);
-        listenableFuture.addListener(() -> {
-            try {
-                Response response = listenableFuture.get();
-
-                //Make sure tournament printing is atomic
-                tournamentLock.lock();
-                loadTournament(response);
-                tournamentLock.unlock();
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                countDownLatch.countDown();
+    @Override
+    public CompletableFuture<Void> refresh(EventRef event, OddsSink sink) {
+        String eventId = event.getKey();
+        return getJson(eventUrl(eventId), body -> TwentyTwoBetDecoder.decodeEvent(body, selection))
+                .thenCompose(eventInfo -> getMarketNames(eventInfo.getSportId())
+                        .thenAccept(oddNamesMap -> writeEvent(loadEvent(eventId, eventInfo), eventInfo, oddNamesMap,
+                                selection, sink)))
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        metrics.increment(FAILED_EVENTS);
+                    }
+                });
+    }
+
+    /**
+     * Ends the sweep and logs how it went
+     */
+    private void end(OddsSink sink, long start) {
+        sink.end();
+        metrics.record(CrawlMetrics.Stage.SWEEP, System.nanoTime() - start);
+        logger.info(metrics.toString());
+        logger.info(marketNameCache.toString());
+        logger.info(hostLimits.toString());
+        if (httpCache != null) {
+            httpCache.endSweep();
+            logger.info(httpCache.toString());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return BOOKMAKER;
+    }
+
+    /**
+     * @return latencies, gauges and counters of the parser, also shown over JMX
+     */
+    @Override
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops the executors and closes the http client unless they are shared with the other bookmakers,
+     * the market names cache is dropped with them
+     */
+    @Override
+    public void close() {
+        metrics.close();
+        if (ownsContext) {
+            context.close();
+        }
+    }
+
+    /**
+     * Loads all desired sports, every sport and tournament reserves its place in the output
+     * @param root
+     * @param sink
+     */
+    private void loadSports(OrderedCollector.Node root, OddsSink sink) {
+        //Load page where sports links can be retrieved
+        String prematchMenuUrl = prematchMenuUrl();
+        getJson(prematchMenuUrl, body -> TwentyTwoBetDecoder.decodeMenu(body, selection)).thenAccept(prematchMenu -> {
+            //Sports ids mapped to their titles
+            Map<Integer, String> sportsMap = prematchMenu.getSportTitles();
+
+            //All tournaments are requested at once, the collector writes them in the menu order
+            for (Map.Entry<Integer, List<String>> sportsMenuItem : prematchMenu.getSportTournaments().entrySet()) {
+                //For each selected sport read the tournaments of the selected countries
+                Integer sportId = sportsMenuItem.getKey();
+                String sportName = sportsMap.get(sportId);
+                if (selection.isSport(String.valueOf(sportId), sportName)) {
+                    OrderedCollector.Node sport = root.addChild();
+                    sport.setOutput(() -> sink.sport(sportName));
+                    for (String tournamentId : sportsMenuItem.getValue()) {
+                        loadTournamentAsync(tournamentId, sport.addChild(), sink);
+                    }
+                    sport.seal();
+                }
+            }
+        }).whenComplete((ignored, e) -> {
+            if (e != null) {
+                logger.error("Json wasn't received from " + prematchMenuUrl, e);
             }
-        }, executorService);
+            root.seal();
+        });
+    }
+
+    private String prematchMenuUrl() {
+        return baseUrl + "/cache/20/en/en/Europe%2FPrague/prematch-menu.json";
+    }
+
+    private String tournamentUrl(String tournamentId) {
+        return String.format("%s/cache/20/en/en/%s/prematch-by-tournaments.json", baseUrl, tournamentId);
+    }
+
+    private String eventUrl(String eventId) {
+        return String.format("%s/cache/20/en/en/%s/single-pre-event.json", baseUrl, eventId);
     }
 
     /**
-     * Loads all events for the tournament page in the response
-     * @param response
-     * @throws IOException
+     * Read json without blocking the calling thread
+     * The response bytes are decoded on the executor straight into the record
+     * @param url
+     * @param decoder
+     * @param <T>
+     * @return future with the decoded record
      */
-    private void loadTournament(Response response) throws IOException {
-        String tournamentsJson = response.getResponseBody();
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode tournamentInfo = objectMapper.readTree(tournamentsJson);
-        JsonNode eventsNode = tournamentInfo.get("events");
-        Iterator<JsonNode> events = eventsNode.elements();
+    private <T> CompletableFuture<T> getJson(String url, TwentyTwoBetDecoder.BodyDecoder<T> decoder) {
+        Request request = asyncHttpClient.prepareGet(url).build();
+        return httpFetcher.fetch(request, new BytesResponseHandler())
+                .thenApplyAsync(body -> {
+                    long start = System.nanoTime();
+                    try {
+                        return decoder.decode(body);
+                    } catch (IOException e) {
+                        throw new CompletionException("JSON was not loaded from " + url, e);
+                    } finally {
+                        metrics.record(CrawlMetrics.Stage.DECODE, System.nanoTime() - start);
+                    }
+                }, executorService);
+    }
 
-        String tournamentName = tournamentInfo.get("events").get(0).get("tournament_name").get("en").asText();
+    /**
+     * Reads all events for the tournament with async tasks
+     * @param tournamentId
+     * @param tournament place of the tournament in the output
+     * @param sink
+     */
+    private void loadTournamentAsync(String tournamentId, OrderedCollector.Node tournament, OddsSink sink) {
+        String url = tournamentUrl(tournamentId);
+        getJson(url, body -> TwentyTwoBetDecoder.decodeTournament(body, selection))
+                .thenAccept(tournamentInfo -> loadTournament(tournamentInfo, tournament, sink))
+                .exceptionally(e -> {
+                    logger.error("Failed to load tournament: " + url, e);
+                    metrics.increment(FAILED_TOURNAMENTS);
+                    tournament.skip();
+                    return null;
+                });
+    }
 
-        // "Winner"-like tournaments are not necessary and should be omitted
-        if (tournamentName.matches(".*Winner.*")) {
+    /**
+     * Loads all events for the tournament, every event reserves its place in the order of the tournament page
+     * @param tournamentInfo
+     * @param tournament
+     * @param sink
+     */
+    private void loadTournament(TournamentInfo tournamentInfo, OrderedCollector.Node tournament, OddsSink sink) {
+        String tournamentName = tournamentName(tournamentInfo);
+        if (tournamentName == null) {
+            tournament.skip();
             return;
         }
 
-        System.out.println(tournamentName);  //Print tournament
+        tournament.setOutput(() -> sink.tournament(tournamentName));
+        for (String eventId : tournamentInfo.getEventIds()) {
+            loadEventAsync(eventId, tournament.addChild(), sink);
+        }
+        tournament.seal();
+    }
+
+    /**
+     * @param tournamentInfo
+     * @return name of the tournament, null if it is skipped
+     */
+    private String tournamentName(TournamentInfo tournamentInfo) {
+        metrics.add(SKIPPED_EVENTS, tournamentInfo.getSkippedEventCount());
+        String tournamentName = tournamentInfo.getName();
+        if (tournamentInfo.getEventIds().isEmpty() || tournamentName == null) {
+            metrics.increment(SKIPPED_EMPTY_TOURNAMENTS);
+            return null;
+        }
 
-        while (events.hasNext()) {
-            JsonNode event = events.next();
-            String eventId = event.get("id").asText();
-            loadEventSync(eventId);
+        if (!selection.isTournament(tournamentName)) {
+            metrics.increment(SKIPPED_TOURNAMENTS);
+            return null;
         }
+        return tournamentName;
     }
 
     /**
      * Loads the event odds
      * @param eventId
+     * @param event place of the event in the output
+     * @param sink
      */
-    private void loadEventSync(String eventId) {
-        String eventInfoUrl = String.format("https://nodejs08.tglab.io/cache/20/en/en/%s/single-pre-event.json", eventId);
-        JsonNode eventInfo = getJson(eventInfoUrl);
-        if (eventInfo == null) {
-            logger.error("No event json got from " + eventInfoUrl);
-            return;
-        }
-        JsonNode info = eventInfo.get("info");
-        String startDate = info.get("date_start").asText();
-        String date = formatDateForOutput(startDate);
+    private void loadEventAsync(String eventId, OrderedCollector.Node event, OddsSink sink) {
+        String eventInfoUrl = eventUrl(eventId);
+        getJson(eventInfoUrl, body -> TwentyTwoBetDecoder.decodeEvent(body, selection))
+                .thenCompose(eventInfo -> getMarketNames(eventInfo.getSportId())
+                        .thenAccept(oddNamesMap -> {
+                            Event loaded = loadEvent(eventId, eventInfo);
+                            event.setOutput(() -> {
+                                long start = System.nanoTime();
+                                writeEvent(loaded, eventInfo, oddNamesMap, selection, sink);
+                                metrics.record(CrawlMetrics.Stage.OUTPUT, System.nanoTime() - start);
+                            });
+                            event.seal();
+                        }))
+                .exceptionally(e -> {
+                    logger.error("Failed to load event: " + eventInfoUrl, e);
+                    metrics.increment(FAILED_EVENTS);
+                    event.skip();
+                    return null;
+                });
+    }
 
-        Iterator<JsonNode> teams = info.get("teams").elements();
-        String eventName = teams.next().asText();
+    /**
+     * Builds the event from the event info
+     * @param eventId
+     * @param eventInfo
+     * @return
+     */
+    Event loadEvent(String eventId, EventInfo eventInfo) {
+        long startTime = parseStartTime(eventInfo.getDateStart());
+
+        Iterator<String> teams = eventInfo.getTeams().iterator();
+        String eventName = teams.hasNext() ? String.valueOf(teams.next()) : "";
         while (teams.hasNext()) {
-            JsonNode team = teams.next();
-            String nextTeamName = team.textValue();
+            String nextTeamName = teams.next();
             //When there are two teams a name is built like "<team A> vs <team B> vs ..."
             if (nextTeamName != null && !nextTeamName.isEmpty()) {
                 eventName += " vs. " + nextTeamName;
             }
         }
+        return new Event(eventId, eventName, formatDateForOutput(startTime), startTime);
+    }
 
-        System.out.println(String.join(", ", eventName, date, eventId)); //Print event
-
-        Iterator<JsonNode> odds = eventInfo.get("odds").elements();
-
-        String sportId = info.get("sport_id").asText();
-
-        //Split odds into appropriate markets by filter id
-        Map<Integer, List<Odd>> oddsMap = new HashMap<>();
-        while (odds.hasNext()) {
-            JsonNode odd = odds.next();
-            int filterId = odd.get("filter_id").asInt();
-            int id = odd.get("id").asInt();
-            String name = odd.get("team_name").get("en").asText();
-            double value = odd.get("odd_value").asDouble();
-            Odd oddObject = new Odd(id, name, value);
-            if (oddsMap.containsKey(filterId)) {
-                oddsMap.get(filterId).add(oddObject);
-            } else {
-                List<Odd> moreOdds = new ArrayList<>();
-                moreOdds.add(oddObject);
-                oddsMap.put(filterId, moreOdds);
-            }
-        }
+    /**
+     * Writes the event with all its odds
+     * @param event
+     * @param eventInfo
+     * @param oddNamesMap market names by filter id
+     * @param sink
+     */
+    static void writeEvent(Event event, EventInfo eventInfo, Map<Integer, String> oddNamesMap, OddsSink sink) {
+        writeEvent(event, eventInfo, oddNamesMap, CrawlSelection.ALL, sink);
+    }
 
-        try {
-            //Read all odds
-            //Use the filter id to find the name of market for each odd in the market names map
-            Map<Integer, String> oddNamesMap = getMarketNames(sportId);
-            for (HashMap.Entry<Integer, List<Odd>> marketEntry : oddsMap.entrySet()) {
-                int filterId = marketEntry.getKey();
-                String marketName = oddNamesMap.get(filterId);
-                System.out.println(marketName);  //Print market
-                for (Odd odd : marketEntry.getValue()) {
-                    //Print odd
-                    System.out.println(String.format("\t\t%s, %.2f, %d", odd.getName(), odd.getValue(), odd.getId()));
-                }
+    /**
+     * Writes the event with the odds of the selected markets, the ones selected by the id are left out
+     * while decoding already, the ones selected by the name only here
+     * @param event
+     * @param eventInfo
+     * @param oddNamesMap market names by filter id
+     * @param selection
+     * @param sink
+     */
+    static void writeEvent(Event event, EventInfo eventInfo, Map<Integer, String> oddNamesMap,
+                           CrawlSelection selection, OddsSink sink) {
+        sink.event(event);
+
+        //Read all odds, they are already split into markets by filter id
+        //Use the filter id to find the name of market for each odd in the market names map
+        for (Map.Entry<Integer, List<Odd>> marketEntry : eventInfo.getMarkets().entrySet()) {
+            int filterId = marketEntry.getKey();
+            String marketName = oddNamesMap.get(filterId);
+            if (!selection.isMarket(filterId, marketName)) {
+                continue;
+            }
+            sink.market(new Market(filterId, String.valueOf(marketName)));
+            for (Odd odd : marketEntry.getValue()) {
+                sink.odd(odd);
             }
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
         }
-
-
     }
 
-    private String formatDateForOutput(String date) {
-        SimpleDateFormat inFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX", Locale.ENGLISH);
-        Calendar calendar = new GregorianCalendar();
+    /**
+     * @param date
+     * @return start time in epoch millis, 0 when the event has no date or it could not be parsed
+     */
+    private long parseStartTime(String date) {
+        if (date == null) {
+            return 0;
+        }
         try {
-            calendar.setTime(inFormat.parse(date));
+            return START_TIME_FORMAT.get().parse(date).getTime();
         } catch (ParseException e) {
             logger.error("Date could not be parsed", e);
+            return 0;
         }
-        SimpleDateFormat outFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm");
-        return outFormat.format(calendar.getTime());
+    }
+
+    /**
+     * @param startTime
+     * @return the date to print, empty when the start time is unknown
+     */
+    private String formatDateForOutput(long startTime) {
+        return startTime != 0 ? OUTPUT_DATE_FORMAT.get().format(new Date(startTime)) : "";
+    }
+
+    /**
+     * Get the market names map for the given sport from the cache
+     * @param sportId
+     * @return
+     */
+    private CompletableFuture<Map<Integer, String>> getMarketNames(String sportId) {
+        return marketNameCache.get(sportId, LANGUAGE);
     }
 
     /**
      * Load the market names map for the given sport
      * @param sportId
+     * @param language
      * @return
-     * @throws IOException
      */
-    private Map<Integer, String> getMarketNames(String sportId) throws IOException {
-        String oddFiltersUrl = String.format("https://nodejs.tglab.io/cache/%s/0/en/20/odd-filters.json", sportId);
-        JsonNode oddFiltersJsonArray = getJson(oddFiltersUrl);
-        if (oddFiltersJsonArray == null) {
-            throw new IOException("No odd filters json got from " + oddFiltersUrl);
-        }
-        Iterator<JsonNode> oddFilters = oddFiltersJsonArray.elements();
-        Map<Integer, String> oddNamesMap = new HashMap<>();
-        while (oddFilters.hasNext()) {
-            JsonNode oddFilter = oddFilters.next();
-            int filterId = oddFilter.get("filter_id").asInt();
-            String name = oddFilter.get("translation").asText();
-            oddNamesMap.put(filterId, name);
-        }
-        return oddNamesMap;
+    private CompletableFuture<Map<Integer, String>> loadMarketNames(String sportId, String language) {
+        String oddFiltersUrl = String.format("%s/cache/%s/0/%s/20/odd-filters.json", filtersBaseUrl, sportId, language);
+        return getJson(oddFiltersUrl, TwentyTwoBetDecoder::decodeOddFilters);
     }
 
 }